@@ -32,25 +32,32 @@ import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.config.MainnetConfig;
 import io.xdag.config.TestnetConfig;
+import io.xdag.consensus.SnapshotSync;
 import io.xdag.consensus.SyncManager;
 import io.xdag.consensus.XdagPow;
 import io.xdag.consensus.XdagSync;
 import io.xdag.core.Block;
 import io.xdag.core.Blockchain;
+import io.xdag.core.BlockWrapper;
 import io.xdag.core.BlockchainImpl;
+import io.xdag.core.ImportResult;
 import io.xdag.core.XdagState;
 import io.xdag.core.XdagStats;
 import io.xdag.crypto.Keys;
 import io.xdag.db.AddressStore;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.PeerStore;
 import io.xdag.db.SnapshotStore;
 import io.xdag.db.rocksdb.AddressStoreImpl;
 import io.xdag.db.rocksdb.BlockStoreImpl;
 import io.xdag.db.rocksdb.DatabaseFactory;
 import io.xdag.db.rocksdb.DatabaseName;
 import io.xdag.db.rocksdb.OrphanBlockStoreImpl;
+import io.xdag.db.rocksdb.PeerStoreImpl;
 import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.db.rocksdb.RocksdbKVSource;
+import io.xdag.db.rocksdb.SnapshotExporter;
 import io.xdag.mine.MinerServer;
 import io.xdag.mine.manager.AwardManager;
 import io.xdag.mine.manager.AwardManagerImpl;
@@ -59,12 +66,13 @@ import io.xdag.mine.manager.MinerManagerImpl;
 import io.xdag.mine.miner.Miner;
 import io.xdag.mine.miner.MinerStates;
 import io.xdag.mine.randomx.RandomX;
+import io.xdag.net.SessionTickets;
 import io.xdag.net.XdagClient;
 import io.xdag.net.XdagServer;
+import io.xdag.net.libp2p.BlockGossip;
 import io.xdag.net.libp2p.Libp2pNetwork;
 import io.xdag.net.manager.NetDBManager;
 import io.xdag.net.manager.XdagChannelManager;
-import io.xdag.net.message.MessageQueue;
 import io.xdag.net.message.NetDB;
 import io.xdag.net.node.NodeManager;
 import io.xdag.rpc.Web3;
@@ -93,6 +101,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.tuweni.bytes.Bytes;
 
 @Slf4j
@@ -107,6 +116,7 @@ public class Kernel {
     private AddressStore addressStore;
     private BlockStore blockStore;
     private OrphanBlockStore orphanBlockStore;
+    private PeerStore peerStore;
 
     private SnapshotStore SnapshotStore;
     private Blockchain blockchain;
@@ -114,9 +124,12 @@ public class Kernel {
     private XdagClient client;
     private XdagChannelManager channelMgr;
     private NodeManager nodeMgr;
+    private SessionTickets sessionTickets;
     private NetDBManager netDBMgr;
     private XdagServer p2p;
     private XdagSync sync;
+    private SnapshotSync snapshotSync;
+    private SnapshotExporter snapshotExporter;
     private XdagPow pow;
     private SyncManager syncMgr;
 
@@ -128,6 +141,7 @@ public class Kernel {
     private MinerServer minerServer;
     private XdagState xdagState;
     private Libp2pNetwork libp2pNetwork;
+    private BlockGossip blockGossip;
     //    protected DiscoveryController discoveryController;
     private AtomicInteger channelsAccount = new AtomicInteger(0);
     private PrivKey privKey = KeyKt.generateKeyPair(KEY_TYPE.SECP256K1).component1();
@@ -210,6 +224,10 @@ public class Kernel {
         log.info("Orphan Pool init.");
         orphanBlockStore.init();
 
+        peerStore = new PeerStoreImpl(dbFactory.getDB(DatabaseName.PEER));
+        peerStore.init();
+        log.info("Peer Store init.");
+
         // ====================================
         // netstatus netdb init
         // ====================================
@@ -275,6 +293,9 @@ public class Kernel {
         // set up client
         // ====================================
 
+        if (config.getNodeSpec().isSessionResume()) {
+            sessionTickets = new SessionTickets(config.getNodeSpec().getSessionTicketTtl());
+        }
         p2p = new XdagServer(this);
         p2p.start();
         log.info("Node server start...");
@@ -298,8 +319,28 @@ public class Kernel {
         // send request
         // ====================================
         sync = new XdagSync(this);
-        sync.start();
-        log.info("XdagSync start...");
+        if (config.getNodeSpec().isSnapshotSync() && blockchain.getXdagStats().nmain == 0) {
+            // 新节点先下载状态快照, 加载后从快照高度开始同步
+            snapshotSync = new SnapshotSync(this, manifest -> {
+                blockchain.loadSnapshot(manifest);
+                randomx.randomXLoadingSnapshotJ();
+                sync.start();
+                log.info("XdagSync start from snapshot height {}", manifest.getHeight());
+            });
+            snapshotSync.start();
+            log.info("SnapshotSync start...");
+        } else {
+            sync.start();
+            log.info("XdagSync start...");
+        }
+        if (config.getNodeSpec().isSnapshotServe()) {
+            snapshotExporter = new SnapshotExporter(config,
+                    (RocksdbKVSource) dbFactory.getDB(DatabaseName.INDEX),
+                    (RocksdbKVSource) dbFactory.getDB(DatabaseName.TIME),
+                    (RocksdbKVSource) dbFactory.getDB(DatabaseName.ADDRESS));
+            snapshotExporter.start(blockchain);
+            log.info("SnapshotExporter start...");
+        }
 
         // ====================================
         // sync block
@@ -308,6 +349,17 @@ public class Kernel {
         syncMgr.start();
         log.info("SyncManager start...");
 
+        // ====================================
+        // gossip block propagation
+        // ====================================
+        if (config.getNodeSpec().isGossipEnabled()) {
+            blockGossip = new BlockGossip(StringUtils.removeEnd(config.getConfigName(), ".config"),
+                    this::importGossipBlock);
+            libp2pNetwork = new Libp2pNetwork(this);
+            libp2pNetwork.start();
+            log.info("Block gossip start...");
+        }
+
         // ====================================
         // set up pool miner
         // ====================================
@@ -394,7 +446,8 @@ public class Kernel {
                     InetAddress.getByName(config.getRPCSpec().getRPCHost()),
                     config.getRPCSpec().getRPCPortByWebSocket(),
                     jsonRpcHandler,
-                    getJsonRpcWeb3ServerHandler()
+                    getJsonRpcWeb3ServerHandler(),
+                    config.getRPCSpec().getRpcSocketOptions()
             );
         }
 
@@ -410,7 +463,8 @@ public class Kernel {
                     true,
                     new CorsConfiguration("*"),
                     getJsonRpcWeb3FilterHandler(),
-                    getJsonRpcWeb3ServerHandler()
+                    getJsonRpcWeb3ServerHandler(),
+                    config.getRPCSpec().getRpcSocketOptions()
             );
         }
 
@@ -437,6 +491,16 @@ public class Kernel {
         return jacksonBasedRpcSerializer;
     }
 
+    /**
+     * 导入gossip收到的区块, 已从TCP连接收到的区块不再处理
+     */
+    private ImportResult importGossipBlock(Block block) {
+        if (!channelMgr.getSeenBlocks().markSeen(block.getXdagBlock().getData().toArray())) {
+            return ImportResult.EXIST;
+        }
+        return syncMgr.validateAndAddNewBlock(new BlockWrapper(block, config.getNodeSpec().getTTL()));
+    }
+
     /**
      * Stops the kernel.
      */
@@ -458,8 +522,14 @@ public class Kernel {
 
         // 1. 工作层关闭
         // stop consensus
+        if (snapshotSync != null) {
+            snapshotSync.stop();
+        }
         sync.stop();
         log.info("XdagSync stop.");
+        if (snapshotExporter != null) {
+            snapshotExporter.stop();
+        }
         syncMgr.stop();
         log.info("SyncManager stop.");
         pow.stop();
@@ -474,10 +544,10 @@ public class Kernel {
 
         log.info("ChannelManager stop.");
 //        discoveryController.stop();
-//        libp2pNetwork.stop();
-        // close timer
-        MessageQueue.timer.shutdown();
-
+        if (libp2pNetwork != null) {
+            libp2pNetwork.stop();
+            log.info("Libp2p network stop.");
+        }
         // close server
         p2p.close();
         log.info("Node server stop.");
@@ -494,6 +564,7 @@ public class Kernel {
         // 3. 数据层关闭
         // TODO 关闭checkmain线程
         blockchain.stopCheckMain();
+        blockchain.getEventBus().stop();
 
         for (DatabaseName name : DatabaseName.values()) {
             dbFactory.getDB(name).close();
@@ -91,7 +91,7 @@ public class Wallet {
     private final File file;
     private final Config config;
 
-    private final Map<Bytes, KeyPair> accounts = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<Bytes, WalletAccount> accounts = Collections.synchronizedMap(new LinkedHashMap<>());
     private String password;
 
     // hd wallet key
@@ -185,9 +185,9 @@ public class Wallet {
 
                 synchronized (accounts) {
                     accounts.clear();
-                    for (KeyPair account : newAccounts) {
-                        Bytes b = Bytes.wrap(Keys.toBytesAddress(account));
-                        accounts.put(b, account);
+                    for (KeyPair keyPair : newAccounts) {
+                        WalletAccount account = WalletAccount.of(keyPair);
+                        accounts.put(account.getAddress(), account);
                     }
                 }
             }
@@ -221,11 +221,11 @@ public class Wallet {
     protected void writeAccounts(byte[] key, SimpleEncoder enc) {
         synchronized (accounts) {
             enc.writeInt(accounts.size());
-            for (KeyPair keyPair : accounts.values()) {
+            for (WalletAccount account : accounts.values()) {
                 byte[] iv = SecureRandomUtils.secureRandom().generateSeed(16);
 
                 enc.writeBytes(iv);
-                enc.writeBytes(Aes.encrypt(keyPair.getPrivateKey().getEncoded(), key, iv));
+                enc.writeBytes(Aes.encrypt(account.getKeyPair().getPrivateKey().getEncoded(), key, iv));
             }
         }
     }
@@ -277,6 +277,20 @@ public class Wallet {
      * Returns a copy of the accounts inside this wallet.
      */
     public List<KeyPair> getAccounts() {
+        requireUnlocked();
+        synchronized (accounts) {
+            List<KeyPair> res = Lists.newArrayListWithCapacity(accounts.size());
+            for (WalletAccount account : accounts.values()) {
+                res.add(account.getKeyPair());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Returns a copy of the accounts inside this wallet, with cached public key and addresses.
+     */
+    public List<WalletAccount> getWalletAccounts() {
         requireUnlocked();
         synchronized (accounts) {
             return Lists.newArrayList(accounts.values());
@@ -308,6 +322,14 @@ public class Wallet {
      * Returns account by address.
      */
     public KeyPair getAccount(byte[] address) {
+        WalletAccount account = getWalletAccount(address);
+        return account == null ? null : account.getKeyPair();
+    }
+
+    /**
+     * Returns account with cached public key and addresses by address.
+     */
+    public WalletAccount getWalletAccount(byte[] address) {
         requireUnlocked();
 
         synchronized (accounts) {
@@ -365,13 +387,13 @@ public class Wallet {
     public boolean addAccount(KeyPair newKey) {
         requireUnlocked();
 
+        WalletAccount account = WalletAccount.of(newKey);
         synchronized (accounts) {
-            Bytes b = Bytes.wrap(Keys.toBytesAddress(newKey));
-            if (accounts.containsKey(b)) {
+            if (accounts.containsKey(account.getAddress())) {
                 return false;
             }
 
-            accounts.put(b, newKey);
+            accounts.put(account.getAddress(), account);
             return true;
         }
     }
@@ -472,8 +494,8 @@ public class Wallet {
             byte[] seed = getSeed();
             Bip32ECKeyPair masterKeypair = Bip32ECKeyPair.generateKeyPair(seed);
             Bip32ECKeyPair bip44Keypair = WalletUtils.generateBip44KeyPair(masterKeypair, nextAccountIndex++);
-            Bytes b = Bytes.wrap(Keys.toBytesAddress(bip44Keypair.getKeyPair()));
-            accounts.put(b, bip44Keypair.getKeyPair());
+            WalletAccount account = WalletAccount.of(bip44Keypair.getKeyPair());
+            accounts.put(account.getAddress(), account);
             return bip44Keypair.getKeyPair();
         }
     }
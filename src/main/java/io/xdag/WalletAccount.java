@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag;
+
+import static io.xdag.utils.WalletUtils.toBase58;
+
+import io.xdag.crypto.Hash;
+import io.xdag.crypto.Keys;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+
+/**
+ * Immutable view of a wallet account. The compressed public key and the derived addresses are computed once when
+ * the account is loaded or derived, instead of on every use.
+ */
+@Getter
+public final class WalletAccount {
+
+    private final KeyPair keyPair;
+    /**
+     * 33 bytes compressed public key
+     */
+    private final Bytes compressedPubKey;
+    /**
+     * 20 bytes sha256hash160 of the compressed public key
+     */
+    private final Bytes address;
+    private final String base58Address;
+
+    private WalletAccount(KeyPair keyPair) {
+        this.keyPair = keyPair;
+        this.compressedPubKey = Bytes.wrap(Keys.toCompressedPubKey(keyPair.getPublicKey()));
+        this.address = Bytes.wrap(Hash.sha256hash160(compressedPubKey));
+        this.base58Address = toBase58(address.toArrayUnsafe());
+    }
+
+    public static WalletAccount of(KeyPair keyPair) {
+        return new WalletAccount(keyPair);
+    }
+
+    /**
+     * Returns the address in the 32 bytes hash form used by transaction fields.
+     */
+    public Bytes32 getAddressHash() {
+        MutableBytes32 hash = MutableBytes32.create();
+        hash.set(8, address);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return address.equals(((WalletAccount) o).address);
+    }
+
+    @Override
+    public int hashCode() {
+        return address.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return base58Address;
+    }
+}
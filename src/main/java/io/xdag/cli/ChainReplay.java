@@ -0,0 +1,346 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.cli;
+
+import io.xdag.Kernel;
+import io.xdag.Wallet;
+import io.xdag.config.Config;
+import io.xdag.config.Constants;
+import io.xdag.consensus.SyncManager;
+import io.xdag.core.Block;
+import io.xdag.core.Blockchain;
+import io.xdag.core.BlockchainImpl;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.ImportProfiler;
+import io.xdag.core.ImportResult;
+import io.xdag.core.XdagBlock;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.rocksdb.AddressStoreImpl;
+import io.xdag.db.rocksdb.BlockStoreImpl;
+import io.xdag.db.rocksdb.DatabaseFactory;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.OrphanBlockStoreImpl;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.db.rocksdb.RocksdbKVSource;
+import io.xdag.mine.randomx.RandomX;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+
+/**
+ * 离线回放区块导入, 用于测量导入性能
+ * 记录文件由按导入顺序排列的512字节原始区块组成, 没有文件头
+ * 回放时在新建的RocksDB中逐个通过SyncManager.importBlock导入, 不连接网络
+ */
+@Slf4j
+public class ChainReplay {
+
+    public static final int BLOCK_SIZE = 512;
+
+    private static final DatabaseName[] STORES = {DatabaseName.INDEX, DatabaseName.TIME, DatabaseName.BLOCK,
+            DatabaseName.TXHISTORY, DatabaseName.ADDRESS, DatabaseName.ORPHANIND};
+
+    private final Config config;
+    /**
+     * 回放主网区块时需要RandomX计算难度, 合成的区块不需要
+     */
+    private final boolean randomX;
+
+    public ChainReplay(Config config, boolean randomX) {
+        this.config = config;
+        this.randomX = randomX;
+    }
+
+    /**
+     * 记录[fromHeight, toHeight]内每个主块确认的区块, 被引用的区块在前
+     *
+     * @return 记录的区块数
+     */
+    public static long record(Blockchain blockchain, long fromHeight, long toHeight, File file) throws IOException {
+        long count = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (long height = fromHeight; height <= toHeight; height++) {
+                Block mainBlock = blockchain.getBlockByHeight(height);
+                if (mainBlock == null) {
+                    break;
+                }
+                for (Block block : blockchain.getBlocksConfirmedBy(mainBlock)) {
+                    write(out, block);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public static void write(OutputStream out, Block block) throws IOException {
+        out.write(block.getXdagBlock().getData().toArray());
+    }
+
+    /**
+     * 在临时目录中回放, 结束后删除
+     */
+    public Report replay(File file) throws IOException {
+        File dir = Files.createTempDirectory("xdag-replay").toFile();
+        try {
+            return replay(file, dir);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * 在dir中新建数据库并回放, dir不能包含已有的数据
+     */
+    public Report replay(File file, File dir) throws IOException {
+        if (file.length() % BLOCK_SIZE != 0) {
+            throw new IOException("Invalid replay file " + file + ", size is not a multiple of " + BLOCK_SIZE);
+        }
+        config.getNodeSpec().setStoreDir(new File(dir, "rocksdb").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(dir, "backup").getAbsolutePath());
+        config.getNodeSpec().setStoreStatistics(true);
+        // 空钱包, 回放的区块都不是自己的区块
+        config.getWalletSpec().setWalletFilePath(new File(dir, Constants.WALLET_FILE_NAME).getAbsolutePath());
+
+        Kernel kernel = new Kernel(config);
+        Wallet wallet = new Wallet(config);
+        wallet.unlock("");
+        kernel.setWallet(wallet);
+
+        DatabaseFactory dbFactory = new RocksdbFactory(config);
+        BlockStore blockStore = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        blockStore.init();
+        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.init();
+        OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.init();
+        kernel.setBlockStore(blockStore);
+        kernel.setAddressStore(addressStore);
+        kernel.setOrphanBlockStore(orphanBlockStore);
+
+        RandomX randomx = null;
+        if (randomX) {
+            randomx = new RandomX(config);
+            randomx.init();
+            kernel.setRandomx(randomx);
+        }
+
+        // 不启动定时检查主链, 主链只在导入时检查, 避免影响计时
+        BlockchainImpl blockchain = new BlockchainImpl(kernel) {
+            @Override
+            public void startCheckMain(long period) {
+            }
+        };
+        kernel.setBlockchain(blockchain);
+        if (randomx != null) {
+            randomx.randomXLoadingForkTime();
+        }
+        SyncManager syncMgr = new SyncManager(kernel);
+        kernel.setSyncMgr(syncMgr);
+        // 达到最大难度时不切换到出块状态
+        syncMgr.getSyncDone().set(true);
+
+        ImportProfiler profiler = new ImportProfiler();
+        blockchain.setImportProfiler(profiler);
+        Report report = new Report(profiler);
+        try {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                byte[] data = new byte[BLOCK_SIZE];
+                while (readBlock(in, data)) {
+                    profiler.begin();
+                    Block block = new Block(new XdagBlock(data.clone()));
+                    profiler.mark(ImportProfiler.Phase.PARSE);
+                    report.onResult(syncMgr.importBlock(new BlockWrapper(block, 0)));
+                }
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+            report.allocatedBytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+            report.rawBytes = file.length();
+            blockchain.stopCheckMain();
+            for (DatabaseName name : STORES) {
+                report.onStore(name, (RocksdbKVSource) dbFactory.getDB(name));
+            }
+            report.mainBlocks = blockchain.getXdagStats().getNmain();
+        } finally {
+            blockchain.setImportProfiler(null);
+            if (randomx != null) {
+                randomx.randomXPoolReleaseMem();
+            }
+            dbFactory.close();
+        }
+        return report;
+    }
+
+    private static boolean readBlock(DataInputStream in, byte[] data) throws IOException {
+        try {
+            in.readFully(data);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 当前线程累计分配的字节数, JVM不支持时返回-1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean threadBean && threadBean.isThreadAllocatedMemorySupported()) {
+            return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * 回放结果
+     */
+    @Getter
+    public static class Report {
+
+        private final ImportProfiler profiler;
+        private final Map<ImportResult, Long> results = new EnumMap<>(ImportResult.class);
+        private long blocks;
+        private long mainBlocks;
+        private long elapsedNanos;
+        private long allocatedBytes;
+        private long rawBytes;
+        /**
+         * 写入数据库的key和value字节数
+         */
+        private long userBytes;
+        /**
+         * WAL, flush和compaction实际写入磁盘的字节数
+         */
+        private long walBytes;
+        private long flushBytes;
+        private long compactionBytes;
+
+        Report(ImportProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        void onResult(ImportResult result) {
+            blocks++;
+            results.merge(result, 1L, Long::sum);
+        }
+
+        void onStore(DatabaseName name, RocksdbKVSource source) throws IOException {
+            Statistics statistics = source.getStatistics();
+            if (statistics == null) {
+                return;
+            }
+            // 内存表中的数据落盘后再统计
+            try (FlushOptions options = new FlushOptions().setWaitForFlush(true)) {
+                source.getDb().flush(options);
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to flush " + name, e);
+            }
+            userBytes += statistics.getTickerCount(TickerType.BYTES_WRITTEN);
+            walBytes += statistics.getTickerCount(TickerType.WAL_FILE_BYTES);
+            flushBytes += statistics.getTickerCount(TickerType.FLUSH_WRITE_BYTES);
+            compactionBytes += statistics.getTickerCount(TickerType.COMPACT_WRITE_BYTES);
+        }
+
+        public long getCount(ImportResult result) {
+            return results.getOrDefault(result, 0L);
+        }
+
+        public double getBlocksPerSecond() {
+            return elapsedNanos == 0 ? 0 : blocks * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 写放大: 实际写入磁盘的字节数 / 写入数据库的字节数
+         */
+        public double getWriteAmplification() {
+            return userBytes == 0 ? 0 : (double) (walBytes + flushBytes + compactionBytes) / userBytes;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("blocks: %d, main blocks: %d, raw: %s%n", blocks, mainBlocks, size(rawBytes)));
+            sb.append("results:");
+            results.forEach((result, count) -> sb.append(' ').append(result).append('=').append(count));
+            sb.append(System.lineSeparator());
+            sb.append(String.format("elapsed: %.3f s, %.1f blocks/s%n", seconds, getBlocksPerSecond()));
+            if (allocatedBytes >= 0) {
+                sb.append(String.format("allocated: %s, %s/s, %s/block%n", size(allocatedBytes),
+                        size(seconds == 0 ? 0 : (long) (allocatedBytes / seconds)),
+                        size(blocks == 0 ? 0 : allocatedBytes / blocks)));
+            }
+            sb.append(String.format("db written: %s, wal %s, flush %s, compaction %s, write amplification %.2f%n",
+                    size(userBytes), size(walBytes), size(flushBytes), size(compactionBytes),
+                    getWriteAmplification()));
+            sb.append("phases:").append(System.lineSeparator());
+            for (ImportProfiler.Phase phase : ImportProfiler.Phase.values()) {
+                phase(sb, phase.toString(), profiler.getNanos(phase));
+            }
+            phase(sb, "OTHER", Math.max(0, elapsedNanos - profiler.getTotalNanos()));
+            return sb.toString();
+        }
+
+        private void phase(StringBuilder sb, String name, long nanos) {
+            sb.append(String.format("  %-12s %10.3f s %6.1f%% %10.1f us/block%n", name, nanos / 1e9,
+                    elapsedNanos == 0 ? 0 : nanos * 100.0 / elapsedNanos, blocks == 0 ? 0 : nanos / 1e3 / blocks));
+        }
+
+        private static String size(long bytes) {
+            if (bytes < 1024) {
+                return bytes + " B";
+            } else if (bytes < 1024 * 1024) {
+                return String.format("%.1f KB", bytes / 1024.0);
+            }
+            return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+        }
+    }
+}
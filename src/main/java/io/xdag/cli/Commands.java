@@ -38,7 +38,6 @@ import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
-import static io.xdag.crypto.Keys.toBytesAddress;
 import static io.xdag.utils.BasicUtils.Hash2byte;
 import static io.xdag.utils.BasicUtils.address2Hash;
 import static io.xdag.utils.BasicUtils.amount2xdag;
@@ -57,6 +56,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import io.xdag.Kernel;
+import io.xdag.WalletAccount;
+import io.xdag.consensus.XdagSync;
 import io.xdag.core.Address;
 import io.xdag.core.Block;
 import io.xdag.core.BlockInfo;
@@ -71,16 +72,20 @@ import io.xdag.mine.MinerChannel;
 import io.xdag.mine.miner.Miner;
 import io.xdag.mine.miner.MinerCalculate;
 import io.xdag.mine.miner.MinerStates;
+import io.xdag.net.Channel;
 import io.xdag.net.node.Node;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -169,27 +174,24 @@ public class Commands {
     public String account(int num) {
         // account in memory, do not store in rocksdb, do not show in terminal
         StringBuilder str = new StringBuilder();
-        List<KeyPair> list = kernel.getWallet().getAccounts();
-
-        // 按balance降序排序，按key index降序排序
-        list.sort((o1, o2) -> {
-            int compareResult = compareAmountTo(kernel.getAddressStore().getBalanceByAddress(toBytesAddress(o2)),
-                    kernel.getAddressStore().getBalanceByAddress(toBytesAddress(o1)));
-            if (compareResult >= 0) {
-                return 1;
-            } else {
-                return -1;
-            }
+        List<WalletAccount> list = kernel.getWallet().getWalletAccounts();
+        // 每个账户的余额只读取一次
+        Map<WalletAccount, UInt64> balances = Maps.newHashMapWithExpectedSize(list.size());
+        for (WalletAccount account : list) {
+            balances.put(account, kernel.getAddressStore().getBalanceByAddress(account.getAddress().toArray()));
+        }
 
-        });
+        // 按balance降序排序，按key index降序排序(sort是稳定的, 先倒序)
+        Collections.reverse(list);
+        list.sort((o1, o2) -> compareAmountTo(balances.get(o2), balances.get(o1)));
 
-        for (KeyPair keyPair : list) {
+        for (WalletAccount account : list) {
             if (num == 0) {
                 break;
             }
-            str.append(toBase58(toBytesAddress(keyPair)))
+            str.append(account.getBase58Address())
                     .append(" ")
-                    .append(String.format("%.9f", amount2xdag(kernel.getAddressStore().getBalanceByAddress(toBytesAddress(keyPair)))))
+                    .append(String.format("%.9f", amount2xdag(balances.get(account))))
                     .append(" XDAG")
                     .append("\n");
             num--;
@@ -207,9 +209,8 @@ public class Commands {
     public String balance(String address) {
         if (StringUtils.isEmpty(address)) {
             UInt64 ourBalance = UInt64.ZERO;
-            List<KeyPair> list = kernel.getWallet().getAccounts();
-            for (KeyPair k : list) {
-                ourBalance = ourBalance.add(kernel.getAddressStore().getBalanceByAddress(toBytesAddress(k)));
+            for (WalletAccount account : kernel.getWallet().getWalletAccounts()) {
+                ourBalance = ourBalance.add(kernel.getAddressStore().getBalanceByAddress(account.getAddress().toArray()));
             }
             return String.format("Balance: %.9f XDAG", amount2xdag(ourBalance));
         } else {
@@ -255,19 +256,17 @@ public class Commands {
 
         // 转账输入
         Map<Address, KeyPair> ourAccounts = Maps.newHashMap();
-        List<KeyPair> accounts = kernel.getWallet().getAccounts();
-        for (KeyPair account : accounts) {
-            byte[] addr = toBytesAddress(account);
-            UInt64 addrBalance = kernel.getAddressStore().getBalanceByAddress(addr);
+        for (WalletAccount account : kernel.getWallet().getWalletAccounts()) {
+            UInt64 addrBalance = kernel.getAddressStore().getBalanceByAddress(account.getAddress().toArray());
 
             if (compareAmountTo(remain.get(), addrBalance) <= 0) {
-                ourAccounts.put(new Address(keyPair2Hash(account), XDAG_FIELD_INPUT, remain.get(),true), account);
+                ourAccounts.put(new Address(account.getAddressHash(), XDAG_FIELD_INPUT, remain.get(),true), account.getKeyPair());
                 remain.set(UInt64.ZERO);
                 break;
             } else {
                 if (compareAmountTo(addrBalance, UInt64.ZERO) > 0) {
                     remain.set(remain.get().subtract(addrBalance));
-                    ourAccounts.put(new Address(keyPair2Hash(account), XDAG_FIELD_INPUT, addrBalance, true), account);
+                    ourAccounts.put(new Address(account.getAddressHash(), XDAG_FIELD_INPUT, addrBalance, true), account.getKeyPair());
                 }
             }
         }
@@ -606,6 +605,7 @@ public class Commands {
         Map<Node, Long> map = kernel.getNodeMgr().getActiveNode();
         StringBuilder stringBuilder = new StringBuilder();
         for (Node node : map.keySet()) {
+            Channel channel = kernel.getChannelMgr().getActiveChannel(node);
             stringBuilder
                     .append(node.getAddress())
                     .append(" ")
@@ -614,12 +614,46 @@ public class Commands {
                     .append(node.getStat().Inbound.get())
                     .append(" in/")
                     .append(node.getStat().Outbound.get())
-                    .append(" out").append(System.getProperty("line.separator"));
+                    .append(" out/")
+                    .append(node.getStat().Duplicate.get())
+                    .append(" dup/")
+                    .append(node.getStat().RateLimited.get())
+                    .append(" limited")
+                    .append(channel != null && channel.getRateLimiter() != null ? " (" + channel.getRateLimiter() + ")/" : "/")
+                    .append(node.getStat().Misbehavior.get())
+                    .append(" score").append(System.getProperty("line.separator"));
+        }
+        for (Map.Entry<String, Long> entry : kernel.getNodeMgr().getBannedNodes().entrySet()) {
+            stringBuilder
+                    .append(entry.getKey())
+                    .append(" banned since ")
+                    .append(XdagTime.format(new Date(entry.getValue())))
+                    .append(System.getProperty("line.separator"));
         }
 
         return stringBuilder.toString();
     }
 
+    /**
+     * 按消息类型的网络指标和各连接的请求响应时间
+     */
+    public String netMetrics() {
+        StringBuilder stringBuilder = new StringBuilder(kernel.getChannelMgr().getMetrics().toString());
+        for (Channel channel : kernel.getChannelMgr().getActiveChannels()) {
+            if (channel.getRequestRtt() == null) {
+                continue;
+            }
+            stringBuilder.append(System.lineSeparator())
+                    .append(channel.getNode().getAddress())
+                    .append(" ")
+                    .append(channel.getRequestRtt());
+        }
+        if (kernel.getBlockGossip() != null) {
+            stringBuilder.append(System.lineSeparator()).append(kernel.getBlockGossip());
+        }
+        return stringBuilder.toString();
+    }
+
     public String keygen()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
         kernel.getXdagState().tempSet(XdagState.KEYS);
@@ -651,6 +685,28 @@ public class Commands {
         return kernel.getXdagState().toString();
     }
 
+    public String sync() {
+        XdagSync sync = kernel.getSync();
+        if (sync == null) {
+            return "sync not started";
+        }
+        return sync.getStatus() + System.lineSeparator() + sync.getProgress() + System.lineSeparator()
+                + kernel.getSyncMgr().getImportQueue() + System.lineSeparator()
+                + "relay " + kernel.getChannelMgr().getInventoryRelay();
+    }
+
+    /**
+     * 把[from, to]高度内主块确认的区块记录到文件, 用于离线回放
+     */
+    public String record(String filename, long from, long to) {
+        try {
+            long count = ChainReplay.record(kernel.getBlockchain(), from, to, new File(filename));
+            return String.format("recorded %d blocks to %s", count, filename);
+        } catch (IOException e) {
+            return "record failed: " + e.getMessage();
+        }
+    }
+
     public String disConnectMinerChannel(String command) {
         // TODO: 2020/6/13 判断输入的ip地址是否是合法的 端口 然后找到特定的channel 断开连接
         if (StringUtils.equals("all", command)) {
@@ -761,6 +817,7 @@ public class Commands {
 
         // 转账输入
         Map<Address, KeyPair> ourBlocks = Maps.newHashMap();
+        List<KeyPair> accounts = kernel.getWallet().getAccounts();
 
         // our block select
         kernel.getBlockStore().fetchOurBlocks(pair -> {
@@ -771,7 +828,7 @@ public class Commands {
             }
             if (compareAmountTo(UInt64.ZERO, block.getInfo().getAmount()) < 0) {
                 ourBlocks.put(new Address(block.getHashLow(), XDAG_FIELD_IN, block.getInfo().getAmount(), false),
-                        kernel.getWallet().getAccounts().get(index));
+                        accounts.get(index));
                 return false;
             }
             return false;
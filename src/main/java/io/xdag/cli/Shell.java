@@ -76,6 +76,8 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
         commandExecute.put("minedblocks", new CommandMethods(this::processMinedblocks, this::defaultCompleter));
         commandExecute.put("state", new CommandMethods(this::processState, this::defaultCompleter));
         commandExecute.put("stats", new CommandMethods(this::processStats, this::defaultCompleter));
+        commandExecute.put("sync", new CommandMethods(this::processSync, this::defaultCompleter));
+        commandExecute.put("record", new CommandMethods(this::processRecord, this::defaultCompleter));
         commandExecute.put("xfer", new CommandMethods(this::processXfer, this::defaultCompleter));
         commandExecute.put("xfertonew", new CommandMethods(this::processXferToNew, this::defaultCompleter));
         commandExecute.put("miners", new CommandMethods(this::processMiners, this::defaultCompleter));
@@ -313,6 +315,50 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
         }
     }
 
+    private void processSync(CommandInput input) {
+        final String[] usage = {
+                "sync -  print the progress of block synchronization",
+                "Usage: sync",
+                "  -? --help                    Show help",
+        };
+        try {
+            Options opt = parseOptions(usage, input.args());
+            if (opt.isSet("help")) {
+                throw new Options.HelpException(opt.usage());
+            }
+            println(commands.sync());
+
+        } catch (Exception e) {
+            saveException(e);
+        }
+    }
+
+    private void processRecord(CommandInput input) {
+        final String[] usage = {
+                "record -  record blocks confirmed by main blocks [FROM, TO] to FILE for offline replay",
+                "Usage: record FILE [FROM] [TO]",
+                "  -? --help                    Show help",
+        };
+        try {
+            Options opt = parseOptions(usage, input.args());
+            List<String> argv = opt.args();
+            if (opt.isSet("help") || argv.isEmpty()) {
+                throw new Options.HelpException(opt.usage());
+            }
+            long from = 1;
+            long to = kernel.getBlockchain().getXdagStats().nmain;
+            if (argv.size() > 1 && NumberUtils.isDigits(argv.get(1))) {
+                from = NumberUtils.toLong(argv.get(1));
+            }
+            if (argv.size() > 2 && NumberUtils.isDigits(argv.get(2))) {
+                to = NumberUtils.toLong(argv.get(2));
+            }
+            println(commands.record(argv.get(0), from, to));
+        } catch (Exception e) {
+            saveException(e);
+        }
+    }
+
     private void processState(CommandInput input) {
         final String[] usage = {
                 "state -  print the program state",
@@ -437,6 +483,7 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
                 "Usage: net [OPTIONS]",
                 "  -? --help                        Show help",
                 "  -l --list                 list connections",
+                "  -m --metrics              show traffic, latency and round-trip time per message type",
                 "  -c --connect=IP:PORT     connect to this host",
                 "  -p --plibp2p=IP:PORT:ID      connect to this host by libp2p",
         };
@@ -449,6 +496,10 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
                 println(commands.listConnect());
                 return;
             }
+            if (opt.isSet("metrics")) {
+                println(commands.netMetrics());
+                return;
+            }
             if (opt.isSet("connect")) {
                 println("connect to :" + opt.get("connect"));
                 Matcher m = p.matcher(opt.get("connect"));
@@ -134,6 +134,12 @@ public class XdagCli extends Launcher {
                 .hasArg(true).optionalArg(true).argName("covertuint").type(String.class)
                 .build();
         addOption(makeSnapshotOption);
+
+        Option replayOption = Option.builder()
+                .longOpt(XdagOption.REPLAY.toString()).desc("replay recorded blocks into an empty database offline")
+                .hasArg(true).optionalArg(false).argName("filename").type(String.class)
+                .build();
+        addOption(replayOption);
     }
 
     public static void main(String[] args, XdagCli cli) throws Exception {
@@ -197,6 +203,8 @@ public class XdagCli extends Launcher {
                 convertUInt = true;
             }
             makeSnapshot(convertUInt);
+        } else if (cmd.hasOption(XdagOption.REPLAY.toString())) {
+            replay(cmd.getOptionValue(XdagOption.REPLAY.toString()).trim());
         } else {
             if (cmd.hasOption(XdagOption.ENABLE_SNAPSHOT.toString())) {
                 String[] values = cmd.getOptionValues(XdagOption.ENABLE_SNAPSHOT.toString().trim());
@@ -525,6 +533,21 @@ public class XdagCli extends Launcher {
         System.out.println("snapshot height: " + snapshotStore.getHeight());
         System.out.println("next start frame: " + Long.toHexString(XdagTime.getEndOfEpoch(snapshotStore.getNextTime()) + 1));
     }
+
+    /**
+     * 把记录的区块导入临时目录中的空数据库, 打印导入性能
+     */
+    public void replay(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.isFile()) {
+            System.out.println("Replay file not found: " + filename);
+            return;
+        }
+        System.out.println("replay start");
+        ChainReplay.Report report = new ChainReplay(getConfig(), true).replay(file);
+        System.out.println(report);
+    }
+
     public static void copyDir(String sourcePath, String newPath) {
         File start = new File(sourcePath);
         File end = new File(newPath);
@@ -47,7 +47,10 @@ public enum XdagOption {
     // Snapshot enable
     ENABLE_SNAPSHOT("enablesnapshot"),
 
-    MAKE_SNAPSHOT("makesnapshot");
+    MAKE_SNAPSHOT("makesnapshot"),
+
+    // Replay recorded blocks offline
+    REPLAY("replay");
 
     private final String name;
 
@@ -107,6 +107,11 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
     protected int storeMaxOpenFiles = 1024;
     protected int storeMaxThreads = 1;
     protected boolean storeFromBackup = false;
+    protected boolean storeStatistics = false;
+
+    protected SocketOptions nodeSocketOptions = new SocketOptions();
+    protected SocketOptions poolSocketOptions = new SocketOptions();
+    protected SocketOptions rpcSocketOptions = new SocketOptions();
     protected String originStoreDir = "./testdate";
 
     protected String whitelistUrl;
@@ -115,6 +120,30 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
     protected String walletKeyFile;
 
     protected int TTL = 5;
+    protected int eventQueueSize = 1024;
+    protected int syncMaxInflight = 16;
+    protected int syncMaxInflightPerPeer = 4;
+    protected int syncMaxRetries = 3;
+    protected boolean syncMainChainFirst = true;
+    protected int importQueueSize = 8192;
+    protected int seenBlockExpire = 30;
+    protected int maxRangeRequestsPerPeer = 4;
+    protected int parentFetchDepth = 1;
+    protected int rangeRequestRate = 64;
+    protected int sumsRequestRate = 256;
+    protected int blockRequestRate = 1024;
+    protected int blockExtRequestRate = 1;
+    protected int misbehaviorBanScore = 100;
+    protected int banTime = 600;
+    protected int snapshotRequestRate = 32;
+    protected boolean snapshotServe = false;
+    protected boolean snapshotSync = false;
+    protected int snapshotSyncMinPeers = 2;
+    protected String snapshotSyncMainHash = "";
+    protected String snapshotSyncRoot = "";
+    protected boolean sessionResume = true;
+    protected int sessionTicketTtl = 3600;
+    protected int connectMaxInflight = 4;
     protected byte[] dnetKeyBytes = new byte[2048];
     protected DnetKeys xKeys;
     protected List<InetSocketAddress> whiteIPList = Lists.newArrayList();
@@ -127,6 +156,7 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
     protected boolean isBootnode;
     protected String libp2pPrivkey;
     protected List<String> bootnodes = Lists.newArrayList();
+    protected boolean gossipEnabled = false;
 
     // =========================
     // Wallet spec
@@ -255,10 +285,36 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
             fundRation = config.getInt("pool.fundRation");
             directRation = config.getInt("pool.directRation");
             fundAddress = config.getString("pool.fundAddress","FQglVQtb60vQv2DOWEUL7yh3smtj7g1s");
+            poolSocketOptions = SocketOptions.read(config, "pool");
 
             nodeIp = config.getString("node.ip", "127.0.0.1");
             nodePort = config.getInt("node.port", 8001);
             maxInboundConnectionsPerIp = config.getInt("node.maxInboundConnectionsPerIp");
+            eventQueueSize = config.getInt("node.eventQueueSize", 1024);
+            syncMaxInflight = config.getInt("node.sync.maxInflight", 16);
+            syncMaxInflightPerPeer = config.getInt("node.sync.maxInflightPerPeer", 4);
+            syncMaxRetries = config.getInt("node.sync.maxRetries", 3);
+            syncMainChainFirst = config.getBoolean("node.sync.mainChainFirst", true);
+            importQueueSize = config.getInt("node.importQueueSize", 8192);
+            seenBlockExpire = config.getInt("node.seenBlockExpire", 30);
+            maxRangeRequestsPerPeer = config.getInt("node.maxRangeRequestsPerPeer", 4);
+            parentFetchDepth = config.getInt("node.sync.parentFetchDepth", 1);
+            rangeRequestRate = config.getInt("node.rateLimit.rangeRequests", 64);
+            sumsRequestRate = config.getInt("node.rateLimit.sumsRequests", 256);
+            blockRequestRate = config.getInt("node.rateLimit.blockRequests", 1024);
+            blockExtRequestRate = config.getInt("node.rateLimit.blockExtRequests", 1);
+            misbehaviorBanScore = config.getInt("node.misbehaviorBanScore", 100);
+            banTime = config.getInt("node.banTime", 600);
+            snapshotRequestRate = config.getInt("node.rateLimit.snapshotRequests", 32);
+            snapshotServe = config.getBoolean("node.snapshot.serve", false);
+            snapshotSync = config.getBoolean("node.snapshot.sync", false);
+            snapshotSyncMinPeers = config.getInt("node.snapshot.sync.minPeers", 2);
+            snapshotSyncMainHash = config.getString("node.snapshot.sync.mainHash", "");
+            snapshotSyncRoot = config.getString("node.snapshot.sync.root", "");
+            sessionResume = config.getBoolean("node.session.resume", true);
+            sessionTicketTtl = config.getInt("node.session.ticketTtl", 3600);
+            connectMaxInflight = config.getInt("node.connect.maxInflight", 4);
+            nodeSocketOptions = SocketOptions.read(config, "node");
 
             String[] whiteIpArray = config.get(String[].class, "node.whiteIPs");
             if (whiteIpArray != null) {
@@ -278,6 +334,7 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
             if (bootnodelist != null) {
                 bootnodes.addAll(Arrays.asList(bootnodelist));
             }
+            gossipEnabled = config.getBoolean("node.libp2p.gossip", false);
 
             globalMinerLimit = config.getInt("miner.globalMinerLimit");
             globalMinerChannelLimit = config.getInt("miner.globalMinerChannelLimit");
@@ -291,6 +348,7 @@ public class AbstractConfig implements Config, AdminSpec, PoolSpec, NodeSpec, Wa
                 rpcPortHttp = config.getInt("rpc.http.port", 10001);
                 rpcPortWs = config.getInt("rpc.ws.port", 10002);
             }
+            rpcSocketOptions = SocketOptions.read(config, "rpc");
             flag = config.getBoolean("randomx.flags.fullmem", false);
             // access configuration properties
         } catch (ConfigurationException cex) {
@@ -59,11 +59,14 @@ public class Constants {
      */
     public static final byte BI_EXTRA = 0x40;
     public static final byte BI_REMARK = (byte) 0x80;
-    public static final Long SEND_PERIOD = 10L;
     public static final int DNET_PKT_XDAG = 0x8B;
 
     public static final long REQUEST_BLOCKS_MAX_TIME = UnsignedLong.fromLongBits(1L << 20).longValue();
     public static final long REQUEST_WAIT = 64;
+    /**
+     * 一次按高度请求的最大主块数
+     */
+    public static final long REQUEST_MAIN_BLOCKS_MAX = 32;
     public static final long MAX_ALLOWED_EXTRA = 65536;
     /**
      * 每一轮的确认数是16
@@ -85,7 +88,9 @@ public class Constants {
     public enum MessageType {
         UPDATE,
         PRE_TOP,
-        NEW_LINK
+        NEW_LINK,
+        NEW_MAIN,
+        UNWIND
     }
 
     public final static String SNAPSHOT_KEY_STATS_MAIN = "g_snapshot_main";
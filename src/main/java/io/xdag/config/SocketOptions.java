@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.configuration2.ImmutableConfiguration;
+
+/**
+ * 每种服务(节点, 矿池, RPC)各自的传输和socket参数
+ */
+@Getter
+@Setter
+public class SocketOptions {
+
+    /**
+     * 可用时使用epoll(linux)或kqueue(macOS), 否则使用nio
+     */
+    private boolean nativeTransport = true;
+    /**
+     * SO_RCVBUF, 0为系统默认
+     */
+    private int receiveBufferSize = 0;
+    /**
+     * SO_SNDBUF, 0为系统默认
+     */
+    private int sendBufferSize = 0;
+    private boolean tcpNoDelay = true;
+    /**
+     * 监听socket数量, 大于1时在epoll下用SO_REUSEPORT绑定同一端口, 由内核分配新连接
+     */
+    private int acceptors = 1;
+    private boolean pooledAllocator = true;
+
+    /**
+     * 读取prefix.socket.*配置, 没有配置的保持默认值
+     */
+    public static SocketOptions read(ImmutableConfiguration config, String prefix) {
+        SocketOptions options = new SocketOptions();
+        options.nativeTransport = config.getBoolean(prefix + ".socket.native", options.nativeTransport);
+        options.receiveBufferSize = config.getInt(prefix + ".socket.rcvbuf", options.receiveBufferSize);
+        options.sendBufferSize = config.getInt(prefix + ".socket.sndbuf", options.sendBufferSize);
+        options.tcpNoDelay = config.getBoolean(prefix + ".socket.tcpNoDelay", options.tcpNoDelay);
+        options.acceptors = Math.max(1, config.getInt(prefix + ".socket.acceptors", options.acceptors));
+        options.pooledAllocator = config.getBoolean(prefix + ".socket.pooledAllocator", options.pooledAllocator);
+        return options;
+    }
+}
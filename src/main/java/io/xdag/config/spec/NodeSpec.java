@@ -24,6 +24,7 @@
 
 package io.xdag.config.spec;
 
+import io.xdag.config.SocketOptions;
 import io.xdag.crypto.DnetKeys;
 import java.net.InetSocketAddress;
 import java.util.List;
@@ -48,6 +49,126 @@ public interface NodeSpec {
 
     int getTTL();
 
+    /**
+     * 链事件总线每个订阅者的队列长度
+     */
+    int getEventQueueSize();
+
+    /**
+     * 同步时最多同时发出的请求数
+     */
+    int getSyncMaxInflight();
+
+    /**
+     * 同步时每个节点最多同时处理的请求数
+     */
+    int getSyncMaxInflightPerPeer();
+
+    /**
+     * 同步请求超时后换节点重试的次数
+     */
+    int getSyncMaxRetries();
+
+    /**
+     * 落后较多时是否先按高度同步主链
+     */
+    boolean isSyncMainChainFirst();
+
+    /**
+     * 新区块导入队列长度, 超过3/4时暂停读取
+     */
+    int getImportQueueSize();
+
+    /**
+     * 已收到区块缓存的过期时间 (秒)
+     */
+    int getSeenBlockExpire();
+
+    /**
+     * 每个节点同时处理的区块范围请求数, 超过时丢弃新请求
+     */
+    int getMaxRangeRequestsPerPeer();
+
+    /**
+     * 缺少父块时同时请求的祖先深度, 0为只请求缺少的区块
+     */
+    int getParentFetchDepth();
+
+    /**
+     * 每个节点每秒允许的BLOCKS_REQUEST和MAIN_BLOCKS_REQUEST数, 0为不限制
+     */
+    int getRangeRequestRate();
+
+    /**
+     * 每个节点每秒允许的SUMS_REQUEST数, 0为不限制
+     */
+    int getSumsRequestRate();
+
+    /**
+     * 每个节点每秒允许的BLOCK_REQUEST和INV数, 0为不限制
+     */
+    int getBlockRequestRate();
+
+    /**
+     * 每个节点每秒允许的BLOCKEXT_REQUEST数, 0为不限制
+     */
+    int getBlockExtRequestRate();
+
+    /**
+     * 每个节点每秒允许的状态快照请求数, 0为不限制
+     */
+    int getSnapshotRequestRate();
+
+    /**
+     * 是否定期导出状态快照供其他节点下载
+     */
+    boolean isSnapshotServe();
+
+    /**
+     * 新节点是否先从其他节点下载状态快照, 再从快照高度开始同步
+     */
+    boolean isSnapshotSync();
+
+    /**
+     * 下载状态快照时, 至少有这么多节点提供相同的清单才使用
+     */
+    int getSnapshotSyncMinPeers();
+
+    /**
+     * 可信的快照主块hashlow (十六进制), 非空时只使用该主块的快照
+     */
+    String getSnapshotSyncMainHash();
+
+    /**
+     * 可信的快照清单根哈希 (十六进制), 非空时只使用该清单, 分页和分块均由它校验
+     */
+    String getSnapshotSyncRoot();
+
+    /**
+     * 违规分数达到该值时断开连接并暂时禁止
+     */
+    int getMisbehaviorBanScore();
+
+    /**
+     * 禁止连接的时间, 单位秒
+     */
+    int getBanTime();
+
+    /**
+     * 是否签发和使用会话票据, 重连已知节点时跳过公钥交换
+     */
+    boolean isSessionResume();
+
+    /**
+     * 会话票据有效期, 单位秒
+     */
+    int getSessionTicketTtl();
+
+    /**
+     * 同时进行中的连出连接数上限, 包括建立TCP连接和握手
+     */
+    int getConnectMaxInflight();
+
     List<InetSocketAddress> getWhiteIPList();
 
     void setWhiteIPList(List<InetSocketAddress> list);
@@ -61,6 +182,11 @@ public interface NodeSpec {
 
     String getLibp2pPrivkey();
 
+    /**
+     * 是否同时通过libp2p gossipsub广播新区块
+     */
+    boolean isGossipEnabled();
+
     String getDnetKeyFile();
 
     String getStoreDir();
@@ -82,6 +208,18 @@ public interface NodeSpec {
 
     boolean isStoreFromBackup();
 
+    /**
+     * 开启RocksDB统计, 用于回放测试计算写放大
+     */
+    boolean isStoreStatistics();
+
+    /**
+     * 节点间连接的传输和socket参数
+     */
+    SocketOptions getNodeSocketOptions();
+
+    void setStoreStatistics(boolean enable);
+
     /**
      * 用于测试加载已有区块数据 从C版本生成的数据 请将所需要的数据放在该目录下
      */
@@ -24,6 +24,8 @@
 
 package io.xdag.config.spec;
 
+import io.xdag.config.SocketOptions;
+
 /**
  * The Mining Pool Specifications
  */
@@ -85,4 +87,9 @@ public interface PoolSpec {
      * 基金会地址
      */
     String getFundAddress();
+
+    /**
+     * 矿工连接的传输和socket参数
+     */
+    SocketOptions getPoolSocketOptions();
 }
@@ -24,6 +24,7 @@
 
 package io.xdag.config.spec;
 
+import io.xdag.config.SocketOptions;
 import io.xdag.rpc.modules.ModuleDescription;
 import java.util.List;
 
@@ -38,4 +39,9 @@ public interface RPCSpec {
     int getRPCPortByHttp();
 
     int getRPCPortByWebSocket();
+
+    /**
+     * RPC服务的传输和socket参数
+     */
+    SocketOptions getRpcSocketOptions();
 }
@@ -32,4 +32,6 @@ public interface WalletSpec {
     String getWalletKeyFile();
 
     String getWalletFilePath();
+
+    void setWalletFilePath(String path);
 }
@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import io.netty.channel.socket.SocketChannel;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.Channel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * 区块导入队列, 网络线程只负责入队, 由单独的线程按到达顺序导入
+ * 队列超过高水位时暂停该连接的读取, 降到低水位后恢复
+ */
+@Slf4j
+public class ImportQueue {
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("ImportQueue-thread-%d")
+            .daemon(true)
+            .build();
+
+    private final BlockingQueue<Task> queue;
+    private final Consumer<BlockWrapper> importer;
+    private final ExecutorService executor;
+    @Getter
+    private final int capacity;
+    private final int highWatermark;
+    private final int lowWatermark;
+    /**
+     * 被暂停读取的连接
+     */
+    private final Set<Channel> paused = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    @Getter
+    private volatile int maxDepth;
+    private volatile boolean isRunning;
+
+    public ImportQueue(int capacity, Consumer<BlockWrapper> importer) {
+        this.capacity = Math.max(4, capacity);
+        this.highWatermark = this.capacity * 3 / 4;
+        this.lowWatermark = this.capacity / 4;
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.importer = importer;
+        this.executor = Executors.newSingleThreadExecutor(factory);
+    }
+
+    public void start() {
+        if (!isRunning) {
+            isRunning = true;
+            executor.execute(this::importLoop);
+        }
+    }
+
+    public void stop() {
+        if (isRunning) {
+            isRunning = false;
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                log.error(e.getMessage(), e);
+            }
+            queue.clear();
+            resumeAll();
+        }
+    }
+
+    /**
+     * 在网络线程中调用, 不会阻塞; 队列已满时丢弃, 缺失的区块由同步重新获取
+     *
+     * @param channel 来源连接, 为null时不做读取控制
+     */
+    public boolean submit(BlockWrapper blockWrapper, Channel channel) {
+        if (!queue.offer(new Task(blockWrapper, System.nanoTime()))) {
+            dropped.incrementAndGet();
+            log.debug("import queue full, drop block {}", blockWrapper.getBlock().getHashLow());
+            pause(channel);
+            return false;
+        }
+        submitted.incrementAndGet();
+        int depth = queue.size();
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        if (depth >= highWatermark) {
+            pause(channel);
+        }
+        return true;
+    }
+
+    /**
+     * 批量提交, 最后检查一次水位
+     *
+     * @return 队列已满未能提交的区块
+     */
+    public List<BlockWrapper> submitAll(List<BlockWrapper> blockWrappers, Channel channel) {
+        List<BlockWrapper> rejected = new ArrayList<>();
+        long now = System.nanoTime();
+        for (BlockWrapper blockWrapper : blockWrappers) {
+            if (queue.offer(new Task(blockWrapper, now))) {
+                submitted.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+                rejected.add(blockWrapper);
+            }
+        }
+        int depth = queue.size();
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        if (!rejected.isEmpty() || depth >= highWatermark) {
+            log.debug("import queue depth {}, drop {} blocks", depth, rejected.size());
+            pause(channel);
+        }
+        return rejected;
+    }
+
+    private void importLoop() {
+        while (isRunning) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long wait = System.nanoTime() - task.enqueueTime;
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            try {
+                importer.accept(task.blockWrapper);
+            } catch (Throwable e) {
+                log.error("error when import block {}", e.getMessage(), e);
+            }
+            imported.incrementAndGet();
+            if (!paused.isEmpty() && queue.size() <= lowWatermark) {
+                resumeAll();
+            }
+        }
+    }
+
+    private void pause(Channel channel) {
+        if (channel == null || !paused.add(channel)) {
+            return;
+        }
+        SocketChannel socketChannel = channel.getSocketChannel();
+        if (socketChannel != null) {
+            socketChannel.config().setAutoRead(false);
+        }
+        pauses.incrementAndGet();
+        log.debug("import queue depth {}, pause reading from {}", queue.size(), channel.getInetSocketAddress());
+    }
+
+    private void resumeAll() {
+        for (Channel channel : paused) {
+            paused.remove(channel);
+            SocketChannel socketChannel = channel.getSocketChannel();
+            if (socketChannel != null) {
+                socketChannel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public int getPausedChannels() {
+        return paused.size();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getPauses() {
+        return pauses.get();
+    }
+
+    /**
+     * 平均排队时间 (ms)
+     */
+    public double getAvgWaitMillis() {
+        long n = imported.get();
+        return n == 0 ? 0 : totalWaitNanos.get() / 1e6 / n;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("import queue: %d of %d (max %d), submitted: %d, imported: %d, dropped: %d, "
+                        + "paused channels: %d (%d times), wait avg: %.3f ms, max: %.3f ms",
+                getDepth(), capacity, maxDepth, getSubmitted(), getImported(), getDropped(), getPausedChannels(),
+                getPauses(), getAvgWaitMillis(), getMaxWaitMillis());
+    }
+
+    private static class Task {
+
+        private final BlockWrapper blockWrapper;
+        private final long enqueueTime;
+
+        Task(BlockWrapper blockWrapper, long enqueueTime) {
+            this.blockWrapper = blockWrapper;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
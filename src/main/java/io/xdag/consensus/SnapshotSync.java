@@ -0,0 +1,418 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static io.xdag.db.BlockStore.HASH_BLOCK_INFO;
+
+import io.xdag.Kernel;
+import io.xdag.core.BlockInfo;
+import io.xdag.db.SnapshotManifest;
+import io.xdag.db.rocksdb.RocksdbKVSource;
+import io.xdag.db.rocksdb.SnapshotStoreImpl;
+import io.xdag.net.Channel;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.impl.SnapshotReplyMessage;
+import io.xdag.net.node.NodeManager;
+import io.xdag.utils.BytesUtils;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 新节点从其他节点下载状态快照
+ * 先向支持SNAPSHOT的节点请求清单头, 分页和分块轮流向提供该清单的节点请求, 校验失败的节点记违规分数并换节点重试
+ * <p>
+ * 信任模型: 清单根哈希是清单头的sha256, 清单头包含分页哈希, 分页包含分块哈希, 因此根哈希确定了全部余额数据
+ * <ul>
+ * <li>配置了可信根哈希(node.snapshot.sync.root)时只接受该清单, 一个节点即可下载, 内容由根哈希认证</li>
+ * <li>否则至少要有minPeers个不同网段(IPv4按/24, IPv6按/48)的节点提供相同的清单, 同一主机的多个连接只算一个;
+ * 此时快照的正确性依赖于这些节点没有合谋, 只适合在能接受该假设时使用</li>
+ * <li>配置了可信主块(node.snapshot.sync.mainHash)时只接受该主块的清单, 但主块hashlow不覆盖余额数据, 不能代替根哈希</li>
+ * </ul>
+ * 记录写入SNAPSHOT/BLOCKS和SNAPSHOT/ADDRESS, 完成后由回调按快照启动的流程加载, 再从快照高度继续正常同步
+ * 请求和应答都在同一个线程中处理
+ */
+@Slf4j
+public class SnapshotSync {
+
+    public enum State {
+        MANIFEST, DOWNLOAD, DONE
+    }
+
+    static final int MAX_INFLIGHT = 8;
+    static final long REQUEST_TIMEOUT = 10_000;
+    static final long HEADER_INTERVAL = 10_000;
+
+    private final Kernel kernel;
+    private final int minPeers;
+    private final Bytes32 trustedHash;
+    private final Bytes32 trustedRoot;
+    private final Consumer<SnapshotManifest> onComplete;
+    private final ScheduledExecutorService timer;
+
+    @Getter
+    private volatile State state = State.MANIFEST;
+    /**
+     * 按清单头哈希记录提供该清单的节点
+     */
+    private final Map<Bytes32, Candidate> candidates = new ConcurrentHashMap<>();
+    /**
+     * 校验失败的清单不再使用
+     */
+    private final Set<Bytes32> rejected = new HashSet<>();
+    @Getter
+    private volatile SnapshotManifest manifest;
+    private final List<Channel> sources = new ArrayList<>();
+    /**
+     * 待请求的分页和分块, 高32位为类型, 低32位为序号
+     */
+    private final Deque<Long> pending = new ConcurrentLinkedDeque<>();
+    private final Map<Long, Request> inflight = new ConcurrentHashMap<>();
+    private int next;
+    private int pagesDone;
+    @Getter
+    private volatile int chunksDone;
+    private long lastHeaderRequest;
+
+    private final RocksdbKVSource blockSource;
+    private final RocksdbKVSource addressSource;
+
+    /**
+     * @param onComplete 快照下载并校验完成后在同步线程中调用
+     */
+    public SnapshotSync(Kernel kernel, Consumer<SnapshotManifest> onComplete) {
+        this.kernel = kernel;
+        this.minPeers = Math.max(1, kernel.getConfig().getNodeSpec().getSnapshotSyncMinPeers());
+        String hash = kernel.getConfig().getNodeSpec().getSnapshotSyncMainHash();
+        this.trustedHash = StringUtils.isEmpty(hash) ? null : Bytes32.fromHexString(hash);
+        String root = kernel.getConfig().getNodeSpec().getSnapshotSyncRoot();
+        this.trustedRoot = StringUtils.isEmpty(root) ? null : Bytes32.fromHexString(root);
+        if (trustedRoot == null) {
+            log.warn("node.snapshot.sync.root is not set, snapshot is trusted when peers in {} subnets offer "
+                    + "the same one", minPeers);
+        }
+        this.onComplete = onComplete;
+        this.blockSource = new RocksdbKVSource("SNAPSHOT/BLOCKS");
+        this.blockSource.setConfig(kernel.getConfig());
+        this.addressSource = new RocksdbKVSource("SNAPSHOT/ADDRESS");
+        this.addressSource.setConfig(kernel.getConfig());
+        this.timer = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("xdag-snapshot-sync-%d")
+                .daemon(true)
+                .build());
+    }
+
+    public void start() {
+        log.info("Snapshot sync start, min peers {}, trusted main {}, trusted root {}", minPeers, trustedHash,
+                trustedRoot);
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+            } catch (Throwable e) {
+                log.error("Snapshot sync error", e);
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+        if (state != State.DONE) {
+            blockSource.close();
+            addressSource.close();
+        }
+    }
+
+    public void onReply(Channel channel, SnapshotReplyMessage msg) {
+        timer.execute(() -> {
+            try {
+                handleReply(channel, msg);
+            } catch (Throwable e) {
+                log.error("Snapshot reply error", e);
+            }
+        });
+    }
+
+    void tick() {
+        switch (state) {
+            case MANIFEST -> {
+                long now = System.currentTimeMillis();
+                if (now - lastHeaderRequest >= HEADER_INTERVAL) {
+                    lastHeaderRequest = now;
+                    for (Channel channel : kernel.getChannelMgr().getActiveChannels()) {
+                        if (channel.isSupported(XdagCapability.SNAPSHOT)) {
+                            channel.getXdag().sendGetSnapshot(SnapshotManifest.PART_HEADER, 0, 0);
+                        }
+                    }
+                }
+                selectManifest();
+            }
+            case DOWNLOAD -> {
+                long now = System.currentTimeMillis();
+                inflight.entrySet().removeIf(e -> {
+                    if (now - e.getValue().sendTime < REQUEST_TIMEOUT) {
+                        return false;
+                    }
+                    pending.addFirst(e.getKey());
+                    return true;
+                });
+                sources.removeIf(Channel::isDisconnected);
+                if (sources.isEmpty()) {
+                    log.info("No peer left for snapshot {}, request manifest again", manifest);
+                    restart();
+                    return;
+                }
+                request();
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void selectManifest() {
+        candidates.values().forEach(c -> c.peers.removeIf(Channel::isDisconnected));
+        candidates.values().removeIf(c -> c.peers.isEmpty());
+        // 可信根哈希已认证清单内容, 不需要多个节点确认
+        int required = trustedRoot != null ? 1 : minPeers;
+        Candidate best = candidates.values().stream()
+                .filter(c -> c.subnets() >= required)
+                .max(Comparator.comparingInt(Candidate::subnets)
+                        .thenComparingLong(c -> c.manifest.getHeight()))
+                .orElse(null);
+        if (best == null) {
+            return;
+        }
+        manifest = best.manifest;
+        sources.clear();
+        sources.addAll(best.peers);
+        candidates.clear();
+        pending.clear();
+        inflight.clear();
+        pagesDone = 0;
+        chunksDone = 0;
+        blockSource.reset();
+        addressSource.reset();
+        for (int i = 0; i < manifest.getPageCount(); i++) {
+            pending.add(key(SnapshotManifest.PART_PAGE, i));
+        }
+        state = State.DOWNLOAD;
+        log.info("Snapshot sync download {} from {} peers", manifest, sources.size());
+    }
+
+    private void request() {
+        while (inflight.size() < MAX_INFLIGHT && !pending.isEmpty()) {
+            long key = pending.poll();
+            Channel channel = sources.get(next++ % sources.size());
+            inflight.put(key, new Request(channel, System.currentTimeMillis()));
+            channel.getXdag().sendGetSnapshot((int) (key >>> 32), manifest.getHeight(), (int) key);
+        }
+    }
+
+    private void handleReply(Channel channel, SnapshotReplyMessage msg) {
+        if (msg.getPart() == SnapshotManifest.PART_HEADER) {
+            onHeader(channel, msg);
+            return;
+        }
+        if (state != State.DOWNLOAD || msg.getHeight() != manifest.getHeight()) {
+            return;
+        }
+        long key = key(msg.getPart(), msg.getIndex());
+        Request request = inflight.get(key);
+        if (request == null || request.channel != channel) {
+            return;
+        }
+        inflight.remove(key);
+        if (msg.getData().length == 0) {
+            // 对方已导出新的快照, 不再从它下载
+            removeSource(channel, key);
+            return;
+        }
+        if (msg.getPart() == SnapshotManifest.PART_PAGE) {
+            if (!manifest.addPage(msg.getIndex(), msg.getData())) {
+                misbehave(channel, key, "bad snapshot page");
+                return;
+            }
+            if (++pagesDone == manifest.getPageCount()) {
+                for (int i = 0; i < manifest.getChunkCount(); i++) {
+                    pending.add(key(SnapshotManifest.PART_CHUNK, i));
+                }
+            }
+        } else if (msg.getPart() == SnapshotManifest.PART_CHUNK) {
+            // 分块哈希来自已按根哈希校验的分页
+            if (!isTrusted(manifest) || !manifest.verifyChunk(msg.getIndex(), msg.getData())) {
+                misbehave(channel, key, "bad snapshot chunk");
+                return;
+            }
+            SnapshotManifest.forEachRecord(msg.getData(), (section, k, v) -> {
+                if (section == SnapshotManifest.SECTION_BLOCKS) {
+                    blockSource.put(k, v);
+                } else if (section == SnapshotManifest.SECTION_ADDRESS) {
+                    addressSource.put(k, v);
+                }
+            });
+            if (++chunksDone == manifest.getChunkCount()) {
+                finish();
+                return;
+            }
+        }
+        request();
+    }
+
+    private void onHeader(Channel channel, SnapshotReplyMessage msg) {
+        if (state != State.MANIFEST || msg.getData().length == 0) {
+            return;
+        }
+        SnapshotManifest received;
+        try {
+            received = SnapshotManifest.decodeHeader(msg.getData());
+        } catch (IllegalArgumentException e) {
+            kernel.getNodeMgr().misbehave(channel.getNode(), NodeManager.INVALID_BLOCK_SCORE, e.getMessage());
+            return;
+        }
+        if (received.getHeight() != msg.getHeight() || rejected.contains(received.getRoot())
+                || !isTrusted(received)) {
+            return;
+        }
+        candidates.computeIfAbsent(received.getRoot(), r -> new Candidate(received)).peers.add(channel);
+    }
+
+    /**
+     * 快照中必须包含清单中的主块, 且高度一致
+     */
+    private void finish() {
+        byte[] value = blockSource.get(BytesUtils.merge(HASH_BLOCK_INFO, manifest.getMainHashLow().toArray()));
+        BlockInfo main = null;
+        if (value != null) {
+            try {
+                main = (BlockInfo) new SnapshotStoreImpl(blockSource).deserialize(value, BlockInfo.class);
+            } catch (Exception e) {
+                log.debug("Snapshot main block info deserialize fail", e);
+            }
+        }
+        if (main == null || main.getHeight() != manifest.getHeight()) {
+            log.error("Snapshot {} does not contain its main block, rejected", manifest);
+            rejected.add(manifest.getRoot());
+            restart();
+            return;
+        }
+        blockSource.close();
+        addressSource.close();
+        state = State.DONE;
+        log.info("Snapshot sync {} done", manifest);
+        onComplete.accept(manifest);
+        timer.shutdown();
+    }
+
+    private boolean isTrusted(SnapshotManifest manifest) {
+        return (trustedHash == null || trustedHash.equals(manifest.getMainHashLow()))
+                && (trustedRoot == null || trustedRoot.equals(manifest.getRoot()));
+    }
+
+    /**
+     * 节点所在网段, IPv4按/24, IPv6按/48, 同一网段的节点只算一个
+     */
+    static Bytes subnet(InetSocketAddress address) {
+        InetAddress ip = address.getAddress();
+        if (ip == null) {
+            return Bytes.wrap(address.getHostString().getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = ip.getAddress();
+        return Bytes.wrap(bytes, 0, ip instanceof Inet4Address ? 3 : 6);
+    }
+
+    private void restart() {
+        state = State.MANIFEST;
+        manifest = null;
+        sources.clear();
+        pending.clear();
+        inflight.clear();
+        lastHeaderRequest = 0;
+    }
+
+    private void removeSource(Channel channel, long key) {
+        sources.remove(channel);
+        pending.addFirst(key);
+    }
+
+    private void misbehave(Channel channel, long key, String reason) {
+        log.debug("{} {} from node {}", reason, (int) key, channel.getInetSocketAddress());
+        kernel.getNodeMgr().misbehave(channel.getNode(), NodeManager.INVALID_BLOCK_SCORE, reason);
+        removeSource(channel, key);
+    }
+
+    private static long key(int part, int index) {
+        return ((long) part << 32) | (index & 0xffffffffL);
+    }
+
+    private static class Candidate {
+
+        final SnapshotManifest manifest;
+        final Set<Channel> peers = ConcurrentHashMap.newKeySet();
+
+        Candidate(SnapshotManifest manifest) {
+            this.manifest = manifest;
+        }
+
+        int subnets() {
+            return (int) peers.stream()
+                    .map(Channel::getInetSocketAddress)
+                    .filter(Objects::nonNull)
+                    .map(SnapshotSync::subnet)
+                    .distinct()
+                    .count();
+        }
+    }
+
+    private static class Request {
+
+        final Channel channel;
+        final long sendTime;
+
+        Request(Channel channel, long sendTime) {
+            this.channel = channel;
+            this.sendTime = sendTime;
+        }
+    }
+}
@@ -28,12 +28,13 @@ import static io.xdag.core.ImportResult.EXIST;
 import static io.xdag.core.ImportResult.IMPORTED_BEST;
 import static io.xdag.core.ImportResult.IMPORTED_NOT_BEST;
 
-import com.google.common.collect.Queues;
+import com.google.common.collect.Lists;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.config.MainnetConfig;
 import io.xdag.config.TestnetConfig;
+import io.xdag.core.Address;
 import io.xdag.core.Block;
 import io.xdag.core.BlockWrapper;
 import io.xdag.core.Blockchain;
@@ -43,21 +44,32 @@ import io.xdag.core.XdagState;
 import io.xdag.net.Channel;
 import io.xdag.net.libp2p.discovery.DiscoveryPeer;
 import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.node.Node;
+import io.xdag.net.node.NodeManager;
 import io.xdag.utils.XdagTime;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.tuweni.bytes.Bytes32;
 
@@ -66,6 +78,24 @@ import org.apache.tuweni.bytes.Bytes32;
 @Setter
 public class SyncManager {
     public static final int MAX_SIZE = 100000;
+    /**
+     * 等待父块的最长时间
+     */
+    public static final long WAIT_SYNC_TTL = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * 父块超过此时间未收到时重新请求
+     */
+    public static final long WAIT_SYNC_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(16);
+    /**
+     * 每次最多重新请求的父块数
+     */
+    public static final int WAIT_SYNC_RETRY_BATCH = 256;
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("SyncManager-retry-%d")
+            .daemon(true)
+            .build();
+
     private Kernel kernel;
     private Blockchain blockchain;
     private long importStart;
@@ -83,23 +113,49 @@ public class SyncManager {
      */
     private Queue<BlockWrapper> blockQueue = new ConcurrentLinkedQueue<>();
     /**
-     * Queue for the link block don't exist
+     * 等待父块的区块
      */
-    private ConcurrentHashMap<Bytes32, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
-    /***
-     * Queue for poll oldest block
+    private WaitSyncPool waitSyncPool = new WaitSyncPool(MAX_SIZE, WAIT_SYNC_TTL);
+    private ScheduledExecutorService retryTask;
+    private ScheduledFuture<?> retryFuture;
+    /**
+     * 网络收到的新区块在此排队导入, 不占用netty线程
      */
-    private ConcurrentLinkedQueue<Bytes32> syncQueue = new ConcurrentLinkedQueue<>();
+    private ImportQueue importQueue;
+
     public SyncManager(Kernel kernel) {
         this.kernel = kernel;
         this.blockchain = kernel.getBlockchain();
         this.channelMgr = kernel.getChannelMgr();
         this.stateListener = new StateListener();
+        this.importQueue = new ImportQueue(kernel.getConfig().getNodeSpec().getImportQueueSize(),
+                this::validateAndAddNewBlock);
     }
 
     public void start() {
         log.debug("Download receiveBlock run...");
         new Thread(this.stateListener, "xdag-stateListener").start();
+        importQueue.start();
+        retryTask = new ScheduledThreadPoolExecutor(1, factory);
+        retryFuture = retryTask.scheduleWithFixedDelay(this::retryWaitSync, 4, 4, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 网络线程调用, 区块入队后立即返回
+     */
+    public boolean submitNewBlock(BlockWrapper blockWrapper, Channel channel) {
+        if (importQueue.submit(blockWrapper, channel)) {
+            return true;
+        }
+        // 被丢弃的区块之后重新收到时需要处理
+        channelMgr.getSeenBlocks().forget(blockWrapper.getBlock().getXdagBlock().getData().toArray());
+        return false;
+    }
+
+    public void submitNewBlocks(List<BlockWrapper> blockWrappers, Channel channel) {
+        for (BlockWrapper blockWrapper : importQueue.submitAll(blockWrappers, channel)) {
+            channelMgr.getSeenBlocks().forget(blockWrapper.getBlock().getXdagBlock().getData().toArray());
+        }
     }
 
     /**
@@ -188,18 +244,15 @@ public class SyncManager {
             case NO_PARENT -> {
                 if (syncPushBlock(blockWrapper, result.getHashlow())) {
                     log.debug("push block:{}, NO_PARENT {}", blockWrapper.getBlock().getHashLow(), result);
-                    List<Channel> channels = channelMgr.getActiveChannels();
-                    for (Channel channel : channels) {
-                        if (channel.getNode().equals(blockWrapper.getRemoteNode())) {
-                            channel.getXdag().sendGetBlock(result.getHashlow());
-
-                        }
-                    }
-
+                    requestParents(blockWrapper, result.getHashlow());
                 }
             }
             case INVALID_BLOCK -> {
 //                log.error("invalid block:{}", Hex.toHexString(blockWrapper.getBlock().getHashLow()));
+                Node remote = blockWrapper.getRemoteNode();
+                if (remote != null && kernel.getNodeMgr() != null && !remote.equals(kernel.getClient().getNode())) {
+                    kernel.getNodeMgr().misbehave(remote, NodeManager.INVALID_BLOCK_SCORE, "invalid block");
+                }
             }
             default -> {
             }
@@ -212,86 +265,138 @@ public class SyncManager {
      *
      * @param blockWrapper 新区块
      * @param hashLow 缺失的parent哈希
+     * @return parent第一次缺失时返回true, 需要立即请求
      */
     public boolean syncPushBlock(BlockWrapper blockWrapper, Bytes32 hashLow) {
-        if(syncMap.size() >= MAX_SIZE){
-            for (int i = 0; i < 200; i++) {
-                Bytes32 last = syncQueue.poll();
-                assert last != null;
-                if(syncMap.remove(last) != null) blockchain.getXdagStats().nwaitsync--;
-            }
-        }
-        AtomicBoolean r = new AtomicBoolean(true);
-        long now = System.currentTimeMillis();
-//        ByteArrayWrapper refKey = new ByteArrayWrapper(hashLow);
-        Queue<BlockWrapper> newQueue = Queues.newConcurrentLinkedQueue();
-        blockWrapper.setTime(now);
-        newQueue.add(blockWrapper);
-        blockchain.getXdagStats().nwaitsync++;
-        if(!syncMap.containsKey(hashLow)){
-            syncQueue.offer(hashLow);
-        }
-        syncMap.merge(hashLow, newQueue,
-                (oldQ, newQ) -> {
-                    blockchain.getXdagStats().nwaitsync--;
-                    for (BlockWrapper b : oldQ) {
-                        if (b.getBlock().getHashLow().equals(blockWrapper.getBlock().getHashLow())) {
-                            // after 64 sec must resend block request
-                            if (now - b.getTime() > 64 * 1000) {
-                                b.setTime(now);
-                                r.set(true);
-                            } else {
-                                //TODO should be consider timeout not received request block
-                                r.set(false);
-                            }
-                            return oldQ;
-                        }
-                    }
-                    oldQ.add(blockWrapper);
-                    r.set(true);
-                    return oldQ;
-                });
-        return r.get();
+        boolean r = waitSyncPool.add(hashLow.copy(), blockWrapper, XdagTime.currentTimeMillis());
+        blockchain.getXdagStats().nwaitsync = waitSyncPool.size();
+        return r;
     }
 
     /**
      * 根据接收到的区块，将子区块释放
+     * 子区块导入后继续释放等待它的区块, 用队列代替递归
      *
      * @param blockWrapper 接收到的区块
      */
     public void syncPopBlock(BlockWrapper blockWrapper) {
-        Block block = blockWrapper.getBlock();
-//        ByteArrayWrapper key = new ByteArrayWrapper(block.getHashLow().toArray());
-        Queue<BlockWrapper> queue = syncMap.getOrDefault(block.getHashLow(), null);
-        if (queue != null) {
-            syncMap.remove(block.getHashLow());
-            syncQueue.remove(block.getHashLow());
-            blockchain.getXdagStats().nwaitsync--;
-            queue.forEach(bw -> {
+        Deque<Bytes32> released = new ArrayDeque<>();
+        released.add(blockWrapper.getBlock().getHashLow());
+        while (!released.isEmpty()) {
+            List<BlockWrapper> children = waitSyncPool.remove(released.poll());
+            for (BlockWrapper bw : children) {
                 ImportResult importResult = importBlock(bw);
                 switch (importResult) {
-                case EXIST, IN_MEM, IMPORTED_BEST, IMPORTED_NOT_BEST -> {
-                    // TODO import成功后都需要移除
-                    syncPopBlock(bw);
-                    queue.remove(bw);
-                }
+                case EXIST, IN_MEM, IMPORTED_BEST, IMPORTED_NOT_BEST -> released.add(bw.getBlock().getHashLow());
                 case NO_PARENT -> {
                     if (syncPushBlock(bw, importResult.getHashlow())) {
                         log.debug("push block:{}, NO_PARENT {}", bw.getBlock().getHashLow(),
                                 importResult.getHashlow().toHexString());
-                        List<Channel> channels = channelMgr.getActiveChannels();
-                        for (Channel channel : channels) {
-                            if (channel.getNode().equals(bw.getRemoteNode())) {
-                                channel.getXdag().sendGetBlock(importResult.getHashlow());
-                            }
-                        }
+                        requestParents(bw, importResult.getHashlow());
                     }
                 }
                 default -> {
                 }
                 }
+            }
+        }
+        blockchain.getXdagStats().nwaitsync = waitSyncPool.size();
+    }
+
+    /**
+     * 向来源节点请求缺少的父块和该区块其他缺少的引用块, 对方一并发送深度以内的祖先
+     */
+    private void requestParents(BlockWrapper blockWrapper, Bytes32 hashLow) {
+        List<Bytes32> missing = missingLinks(blockWrapper.getBlock(), hashLow);
+        int depth = kernel.getConfig().getNodeSpec().getParentFetchDepth();
+        for (Channel channel : channelMgr.getActiveChannels()) {
+            if (channel.getNode().equals(blockWrapper.getRemoteNode())) {
+                channel.getXdag().sendGetAncestors(missing, depth);
+            }
+        }
+    }
+
+    /**
+     * 导入只返回第一个缺少的父块, 其他缺少的引用块在同一个请求中一起请求
+     */
+    List<Bytes32> missingLinks(Block block, Bytes32 hashLow) {
+        List<Bytes32> res = Lists.newArrayList(hashLow);
+        for (Address link : block.getLinks()) {
+            if (res.size() >= InvMessage.MAX_HASHES) {
+                break;
+            }
+            if (link.getIsAddress()) {
+                continue;
+            }
+            Bytes32 ref = link.getAddress().copy();
+            if (!res.contains(ref) && blockchain.getBlockByHash(ref, false) == null) {
+                res.add(ref);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 定期重新请求仍未收到的父块, 按节点分批发出
+     */
+    public void retryWaitSync() {
+        try {
+            List<WaitSyncPool.Entry> entries = waitSyncPool.pollRetry(XdagTime.currentTimeMillis(),
+                    WAIT_SYNC_RETRY_INTERVAL, WAIT_SYNC_RETRY_BATCH);
+            blockchain.getXdagStats().nwaitsync = waitSyncPool.size();
+            List<Channel> channels = channelMgr.getActiveChannels();
+            if (entries.isEmpty() || channels.isEmpty()) {
+                return;
+            }
+            Map<Channel, List<Bytes32>> batches = new LinkedHashMap<>();
+            for (WaitSyncPool.Entry entry : entries) {
+                for (Channel channel : selectParentPeers(entry, channels)) {
+                    batches.computeIfAbsent(channel, c -> Lists.newArrayList()).add(entry.getParent());
+                }
+            }
+            int depth = kernel.getConfig().getNodeSpec().getParentFetchDepth();
+            batches.forEach((channel, hashes) -> {
+                log.debug("request {} missing parents from node {}", hashes.size(), channel.getInetSocketAddress());
+                for (List<Bytes32> batch : Lists.partition(hashes, InvMessage.MAX_HASHES)) {
+                    channel.getXdag().sendGetAncestors(Lists.newArrayList(batch), depth);
+                }
             });
+        } catch (Throwable e) {
+            log.error("error when retry wait sync blocks {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 来源节点和同步响应最快的另一个节点, 没有测速数据时轮流选择
+     */
+    List<Channel> selectParentPeers(WaitSyncPool.Entry entry, List<Channel> channels) {
+        List<Channel> res = Lists.newArrayList();
+        for (Channel channel : channels) {
+            if (channel.getNode() != null && channel.getNode().equals(entry.getSource())) {
+                res.add(channel);
+                break;
+            }
+        }
+        Map<Channel, XdagSync.SyncPeer> peers = kernel.getSync() == null ? Map.of() : kernel.getSync().getPeers();
+        Channel best = null;
+        double bestRtt = Double.MAX_VALUE;
+        int offset = entry.getRequests();
+        for (int i = 0; i < channels.size(); i++) {
+            Channel channel = channels.get((i + offset) % channels.size());
+            if (res.contains(channel)) {
+                continue;
+            }
+            XdagSync.SyncPeer peer = peers.get(channel);
+            double rtt = peer == null ? XdagSync.DEFAULT_RTT : peer.getRtt();
+            if (rtt < bestRtt) {
+                best = channel;
+                bestRtt = rtt;
+            }
         }
+        if (best != null) {
+            res.add(best);
+        }
+        return res;
     }
 
     // TODO：目前默认是一直保持同步，不负责出块
@@ -329,6 +434,14 @@ public class SyncManager {
         if (this.stateListener.isRunning) {
             this.stateListener.isRunning = false;
         }
+        importQueue.stop();
+        if (retryFuture != null) {
+            retryFuture.cancel(true);
+        }
+        if (retryTask != null) {
+            retryTask.shutdownNow();
+        }
+        waitSyncPool.stop();
     }
 
     public void distributeBlock(BlockWrapper blockWrapper) {
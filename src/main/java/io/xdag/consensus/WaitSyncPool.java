@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import com.google.common.collect.Lists;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.node.Node;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 等待父块的区块池, 按缺失的父块分组
+ * 总数超过上限时淘汰最早的分组, 每个分组到期后由时间轮移除, 并记录父块的请求时间供定期重新请求
+ */
+@Slf4j
+public class WaitSyncPool {
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("WaitSyncPool-timer-%d")
+            .daemon(true)
+            .build();
+    /**
+     * 所有实例共用一个时间轮, 避免每个实例各占一个线程
+     */
+    private static final HashedWheelTimer wheel = new HashedWheelTimer(factory, 1, TimeUnit.SECONDS, 512);
+
+    private final int maxSize;
+    private final long ttl;
+    /**
+     * 按加入顺序排列, 便于淘汰最早的分组
+     */
+    private final LinkedHashMap<Bytes32, Entry> entries = new LinkedHashMap<>();
+    /**
+     * 等待中的区块总数
+     */
+    private int size;
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param maxSize 最多等待的区块数
+     * @param ttl     每个分组的存活时间 (ms)
+     */
+    public WaitSyncPool(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 加入一个等待parent的区块
+     *
+     * @return parent第一次缺失时返回true, 需要立即请求
+     */
+    public synchronized boolean add(Bytes32 parent, BlockWrapper blockWrapper, long now) {
+        Entry entry = entries.get(parent);
+        boolean isNew = entry == null;
+        if (isNew) {
+            entry = new Entry(parent, blockWrapper.getRemoteNode(), now);
+            Entry e = entry;
+            entry.timeout = wheel.newTimeout(t -> expire(e), ttl, TimeUnit.MILLISECONDS);
+            entries.put(parent, entry);
+            entry.lastRequest = now;
+            entry.requests = 1;
+        } else {
+            for (BlockWrapper bw : entry.children) {
+                if (bw.getBlock().getHashLow().equals(blockWrapper.getBlock().getHashLow())) {
+                    return false;
+                }
+            }
+        }
+        blockWrapper.setTime(now);
+        entry.children.add(blockWrapper);
+        size++;
+        evict(entry);
+        return isNew;
+    }
+
+    /**
+     * parent已导入, 取出等待它的区块
+     */
+    public synchronized List<BlockWrapper> remove(Bytes32 parent) {
+        Entry entry = entries.remove(parent);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        entry.timeout.cancel();
+        size -= entry.children.size();
+        return entry.children;
+    }
+
+    /**
+     * 取出超过interval仍未收到的父块并更新请求时间, 最多limit个, 最早缺失的优先
+     */
+    public synchronized List<Entry> pollRetry(long now, long interval, int limit) {
+        List<Entry> res = Lists.newArrayList();
+        for (Entry entry : entries.values()) {
+            if (res.size() >= limit) {
+                break;
+            }
+            if (now - entry.lastRequest >= interval) {
+                entry.lastRequest = now;
+                entry.requests++;
+                res.add(entry);
+            }
+        }
+        return res;
+    }
+
+    private void evict(Entry current) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Entry oldest = it.next();
+            if (oldest == current) {
+                continue;
+            }
+            it.remove();
+            oldest.timeout.cancel();
+            size -= oldest.children.size();
+            evicted.addAndGet(oldest.children.size());
+        }
+    }
+
+    private synchronized void expire(Entry entry) {
+        if (entries.get(entry.parent) == entry) {
+            entries.remove(entry.parent);
+            size -= entry.children.size();
+            expired.addAndGet(entry.children.size());
+            log.debug("wait sync parent {} expired, drop {} blocks", entry.parent, entry.children.size());
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int parentSize() {
+        return entries.size();
+    }
+
+    public synchronized boolean contains(Bytes32 parent) {
+        return entries.containsKey(parent);
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    /**
+     * 取消本实例的定时任务, 共用的时间轮继续运行
+     */
+    public synchronized void stop() {
+        for (Entry entry : entries.values()) {
+            entry.timeout.cancel();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * 一个缺失的父块和等待它的区块
+     */
+    @Getter
+    public static class Entry {
+
+        private final Bytes32 parent;
+        /**
+         * 第一个等待区块的来源节点
+         */
+        private final Node source;
+        private final long created;
+        private final List<BlockWrapper> children = Lists.newArrayList();
+        private long lastRequest;
+        private int requests;
+        private Timeout timeout;
+
+        Entry(Bytes32 parent, Node source, long created) {
+            this.parent = parent;
+            this.source = source;
+            this.created = created;
+        }
+    }
+}
@@ -25,31 +25,49 @@
 package io.xdag.consensus;
 
 import static io.xdag.config.Constants.REQUEST_BLOCKS_MAX_TIME;
+import static io.xdag.config.Constants.REQUEST_MAIN_BLOCKS_MAX;
 import static io.xdag.config.Constants.REQUEST_WAIT;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 import io.xdag.Kernel;
+import io.xdag.config.spec.NodeSpec;
+import io.xdag.core.Blockchain;
+import io.xdag.core.XdagStats;
 import io.xdag.db.BlockStore;
 import io.xdag.net.Channel;
+import io.xdag.net.XdagCapability;
 import io.xdag.net.manager.XdagChannelManager;
 import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 
+/**
+ * 基于sums树的多节点同步调度
+ * 待比较的时间区间放入队列, 同时向多个节点并发请求, 按节点响应速度分配区间, 超时后换节点重试
+ * 落后较多时先按高度顺序从一个节点下载主链, 每个主块之前先收到它确认的区块, 再用sums比较补齐其余区块
+ */
 @Slf4j
 public class XdagSync {
 
@@ -58,22 +76,82 @@ public class XdagSync {
             .daemon(true)
             .build();
 
+    /**
+     * 尚未测得响应时间的节点按此值估算 (ms)
+     */
+    static final double DEFAULT_RTT = 1000;
+
+    /**
+     * 本地主块数落后超过此值时先按高度同步主链
+     */
+    static final long MAIN_CHAIN_SYNC_MIN_GAP = 128;
+
     private final XdagChannelManager channelMgr;
     private final BlockStore blockStore;
+    private final Blockchain blockchain;
     private final ScheduledExecutorService sendTask;
     @Getter
     private final ConcurrentHashMap<Long, SettableFuture<Bytes>> sumsRequestMap;
     @Getter
     private final ConcurrentHashMap<Long, SettableFuture<Bytes>> blocksRequestMap;
 
+    private final int maxInflight;
+    private final int maxInflightPerPeer;
+    private final int maxRetries;
+    private final long requestTimeout;
+    private final boolean mainChainFirst;
+
+    /**
+     * 待请求区间, 子区间插到队首以保持深度优先
+     */
+    private final Deque<SyncRange> pending = new ConcurrentLinkedDeque<>();
+    private final Map<Long, SyncRange> inflight = new ConcurrentHashMap<>();
+    @Getter
+    private final Map<Channel, SyncPeer> peers = new ConcurrentHashMap<>();
+
+    private final AtomicLong round = new AtomicLong();
+    private final AtomicLong rangesDone = new AtomicLong();
+    private final AtomicLong rangesFailed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * 按高度同步主链时下一个待请求的高度和目标高度
+     */
+    private volatile boolean heightRound;
+    private volatile long nextHeight;
+    private volatile long targetHeight;
+    private volatile Channel heightPeer;
+    /**
+     * 主链同步之后至少进行一轮sums比较
+     */
+    private volatile boolean skipMainChainSync;
+
     @Getter@Setter
     private Status status;
     private ScheduledFuture<?> sendFuture;
+    private ScheduledFuture<?> dispatchFuture;
     private volatile boolean isRunning;
 
     public XdagSync(Kernel kernel) {
-        this.channelMgr = kernel.getChannelMgr();
-        this.blockStore = kernel.getBlockStore();
+        this(kernel.getChannelMgr(), kernel.getBlockStore(), kernel.getBlockchain(),
+                kernel.getConfig().getNodeSpec());
+    }
+
+    XdagSync(XdagChannelManager channelMgr, BlockStore blockStore, Blockchain blockchain, NodeSpec nodeSpec) {
+        this(channelMgr, blockStore, blockchain, nodeSpec.getSyncMaxInflight(), nodeSpec.getSyncMaxInflightPerPeer(),
+                nodeSpec.getSyncMaxRetries(), TimeUnit.SECONDS.toMillis(REQUEST_WAIT), nodeSpec.isSyncMainChainFirst());
+    }
+
+    XdagSync(XdagChannelManager channelMgr, BlockStore blockStore, Blockchain blockchain, int maxInflight,
+            int maxInflightPerPeer, int maxRetries, long requestTimeout, boolean mainChainFirst) {
+        this.channelMgr = channelMgr;
+        this.blockStore = blockStore;
+        this.blockchain = blockchain;
+        this.mainChainFirst = mainChainFirst;
+        this.maxInflight = Math.max(1, maxInflight);
+        this.maxInflightPerPeer = Math.max(1, maxInflightPerPeer);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.requestTimeout = requestTimeout;
         sendTask = new ScheduledThreadPoolExecutor(1, factory);
         sumsRequestMap = new ConcurrentHashMap<>();
         blocksRequestMap = new ConcurrentHashMap<>();
@@ -89,6 +167,8 @@ public class XdagSync {
             // TODO: paulochen 开始同步的时间点/快照时间点
 //            startSyncTime = 1588687929343L; // 1716ffdffff 171e52dffff
             sendFuture = sendTask.scheduleAtFixedRate(this::syncLoop, 64, 64, TimeUnit.SECONDS);
+            // 没有可用节点时排队的区间由此定期重新分配
+            dispatchFuture = sendTask.scheduleWithFixedDelay(this::dispatch, 1, 1, TimeUnit.SECONDS);
         }
     }
 
@@ -103,58 +183,258 @@ public class XdagSync {
         log.debug("End syncLoop");
     }
 
-    private void requestBlocks(long t, long dt) {
-        // 如果当前状态不是sync start
+    /**
+     * 上一轮比较结束后才开始新一轮
+     */
+    void requestBlocks(long t, long dt) {
         if (status != Status.SYNCING) {
             return;
         }
-        List<Channel> any = getAnyNode();
-        long randomSeq;
-        SettableFuture<Bytes> sf = SettableFuture.create();
-        if (any != null && any.size() != 0) {
-            // TODO:随机选一个
-            int index = RandomUtils.nextInt() % any.size();
-            Channel xc = any.get(index);
-            if (dt <= REQUEST_BLOCKS_MAX_TIME) {
-                randomSeq = xc.getXdag().sendGetBlocks(t, t + dt);
-                blocksRequestMap.put(randomSeq, sf);
-                try {
-                    sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                    blocksRequestMap.remove(randomSeq);
-                    log.error(e.getMessage(), e);
-                    return;
+        if (pending.isEmpty() && inflight.isEmpty()) {
+            round.incrementAndGet();
+            if (!startMainChainSync()) {
+                pending.add(new SyncRange(t, dt));
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 本地主块数明显落后且有节点支持时, 本轮按高度同步主链
+     */
+    boolean startMainChainSync() {
+        if (!mainChainFirst || blockchain == null) {
+            return false;
+        }
+        if (skipMainChainSync) {
+            skipMainChainSync = false;
+            return false;
+        }
+        XdagStats stats = blockchain.getXdagStats();
+        long local = stats.nmain;
+        long remote = Math.max(stats.totalnmain, local);
+        if (remote - local < MAIN_CHAIN_SYNC_MIN_GAP || findMainChainPeers(getAnyNode()).isEmpty()) {
+            return false;
+        }
+        log.info("Sync main chain by height from {} to {}", local + 1, remote);
+        nextHeight = local + 1;
+        targetHeight = remote;
+        heightPeer = null;
+        heightRound = true;
+        return true;
+    }
+
+    private List<Channel> findMainChainPeers(List<Channel> channels) {
+        List<Channel> res = Lists.newArrayList();
+        if (channels != null) {
+            for (Channel channel : channels) {
+                if (channel.isSupported(XdagCapability.MAIN_CHAIN_SYNC)) {
+                    res.add(channel);
                 }
-                blocksRequestMap.remove(randomSeq);
-            } else {
-                MutableBytes lSums = MutableBytes.create(256);
-                Bytes rSums;
-                if (blockStore.loadSum(t, t + dt, lSums) <= 0) {
-                    return;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 按高度顺序生成请求区间, 同时最多maxInflightPerPeer个
+     */
+    private void fillHeightRanges() {
+        while (nextHeight <= targetHeight && pending.size() + inflight.size() < maxInflightPerPeer) {
+            long from = nextHeight;
+            long to = Math.min(from + REQUEST_MAIN_BLOCKS_MAX - 1, targetHeight);
+            pending.addLast(new SyncRange(from, to - from + 1, true));
+            nextHeight = to + 1;
+        }
+    }
+
+    /**
+     * 主链同步结束后立即开始sums比较
+     */
+    private void finishMainChainSync() {
+        if (heightRound && pending.isEmpty() && inflight.isEmpty() && nextHeight > targetHeight) {
+            heightRound = false;
+            heightPeer = null;
+            skipMainChainSync = true;
+            log.info("Sync main chain by height done, height {}", targetHeight);
+            requestBlocks(0, 1L << 48);
+        }
+    }
+
+    /**
+     * 在并发上限内把待请求区间分配给节点, 只在sendTask线程中调用
+     */
+    void dispatch() {
+        if (status != Status.SYNCING) {
+            pending.clear();
+            return;
+        }
+        try {
+            List<Channel> channels = getAnyNode();
+            if (channels == null || channels.isEmpty()) {
+                return;
+            }
+            peers.keySet().retainAll(channels);
+            if (heightRound) {
+                if (findMainChainPeers(channels).isEmpty()) {
+                    // 支持的节点都断开了, 剩余的高度交给sums比较
+                    pending.clear();
+                    nextHeight = targetHeight + 1;
+                } else {
+                    fillHeightRanges();
+                }
+            }
+            while (inflight.size() < maxInflight) {
+                SyncRange range = pending.peekFirst();
+                if (range == null) {
+                    break;
                 }
-                randomSeq = xc.getXdag().sendGetSums(t, t + dt);
-                sumsRequestMap.put(randomSeq, sf);
-                try {
-                    Bytes sums = sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-                    rSums = sums.copy();
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                    sumsRequestMap.remove(randomSeq);
-                    log.error(e.getMessage(), e);
-                    return;
+                Channel channel = selectPeer(channels, range);
+                if (channel == null) {
+                    break;
+                }
+                pending.pollFirst();
+                if (range.isByHeight()) {
+                    heightPeer = channel;
+                }
+                send(range, channel);
+                if (heightRound) {
+                    fillHeightRanges();
+                }
+            }
+            finishMainChainSync();
+        } catch (Throwable e) {
+            log.error("error when dispatch sync request {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 选择预计完成时间最短的节点, 已对该区间超时过的节点仅在没有其他选择时使用
+     * 按高度的区间固定发给同一个节点, 保证区块按高度顺序到达
+     */
+    Channel selectPeer(List<Channel> channels, SyncRange range) {
+        if (range.isByHeight()) {
+            Channel current = heightPeer;
+            if (current != null && channels.contains(current) && !range.getTriedPeers().contains(current)) {
+                SyncPeer peer = peers.get(current);
+                return peer == null || peer.getInflight() < maxInflightPerPeer ? current : null;
+            }
+            channels = findMainChainPeers(channels);
+        }
+        Channel best = null;
+        double bestCost = Double.MAX_VALUE;
+        boolean bestExcluded = true;
+        for (Channel channel : channels) {
+            SyncPeer peer = peers.get(channel);
+            int busy = peer == null ? 0 : peer.getInflight();
+            if (busy >= maxInflightPerPeer) {
+                continue;
+            }
+            double rtt = peer == null ? DEFAULT_RTT : peer.getRtt();
+            double cost = rtt * (busy + 1);
+            boolean excluded = range.getTriedPeers().contains(channel);
+            if (best == null || (bestExcluded && !excluded)
+                    || (bestExcluded == excluded && cost < bestCost)) {
+                best = channel;
+                bestCost = cost;
+                bestExcluded = excluded;
+            }
+        }
+        return best;
+    }
+
+    private void send(SyncRange range, Channel channel) {
+        long t = range.getStart();
+        long dt = range.getLength();
+        boolean blocks = range.isByHeight() || dt <= REQUEST_BLOCKS_MAX_TIME;
+        MutableBytes lSums = null;
+        if (!blocks) {
+            lSums = MutableBytes.create(256);
+            if (blockStore.loadSum(t, t + dt, lSums) <= 0) {
+                rangesDone.incrementAndGet();
+                return;
+            }
+        }
+
+        SyncPeer peer = peers.computeIfAbsent(channel, c -> new SyncPeer());
+        SettableFuture<Bytes> sf = SettableFuture.create();
+        long randomSeq;
+        if (range.isByHeight()) {
+            randomSeq = channel.getXdag().sendGetMainBlocks(t, t + dt - 1);
+            blocksRequestMap.put(randomSeq, sf);
+        } else if (blocks) {
+            randomSeq = channel.getXdag().sendGetBlocks(t, t + dt);
+            blocksRequestMap.put(randomSeq, sf);
+        } else {
+            randomSeq = channel.getXdag().sendGetSums(t, t + dt);
+            sumsRequestMap.put(randomSeq, sf);
+        }
+        range.onSend(channel, System.currentTimeMillis());
+        peer.onSend();
+        inflight.put(randomSeq, range);
+
+        ScheduledFuture<?> timeout = sendTask.schedule(() -> sf.setException(new TimeoutException(
+                "sync request " + range + " to " + channel.getInetSocketAddress() + " timeout")),
+                requestTimeout, TimeUnit.MILLISECONDS);
+        final MutableBytes localSums = lSums;
+        Futures.addCallback(sf, new FutureCallback<>() {
+            @Override
+            public void onSuccess(Bytes result) {
+                timeout.cancel(false);
+                finish(randomSeq, blocks);
+                peer.onResponse(System.currentTimeMillis() - range.getSentTime());
+                rangesDone.incrementAndGet();
+                if (localSums != null) {
+                    split(range, localSums, result.copy());
                 }
-                sumsRequestMap.remove(randomSeq);
-                dt >>= 4;
-                for (int i = 0; i < 16; i++) {
-                    long lSumsSum = lSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
-                    long lSumsSize = lSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
-                    long rSumsSum = rSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
-                    long rSumsSize = rSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
-
-                    if (lSumsSize != rSumsSize || lSumsSum != rSumsSum) {
-                        requestBlocks(t + i * dt, dt);
-                    }
+                dispatch();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                timeout.cancel(false);
+                finish(randomSeq, blocks);
+                peer.onFailure();
+                if (range.getAttempts() <= maxRetries && status == Status.SYNCING) {
+                    log.debug("{}, retry with another peer", e.getMessage());
+                    retries.incrementAndGet();
+                    pending.addFirst(range);
+                } else {
+                    log.debug("{}, give up", e.getMessage());
+                    rangesFailed.incrementAndGet();
                 }
+                dispatch();
             }
+        }, sendTask);
+    }
+
+    private void finish(long randomSeq, boolean blocks) {
+        if (blocks) {
+            blocksRequestMap.remove(randomSeq);
+        } else {
+            sumsRequestMap.remove(randomSeq);
+        }
+        inflight.remove(randomSeq);
+    }
+
+    /**
+     * 比较16个子区间的sum, 不一致的子区间按顺序插回队首
+     */
+    void split(SyncRange range, Bytes lSums, Bytes rSums) {
+        long dt = range.getLength() >> 4;
+        List<SyncRange> children = Lists.newArrayList();
+        for (int i = 0; i < 16; i++) {
+            long lSumsSum = lSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
+            long lSumsSize = lSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+            long rSumsSum = rSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
+            long rSumsSize = rSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+
+            if (lSumsSize != rSumsSize || lSumsSum != rSumsSum) {
+                children.add(new SyncRange(range.getStart() + i * dt, dt));
+            }
+        }
+        for (SyncRange child : Lists.reverse(children)) {
+            pending.addFirst(child);
         }
     }
 
@@ -162,6 +442,15 @@ public class XdagSync {
         return channelMgr.getActiveChannels();
     }
 
+    /**
+     * 当前一轮同步的进度
+     */
+    public SyncProgress getProgress() {
+        List<SyncRange> ranges = Lists.newArrayList(inflight.values());
+        ranges.sort((a, b) -> Long.compare(a.getStart(), b.getStart()));
+        return new SyncProgress(round.get(), pending.size(), ranges, rangesDone.get(), rangesFailed.get(),
+                retries.get(), heightRound, nextHeight - 1, targetHeight);
+    }
 
     public void stop() {
         log.debug("stop sync");
@@ -171,12 +460,17 @@ public class XdagSync {
                 if (sendFuture != null) {
                     sendFuture.cancel(true);
                 }
+                if (dispatchFuture != null) {
+                    dispatchFuture.cancel(true);
+                }
                 // 关闭线程池
                 sendTask.shutdownNow();
                 sendTask.awaitTermination(5, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
                 log.error(e.getMessage(), e);
             }
+            pending.clear();
+            inflight.clear();
             isRunning = false;
             log.debug("Sync Stop");
         }
@@ -192,4 +486,126 @@ public class XdagSync {
          */
         SYNCING, SYNC_DONE
     }
+
+    /**
+     * 一个待比较的时间区间 [start, start + length), 或按高度请求的主块区间
+     */
+    @Getter
+    public static class SyncRange {
+
+        private final long start;
+        private final long length;
+        private final boolean byHeight;
+        private final Set<Channel> triedPeers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private volatile int attempts;
+        private volatile long sentTime;
+        private volatile Channel peer;
+
+        SyncRange(long start, long length) {
+            this(start, length, false);
+        }
+
+        SyncRange(long start, long length, boolean byHeight) {
+            this.start = start;
+            this.length = length;
+            this.byHeight = byHeight;
+        }
+
+        void onSend(Channel channel, long now) {
+            attempts++;
+            sentTime = now;
+            peer = channel;
+            triedPeers.add(channel);
+        }
+
+        @Override
+        public String toString() {
+            if (byHeight) {
+                return "height [" + start + ", " + (start + length - 1) + "]";
+            }
+            return "[" + Long.toHexString(start) + ", " + Long.toHexString(start + length) + ")";
+        }
+    }
+
+    /**
+     * 节点的同步统计, rtt为响应时间的指数滑动平均
+     */
+    @Getter
+    public static class SyncPeer {
+
+        private volatile double rtt = DEFAULT_RTT;
+        private volatile int inflight;
+        private volatile long responses;
+        private volatile long failures;
+
+        synchronized void onSend() {
+            inflight++;
+        }
+
+        synchronized void onResponse(long elapsed) {
+            inflight = Math.max(0, inflight - 1);
+            rtt = responses == 0 ? elapsed : rtt * 0.8 + elapsed * 0.2;
+            responses++;
+        }
+
+        synchronized void onFailure() {
+            inflight = Math.max(0, inflight - 1);
+            failures++;
+            // 超时的节点降低优先级
+            rtt = Math.max(rtt, DEFAULT_RTT) * 2;
+        }
+    }
+
+    /**
+     * 同步进度快照
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SyncProgress {
+
+        /**
+         * 第几轮比较
+         */
+        private final long round;
+        /**
+         * 排队中的区间数
+         */
+        private final int pending;
+        /**
+         * 已发出尚未返回的区间
+         */
+        private final List<SyncRange> inflight;
+        private final long done;
+        /**
+         * 重试后仍失败的区间数
+         */
+        private final long failed;
+        private final long retries;
+        /**
+         * 是否在按高度同步主链, 已请求到的高度和目标高度
+         */
+        private final boolean mainChainSync;
+        private final long requestedHeight;
+        private final long targetHeight;
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("round: %d, pending: %d, inflight: %d, done: %d, failed: %d, retries: %d",
+                    round, pending, inflight.size(), done, failed, retries));
+            if (mainChainSync) {
+                sb.append(String.format(", main chain height: %d of %d", requestedHeight, targetHeight));
+            }
+            long now = System.currentTimeMillis();
+            for (SyncRange range : inflight) {
+                Channel peer = range.getPeer();
+                sb.append(System.lineSeparator())
+                        .append("  ").append(range)
+                        .append(" peer ").append(peer == null ? null : peer.getInetSocketAddress())
+                        .append(" attempt ").append(range.getAttempts())
+                        .append(" ").append(now - range.getSentTime()).append(" ms");
+            }
+            return sb.toString();
+        }
+    }
 }
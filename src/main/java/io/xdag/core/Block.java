@@ -37,6 +37,7 @@ import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_SIGN_OUT;
 
 import io.xdag.config.Config;
 import io.xdag.crypto.Hash;
+import io.xdag.crypto.Keys;
 import io.xdag.crypto.Sign;
 import io.xdag.utils.BytesUtils;
 import java.math.BigInteger;
@@ -165,9 +166,7 @@ public class Block implements Cloneable {
 
         if (CollectionUtils.isNotEmpty(keys)) {
             for (KeyPair key : keys) {
-                byte[] keydata = Sign.publicKeyBytesFromPrivate(key.getPrivateKey().getEncodedBytes().toUnsignedBigInteger(), true); //poor performance
-//                byte[] keydata = key.getCompressPubKeyBytes(); //good performance
-                boolean yBit = BytesUtils.toByte(BytesUtils.subArray(keydata, 0, 1)) == 0x03;
+                boolean yBit = Keys.isPubKeyYOdd(key.getPublicKey());
                 XdagField.FieldType type = yBit ? XDAG_FIELD_PUBLIC_KEY_1 : XDAG_FIELD_PUBLIC_KEY_0;
                 setType(type, lenghth++);
                 pubKeys.add(key.getPublicKey());
@@ -360,7 +359,7 @@ public class Block implements Cloneable {
             encoder.write(info.getRemark());
         }
         for (SECPPublicKey publicKey : pubKeys) {
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+            byte[] pubkeyBytes = Keys.toCompressedPubKey(publicKey);
             byte[] key = BytesUtils.subArray(pubkeyBytes, 1, 32);
             encoder.writeField(key);
         }
@@ -395,7 +394,7 @@ public class Block implements Cloneable {
     private void sign(KeyPair ecKey, XdagField.FieldType type) {
         byte[] encoded = toBytes();
         // log.debug("sign encoded:{}", Hex.toHexString(encoded));
-        byte[] pubkeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
+        byte[] pubkeyBytes = Keys.toCompressedPubKey(ecKey.getPublicKey());
         byte[] digest = BytesUtils.merge(encoded, pubkeyBytes);
         //log.debug("sign digest:{}", Hex.toHexString(digest));
         Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
@@ -420,7 +419,7 @@ public class Block implements Cloneable {
             digest = getSubRawData(this.getInsigs().get(sig) - 1);
             for (SECPPublicKey publicKey : keys) {
                 // TODO： paulochen 是不是可以替换
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+                byte[] pubkeyBytes = Keys.toCompressedPubKey(publicKey);
                 hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
                 if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
                     res.add(publicKey);
@@ -430,7 +429,7 @@ public class Block implements Cloneable {
         digest = getSubRawData(getOutsigIndex() - 2);
         for (SECPPublicKey publicKey : keys) {
             // TODO： paulochen 是不是可以替换
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+            byte[] pubkeyBytes = Keys.toCompressedPubKey(publicKey);
             hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
             if (Sign.SECP256K1.verify(hash, this.getOutsig(), publicKey)) {
                 res.add(publicKey);
@@ -24,6 +24,8 @@
 
 package io.xdag.core;
 
+import io.xdag.db.SnapshotManifest;
+import io.xdag.listener.ChainEventBus;
 import io.xdag.listener.Listener;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +64,12 @@ public interface Blockchain {
 
     List<Block> getBlocksByTime(long starttime, long endtime);
 
+    // 按时间索引分批读取区块, 从after之后开始, 最多limit个
+    List<Block> getBlocksByTime(long starttime, long endtime, Block after, int limit);
+
+    // 主块执行时确认的区块, 按依赖顺序排列, 主块在最后
+    List<Block> getBlocksConfirmedBy(Block mainBlock);
+
     // TODO ： 补充单元测试
     // 启动检查主块链线程
     void startCheckMain(long period);
@@ -72,6 +80,12 @@ public interface Blockchain {
     // 注册监听器
     void registerListener(Listener listener);
 
+    // 加载从其他节点下载的状态快照
+    void loadSnapshot(SnapshotManifest manifest);
+
+    // 链事件总线, 订阅新块/主块/回滚/pretop事件
+    ChainEventBus getEventBus();
+
     List<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow);
 
     XdagExtStats getXdagExtStats();
@@ -36,7 +36,9 @@ import static io.xdag.config.Constants.MAIN_BIG_PERIOD_LOG;
 import static io.xdag.config.Constants.MAIN_CHAIN_PERIOD;
 import static io.xdag.config.Constants.MAX_ALLOWED_EXTRA;
 import static io.xdag.config.Constants.MessageType.NEW_LINK;
+import static io.xdag.config.Constants.MessageType.NEW_MAIN;
 import static io.xdag.config.Constants.MessageType.PRE_TOP;
+import static io.xdag.config.Constants.MessageType.UNWIND;
 import static io.xdag.config.Constants.SYNC_FIX_HEIGHT;
 import static io.xdag.core.ImportResult.IMPORTED_BEST;
 import static io.xdag.core.ImportResult.IMPORTED_NOT_BEST;
@@ -57,7 +59,9 @@ import com.google.common.collect.Lists;
 import com.google.common.primitives.UnsignedLong;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
+import io.xdag.WalletAccount;
 import io.xdag.config.MainnetConfig;
+import io.xdag.config.spec.SnapshotSpec;
 import io.xdag.core.XdagField.FieldType;
 import io.xdag.crypto.Hash;
 import io.xdag.crypto.Keys;
@@ -65,11 +69,14 @@ import io.xdag.crypto.Sign;
 import io.xdag.db.AddressStore;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.SnapshotManifest;
 import io.xdag.db.SnapshotStore;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
 import io.xdag.listener.BlockMessage;
+import io.xdag.listener.ChainEventBus;
 import io.xdag.listener.Listener;
+import io.xdag.listener.MainBlockMessage;
 import io.xdag.listener.PretopMessage;
 import io.xdag.mine.randomx.RandomX;
 import io.xdag.utils.BasicUtils;
@@ -77,6 +84,7 @@ import io.xdag.utils.BytesUtils;
 import io.xdag.utils.WalletUtils;
 import io.xdag.utils.XdagTime;
 import java.math.BigInteger;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -84,16 +92,20 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
@@ -114,6 +126,19 @@ public class BlockchainImpl implements Blockchain {
             .namingPattern("check-main-%d")
             .daemon(true)
             .build();
+    private static final ThreadFactory indexFactory = new BasicThreadFactory.Builder()
+            .namingPattern("chain-index-%d")
+            .daemon(true)
+            .priority(Thread.MIN_PRIORITY)
+            .build();
+    /**
+     * 补建mined索引时每批处理的高度数
+     */
+    private static final int MINED_INDEX_BATCH = 1024;
+    /**
+     * 加载主链高度表时每批读取的高度数
+     */
+    private static final int HEIGHT_LOAD_BATCH = 1 << 16;
 
     private final Wallet wallet;
 
@@ -133,15 +158,35 @@ public class BlockchainImpl implements Blockchain {
     private final XdagTopStatus xdagTopStatus;
 
     private final ScheduledExecutorService checkLoop;
+    /**
+     * 启动时补建索引的后台线程, 不占用checkLoop, 避免推迟checkMain
+     */
+    private final ExecutorService indexLoop;
     private final RandomX randomXUtils;
-    private final List<Listener> listeners = Lists.newArrayList();
+    private final ChainEventBus eventBus;
     private ScheduledFuture<?> checkLoopFuture;
     private long snapshotHeight;
+    private volatile boolean minedIndexReady;
+    /**
+     * xdagStats/xdagTopStatus在内存中更新, 由checkMain定时落盘, 关闭时强制落盘
+     */
+    private volatile boolean statsDirty;
+    private volatile boolean topStatusDirty;
+    private final MainChainHeightTable heightTable = new MainChainHeightTable();
+    /**
+     * 高度表加载期间setMain/unSetMain改动过的最低高度, 只在持有锁时访问
+     */
+    private long heightDirtyFrom = Long.MAX_VALUE;
     private SnapshotStore snapshotStore;
     private SnapshotStore snapshotAddressStore;
     private final XdagExtStats xdagExtStats;
     @Getter
     private byte[] preSeed;
+    /**
+     * 回放测试时设置, 统计导入各阶段耗时
+     */
+    @Setter
+    private volatile ImportProfiler importProfiler;
 
     public BlockchainImpl(Kernel kernel) {
         this.kernel = kernel;
@@ -151,6 +196,7 @@ public class BlockchainImpl implements Blockchain {
         this.addressStore = kernel.getAddressStore();
         this.blockStore = kernel.getBlockStore();
         this.orphanBlockStore = kernel.getOrphanBlockStore();
+        this.eventBus = new ChainEventBus(kernel.getConfig().getNodeSpec().getEventQueueSize());
         snapshotHeight = kernel.getConfig().getSnapshotSpec().getSnapshotHeight();
 
         // 2. if enable snapshot, init snapshot from rocksdb
@@ -178,6 +224,7 @@ public class BlockchainImpl implements Blockchain {
                 storedStats.setNwaitsync(0);
                 this.xdagStats = storedStats;
                 this.xdagStats.nextra = 0;
+                recoverXdagStats();
                 if (getBlockByHeight(xdagStats.nmain) != null) {
                     storedTopStatus.setTop(getBlockByHeight(xdagStats.nmain).getHashLow().toArray());
                 }
@@ -195,6 +242,12 @@ public class BlockchainImpl implements Blockchain {
         }
 
         checkLoop = new ScheduledThreadPoolExecutor(1, factory);
+        indexLoop = Executors.newSingleThreadExecutor(indexFactory);
+        minedIndexReady = blockStore.isMinedIndexReady();
+        if (!minedIndexReady) {
+            indexLoop.execute(() -> buildMinedIndex(1));
+        }
+        startLoadHeightTable();
         // 检查主块链
         this.startCheckMain(1024);
     }
@@ -241,10 +294,30 @@ public class BlockchainImpl implements Blockchain {
         System.out.println(String.format("All amount: %.9f", BasicUtils.amount2xdag(allBalance)));
     }
 
+    /**
+     * 加载从其他节点下载的状态快照, 与快照启动的流程相同, 之后从快照高度继续同步
+     */
+    @Override
+    public synchronized void loadSnapshot(SnapshotManifest manifest) {
+        SnapshotSpec spec = kernel.getConfig().getSnapshotSpec();
+        spec.setSnapshotJ(true);
+        spec.setSnapshotHeight(manifest.getHeight());
+        spec.setSnapshotTime(manifest.getTime());
+        spec.snapshotEnable();
+        snapshotHeight = manifest.getHeight();
+
+        initSnapshotJ();
+        preSeed = blockStore.getPreSeed();
+        blockStore.saveXdagTopStatus(xdagTopStatus);
+        blockStore.saveXdagStatus(xdagStats);
+        blockStore.setSnapshotBoot();
+        // 高度表中没有快照内的主块
+        startLoadHeightTable();
+    }
 
     @Override
     public void registerListener(Listener listener) {
-        this.listeners.add(listener);
+        eventBus.subscribe(listener);
     }
 
     /**
@@ -255,6 +328,10 @@ public class BlockchainImpl implements Blockchain {
 
         // TODO: if current height is snapshot height, we need change logic to process new block
 
+        ImportProfiler profiler = importProfiler;
+        if (profiler != null) {
+            profiler.begin();
+        }
         try {
             ImportResult result = ImportResult.IMPORTED_NOT_BEST;
 
@@ -354,6 +431,7 @@ public class BlockchainImpl implements Blockchain {
                     updateBlockFlag(block, BI_EXTRA, false);
                 }
             }
+            mark(profiler, ImportProfiler.Phase.VALIDATE);
             // 检查区块合法性 检查input是否能使用
             if (!canUseInput(block)) {
                 result = ImportResult.INVALID_BLOCK;
@@ -362,6 +440,7 @@ public class BlockchainImpl implements Blockchain {
                 log.debug("Block's input can't be used");
                 return ImportResult.INVALID_BLOCK;
             }
+            mark(profiler, ImportProfiler.Phase.VERIFY);
 
             int id = 0;
             // remove links
@@ -399,14 +478,18 @@ public class BlockchainImpl implements Blockchain {
                 }
             }
 
+            mark(profiler, ImportProfiler.Phase.LINK);
+
             // 检查当前主链
             checkNewMain();
+            mark(profiler, ImportProfiler.Phase.CHECK_MAIN);
 
             // 如果是自己的区块
             if (checkMineAndAdd(block)) {
                 log.debug("A block hash:" + block.getHashLow().toHexString() + " become mine");
                 updateBlockFlag(block, BI_OURS, true);
             }
+            mark(profiler, ImportProfiler.Phase.MINE);
 
             // calculate block's self difficulty
             BigInteger cuDiff = calculateCurrentBlockDiff(block);
@@ -415,6 +498,7 @@ public class BlockchainImpl implements Blockchain {
 
             // TODO:extra 处理
             processExtraBlock();
+            mark(profiler, ImportProfiler.Phase.DIFF);
 
             // 根据难度更新主链
             // 判断难度是否是比当前最大，并以此更新topMainChain
@@ -442,6 +526,7 @@ public class BlockchainImpl implements Blockchain {
                 xdagTopStatus.setTop(block.getHashLow().toArray());
                 // update preTop
                 setPreTop(currentTop,currentTopDiff);
+                topStatusDirty = true;
                 // if block's epoch is earlier than current epoch, then notify the PoW thread to regenerate the main block
                 if (XdagTime.getEpoch(block.getTimestamp()) < XdagTime.getCurrentEpoch()) {
                     onNewPretop();
@@ -450,6 +535,7 @@ public class BlockchainImpl implements Blockchain {
                 xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
                 xdagStats.updateDiff(xdagTopStatus.getTopDiff());
             }
+            mark(profiler, ImportProfiler.Phase.CHAIN);
 
             // 新增区块
             xdagStats.nblocks++;
@@ -465,7 +551,8 @@ public class BlockchainImpl implements Blockchain {
                 orphanBlockStore.addOrphan(block);
                 xdagStats.nnoref++;
             }
-            blockStore.saveXdagStatus(xdagStats);
+            statsDirty = true;
+            mark(profiler, ImportProfiler.Phase.STORE);
 
             // 如果区块输入不为0说明是交易块
             if (block.getInputs().size() != 0) {
@@ -500,6 +587,12 @@ public class BlockchainImpl implements Blockchain {
     }
 
 
+    private static void mark(ImportProfiler profiler, ImportProfiler.Phase phase) {
+        if (profiler != null) {
+            profiler.mark(phase);
+        }
+    }
+
     public void onNewTxHistory(Bytes32 addressHashlow, Bytes32 txHashlow, XdagField.FieldType type,
             UInt64 amount, long time, int id, byte[] remark) {
         blockStore.saveTxHistory(addressHashlow, txHashlow, type, amount, time, id, remark);
@@ -590,15 +683,14 @@ public class BlockchainImpl implements Blockchain {
     }
 
     protected void onNewPretop() {
-        for (Listener listener : listeners) {
-            listener.onMessage(new PretopMessage(Bytes.wrap(xdagTopStatus.getTop()), PRE_TOP));
-        }
+        eventBus.publish(new PretopMessage(Bytes.wrap(xdagTopStatus.getTop()), PRE_TOP));
     }
 
+    /**
+     * 本节点产生的链接块, 订阅者队列满时也不丢弃
+     */
     protected void onNewBlock(Block block) {
-        for (Listener listener : listeners) {
-            listener.onMessage(new BlockMessage(Bytes.wrap(block.getXdagBlock().getData()), NEW_LINK));
-        }
+        eventBus.publishLocal(new BlockMessage(Bytes.wrap(block.getXdagBlock().getData()), NEW_LINK));
     }
 
     /**
@@ -846,6 +938,8 @@ public class BlockchainImpl implements Blockchain {
             long reward = getReward(mainNumber);
             block.getInfo().setHeight(mainNumber);
             updateBlockFlag(block, BI_MAIN, true);
+            heightTable.set(mainNumber, block.getHashLow());
+            markHeightDirty(mainNumber);
 
             // 接收奖励
             acceptAmount(block, UInt64.valueOf(reward));
@@ -860,6 +954,10 @@ public class BlockchainImpl implements Blockchain {
             if (randomXUtils != null) {
                 randomXUtils.randomXSetForkTime(block);
             }
+            if ((block.getInfo().flags & BI_OURS) != 0) {
+                blockStore.saveMinedBlock(mainNumber, block.getHashLow());
+            }
+            eventBus.publish(new MainBlockMessage(block.getHashLow().copy(), mainNumber, NEW_MAIN));
         }
 
     }
@@ -886,6 +984,12 @@ public class BlockchainImpl implements Blockchain {
             if (randomXUtils != null) {
                 randomXUtils.randomXUnsetForkTime(block);
             }
+            if ((block.getInfo().flags & BI_OURS) != 0) {
+                blockStore.removeMinedBlock(block.getInfo().getHeight());
+            }
+            heightTable.remove(block.getInfo().getHeight());
+            markHeightDirty(block.getInfo().getHeight());
+            eventBus.publish(new MainBlockMessage(block.getHashLow().copy(), block.getInfo().getHeight(), UNWIND));
             block.getInfo().setHeight(0);
         }
     }
@@ -1180,6 +1284,10 @@ public class BlockchainImpl implements Blockchain {
         if (height > xdagStats.nmain || height <= 0) {
             return null;
         }
+        if (heightTable.isLoaded()) {
+            Bytes32 hashlow = heightTable.get(height);
+            return hashlow == null ? null : blockStore.getBlockByHash(hashlow, false);
+        }
         return blockStore.getBlockByHeight(height);
     }
 
@@ -1286,7 +1394,7 @@ public class BlockchainImpl implements Blockchain {
         if (memOurBlocks.containsKey(block.getHash())) {
 //            log.info("new account:{}", Hex.toHexString(block.getHash()));
             if (xdagStats.getOurLastBlockHash() == null) {
-                blockStore.saveXdagStatus(xdagStats);
+                statsDirty = true;
             }
             addOurBlock(memOurBlocks.get(block.getHash()), block);
             memOurBlocks.remove(block.getHash());
@@ -1295,7 +1403,7 @@ public class BlockchainImpl implements Blockchain {
         if (block.isPretopCandidate()) {
             xdagTopStatus.setPreTop(block.getHashLow().toArray());
             xdagTopStatus.setPreTopDiff(block.getPretopCandidateDiff());
-            blockStore.saveXdagTopStatus(xdagTopStatus);
+            topStatusDirty = true;
         }
 
     }
@@ -1388,13 +1496,13 @@ public class BlockchainImpl implements Blockchain {
 
     private boolean verifySignature(MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
         for (SECPPublicKey publicKey : publicKeys) {
-            byte[] publicKeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+            byte[] publicKeyBytes = Keys.toCompressedPubKey(publicKey);
             Bytes digest = Bytes.wrap(subdata, Bytes.wrap(publicKeyBytes));
 //            log.debug("verify encoded:{}", Hex.toHexString(digest));
             Bytes32 hash = Hash.hashTwice(digest);
             if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
                 SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+                byte[] pubkeyBytes = Keys.toCompressedPubKey(publicKey);
                 if (snapshotInfo != null) {
                     snapshotInfo.setData(pubkeyBytes);
                     snapshotInfo.setType(true);
@@ -1409,18 +1517,17 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean checkMineAndAdd(Block block) {
-        List<KeyPair> ourkeys = wallet.getAccounts();
+        List<WalletAccount> ourAccounts = wallet.getWalletAccounts();
         // 输出签名只有一个
         SECPSignature signature = block.getOutsig();
+        Bytes subRawData = block.getSubRawData(block.getOutsigIndex() - 2);
         // 遍历所有key
-        for (int i = 0; i < ourkeys.size(); i++) {
-            KeyPair ecKey = ourkeys.get(i);
-            // TODO: 优化
-            byte[] publicKeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
+        for (int i = 0; i < ourAccounts.size(); i++) {
+            WalletAccount account = ourAccounts.get(i);
+            Bytes digest = Bytes.wrap(subRawData, account.getCompressedPubKey());
             Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
             // use hyperledger besu crypto native secp256k1
-            if (Sign.SECP256K1.verify(hash, signature, ecKey.getPublicKey())) {
+            if (Sign.SECP256K1.verify(hash, signature, account.getKeyPair().getPublicKey())) {
                 log.debug("verify block success hash={}.", hash.toHexString());
                 addOurBlock(i, block);
                 return true;
@@ -1476,6 +1583,39 @@ public class BlockchainImpl implements Blockchain {
         return blockStore.getBlocksUsedTime(starttime, endtime);
     }
 
+    @Override
+    public List<Block> getBlocksByTime(long starttime, long endtime, Block after, int limit) {
+        return blockStore.getBlocksUsedTime(starttime, endtime, after, limit);
+    }
+
+    @Override
+    public List<Block> getBlocksConfirmedBy(Block mainBlock) {
+        List<Block> res = Lists.newArrayList();
+        Block block = getBlockByHash(mainBlock.getHashLow(), true);
+        if (block != null) {
+            collectConfirmedBlocks(block, res);
+        }
+        return res;
+    }
+
+    /**
+     * 与unApplyBlock相同的遍历方式, ref指向当前区块的引用块是由它执行的, 先于它加入
+     */
+    private void collectConfirmedBlocks(Block block, List<Block> res) {
+        for (Address link : block.getLinks()) {
+            if (link.isAddress) {
+                continue;
+            }
+            Block ref = getBlockByHash(link.getAddress(), false);
+            if (ref != null && ref.getInfo().getRef() != null
+                    && equalBytes(ref.getInfo().getRef(), block.getHashLow().toArray())
+                    && ((ref.getInfo().flags & BI_MAIN_REF) != 0)) {
+                collectConfirmedBlocks(getBlockByHash(ref.getHashLow(), true), res);
+            }
+        }
+        res.add(block);
+    }
+
     @Override
     public void startCheckMain(long period) {
         if (checkLoop == null) {
@@ -1509,12 +1649,89 @@ public class BlockchainImpl implements Blockchain {
         try {
             checkNewMain();
             // checkNewMain后xdagStats状态会发生改变
-            blockStore.saveXdagStatus(xdagStats);
+            statsDirty = true;
+            saveChainStatus();
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 将内存中的xdagStats和xdagTopStatus落盘, 未变化时跳过
+     */
+    public synchronized void saveChainStatus() {
+        if (statsDirty) {
+            statsDirty = false;
+            blockStore.saveXdagStatus(xdagStats);
+        }
+        if (topStatusDirty) {
+            topStatusDirty = false;
+            blockStore.saveXdagTopStatus(xdagTopStatus);
+        }
+    }
+
+    /**
+     * 状态按周期落盘, 异常退出时可能落后于区块数据, 启动时根据存储的数据修正:
+     * nmain按高度索引, nblocks按sums树的区块数, nnoref按孤块池, 难度按最高的主块
+     * nextra和nwaitsync对应的内存池启动时为空, 已清零; nhosts, totalnhosts来自其他节点;
+     * balance是钱包相关的累计值, 只能通过重放得到, 不修正
+     */
+    private void recoverXdagStats() {
+        long nmain = xdagStats.nmain;
+        while (nmain > 0 && !isMainAtHeight(nmain)) {
+            nmain--;
+        }
+        while (isMainAtHeight(nmain + 1)) {
+            nmain++;
+        }
+        if (nmain != xdagStats.nmain) {
+            log.info("recover nmain from {} to {}", xdagStats.nmain, nmain);
+            xdagStats.nmain = nmain;
+            xdagStats.totalnmain = Math.max(xdagStats.totalnmain, nmain);
+            statsDirty = true;
+        }
+        long nblocks = countStoredBlocks();
+        if (nblocks >= 0 && nblocks != xdagStats.nblocks) {
+            log.info("recover nblocks from {} to {}", xdagStats.nblocks, nblocks);
+            xdagStats.nblocks = nblocks;
+            xdagStats.totalnblocks = Math.max(xdagStats.totalnblocks, nblocks);
+            statsDirty = true;
+        }
+        long nnoref = orphanBlockStore.getOrphanSize();
+        if (nnoref != xdagStats.nnoref) {
+            xdagStats.nnoref = nnoref;
+            statsDirty = true;
+        }
+        Block top = nmain > 0 ? blockStore.getBlockByHeight(nmain) : null;
+        if (top != null && top.getInfo().getDifficulty().compareTo(xdagStats.difficulty) > 0) {
+            xdagStats.difficulty = top.getInfo().getDifficulty();
+            if (xdagStats.difficulty.compareTo(xdagStats.maxdifficulty) > 0) {
+                xdagStats.maxdifficulty = xdagStats.difficulty;
+            }
+            statsDirty = true;
+        }
+    }
+
+    /**
+     * sums树的根记录了每个时间段保存的区块数 (每个区块计512), 没有sums时返回-1
+     */
+    private long countStoredBlocks() {
+        Bytes sums = blockStore.getSums(BlockStore.SUM_FILE_NAME);
+        if (sums == null) {
+            return -1;
+        }
+        long size = 0;
+        for (int i = 0; i < 256; i++) {
+            size += sums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+        }
+        return size / 512;
+    }
+
+    private boolean isMainAtHeight(long height) {
+        Block block = blockStore.getBlockByHeight(height);
+        return block != null && block.getInfo().getHeight() == height && (block.getInfo().flags & BI_MAIN) != 0;
+    }
+
     @Override
     public void stopCheckMain() {
         try {
@@ -1524,9 +1741,13 @@ public class BlockchainImpl implements Blockchain {
             }
             // 关闭线程池
             checkLoop.shutdownNow();
+            indexLoop.shutdownNow();
             checkLoop.awaitTermination(5, TimeUnit.SECONDS);
+            indexLoop.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             log.error(e.getMessage(), e);
+        } finally {
+            saveChainStatus();
         }
     }
 
@@ -1645,6 +1866,15 @@ public class BlockchainImpl implements Blockchain {
     public List<Block> listMainBlocksByHeight(int count) {
         List<Block> res = new ArrayList<>();
         long currentHeight = xdagStats.nmain;
+        if (heightTable.isLoaded()) {
+            for (Bytes32 hashlow : heightTable.listDescending(currentHeight, count)) {
+                Block block = blockStore.getBlockByHash(hashlow, false);
+                if (block != null) {
+                    res.add(block);
+                }
+            }
+            return res;
+        }
         for (int i = 0; i < count; i++) {
             Block block = getBlockByHeightNew(currentHeight - i);
             if (block != null) {
@@ -1660,9 +1890,26 @@ public class BlockchainImpl implements Blockchain {
         return listMainBlocksByHeight(count);
     }
 
-    // TODO: 列出本矿池生成的主块，如果本矿池只在前期产块或者从未产块，会导致需要遍历所有的区块数据，这部分应该需要优化
+    // 列出本矿池生成的主块, 通过height -> hashlow的mined索引读取, 与主链长度无关
     @Override
     public List<Block> listMinedBlocks(int count) {
+        if (!minedIndexReady) {
+            return listMinedBlocksByWalk(count);
+        }
+        List<Block> res = Lists.newArrayList();
+        for (Bytes32 hashlow : blockStore.getMinedBlocks(count)) {
+            Block block = getBlockByHash(hashlow, false);
+            if (block != null) {
+                res.add(block);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 旧数据没有mined索引时, 补建完成前从top沿maxDiffLink回溯
+     */
+    private List<Block> listMinedBlocksByWalk(int count) {
         Block temp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false);
         if (temp == null) {
             temp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getPreTop()), false);
@@ -1684,6 +1931,108 @@ public class BlockchainImpl implements Blockchain {
         return res;
     }
 
+    /**
+     * 旧数据没有mined索引, 在indexLoop中按高度扫描一次主链补建
+     * 每批持有锁以免与setMain/unSetMain交错, 批次之间释放锁并重新排队
+     */
+    private void buildMinedIndex(long from) {
+        try {
+            long height = from;
+            synchronized (this) {
+                long end = Math.min(height + MINED_INDEX_BATCH, xdagStats.nmain + 1);
+                for (; height < end; height++) {
+                    Block block = blockStore.getBlockByHeight(height);
+                    if (block == null || block.getInfo().getHeight() != height) {
+                        continue;
+                    }
+                    int flags = block.getInfo().flags;
+                    if ((flags & BI_MAIN) != 0 && (flags & BI_OURS) != 0) {
+                        blockStore.saveMinedBlock(height, block.getHashLow());
+                    }
+                }
+                if (height > xdagStats.nmain) {
+                    blockStore.setMinedIndexReady();
+                    minedIndexReady = true;
+                    log.info("mined blocks index built, main height {}", xdagStats.nmain);
+                    return;
+                }
+            }
+            long next = height;
+            if (!indexLoop.isShutdown()) {
+                indexLoop.execute(() -> buildMinedIndex(next));
+            }
+        } catch (Throwable e) {
+            log.error("build mined blocks index failed", e);
+        }
+    }
+
+    /**
+     * 在indexLoop中从高度索引加载主链高度表, 加载完成前按高度查询仍读数据库
+     * 调用方需持有锁或处于构造阶段
+     */
+    private void startLoadHeightTable() {
+        heightTable.setLoaded(false);
+        heightDirtyFrom = Long.MAX_VALUE;
+        long limit = xdagStats.nmain;
+        indexLoop.execute(() -> loadHeightTable(1, limit));
+    }
+
+    private void markHeightDirty(long height) {
+        if (!heightTable.isLoaded()) {
+            heightDirtyFrom = Math.min(heightDirtyFrom, height);
+        }
+    }
+
+    /**
+     * 不持有锁分批读取高度索引, 只加载开始时主链内的高度, 读完后再与当前主链对齐
+     */
+    private void loadHeightTable(long from, long limit) {
+        try {
+            List<Pair<Long, Bytes32>> batch = Lists.newArrayList();
+            blockStore.fetchHeights(from, pair -> {
+                if (pair.getKey() > limit) {
+                    return Boolean.TRUE;
+                }
+                batch.add(pair);
+                return batch.size() >= HEIGHT_LOAD_BATCH;
+            });
+            for (Pair<Long, Bytes32> pair : batch) {
+                heightTable.set(pair.getKey(), pair.getValue());
+            }
+            if (batch.size() < HEIGHT_LOAD_BATCH) {
+                finishHeightTable(limit);
+                return;
+            }
+            long next = batch.get(batch.size() - 1).getKey() + 1;
+            if (!indexLoop.isShutdown()) {
+                indexLoop.execute(() -> loadHeightTable(next, limit));
+            }
+        } catch (Throwable e) {
+            log.error("load main chain height table failed", e);
+        }
+    }
+
+    /**
+     * 加载期间主链可能已回退或延长: 被改动且可能被加载覆盖的高度重新读取, 超出当前主链的高度清除
+     */
+    private synchronized void finishHeightTable(long limit) {
+        long nmain = xdagStats.nmain;
+        for (long height = heightDirtyFrom; height <= Math.min(limit, nmain); height++) {
+            Block block = blockStore.getBlockByHeight(height);
+            if (block == null) {
+                heightTable.remove(height);
+            } else {
+                heightTable.set(height, block.getHashLow());
+            }
+        }
+        for (long height = heightTable.getMaxHeight(); height > nmain; height--) {
+            heightTable.remove(height);
+        }
+        heightTable.setLoaded(true);
+        heightDirtyFrom = Long.MAX_VALUE;
+        log.info("main chain height table loaded, main height {}", heightTable.getMaxHeight());
+    }
+
     public Map<Bytes, Integer> getMemOurBlocks() {
         return memOurBlocks;
     }
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import java.util.Arrays;
+
+/**
+ * 区块导入分阶段计时, 只在回放测试时设置到BlockchainImpl, 正常运行时不计时
+ * tryToConnect是同步方法, 计时不需要额外加锁
+ */
+public class ImportProfiler {
+
+    public enum Phase {
+        /**
+         * 反序列化区块
+         */
+        PARSE,
+        /**
+         * 类型, 时间, 是否已存在及引用块检查
+         */
+        VALIDATE,
+        /**
+         * 输入签名验证
+         */
+        VERIFY,
+        /**
+         * 移除被引用的orphan, 记录交易历史
+         */
+        LINK,
+        /**
+         * 检查主链
+         */
+        CHECK_MAIN,
+        /**
+         * 检查是否为本节点的区块
+         */
+        MINE,
+        /**
+         * 计算难度
+         */
+        DIFF,
+        /**
+         * 切换主链
+         */
+        CHAIN,
+        /**
+         * 保存区块
+         */
+        STORE
+    }
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] counts = new long[Phase.values().length];
+    private long last;
+
+    /**
+     * 开始一个区块的计时
+     */
+    public void begin() {
+        last = System.nanoTime();
+    }
+
+    /**
+     * 上一个时间点到现在的耗时记到phase
+     */
+    public void mark(Phase phase) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] += now - last;
+        counts[phase.ordinal()]++;
+        last = now;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getCount(Phase phase) {
+        return counts[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return Arrays.stream(nanos).sum();
+    }
+
+    public void reset() {
+        Arrays.fill(nanos, 0);
+        Arrays.fill(counts, 0);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 主链高度表, 按高度保存主块hashlow, 常驻堆外内存
+ * hashlow前8字节恒为0, 每个高度只存后24字节, 按块分配以便主链增长时无需整体拷贝
+ */
+public class MainChainHeightTable {
+
+    private static final int HASH_OFFSET = 8;
+    private static final int ENTRY_SIZE = 32 - HASH_OFFSET;
+    private static final int CHUNK_ENTRIES = 1 << 16;
+    private static final byte[] EMPTY = new byte[ENTRY_SIZE];
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * 已写入的最大高度
+     */
+    private long maxHeight;
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+
+    public long getMaxHeight() {
+        lock.readLock().lock();
+        try {
+            return maxHeight;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void set(long height, Bytes32 hashlow) {
+        if (height <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            while ((long) chunks.size() * CHUNK_ENTRIES <= height) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_ENTRIES * ENTRY_SIZE));
+            }
+            chunk(height).put(offset(height), hashlow.toArrayUnsafe(), HASH_OFFSET, ENTRY_SIZE);
+            maxHeight = Math.max(maxHeight, height);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long height) {
+        lock.writeLock().lock();
+        try {
+            if (height <= 0 || height > maxHeight) {
+                return;
+            }
+            chunk(height).put(offset(height), EMPTY);
+            if (height == maxHeight) {
+                maxHeight--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 该高度的主块hashlow, 没有则返回null
+     */
+    public Bytes32 get(long height) {
+        lock.readLock().lock();
+        try {
+            return read(height);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从高度from向下连续读取最多count个主块hashlow, 空缺的高度跳过
+     */
+    public List<Bytes32> listDescending(long from, int count) {
+        List<Bytes32> res = new ArrayList<>(Math.max(count, 0));
+        lock.readLock().lock();
+        try {
+            for (long height = Math.min(from, maxHeight); height > 0 && res.size() < count; height--) {
+                Bytes32 hashlow = read(height);
+                if (hashlow != null) {
+                    res.add(hashlow);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return res;
+    }
+
+    private Bytes32 read(long height) {
+        if (height <= 0 || height > maxHeight) {
+            return null;
+        }
+        byte[] hashlow = new byte[32];
+        chunk(height).get(offset(height), hashlow, HASH_OFFSET, ENTRY_SIZE);
+        for (int i = HASH_OFFSET; i < hashlow.length; i++) {
+            if (hashlow[i] != 0) {
+                return Bytes32.wrap(hashlow);
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer chunk(long height) {
+        return chunks.get((int) (height / CHUNK_ENTRIES));
+    }
+
+    private static int offset(long height) {
+        return (int) (height % CHUNK_ENTRIES) * ENTRY_SIZE;
+    }
+}
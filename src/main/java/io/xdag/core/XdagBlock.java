@@ -40,7 +40,7 @@ public class XdagBlock {
      */
     private MutableBytes data;
     private long sum;
-    private XdagField[] fields;
+    private volatile XdagField[] fields;
 
     public XdagBlock() {
         fields = new XdagField[XDAG_BLOCK_FIELDS];
@@ -54,20 +54,26 @@ public class XdagBlock {
         this(MutableBytes.wrap(data));
     }
 
+    /**
+     * 字段在第一次使用时解析, 只用于转发或丢弃的数据不必解析
+     */
     public XdagBlock(MutableBytes data) {
         this.data = data;
-        if (data != null && data.size() == 512) {
-            fields = new XdagField[XDAG_BLOCK_FIELDS];
+    }
+
+    private void parseFields() {
+        if (fields == null && data != null && data.size() == 512) {
+            XdagField[] parsed = new XdagField[XDAG_BLOCK_FIELDS];
+            long total = 0;
             for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
                 MutableBytes32 fieldBytes = MutableBytes32.create();
                 fieldBytes.set(0, data.slice(i * 32, 32));
-                fields[i] = new XdagField(fieldBytes);
-                fields[i].setType(fromByte(getMsgCode(i)));
-            }
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                sum += fields[i].getSum();
-                fields[i].setType(fromByte(getMsgCode(i)));
+                parsed[i] = new XdagField(fieldBytes);
+                parsed[i].setType(fromByte(getMsgCode(i)));
+                total += parsed[i].getSum();
             }
+            sum = total;
+            fields = parsed;
         }
     }
 
@@ -77,6 +83,7 @@ public class XdagBlock {
     }
 
     public XdagField[] getFields() {
+        parseFields();
         if (this.fields == null) {
             throw new Error("no fields");
         } else {
@@ -105,6 +112,7 @@ public class XdagBlock {
      * 获取区块sums*
      */
     public long getSum() {
+        parseFields();
         return sum;
     }
 }
@@ -96,11 +96,31 @@ public class Keys {
     }
 
     public static byte[] toBytesAddress(KeyPair key) {
-        return Hash.sha256hash160(Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true)));
+        return toBytesAddress(key.getPublicKey());
     }
 
     public static byte[] toBytesAddress(SECPPublicKey publicKey){
-        return Hash.sha256hash160(Bytes.wrap(publicKey.asEcPoint(Sign.CURVE).getEncoded(true)));
+        return Hash.sha256hash160(Bytes.wrap(toCompressedPubKey(publicKey)));
+    }
+
+    /**
+     * Returns the 33 bytes compressed form of the public key. The prefix only depends on the parity of y, so no
+     * curve arithmetic is needed.
+     */
+    public static byte[] toCompressedPubKey(SECPPublicKey publicKey) {
+        byte[] encoded = publicKey.getEncoded();
+        byte[] compressed = new byte[33];
+        compressed[0] = isPubKeyYOdd(publicKey) ? (byte) 0x03 : (byte) 0x02;
+        System.arraycopy(encoded, 0, compressed, 1, 32);
+        return compressed;
+    }
+
+    /**
+     * Returns whether the y coordinate of the public key is odd, i.e. the compressed prefix is 0x03.
+     */
+    public static boolean isPubKeyYOdd(SECPPublicKey publicKey) {
+        byte[] encoded = publicKey.getEncoded();
+        return (encoded[encoded.length - 1] & 1) == 1;
     }
 
 }
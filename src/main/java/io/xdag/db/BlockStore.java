@@ -49,6 +49,8 @@ public interface BlockStore {
     byte BLOCK_HEIGHT = (byte) 0x80;
     byte SNAPSHOT_PRESEED = (byte) 0x90;
     byte TX_HISTORY = (byte) 0xa0;
+    byte MINED_BLOCK_HEIGHT = (byte) 0xb0;
+    byte SETTING_MINED_INDEX = (byte) 0xb1;
     String SUM_FILE_NAME = "sums.dat";
 
     void init();
@@ -73,10 +75,21 @@ public interface BlockStore {
 
     List<Block> getBlocksUsedTime(long startTime, long endTime);
 
+    /**
+     * 按时间索引顺序读取[startTime, endTime)内的区块, 从after之后开始, 最多limit个
+     * after为null时从startTime开始
+     */
+    List<Block> getBlocksUsedTime(long startTime, long endTime, Block after, int limit);
+
     List<Block> getBlocksByTime(long startTime);
 
     Block getBlockByHeight(long height);
 
+    /**
+     * 从高度from开始遍历高度索引(height -> hashlow), 按高度从低到高
+     */
+    void fetchHeights(long from, Function<Pair<Long, Bytes32>, Boolean> function);
+
     Block getBlockByHash(Bytes32 hashlow, boolean isRaw);
 
     Block getBlockInfoByHash(Bytes32 hashlow);
@@ -91,6 +104,20 @@ public interface BlockStore {
 
     void fetchOurBlocks(Function<Pair<Integer, Block>, Boolean> function);
 
+    // mined blocks: height -> hashlow of our main blocks
+    void saveMinedBlock(long height, Bytes32 hashlow);
+
+    void removeMinedBlock(long height);
+
+    /**
+     * 按高度从高到低返回最近的count个我们挖到的主块hashlow
+     */
+    List<Bytes32> getMinedBlocks(int count);
+
+    boolean isMinedIndexReady();
+
+    void setMinedIndexReady();
+
     // Snapshot Boot
     boolean isSnapshotBoot();
 
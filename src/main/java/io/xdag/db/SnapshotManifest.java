@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import io.xdag.crypto.Hash;
+import io.xdag.utils.BytesUtils;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 节点间传输的状态快照清单
+ * 快照数据由记录组成: [类型 1][key长度 2][key][value长度 4][value], 按顺序切分为不超过CHUNK_SIZE的分块, 记录不跨分块
+ * 清单头包含快照高度, 该高度主块的hashlow和难度, 以及分页哈希; 每页保存PAGE_HASHES个分块的sha256
+ * 接收方以清单头的哈希区分不同节点提供的快照, 分页和分块按清单中的哈希校验
+ */
+@Getter
+public class SnapshotManifest {
+
+    /**
+     * 与BLOCKS_BATCH的最大数据长度相同
+     */
+    public static final int CHUNK_SIZE = 64 * 512;
+    public static final int PAGE_HASHES = 1000;
+    /**
+     * 请求和应答中的类型: 清单头, 分页, 分块
+     */
+    public static final int PART_HEADER = 0;
+    public static final int PART_PAGE = 1;
+    public static final int PART_CHUNK = 2;
+    /**
+     * 写入SNAPSHOT/BLOCKS的区块信息
+     */
+    public static final byte SECTION_BLOCKS = 1;
+    /**
+     * 写入SNAPSHOT/ADDRESS的账户余额
+     */
+    public static final byte SECTION_ADDRESS = 2;
+
+    private static final int HEADER_FIXED_SIZE = 8 + 8 + 32 + 32 + 4 + 4;
+    private static final int RECORD_OVERHEAD = 1 + 2 + 4;
+
+    private final long height;
+    private final long time;
+    private final Bytes32 mainHashLow;
+    private final BigInteger difficulty;
+    private final int chunkCount;
+    private final List<Bytes32> pageHashes;
+    private final Bytes32 root;
+    /**
+     * 接收方在分页校验通过前为null
+     */
+    private final Bytes32[] chunkHashes;
+
+    public SnapshotManifest(long height, long time, Bytes32 mainHashLow, BigInteger difficulty,
+            List<Bytes32> chunkHashes) {
+        this.height = height;
+        this.time = time;
+        this.mainHashLow = mainHashLow;
+        this.difficulty = difficulty;
+        this.chunkCount = chunkHashes.size();
+        this.chunkHashes = chunkHashes.toArray(new Bytes32[0]);
+        List<Bytes32> pages = new ArrayList<>();
+        for (int page = 0; page < pageCount(chunkCount); page++) {
+            pages.add(Hash.sha256(Bytes.wrap(encodePage(page))));
+        }
+        this.pageHashes = Collections.unmodifiableList(pages);
+        this.root = Hash.sha256(Bytes.wrap(encodeHeader()));
+    }
+
+    private SnapshotManifest(long height, long time, Bytes32 mainHashLow, BigInteger difficulty, int chunkCount,
+            List<Bytes32> pageHashes, Bytes32 root) {
+        this.height = height;
+        this.time = time;
+        this.mainHashLow = mainHashLow;
+        this.difficulty = difficulty;
+        this.chunkCount = chunkCount;
+        this.pageHashes = Collections.unmodifiableList(pageHashes);
+        this.chunkHashes = new Bytes32[chunkCount];
+        this.root = root;
+    }
+
+    private static int pageCount(int chunkCount) {
+        return (chunkCount + PAGE_HASHES - 1) / PAGE_HASHES;
+    }
+
+    public int getPageCount() {
+        return pageHashes.size();
+    }
+
+    public byte[] encodeHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_FIXED_SIZE + pageHashes.size() * 32);
+        buffer.putLong(height);
+        buffer.putLong(time);
+        buffer.put(mainHashLow.toArrayUnsafe());
+        buffer.put(BytesUtils.bigIntegerToBytes(difficulty, 32));
+        buffer.putInt(chunkCount);
+        buffer.putInt(pageHashes.size());
+        for (Bytes32 hash : pageHashes) {
+            buffer.put(hash.toArrayUnsafe());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static SnapshotManifest decodeHeader(byte[] data) {
+        if (data.length < HEADER_FIXED_SIZE || data.length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid snapshot header length " + data.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long height = buffer.getLong();
+        long time = buffer.getLong();
+        byte[] hash = new byte[32];
+        buffer.get(hash);
+        byte[] diff = new byte[32];
+        buffer.get(diff);
+        int chunkCount = buffer.getInt();
+        int pageCount = buffer.getInt();
+        if (height <= 0 || chunkCount <= 0 || pageCount != pageCount(chunkCount)
+                || buffer.remaining() != pageCount * 32) {
+            throw new IllegalArgumentException("Invalid snapshot header, height " + height
+                    + " chunks " + chunkCount + " pages " + pageCount);
+        }
+        List<Bytes32> pages = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            byte[] page = new byte[32];
+            buffer.get(page);
+            pages.add(Bytes32.wrap(page));
+        }
+        return new SnapshotManifest(height, time, Bytes32.wrap(hash), new BigInteger(1, diff), chunkCount, pages,
+                Hash.sha256(Bytes.wrap(data)));
+    }
+
+    public byte[] encodePage(int page) {
+        int from = page * PAGE_HASHES;
+        int to = Math.min(from + PAGE_HASHES, chunkCount);
+        ByteBuffer buffer = ByteBuffer.allocate((to - from) * 32);
+        for (int i = from; i < to; i++) {
+            buffer.put(chunkHashes[i].toArrayUnsafe());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 校验分页并填入其中的分块哈希
+     */
+    public synchronized boolean addPage(int page, byte[] data) {
+        if (page < 0 || page >= pageHashes.size()
+                || !pageHashes.get(page).equals(Hash.sha256(Bytes.wrap(data)))) {
+            return false;
+        }
+        int from = page * PAGE_HASHES;
+        if (data.length != (Math.min(from + PAGE_HASHES, chunkCount) - from) * 32) {
+            return false;
+        }
+        for (int i = 0; i < data.length / 32; i++) {
+            chunkHashes[from + i] = Bytes32.wrap(Arrays.copyOfRange(data, i * 32, i * 32 + 32));
+        }
+        return true;
+    }
+
+    public synchronized boolean hasPage(int page) {
+        return chunkHashes[page * PAGE_HASHES] != null;
+    }
+
+    public synchronized boolean verifyChunk(int index, byte[] data) {
+        return index >= 0 && index < chunkCount && chunkHashes[index] != null
+                && chunkHashes[index].equals(Hash.sha256(Bytes.wrap(data)));
+    }
+
+    /**
+     * 依次读出分块中的记录
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static void forEachRecord(byte[] chunk, RecordConsumer consumer) {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < RECORD_OVERHEAD) {
+                throw new IllegalArgumentException("Truncated snapshot record");
+            }
+            byte section = buffer.get();
+            byte[] key = new byte[buffer.getShort() & 0xffff];
+            if (buffer.remaining() < key.length + 4) {
+                throw new IllegalArgumentException("Truncated snapshot record");
+            }
+            buffer.get(key);
+            int valueLength = buffer.getInt();
+            if (valueLength < 0 || buffer.remaining() < valueLength) {
+                throw new IllegalArgumentException("Truncated snapshot record");
+            }
+            byte[] value = new byte[valueLength];
+            buffer.get(value);
+            consumer.accept(section, key, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[snapshot height=" + height + " main=" + mainHashLow.toHexString() + " chunks=" + chunkCount
+                + " root=" + root.toHexString() + "]";
+    }
+
+    public interface RecordConsumer {
+
+        void accept(byte section, byte[] key, byte[] value);
+    }
+
+    /**
+     * 把记录按顺序写入分块, 分块写满时交给output并记录其哈希
+     */
+    public static class ChunkWriter {
+
+        private final Consumer<byte[]> output;
+        private final List<Bytes32> hashes = new ArrayList<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+        public ChunkWriter(Consumer<byte[]> output) {
+            this.output = output;
+        }
+
+        public void add(byte section, byte[] key, byte[] value) {
+            int size = RECORD_OVERHEAD + key.length + value.length;
+            if (size > CHUNK_SIZE || key.length > 0xffff) {
+                throw new IllegalArgumentException("Snapshot record too large: " + size);
+            }
+            if (buffer.remaining() < size) {
+                flush();
+            }
+            buffer.put(section);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+
+        private void flush() {
+            if (buffer.position() == 0) {
+                return;
+            }
+            byte[] chunk = Arrays.copyOf(buffer.array(), buffer.position());
+            buffer.clear();
+            hashes.add(Hash.sha256(Bytes.wrap(chunk)));
+            output.accept(chunk);
+        }
+
+        /**
+         * @return 全部分块的哈希
+         */
+        public List<Bytes32> finish() {
+            flush();
+            return hashes;
+        }
+    }
+}
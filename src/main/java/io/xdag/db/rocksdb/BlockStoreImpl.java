@@ -52,6 +52,7 @@ import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -276,6 +277,34 @@ public class BlockStoreImpl implements BlockStore {
         });
     }
 
+    public void saveMinedBlock(long height, Bytes32 hashlow) {
+        indexSource.put(BlockUtils.getMinedKey(height), hashlow.toArray());
+    }
+
+    public void removeMinedBlock(long height) {
+        indexSource.delete(BlockUtils.getMinedKey(height));
+    }
+
+    public List<Bytes32> getMinedBlocks(int count) {
+        List<Bytes32> res = Lists.newArrayList();
+        if (count <= 0) {
+            return res;
+        }
+        indexSource.fetchPrefix(new byte[]{MINED_BLOCK_HEIGHT}, pair -> {
+            res.add(Bytes32.wrap(pair.getValue()));
+            return res.size() >= count;
+        });
+        return res;
+    }
+
+    public boolean isMinedIndexReady() {
+        return indexSource.get(new byte[]{SETTING_MINED_INDEX}) != null;
+    }
+
+    public void setMinedIndexReady() {
+        indexSource.put(new byte[]{SETTING_MINED_INDEX}, BytesUtils.intToBytes(1, false));
+    }
+
     public void saveBlockSums(Block block) {
         long size = 512;
         long sum = block.getXdagBlock().getSum();
@@ -438,6 +467,30 @@ public class BlockStoreImpl implements BlockStore {
         return res;
     }
 
+    public List<Block> getBlocksUsedTime(long startTime, long endTime, Block after, int limit) {
+        List<Block> res = Lists.newArrayList();
+        byte[] start = after == null ? BlockUtils.getTimeKey(startTime, null)
+                : BlockUtils.getTimeKey(after.getTimestamp(), after.getHashLow());
+        // 只比较前缀 + time, endTime所在的时间段不包含在内
+        byte[] end = BlockUtils.getTimeKey(endTime, null);
+        timeSource.fetchPrefix(new byte[]{TIME_HASH_INFO}, start, pair -> {
+            byte[] key = pair.getKey();
+            if (Arrays.compareUnsigned(key, end) >= 0) {
+                return Boolean.TRUE;
+            }
+            if (after != null && Arrays.equals(key, start)) {
+                return Boolean.FALSE;
+            }
+            // 1 + 8 : prefix + time
+            Block block = getBlockByHash(Bytes32.wrap(BytesUtils.subArray(key, 1 + 8, 32)), true);
+            if (block != null) {
+                res.add(block);
+            }
+            return res.size() >= limit;
+        });
+        return res;
+    }
+
     public List<Block> getBlocksByTime(long startTime) {
         List<Block> blocks = Lists.newArrayList();
         byte[] keyPrefix = BlockUtils.getTimeKey(startTime, null);
@@ -462,6 +515,13 @@ public class BlockStoreImpl implements BlockStore {
         return getBlockByHash(Bytes32.wrap(hashlow), false);
     }
 
+    public void fetchHeights(long from, Function<Pair<Long, Bytes32>, Boolean> function) {
+        indexSource.fetchPrefix(new byte[]{BLOCK_HEIGHT}, BlockUtils.getHeight(from), pair -> {
+            long height = BytesUtils.bytesToLong(pair.getKey(), 1, false);
+            return function.apply(Pair.of(height, Bytes32.wrap(pair.getValue())));
+        });
+    }
+
     public Block getBlockByHash(Bytes32 hashlow, boolean isRaw) {
         if (isRaw) {
             return getRawBlockByHash(hashlow);
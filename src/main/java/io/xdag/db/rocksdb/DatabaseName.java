@@ -50,5 +50,10 @@ public enum DatabaseName {
 
     SNAPSHOT,
 
-    ADDRESS
+    ADDRESS,
+
+    /**
+     * Known peers.
+     */
+    PEER
 }
@@ -55,6 +55,11 @@ public interface KVSource<K, V> {
 
     void fetchPrefix(byte[] key, Function<Pair<K, V>, Boolean> func);
 
+    /**
+     * 从start开始遍历以prefix为前缀的key, func返回true时停止
+     */
+    void fetchPrefix(byte[] prefix, byte[] start, Function<Pair<K, V>, Boolean> func);
+
     List<V> prefixValueLookup(byte[] key);
 
     List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key);
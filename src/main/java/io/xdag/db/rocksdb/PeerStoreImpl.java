@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.db.PeerStore;
+import io.xdag.net.node.PeerInfo;
+import io.xdag.utils.BytesUtils;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+
+@Slf4j
+public class PeerStoreImpl implements PeerStore {
+
+    // <host:port, peer info>
+    private final KVSource<byte[], byte[]> peerSource;
+
+    public PeerStoreImpl(KVSource<byte[], byte[]> peerSource) {
+        this.peerSource = peerSource;
+    }
+
+    public void init() {
+        peerSource.init();
+    }
+
+    public void reset() {
+        peerSource.reset();
+    }
+
+    public void save(PeerInfo peer) {
+        // 关闭后收到的断开事件不再写入
+        if (peerSource.isAlive()) {
+            peerSource.put(getKey(peer.getHost(), peer.getPort()), peer.toBytes());
+        }
+    }
+
+    public void delete(PeerInfo peer) {
+        if (peerSource.isAlive()) {
+            peerSource.delete(getKey(peer.getHost(), peer.getPort()));
+        }
+    }
+
+    public List<PeerInfo> getPeers() {
+        List<PeerInfo> peers = Lists.newArrayList();
+        for (Pair<byte[], byte[]> pair : peerSource.prefixKeyAndValueLookup(BytesUtils.of(PEER_PREFIX))) {
+            String address = new String(pair.getKey(), 1, pair.getKey().length - 1, StandardCharsets.UTF_8);
+            int index = address.lastIndexOf(':');
+            try {
+                peers.add(PeerInfo.fromBytes(address.substring(0, index),
+                        Integer.parseInt(address.substring(index + 1)), pair.getValue()));
+            } catch (RuntimeException e) {
+                log.debug("Skip illegal peer {}", address);
+            }
+        }
+        return peers;
+    }
+
+    private static byte[] getKey(String host, int port) {
+        return BytesUtils.merge(PEER_PREFIX, (host + ":" + port).getBytes(StandardCharsets.UTF_8));
+    }
+}
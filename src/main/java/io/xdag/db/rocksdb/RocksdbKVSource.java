@@ -57,6 +57,7 @@ import org.rocksdb.RestoreOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Statistics;
 
 @Slf4j
 @Setter
@@ -78,6 +79,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     private String name;
     private RocksDB db;
     private ReadOptions readOpts;
+    /**
+     * 开启统计时记录写入字节数
+     */
+    private Statistics statistics;
     private boolean alive;
     private int prefixSeekLength;
 
@@ -117,6 +122,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 options.setLevelCompactionDynamicLevelBytes(true);
                 options.setMaxOpenFiles(config.getNodeSpec().getStoreMaxOpenFiles());
                 options.setIncreaseParallelism(config.getNodeSpec().getStoreMaxThreads());
+                if (config.getNodeSpec().isStoreStatistics()) {
+                    statistics = new Statistics();
+                    options.setStatistics(statistics);
+                }
 
                 // key prefix for state node lookups
                 options.useFixedLengthPrefixExtractor(prefixSeekLength);
@@ -347,10 +356,15 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        fetchPrefix(key, key, func);
+    }
+
+    @Override
+    public void fetchPrefix(byte[] prefix, byte[] start, Function<Pair<byte[], byte[]>, Boolean> func) {
         resetDbLock.readLock().lock();
         try (RocksIterator it = db.newIterator(readOpts)) {
-            for (it.seek(key); it.isValid(); it.next()) {
-                if (BytesUtils.keyStartsWith(it.key(), key)) {
+            for (it.seek(start); it.isValid(); it.next()) {
+                if (BytesUtils.keyStartsWith(it.key(), prefix)) {
                     if (func.apply(Pair.of(it.key(), it.value()))) {
                         return;
                     }
@@ -378,6 +392,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             log.debug("Close db: {}", name);
             db.close();
             readOpts.close();
+            if (statistics != null) {
+                statistics.close();
+                statistics = null;
+            }
 
             alive = false;
 
@@ -0,0 +1,246 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static io.xdag.config.RandomXConstants.SEEDHASH_EPOCH_BLOCKS;
+import static io.xdag.config.RandomXConstants.SEEDHASH_EPOCH_LAG;
+import static io.xdag.db.BlockStore.SNAPSHOT_PRESEED;
+
+import io.xdag.config.Config;
+import io.xdag.core.Block;
+import io.xdag.core.Blockchain;
+import io.xdag.db.SnapshotManifest;
+import io.xdag.db.SnapshotManifest.ChunkWriter;
+import io.xdag.utils.BytesUtils;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes32;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+
+/**
+ * 从本节点数据库导出状态快照, 供新节点下载
+ * 主链到达EXPORT_INTERVAL的整数倍高度时, 在区块链锁内取得INDEX和ADDRESS的RocksDB快照,
+ * 再经过CONFIRMATIONS个主块且该高度的主块未变化时导出, 各节点在同一高度导出相同的快照
+ * 区块信息按 {@link SnapshotStoreImpl#makeSnapshot} 筛选, 分块保存在SNAPSHOT/CHUNKS, 新快照完成后删除旧的分块
+ */
+@Slf4j
+public class SnapshotExporter {
+
+    /**
+     * 快照高度为该值的整数倍
+     */
+    public static final long EXPORT_INTERVAL = 1024;
+    /**
+     * 快照高度之后需要的主块数, 期间主链切换时放弃这次导出
+     */
+    public static final long CONFIRMATIONS = 64;
+    /**
+     * 检查间隔, 单位秒, 远小于出块周期, 不会错过对齐的高度
+     */
+    private static final long CHECK_PERIOD = 1;
+    /**
+     * 快照高度之前需要保留的主块数, 接收方加载RandomX种子时按高度读取
+     */
+    static final long SEED_WINDOW = 2 * SEEDHASH_EPOCH_BLOCKS + SEEDHASH_EPOCH_LAG;
+
+    private final RocksdbKVSource indexSource;
+    private final RocksdbKVSource blockSource;
+    private final RocksdbKVSource addressSource;
+    private final RocksdbKVSource exportSource;
+    private final RocksdbKVSource chunkSource;
+    private ScheduledExecutorService exportTask;
+    private Capture capture;
+
+    @Getter
+    private volatile SnapshotManifest manifest;
+
+    /**
+     * @param blockSource 保存区块数据的数据库, 与 {@link BlockStoreImpl} 的block参数相同
+     */
+    public SnapshotExporter(Config config, RocksdbKVSource indexSource, RocksdbKVSource blockSource,
+            RocksdbKVSource addressSource) {
+        this.indexSource = indexSource;
+        this.blockSource = blockSource;
+        this.addressSource = addressSource;
+        this.exportSource = new RocksdbKVSource("SNAPSHOT/EXPORT");
+        this.exportSource.setConfig(config);
+        this.chunkSource = new RocksdbKVSource("SNAPSHOT/CHUNKS");
+        this.chunkSource.setConfig(config);
+    }
+
+    public void start(Blockchain blockchain) {
+        // 上次运行的分块没有对应的清单
+        chunkSource.reset();
+        exportTask = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("xdag-snapshot-export-%d")
+                .daemon(true)
+                .build());
+        exportTask.scheduleWithFixedDelay(() -> {
+            try {
+                check(blockchain);
+            } catch (Throwable e) {
+                log.error("Snapshot export error", e);
+            }
+        }, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (exportTask != null) {
+            exportTask.shutdownNow();
+        }
+        if (capture != null) {
+            release(capture);
+            capture = null;
+        }
+        exportSource.close();
+        chunkSource.close();
+    }
+
+    /**
+     * 主链到达对齐的高度时取得快照, 确认后导出
+     *
+     * @return 新的清单, 没有导出时返回null
+     */
+    public synchronized SnapshotManifest check(Blockchain blockchain) throws RocksDBException {
+        if (capture == null) {
+            // 导入区块和主链切换都在区块链锁内完成
+            synchronized (blockchain) {
+                long nmain = blockchain.getXdagStats().nmain;
+                if (nmain == 0 || nmain % EXPORT_INTERVAL != 0
+                        || (manifest != null && manifest.getHeight() >= nmain)) {
+                    return null;
+                }
+                Block main = blockchain.getBlockByHeight(nmain);
+                if (main == null) {
+                    return null;
+                }
+                capture = new Capture(nmain, main.getTimestamp(), main.getHashLow().copy(),
+                        main.getInfo().getDifficulty(), indexSource.getDb().getSnapshot(),
+                        addressSource.getDb().getSnapshot());
+            }
+            log.info("Snapshot state taken at height {}", capture.height());
+            return null;
+        }
+        if (blockchain.getXdagStats().nmain < capture.height() + CONFIRMATIONS) {
+            return null;
+        }
+        Capture current = capture;
+        capture = null;
+        try {
+            Block main = blockchain.getBlockByHeight(current.height());
+            if (main == null || !main.getHashLow().equals(current.mainHashLow())) {
+                log.info("Snapshot at height {} dropped, main block changed", current.height());
+                return null;
+            }
+            return export(current);
+        } finally {
+            release(current);
+        }
+    }
+
+    private SnapshotManifest export(Capture current) throws RocksDBException {
+        long start = System.currentTimeMillis();
+        long height = current.height();
+        List<Bytes32> hashes;
+        try (ReadOptions indexOptions = new ReadOptions().setSnapshot(current.indexSnapshot());
+                ReadOptions addressOptions = new ReadOptions().setSnapshot(current.addressSnapshot())) {
+            exportSource.reset();
+            SnapshotStoreImpl store = new SnapshotStoreImpl(exportSource);
+            store.makeSnapshot(blockSource, indexSource, false, indexOptions);
+            store.saveMainBlocks(blockSource, indexSource, height - SEED_WINDOW, height, indexOptions);
+            byte[] preSeed = indexSource.getDb().get(indexOptions, new byte[]{SNAPSHOT_PRESEED});
+            if (preSeed != null) {
+                exportSource.put(new byte[]{SNAPSHOT_PRESEED}, preSeed);
+            }
+
+            AtomicInteger index = new AtomicInteger();
+            ChunkWriter writer = new ChunkWriter(chunk -> chunkSource.put(chunkKey(height, index.getAndIncrement()),
+                    chunk));
+            try (RocksIterator iter = exportSource.getDb().newIterator()) {
+                for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                    writer.add(SnapshotManifest.SECTION_BLOCKS, iter.key(), iter.value());
+                }
+            }
+            try (RocksIterator iter = addressSource.getDb().newIterator(addressOptions)) {
+                for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                    writer.add(SnapshotManifest.SECTION_ADDRESS, iter.key(), iter.value());
+                }
+            }
+            hashes = writer.finish();
+        }
+
+        SnapshotManifest old = manifest;
+        manifest = new SnapshotManifest(height, current.time(), current.mainHashLow(), current.difficulty(), hashes);
+        if (old != null) {
+            for (int i = 0; i < old.getChunkCount(); i++) {
+                chunkSource.delete(chunkKey(old.getHeight(), i));
+            }
+        }
+        log.info("Snapshot export {} done in {} ms", manifest, System.currentTimeMillis() - start);
+        return manifest;
+    }
+
+    /**
+     * @param height 为0时使用最新的快照
+     * @return 没有对应的快照或序号超出范围时返回null
+     */
+    public byte[] get(int part, long height, int index) {
+        SnapshotManifest current = manifest;
+        if (current == null || (height != 0 && height != current.getHeight())) {
+            return null;
+        }
+        return switch (part) {
+            case SnapshotManifest.PART_HEADER -> current.encodeHeader();
+            case SnapshotManifest.PART_PAGE -> index >= 0 && index < current.getPageCount()
+                    ? current.encodePage(index) : null;
+            case SnapshotManifest.PART_CHUNK -> index >= 0 && index < current.getChunkCount()
+                    ? chunkSource.get(chunkKey(current.getHeight(), index)) : null;
+            default -> null;
+        };
+    }
+
+    private void release(Capture current) {
+        indexSource.getDb().releaseSnapshot(current.indexSnapshot());
+        addressSource.getDb().releaseSnapshot(current.addressSnapshot());
+    }
+
+    private record Capture(long height, long time, Bytes32 mainHashLow, BigInteger difficulty,
+            Snapshot indexSnapshot, Snapshot addressSnapshot) {
+    }
+
+    private static byte[] chunkKey(long height, int index) {
+        return BytesUtils.merge(BytesUtils.longToBytes(height, false), BytesUtils.intToBytes(index, false));
+    }
+}
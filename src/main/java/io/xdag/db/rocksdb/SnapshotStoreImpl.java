@@ -51,6 +51,7 @@ import io.xdag.db.BlockStore;
 import io.xdag.db.SnapshotStore;
 import io.xdag.db.execption.DeserializationException;
 import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.BlockUtils;
 import io.xdag.utils.BytesUtils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -65,6 +66,8 @@ import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
 import org.hyperledger.besu.crypto.SECPSignature;
 import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 
 @Slf4j
@@ -113,7 +116,20 @@ public class SnapshotStoreImpl implements SnapshotStore {
     }
 
     public void makeSnapshot(RocksdbKVSource blockSource, RocksdbKVSource indexSource,boolean b) {
-        try (RocksIterator iter = indexSource.getDb().newIterator()) {
+        try (ReadOptions readOptions = new ReadOptions()) {
+            makeSnapshot(blockSource, indexSource, b, readOptions);
+        }
+
+        byte[] preSeed = snapshotSource.get(new byte[]{SNAPSHOT_PRESEED});
+        snapshotSource.put(new byte[]{SNAPSHOT_PRESEED}, preSeed);
+    }
+
+    /**
+     * 按readOptions中的RocksDB快照读取INDEX, 节点运行时导出与某一高度一致的状态
+     */
+    public void makeSnapshot(RocksdbKVSource blockSource, RocksdbKVSource indexSource, boolean b,
+            ReadOptions readOptions) {
+        try (RocksIterator iter = indexSource.getDb().newIterator(readOptions)) {
             for (iter.seek(new byte[]{HASH_BLOCK_INFO}); iter.isValid() && iter.key()[0] < SUMS_BLOCK_INFO; iter.next()) {
                 PreBlockInfo preBlockInfo;
                 BlockInfo blockInfo = new BlockInfo();
@@ -158,9 +174,36 @@ public class SnapshotStoreImpl implements SnapshotStore {
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
+    }
 
-        byte[] preSeed = snapshotSource.get(new byte[]{SNAPSHOT_PRESEED});
-        snapshotSource.put(new byte[]{SNAPSHOT_PRESEED}, preSeed);
+    /**
+     * 保存高度范围内的主块信息, 没有余额的主块也要包含, 接收方以此设置链状态和RandomX种子
+     */
+    public void saveMainBlocks(RocksdbKVSource blockSource, RocksdbKVSource indexSource, long from, long to,
+            ReadOptions readOptions) throws RocksDBException {
+        for (long h = Math.max(1, from); h <= to; h++) {
+            byte[] hashlow = indexSource.getDb().get(readOptions, BlockUtils.getHeight(h));
+            if (hashlow == null) {
+                continue;
+            }
+            byte[] key = BytesUtils.merge(HASH_BLOCK_INFO, hashlow);
+            byte[] value = indexSource.getDb().get(readOptions, key);
+            if (value == null || snapshotSource.get(key) != null) {
+                continue;
+            }
+            try {
+                BlockInfo blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
+                byte[] raw = blockSource.get(hashlow);
+                if (raw != null) {
+                    blockInfo.setSnapshot(true);
+                    blockInfo.setSnapshotInfo(new SnapshotInfo(false, raw));
+                }
+                blockInfo.setFlags(blockInfo.getFlags() & ~BI_OURS);
+                snapshotSource.put(key, serialize(blockInfo));
+            } catch (DeserializationException | SerializationException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
     }
 
     public void saveSnapshotToIndex(BlockStore blockStore, List<KeyPair> keys,long snapshotTime) {
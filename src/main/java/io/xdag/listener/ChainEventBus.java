@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.listener;
+
+import io.xdag.config.Constants.MessageType;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * 链事件总线
+ * 每个订阅者拥有独立的有界队列和分发线程, 发布方(导块线程)只做入队, 不会被慢的订阅者阻塞
+ */
+@Slf4j
+public class ChainEventBus {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("chain-event-%d")
+            .daemon(true)
+            .build();
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新到的事件
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃队列中最旧的事件
+         */
+        DROP_OLDEST
+    }
+
+    private final int defaultQueueSize;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(factory);
+    private volatile boolean running = true;
+
+    public ChainEventBus() {
+        this(DEFAULT_QUEUE_SIZE);
+    }
+
+    public ChainEventBus(int defaultQueueSize) {
+        this.defaultQueueSize = defaultQueueSize > 0 ? defaultQueueSize : DEFAULT_QUEUE_SIZE;
+    }
+
+    /**
+     * 兼容原有Listener: 只订阅NEW_LINK和PRE_TOP, PRE_TOP合并, 队列满时丢弃最旧事件
+     */
+    public Subscription subscribe(Listener listener) {
+        return subscribe(listener.getClass().getSimpleName(), listener, defaultQueueSize,
+                OverflowPolicy.DROP_OLDEST, EnumSet.of(MessageType.NEW_LINK, MessageType.PRE_TOP),
+                EnumSet.of(MessageType.PRE_TOP));
+    }
+
+    /**
+     * @param name 订阅者名称, 用于日志和统计
+     * @param types 关心的事件类型
+     * @param coalesced 可合并的事件类型, 未被处理前只保留最新的一个
+     */
+    public Subscription subscribe(String name, Listener listener, int queueSize, OverflowPolicy policy,
+            Set<MessageType> types, Set<MessageType> coalesced) {
+        Subscription subscription = new Subscription(name, listener, queueSize, policy, types, coalesced);
+        subscriptions.add(subscription);
+        executor.execute(subscription::dispatchLoop);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+        subscription.active = false;
+    }
+
+    public void publish(Message message) {
+        publish(message, false);
+    }
+
+    /**
+     * 本节点产生的事件, 如XdagPow广播的链接块, 队列满时也不丢弃, 不占用队列容量
+     */
+    public void publishLocal(Message message) {
+        publish(message, true);
+    }
+
+    private void publish(Message message, boolean local) {
+        if (!running) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.types.contains(message.getType())) {
+                subscription.offer(message, local);
+            }
+        }
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    public void stop() {
+        running = false;
+        for (Subscription subscription : subscriptions) {
+            subscription.active = false;
+        }
+        subscriptions.clear();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Getter
+    public static class Subscription {
+
+        private final String name;
+        private final OverflowPolicy policy;
+        private final Set<MessageType> types;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong merged = new AtomicLong();
+
+        @Getter(lombok.AccessLevel.NONE)
+        private final Listener listener;
+        @Getter(lombok.AccessLevel.NONE)
+        private final int capacity;
+        /**
+         * 队列本身不限长度, 可丢弃的事件数量不超过capacity
+         */
+        @Getter(lombok.AccessLevel.NONE)
+        private final BlockingQueue<Queued> queue = new LinkedBlockingQueue<>();
+        @Getter(lombok.AccessLevel.NONE)
+        private final AtomicInteger droppable = new AtomicInteger();
+        /**
+         * 可合并类型的最新事件, 非空表示队列中已有该类型的占位
+         */
+        @Getter(lombok.AccessLevel.NONE)
+        private final Map<MessageType, AtomicReference<Message>> latest = new EnumMap<>(MessageType.class);
+        private volatile boolean active = true;
+
+        Subscription(String name, Listener listener, int queueSize, OverflowPolicy policy,
+                Set<MessageType> types, Set<MessageType> coalesced) {
+            this.name = name;
+            this.listener = listener;
+            this.policy = policy;
+            this.types = EnumSet.copyOf(types);
+            this.capacity = queueSize;
+            for (MessageType type : coalesced) {
+                latest.put(type, new AtomicReference<>());
+            }
+        }
+
+        public int getQueueSize() {
+            return queue.size();
+        }
+
+        synchronized void offer(Message message, boolean local) {
+            AtomicReference<Message> ref = latest.get(message.getType());
+            if (ref != null && ref.getAndSet(message) != null) {
+                // 队列中已有占位, 分发时取最新值
+                merged.incrementAndGet();
+                return;
+            }
+            if (local) {
+                queue.add(new Queued(message, true));
+                return;
+            }
+            if (droppable.get() < capacity) {
+                droppable.incrementAndGet();
+                queue.add(new Queued(message, false));
+                return;
+            }
+            dropped.incrementAndGet();
+            Queued oldest = policy == OverflowPolicy.DROP_OLDEST ? removeOldest() : null;
+            if (oldest == null) {
+                if (ref != null) {
+                    ref.set(null);
+                }
+                return;
+            }
+            AtomicReference<Message> oldestRef = latest.get(oldest.message().getType());
+            if (oldestRef != null) {
+                oldestRef.set(null);
+            }
+            queue.add(new Queued(message, false));
+        }
+
+        /**
+         * 移除最旧的可丢弃事件, 本节点产生的事件保留
+         */
+        private Queued removeOldest() {
+            Iterator<Queued> it = queue.iterator();
+            while (it.hasNext()) {
+                Queued queued = it.next();
+                if (!queued.local()) {
+                    it.remove();
+                    return queued;
+                }
+            }
+            return null;
+        }
+
+        void dispatchLoop() {
+            while (active) {
+                Queued queued;
+                try {
+                    queued = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (!queued.local()) {
+                    droppable.decrementAndGet();
+                }
+                Message message = queued.message();
+                AtomicReference<Message> ref = latest.get(message.getType());
+                if (ref != null) {
+                    message = ref.getAndSet(null);
+                    if (message == null) {
+                        continue;
+                    }
+                }
+                try {
+                    listener.onMessage(message);
+                    delivered.incrementAndGet();
+                } catch (Throwable e) {
+                    log.error("chain event subscriber {} failed: {}", name, e.getMessage(), e);
+                }
+            }
+        }
+
+        private record Queued(Message message, boolean local) {
+        }
+    }
+}
@@ -26,7 +26,6 @@ package io.xdag.mine;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.xdag.Kernel;
 import java.net.InetSocketAddress;
@@ -60,8 +59,5 @@ public class MinerChannelInitializer extends ChannelInitializer<Channel> {
         MinerChannel minerChannel = new MinerChannel(kernel, isServer);
         minerChannel.init(ch.pipeline(), channelAddress);
         ch.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(256 * 1024));
-        ch.config().setOption(ChannelOption.TCP_NODELAY, true);
-        ch.config().setOption(ChannelOption.SO_RCVBUF, 256 * 1024);
-        ch.config().setOption(ChannelOption.SO_BACKLOG, 1024);
     }
 }
@@ -33,6 +33,7 @@ import static java.lang.Math.E;
 
 import io.xdag.Kernel;
 import io.xdag.Wallet;
+import io.xdag.WalletAccount;
 import io.xdag.config.Config;
 import io.xdag.config.PoolConfig;
 import io.xdag.consensus.Task;
@@ -40,8 +41,6 @@ import io.xdag.core.Address;
 import io.xdag.core.Block;
 import io.xdag.core.BlockWrapper;
 import io.xdag.core.Blockchain;
-import io.xdag.crypto.Hash;
-import io.xdag.crypto.Sign;
 import io.xdag.mine.MinerChannel;
 import io.xdag.mine.miner.Miner;
 import io.xdag.mine.miner.MinerStates;
@@ -661,14 +660,11 @@ public class AwardManagerImpl implements AwardManager, Runnable {
     }
 
     public boolean checkMine(Block block){
-        List<KeyPair> ourkeys = wallet.getAccounts();
+        Address coinBase = block.getCoinBase();
+        byte[] coinBaseKey = BytesUtils.byte32ToArray(coinBase.getAddress());
         // 遍历所有key
-        for (KeyPair ecKey : ourkeys) {
-            byte[] publicKeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-            byte[] publicKeyHash = Hash.sha256hash160(Bytes.wrap(publicKeyBytes));
-            Address coinBase = block.getCoinBase();
-            byte[] coinBaseKey = BytesUtils.byte32ToArray(coinBase.getAddress());
-            if (compareTo(publicKeyHash, 0, 20, coinBaseKey, 0, 20) == 0) {
+        for (WalletAccount account : wallet.getWalletAccounts()) {
+            if (compareTo(account.getAddress().toArrayUnsafe(), 0, 20, coinBaseKey, 0, 20) == 0) {
                 return true;
             }
         }
@@ -48,6 +48,34 @@ public abstract class Channel {
     protected Kernel kernel;
     protected boolean isActive;
     protected boolean isDisconnected = false;
+    /**
+     * 对方连入的连接, 由本节点签发会话票据
+     */
+    protected boolean inbound;
+    /**
+     * 对方节点协商的扩展能力, 见 {@link XdagCapability}
+     */
+    protected volatile int capabilities;
+    /**
+     * 对方已知的区块和待发送的清单
+     */
+    protected final PeerInventory inventory = new PeerInventory();
+    /**
+     * 对方请求的限速
+     */
+    protected PeerRateLimiter rateLimiter;
+    /**
+     * 所有连接共用的网络指标
+     */
+    protected NetMetrics metrics;
+    /**
+     * 本连接的请求响应时间
+     */
+    protected RequestRtt requestRtt;
+    /**
+     * 本节点在本连接上还未收到响应的区块请求
+     */
+    protected final SolicitedBlocks solicitedBlocks = new SolicitedBlocks();
 
     public abstract InetSocketAddress getInetSocketAddress();
 
@@ -70,4 +98,8 @@ public abstract class Channel {
     public abstract MessageQueue getMessageQueue();
 
     public abstract Kernel getKernel();
+
+    public boolean isSupported(XdagCapability capability) {
+        return capability.isSupported(capabilities);
+    }
 }
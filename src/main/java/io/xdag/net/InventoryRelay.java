@@ -0,0 +1,294 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static io.xdag.net.message.impl.InvMessage.MAX_HASHES;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.node.Node;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 新区块转发
+ * 支持INVENTORY的节点先发送hashlow清单, 对方只请求本地没有的区块; 旧版本节点仍直接发送区块
+ * 每个连接记录对方已知的区块, 同一区块在一条连接上只发送一次
+ */
+@Slf4j
+public class InventoryRelay {
+
+    /**
+     * 清单合并发送的间隔 (ms)
+     */
+    public static final long FLUSH_INTERVAL = 50;
+    /**
+     * 请求的区块超时未收到时, 向其他发过清单的节点请求 (ms)
+     */
+    public static final long REQUEST_TIMEOUT = 2000;
+    private static final int RECENT_BLOCKS_SIZE = 4096;
+    private static final long RECENT_BLOCKS_EXPIRE = 60;
+
+    private final Supplier<List<Channel>> channels;
+    private final Predicate<Bytes32> hasBlock;
+    private final Function<Bytes32, Block> loadBlock;
+    private final int ttl;
+
+    /**
+     * 最近转发的区块, 对方请求时不必再从数据库读取
+     */
+    private final Cache<Bytes32, BlockWrapper> recent = Caffeine.newBuilder()
+            .maximumSize(RECENT_BLOCKS_SIZE)
+            .expireAfterWrite(RECENT_BLOCKS_EXPIRE, TimeUnit.SECONDS)
+            .build();
+    /**
+     * 已请求但尚未确认收到的区块
+     */
+    private final Map<Bytes32, Wanted> wanted = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+
+    private final AtomicLong pushed = new AtomicLong();
+    private final AtomicLong announced = new AtomicLong();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+
+    private static class Wanted {
+
+        private Channel requestedFrom;
+        private long requestTime;
+        private boolean received;
+        private final Queue<Channel> announcers = new ArrayDeque<>();
+    }
+
+    public InventoryRelay(Supplier<List<Channel>> channels, Predicate<Bytes32> hasBlock,
+            Function<Bytes32, Block> loadBlock, int ttl) {
+        this.channels = channels;
+        this.hasBlock = hasBlock;
+        this.loadBlock = loadBlock;
+        this.ttl = ttl;
+    }
+
+    public void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("InventoryRelay-%d")
+                .daemon(true)
+                .build());
+        timer.scheduleWithFixedDelay(this::tick, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        try {
+            flushAnnounces();
+            retryRequests(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("Inventory relay error", e);
+        }
+    }
+
+    /**
+     * 转发新区块, exclude为区块来源节点
+     */
+    public void distribute(BlockWrapper bw, Node exclude) {
+        Bytes32 hashlow = bw.getBlock().getHashLow();
+        recent.put(hashlow, bw);
+        for (Channel channel : channels.get()) {
+            if (exclude != null && channel.getNode().getHexId().equals(exclude.getHexId())) {
+                continue;
+            }
+            if (channel.isSupported(XdagCapability.INVENTORY)) {
+                channel.getInventory().announce(hashlow);
+            } else {
+                channel.sendNewBlock(bw);
+                pushed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 合并发送待发送的清单
+     */
+    public void flushAnnounces() {
+        for (Channel channel : channels.get()) {
+            if (!channel.isSupported(XdagCapability.INVENTORY)) {
+                continue;
+            }
+            PeerInventory inventory = channel.getInventory();
+            while (inventory.pendingAnnounces() > 0) {
+                List<Bytes32> batch = new ArrayList<>(MAX_HASHES);
+                if (inventory.drainAnnounces(batch, MAX_HASHES) == 0) {
+                    break;
+                }
+                channel.getXdag().sendInventory(batch);
+                announced.addAndGet(batch.size());
+            }
+        }
+    }
+
+    /**
+     * 收到对方的清单, 请求本地没有且未向其他节点请求过的区块
+     */
+    public void onAnnounce(Channel channel, List<Bytes32> hashlows) {
+        long now = System.currentTimeMillis();
+        List<Bytes32> request = new ArrayList<>();
+        for (Bytes32 hashlow : hashlows) {
+            channel.getInventory().markKnown(hashlow);
+            if (recent.getIfPresent(hashlow) != null || hasBlock.test(hashlow)) {
+                continue;
+            }
+            Wanted w = wanted.computeIfAbsent(hashlow, k -> new Wanted());
+            synchronized (w) {
+                if (w.received) {
+                    continue;
+                }
+                if (w.requestedFrom == null) {
+                    w.requestedFrom = channel;
+                    w.requestTime = now;
+                    request.add(hashlow);
+                } else if (w.requestedFrom != channel) {
+                    w.announcers.add(channel);
+                }
+            }
+        }
+        sendRequest(channel, request);
+    }
+
+    /**
+     * 对方请求区块, 以NEW_BLOCK回复
+     */
+    public void onRequest(Channel channel, List<Bytes32> hashlows) {
+        for (Bytes32 hashlow : hashlows) {
+            BlockWrapper bw = recent.getIfPresent(hashlow);
+            Block block = bw != null ? bw.getBlock() : loadBlock.apply(hashlow);
+            if (block == null) {
+                continue;
+            }
+            channel.getInventory().markKnown(hashlow);
+            channel.getXdag().sendNewBlock(block, bw != null ? bw.getTtl() : ttl);
+            served.incrementAndGet();
+        }
+    }
+
+    /**
+     * 从该连接收到区块, 之后不再向它发送该区块的清单
+     */
+    public void onBlockReceived(Channel channel, Bytes32 hashlow) {
+        channel.getInventory().markKnown(hashlow);
+        Wanted w = wanted.get(hashlow);
+        if (w != null) {
+            synchronized (w) {
+                w.received = true;
+            }
+        }
+    }
+
+    void retryRequests(long now) {
+        Map<Channel, List<Bytes32>> retries = new IdentityHashMap<>();
+        Iterator<Map.Entry<Bytes32, Wanted>> it = wanted.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Bytes32, Wanted> e = it.next();
+            Wanted w = e.getValue();
+            synchronized (w) {
+                if (now - w.requestTime < REQUEST_TIMEOUT) {
+                    continue;
+                }
+                if (w.received || hasBlock.test(e.getKey())) {
+                    it.remove();
+                    continue;
+                }
+                Channel next;
+                do {
+                    next = w.announcers.poll();
+                } while (next != null && next.isDisconnected());
+                if (next == null) {
+                    // 没有其他来源, 交给同步补齐
+                    it.remove();
+                    continue;
+                }
+                w.requestedFrom = next;
+                w.requestTime = now;
+                retries.computeIfAbsent(next, k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+        retries.forEach(this::sendRequest);
+    }
+
+    private void sendRequest(Channel channel, List<Bytes32> hashlows) {
+        for (int i = 0; i < hashlows.size(); i += MAX_HASHES) {
+            List<Bytes32> batch = hashlows.subList(i, Math.min(hashlows.size(), i + MAX_HASHES));
+            channel.getXdag().sendGetInventory(new ArrayList<>(batch));
+            requested.addAndGet(batch.size());
+        }
+    }
+
+    public long getPushed() {
+        return pushed.get();
+    }
+
+    public long getAnnounced() {
+        return announced.get();
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    public int getWantedSize() {
+        return wanted.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pushed:%d announced:%d requested:%d served:%d wanted:%d",
+                getPushed(), getAnnounced(), getRequested(), getServed(), getWantedSize());
+    }
+}
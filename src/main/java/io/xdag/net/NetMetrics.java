@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import io.xdag.net.message.XdagMessageCodes;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网络指标: 按消息类型统计收发的消息数, 字节数, 解码, 处理和发送排队的耗时,
+ * 以及所有连接合计的请求响应时间. telnet和RPC都从这里读取
+ * NEW_BLOCK和BLOCKS_BATCH的处理只是放入导入队列, 导入耗时见ImportQueue
+ */
+public class NetMetrics {
+
+    private final Map<XdagMessageCodes, MessageStats> messages = new EnumMap<>(XdagMessageCodes.class);
+    private final Map<RequestRtt.Kind, RttHistogram> rtt = new EnumMap<>(RequestRtt.Kind.class);
+
+    public NetMetrics() {
+        for (XdagMessageCodes code : XdagMessageCodes.values()) {
+            messages.put(code, new MessageStats());
+        }
+        for (RequestRtt.Kind kind : RequestRtt.Kind.values()) {
+            rtt.put(kind, new RttHistogram());
+        }
+    }
+
+    /**
+     * 收到并解码一个消息, 重复的区块没有解码也在这里统计
+     */
+    public void onReceived(XdagMessageCodes code, int bytes, long decodeNanos) {
+        MessageStats stats = messages.get(code);
+        stats.received.increment();
+        stats.receivedBytes.add(bytes);
+        stats.decodeNanos.add(decodeNanos);
+    }
+
+    public void onHandled(XdagMessageCodes code, long handleNanos) {
+        MessageStats stats = messages.get(code);
+        stats.handled.increment();
+        stats.handleNanos.add(handleNanos);
+    }
+
+    /**
+     * 写出一个消息
+     *
+     * @param queueNanos 在发送队列中等待的时间
+     */
+    public void onSent(XdagMessageCodes code, int bytes, long queueNanos) {
+        MessageStats stats = messages.get(code);
+        stats.sent.increment();
+        stats.sentBytes.add(bytes);
+        stats.queueNanos.add(queueNanos);
+        stats.maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+    }
+
+    void onReply(RequestRtt.Kind kind, long millis) {
+        rtt.get(kind).add(millis);
+    }
+
+    public MessageStats getStats(XdagMessageCodes code) {
+        return messages.get(code);
+    }
+
+    public RttHistogram getRtt(RequestRtt.Kind kind) {
+        return rtt.get(kind);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-20s %10s %12s %10s %12s %10s %10s %10s %10s",
+                "message", "in", "in bytes", "out", "out bytes", "decode us", "handle us", "queue us", "max q ms"));
+        for (Map.Entry<XdagMessageCodes, MessageStats> entry : messages.entrySet()) {
+            MessageStats stats = entry.getValue();
+            if (stats.getReceived() == 0 && stats.getSent() == 0) {
+                continue;
+            }
+            sb.append(System.lineSeparator()).append(String.format("%-20s %10d %12d %10d %12d %10d %10d %10d %10d",
+                    entry.getKey().name(), stats.getReceived(), stats.getReceivedBytes(), stats.getSent(),
+                    stats.getSentBytes(), stats.getAvgDecodeMicros(), stats.getAvgHandleMicros(),
+                    stats.getAvgQueueMicros(), TimeUnit.NANOSECONDS.toMillis(stats.getMaxQueueNanos())));
+        }
+        for (Map.Entry<RequestRtt.Kind, RttHistogram> entry : rtt.entrySet()) {
+            sb.append(System.lineSeparator()).append("rtt ").append(entry.getKey().name().toLowerCase())
+                    .append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 一种消息的累计统计
+     */
+    public static class MessageStats {
+
+        private final LongAdder received = new LongAdder();
+        private final LongAdder receivedBytes = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        private final LongAdder handled = new LongAdder();
+        private final LongAdder handleNanos = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder sentBytes = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+
+        private static long avgMicros(LongAdder nanos, long count) {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos.sum() / count);
+        }
+
+        public long getReceived() {
+            return received.sum();
+        }
+
+        public long getReceivedBytes() {
+            return receivedBytes.sum();
+        }
+
+        public long getHandled() {
+            return handled.sum();
+        }
+
+        public long getSent() {
+            return sent.sum();
+        }
+
+        public long getSentBytes() {
+            return sentBytes.sum();
+        }
+
+        public long getAvgDecodeMicros() {
+            return avgMicros(decodeNanos, getReceived());
+        }
+
+        public long getAvgHandleMicros() {
+            return avgMicros(handleNanos, getHandled());
+        }
+
+        public long getAvgQueueMicros() {
+            return avgMicros(queueNanos, getSent());
+        }
+
+        public long getMaxQueueNanos() {
+            return maxQueueNanos.get();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 单个连接的区块清单状态
+ * 对方已知的区块用两代布隆滤波器记录, 当前一代写满后丢弃上一代, 内存固定; 误判只会少发一次清单
+ */
+public class PeerInventory {
+
+    public static final int KNOWN_BLOCKS_SIZE = 16384;
+    private static final double KNOWN_BLOCKS_FPP = 0.001;
+
+    private BloomFilter<byte[]> current = newFilter();
+    private BloomFilter<byte[]> previous = newFilter();
+    private int currentSize = 0;
+
+    /**
+     * 待发送给对方的清单
+     */
+    private final Queue<Bytes32> announces = new ConcurrentLinkedQueue<>();
+
+    private static BloomFilter<byte[]> newFilter() {
+        return BloomFilter.create(Funnels.byteArrayFunnel(), KNOWN_BLOCKS_SIZE, KNOWN_BLOCKS_FPP);
+    }
+
+    /**
+     * 记录对方已有该区块, 之前未记录时返回true
+     */
+    public synchronized boolean markKnown(Bytes32 hashlow) {
+        byte[] key = hashlow.toArrayUnsafe();
+        if (current.mightContain(key) || previous.mightContain(key)) {
+            return false;
+        }
+        if (currentSize >= KNOWN_BLOCKS_SIZE) {
+            previous = current;
+            current = newFilter();
+            currentSize = 0;
+        }
+        current.put(key);
+        currentSize++;
+        return true;
+    }
+
+    public synchronized boolean isKnown(Bytes32 hashlow) {
+        byte[] key = hashlow.toArrayUnsafe();
+        return current.mightContain(key) || previous.mightContain(key);
+    }
+
+    /**
+     * 对方未知的区块加入待发送清单
+     */
+    public boolean announce(Bytes32 hashlow) {
+        if (!markKnown(hashlow)) {
+            return false;
+        }
+        announces.add(hashlow);
+        return true;
+    }
+
+    /**
+     * 取出最多limit个待发送的清单
+     */
+    public int drainAnnounces(List<Bytes32> out, int limit) {
+        int n = 0;
+        Bytes32 hashlow;
+        while (n < limit && (hashlow = announces.poll()) != null) {
+            out.add(hashlow);
+            n++;
+        }
+        return n;
+    }
+
+    public int pendingAnnounces() {
+        return announces.size();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import io.xdag.config.spec.NodeSpec;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.SnapshotRequestMessage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个连接的请求限速, 每类请求一个令牌桶
+ * 桶容量为每秒速率的 {@link #BURST_SECONDS} 倍, 允许同步时的短时突发;
+ * 令牌不足时预约之后的令牌, 由调用方延后处理请求
+ */
+public class PeerRateLimiter {
+
+    public static final int BURST_SECONDS = 2;
+
+    /**
+     * 需要本节点读库应答的请求分类, 其他消息不限速
+     */
+    public enum RequestClass {
+        RANGE, SUMS, BLOCK, BLOCKEXT, SNAPSHOT;
+
+        public static RequestClass of(XdagMessageCodes code) {
+            return switch (code) {
+                case BLOCKS_REQUEST, MAIN_BLOCKS_REQUEST -> RANGE;
+                case SUMS_REQUEST -> SUMS;
+                case BLOCK_REQUEST, INV -> BLOCK;
+                case BLOCKEXT_REQUEST -> BLOCKEXT;
+                default -> null;
+            };
+        }
+
+        /**
+         * 快照请求与能力协商共用BLOCKEXT_REQUEST, 单独限速; 祖先请求返回一批区块, 按范围请求限速
+         */
+        public static RequestClass of(Message msg) {
+            if (msg instanceof SnapshotRequestMessage) {
+                return SNAPSHOT;
+            }
+            if (msg instanceof InvMessage inv && inv.getType() == InvMessage.Type.ANCESTORS) {
+                return RANGE;
+            }
+            return of(msg.getCommand());
+        }
+    }
+
+    private final Bucket[] buckets = new Bucket[RequestClass.values().length];
+    private final AtomicLongArray limited = new AtomicLongArray(RequestClass.values().length);
+    private final LongSupplier nanoClock;
+
+    public PeerRateLimiter(NodeSpec spec) {
+        this(new int[]{spec.getRangeRequestRate(), spec.getSumsRequestRate(), spec.getBlockRequestRate(),
+                spec.getBlockExtRequestRate(), spec.getSnapshotRequestRate()}, System::nanoTime);
+    }
+
+    /**
+     * @param rates 按 {@link RequestClass} 顺序的每秒速率, 0或缺少时不限制
+     */
+    public PeerRateLimiter(int[] rates, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = i < rates.length && rates[i] > 0 ? new Bucket(rates[i], now) : null;
+        }
+    }
+
+    /**
+     * @return 可以立即处理时返回0, 超过限速时返回需要等待的纳秒数并计数
+     */
+    public long reserve(XdagMessageCodes code) {
+        return reserve(RequestClass.of(code));
+    }
+
+    public long reserve(Message msg) {
+        return reserve(RequestClass.of(msg));
+    }
+
+    private long reserve(RequestClass requestClass) {
+        if (requestClass == null) {
+            return 0;
+        }
+        Bucket bucket = buckets[requestClass.ordinal()];
+        long delay = bucket == null ? 0 : bucket.reserve(nanoClock.getAsLong());
+        if (delay > 0) {
+            limited.incrementAndGet(requestClass.ordinal());
+        }
+        return delay;
+    }
+
+    public long getLimited(RequestClass requestClass) {
+        return limited.get(requestClass.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (RequestClass requestClass : RequestClass.values()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(requestClass.name().toLowerCase()).append('=').append(getLimited(requestClass));
+        }
+        return sb.toString();
+    }
+
+    private static class Bucket {
+
+        private final long nanosPerToken;
+        private final long capacity;
+        /**
+         * 令牌数为 (now - emptyAt) / nanosPerToken, 最多capacity对应的个数
+         */
+        private long emptyAt;
+
+        Bucket(int rate, long now) {
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.capacity = nanosPerToken * rate * BURST_SECONDS;
+            this.emptyAt = now - capacity;
+        }
+
+        /**
+         * 令牌不足时预约下一个令牌, emptyAt可以超过now
+         */
+        synchronized long reserve(long now) {
+            emptyAt = Math.max(emptyAt, now - capacity) + nanosPerToken;
+            return Math.max(0, emptyAt - now);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 一个连接上请求到收到响应的时间, 按请求类型分别统计
+ * SUMS和BLOCKS按请求的random匹配响应, BLOCK按区块哈希匹配
+ */
+public class RequestRtt {
+
+    public enum Kind {
+        /**
+         * SUMS_REQUEST到SUMS_REPLY
+         */
+        SUMS,
+        /**
+         * BLOCKS_REQUEST或MAIN_BLOCKS_REQUEST到BLOCKS_REPLY, 包含区块流的发送时间
+         */
+        BLOCKS,
+        /**
+         * BLOCK_REQUEST到收到该区块
+         */
+        BLOCK
+    }
+
+    public static final int MAX_PENDING = 4096;
+    /**
+     * 超时未响应的请求不再统计
+     */
+    public static final long TIMEOUT = 120;
+
+    private final Map<Kind, Cache<Long, Long>> pending = new EnumMap<>(Kind.class);
+    private final Map<Kind, RttHistogram> histograms = new EnumMap<>(Kind.class);
+    private final NetMetrics metrics;
+    private final LongSupplier nanoClock;
+
+    public RequestRtt(NetMetrics metrics) {
+        this(metrics, System::nanoTime);
+    }
+
+    public RequestRtt(NetMetrics metrics, LongSupplier nanoClock) {
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+        for (Kind kind : Kind.values()) {
+            pending.put(kind, Caffeine.newBuilder().maximumSize(MAX_PENDING).expireAfterWrite(TIMEOUT, TimeUnit.SECONDS)
+                    .build());
+            histograms.put(kind, new RttHistogram());
+        }
+    }
+
+    public static long blockKey(Bytes32 hashlow) {
+        return hashlow.getLong(24);
+    }
+
+    public void onRequest(Kind kind, long key) {
+        pending.get(kind).put(key, nanoClock.getAsLong());
+    }
+
+    /**
+     * @return 响应时间(毫秒), 没有对应的请求时返回-1
+     */
+    public long onReply(Kind kind, long key) {
+        Long sent = pending.get(kind).asMap().remove(key);
+        if (sent == null) {
+            return -1;
+        }
+        long rtt = TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - sent);
+        histograms.get(kind).add(rtt);
+        if (metrics != null) {
+            metrics.onReply(kind, rtt);
+        }
+        return rtt;
+    }
+
+    public RttHistogram getHistogram(Kind kind) {
+        return histograms.get(kind);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Kind kind : Kind.values()) {
+            RttHistogram histogram = histograms.get(kind);
+            if (histogram.getCount() > 0) {
+                sb.append(sb.length() == 0 ? "" : " ").append(kind.name().toLowerCase()).append("[")
+                        .append(histogram).append("]");
+            }
+        }
+        return sb.toString();
+    }
+}
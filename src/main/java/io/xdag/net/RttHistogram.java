@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应时间分布, 第i个桶统计 [2^(i-1), 2^i) 毫秒, 第0个桶为0毫秒, 最后一个桶不设上限
+ */
+public class RttHistogram {
+
+    public static final int BUCKETS = 16;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucket(long millis) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    public void add(long millis) {
+        long ms = Math.max(0, millis);
+        buckets.incrementAndGet(bucket(ms));
+        sum.add(ms);
+        max.accumulateAndGet(ms, Math::max);
+    }
+
+    public void merge(RttHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.addAndGet(i, other.getBucket(i));
+        }
+        sum.add(other.sum.sum());
+        max.accumulateAndGet(other.getMax(), Math::max);
+    }
+
+    public long getBucket(int i) {
+        return buckets.get(i);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 百分位数所在桶的上界, 不超过最大值
+     *
+     * @param p 0到1之间
+     */
+    public long getPercentile(double p) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d avg=%dms p50<=%dms p90<=%dms p99<=%dms max=%dms", getCount(), getMean(),
+                getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+    }
+}
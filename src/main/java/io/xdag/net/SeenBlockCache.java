@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近收到的区块, 同一区块从多个节点收到时在解码前丢弃
+ * key为去掉传输头后512字节的SipHash-2-4, 密钥是启动时随机生成的128位, 不知道密钥无法构造碰撞
+ */
+public class SeenBlockCache {
+
+    private static final byte[] TRANSPORT_HEADER = new byte[8];
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final HashFunction hashFunction = Hashing.sipHash24(random.nextLong(), random.nextLong());
+    private final Cache<HashCode, Boolean> seen;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public SeenBlockCache(long maximumSize, long expireSeconds) {
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .build();
+    }
+
+    /**
+     * @return 第一次收到时返回true, 重复时返回false
+     */
+    public boolean markSeen(byte[] data) {
+        if (seen.asMap().putIfAbsent(hashFunction.hashBytes(data), Boolean.TRUE) == null) {
+            return true;
+        }
+        duplicates.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 直接在接收缓冲上计算, 前8字节(传输头)按0计算, 与 {@link #markSeen(byte[])} 结果一致
+     */
+    public boolean markSeen(ByteBuffer frame) {
+        ByteBuffer body = frame.duplicate();
+        body.position(body.position() + TRANSPORT_HEADER.length);
+        HashCode key = hashFunction.newHasher().putBytes(TRANSPORT_HEADER).putBytes(body).hash();
+        if (seen.asMap().putIfAbsent(key, Boolean.TRUE) == null) {
+            return true;
+        }
+        duplicates.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 区块没有被处理时移除, 之后重新收到不会被丢弃
+     */
+    public void forget(byte[] data) {
+        seen.invalidate(hashFunction.hashBytes(data));
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long size() {
+        return seen.estimatedSize();
+    }
+}
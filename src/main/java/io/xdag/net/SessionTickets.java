@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 会话票据, 握手完成后连入方签发给支持SESSION的连出方, 连出方重连时用票据代替公钥交换
+ * 票据为 8字节过期时间 + 8字节随机数 + HMAC-SHA256(ip, 过期时间, 随机数), 只能由签发的节点验证
+ * 密钥只保存在内存中, 重启后旧票据全部失效; 票据绑定对方ip, 每张只能使用一次
+ */
+public class SessionTickets {
+
+    public static final int TICKET_SIZE = 48;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int CACHE_SIZE = 1024;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec secret;
+    private final long ttl;
+    /**
+     * 连出方: 对方地址及对方签发的票据
+     */
+    private final Cache<InetSocketAddress, byte[]> received;
+    /**
+     * 连入方: 已使用的票据随机数, 票据过期后移除
+     */
+    private final Cache<Long, Boolean> used;
+
+    /**
+     * @param ttl 票据有效期, 单位秒
+     */
+    public SessionTickets(int ttl) {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        this.secret = new SecretKeySpec(key, MAC_ALGORITHM);
+        this.ttl = TimeUnit.SECONDS.toMillis(ttl);
+        this.received = Caffeine.newBuilder().maximumSize(CACHE_SIZE)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS).build();
+        this.used = Caffeine.newBuilder().expireAfterWrite(ttl, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * 为连入的节点签发票据
+     */
+    public byte[] issue(InetAddress peer) {
+        ByteBuffer ticket = ByteBuffer.allocate(TICKET_SIZE);
+        ticket.putLong(System.currentTimeMillis() + ttl);
+        ticket.putLong(random.nextLong());
+        ticket.put(mac(peer, ticket.array()));
+        return ticket.array();
+    }
+
+    /**
+     * 验证对方重连时出示的票据, 验证通过后票据作废
+     */
+    public boolean verify(InetAddress peer, byte[] ticket) {
+        if (ticket == null || ticket.length != TICKET_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(ticket);
+        long expire = buffer.getLong();
+        long nonce = buffer.getLong();
+        byte[] expected = mac(peer, ticket);
+        byte[] actual = new byte[expected.length];
+        buffer.get(actual);
+        return MessageDigest.isEqual(expected, actual)
+                && expire > System.currentTimeMillis()
+                && used.asMap().putIfAbsent(nonce, Boolean.TRUE) == null;
+    }
+
+    /**
+     * 保存对方签发的票据, 下次连接该地址时使用
+     */
+    public void put(InetSocketAddress address, byte[] ticket) {
+        if (ticket != null && ticket.length == TICKET_SIZE) {
+            received.put(address, ticket);
+        }
+    }
+
+    /**
+     * 取出连接该地址使用的票据, 票据只能使用一次, 恢复失败时下次完整握手
+     */
+    public byte[] take(InetSocketAddress address) {
+        return received.asMap().remove(address);
+    }
+
+    public long size() {
+        return received.estimatedSize();
+    }
+
+    private byte[] mac(InetAddress peer, byte[] ticket) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            mac.update(peer.getAddress());
+            mac.update(ticket, 0, 16);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 本节点在一个连接上发出, 还未收到响应的区块请求
+ * 响应中的区块不经过 {@link SeenBlockCache} 去重, 否则刚从其他节点收到的区块会被当作重复丢弃, 请求一直等到超时
+ */
+public class SolicitedBlocks {
+
+    /**
+     * 按时间范围请求, random到[startTime, endTime)
+     */
+    private final Cache<Long, long[]> ranges = newCache();
+    /**
+     * 按高度请求主块确认的区块, 响应的区块无法按时间匹配
+     */
+    private final Cache<Long, Boolean> mainRanges = newCache();
+    /**
+     * 按哈希请求的区块, key为 {@link RequestRtt#blockKey}
+     */
+    private final Cache<Long, Boolean> blocks = newCache();
+    /**
+     * 请求祖先的区块, 只有这些区块本身不去重
+     * 对方不知道本节点缺少哪些祖先, 已见过的祖先按重复丢弃, 不重复导入
+     */
+    private final Cache<Long, Boolean> ancestors = newCache();
+
+    private static <V> Cache<Long, V> newCache() {
+        return Caffeine.newBuilder().maximumSize(RequestRtt.MAX_PENDING)
+                .expireAfterWrite(RequestRtt.TIMEOUT, TimeUnit.SECONDS).build();
+    }
+
+    public void onRangeRequest(long random, long startTime, long endTime) {
+        ranges.put(random, new long[]{startTime, endTime});
+    }
+
+    public void onMainBlocksRequest(long random) {
+        mainRanges.put(random, Boolean.TRUE);
+    }
+
+    /**
+     * BLOCKS_REPLY在区块流之后发送, 收到时范围请求结束
+     */
+    public void onRangeReply(long random) {
+        ranges.invalidate(random);
+        mainRanges.invalidate(random);
+    }
+
+    public void onBlockRequest(Bytes32 hashlow) {
+        blocks.put(RequestRtt.blockKey(hashlow), Boolean.TRUE);
+    }
+
+    public void onAncestorsRequest(List<Bytes32> hashlows) {
+        for (Bytes32 hashlow : hashlows) {
+            ancestors.put(RequestRtt.blockKey(hashlow), Boolean.TRUE);
+        }
+    }
+
+    public void onBlock(Bytes32 hashlow) {
+        long key = RequestRtt.blockKey(hashlow);
+        blocks.invalidate(key);
+        ancestors.invalidate(key);
+    }
+
+    /**
+     * @param hashlow 只在需要按哈希匹配时计算
+     */
+    public boolean isSolicited(long time, Supplier<Bytes32> hashlow) {
+        if (!mainRanges.asMap().isEmpty()) {
+            return true;
+        }
+        for (long[] range : ranges.asMap().values()) {
+            if (time >= range[0] && time < range[1]) {
+                return true;
+            }
+        }
+        if (blocks.asMap().isEmpty() && ancestors.asMap().isEmpty()) {
+            return false;
+        }
+        long key = RequestRtt.blockKey(hashlow.get());
+        return blocks.asMap().containsKey(key) || ancestors.asMap().containsKey(key);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+/**
+ * 连接建立后通过BLOCKEXT_REQUEST/BLOCKEXT_REPLY交换的扩展能力
+ * 旧版本节点忽略BLOCKEXT消息, 能力为0, 只使用原有消息
+ */
+public enum XdagCapability {
+
+    /**
+     * 按高度请求主块及其确认的区块
+     */
+    MAIN_CHAIN_SYNC(1),
+
+    /**
+     * 新区块先发送清单, 对方按需请求, 见 {@link io.xdag.net.InventoryRelay}
+     */
+    INVENTORY(2),
+
+    /**
+     * 同步响应中多个区块合并为一条BLOCKS_BATCH消息
+     */
+    BATCH(4),
+
+    /**
+     * 下载状态快照, 见 {@link io.xdag.db.SnapshotManifest}
+     */
+    SNAPSHOT(8),
+
+    /**
+     * 缺少父块时一次请求多个区块及其祖先, 见 {@link io.xdag.net.message.impl.InvMessage.Type#ANCESTORS}
+     */
+    ANCESTORS(16),
+
+    /**
+     * 连入方签发会话票据, 重连时跳过公钥交换, 见 {@link io.xdag.net.SessionTickets}
+     */
+    SESSION(32);
+
+    /**
+     * 区分能力协商消息与其他BLOCKEXT消息
+     */
+    public static final long MAGIC = 0x58444147434150L;
+
+    /**
+     * 快照请求的BLOCKEXT_REQUEST
+     */
+    public static final long SNAPSHOT_MAGIC = 0x58444147534e50L;
+
+    /**
+     * 会话票据的BLOCKEXT_REPLY
+     */
+    public static final long SESSION_MAGIC = 0x58444147534553L;
+
+    private final int bit;
+
+    XdagCapability(int bit) {
+        this.bit = bit;
+    }
+
+    public int getBit() {
+        return bit;
+    }
+
+    public boolean isSupported(int capabilities) {
+        return (capabilities & bit) != 0;
+    }
+
+    /**
+     * 本节点支持的全部能力
+     */
+    public static int localCapabilities() {
+        int capabilities = 0;
+        for (XdagCapability c : values()) {
+            capabilities |= c.bit;
+        }
+        return capabilities;
+    }
+}
@@ -43,12 +43,10 @@ import io.xdag.net.message.MessageQueue;
 import io.xdag.net.message.impl.Xdag03MessageFactory;
 import io.xdag.net.node.Node;
 import java.net.InetSocketAddress;
-import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-@EqualsAndHashCode(callSuper = true)
 @Slf4j
 @Getter
 @Setter
@@ -75,9 +73,6 @@ public class XdagChannel extends Channel {
      */
     private XdagHandlerFactory xdagHandlerFactory;
 
-    // TODO：记录该连接发送错误消息的次数，一旦超过某个值将断开连接
-    private int failTimes;
-
     public XdagChannel(io.netty.channel.socket.SocketChannel socketChannel) {
         this.socketChannel = socketChannel;
     }
@@ -89,6 +84,7 @@ public class XdagChannel extends Channel {
             InetSocketAddress inetSocketAddress) {
         this.kernel = kernel;
         this.inetSocketAddress = inetSocketAddress;
+        this.inbound = isServer;
         this.handshakeHandler = new XdagHandshakeHandler(kernel, this);
         handshakeHandler.setServer(isServer);
         if (isServer) {
@@ -96,6 +92,9 @@ public class XdagChannel extends Channel {
         }
         pipeline.addLast("handshakeHandler", handshakeHandler);
         this.messageQueue = new MessageQueue(this);
+        this.rateLimiter = new PeerRateLimiter(kernel.getConfig().getNodeSpec());
+        this.metrics = kernel.getChannelMgr().getMetrics();
+        this.requestRtt = new RequestRtt(metrics);
         this.messageCodec = new MessageCodes();
         this.blockHandler = new XdagBlockHandler(this);
         this.xdagHandlerFactory = new XdagHandlerFactoryImpl(kernel, this);
@@ -155,6 +154,16 @@ public class XdagChannel extends Channel {
         node.getStat().Outbound.add(2);
     }
 
+    /**
+     * 用会话票据代替公钥, 见 {@link XdagHandshakeHandler}
+     */
+    public void sendResume(ChannelHandlerContext ctx, byte[] ticket) throws Exception {
+        ByteBuf buffer = ctx.alloc().buffer(XdagHandshakeHandler.PUBKEY_SIZE);
+        buffer.writeBytes(XdagHandshakeHandler.encodeResume(ticket));
+        ctx.writeAndFlush(buffer).sync();
+        node.getStat().Outbound.add(2);
+    }
+
     public void sendPassword(ChannelHandlerContext ctx) throws Exception {
         ByteBuf buffer = ctx.alloc().buffer(512);
         buffer.writeBytes(kernel.getConfig().getNodeSpec().getXKeys().sect0_encoded);
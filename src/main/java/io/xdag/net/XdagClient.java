@@ -29,11 +29,11 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.xdag.config.Config;
+import io.xdag.config.SocketOptions;
 import io.xdag.net.handler.XdagChannelInitializer;
 import io.xdag.net.node.Node;
+import io.xdag.utils.NettyUtils;
 import java.net.InetSocketAddress;
 import java.util.HashSet;
 import java.util.Set;
@@ -50,6 +50,8 @@ public class XdagClient {
             .build();
 
     private final EventLoopGroup workerGroup;
+    private final SocketOptions socketOptions;
+    private final NettyUtils.Transport transport;
     private final int port;
     private final Config config;
     private final String ip;
@@ -60,7 +62,9 @@ public class XdagClient {
         this.config = config;
         this.ip = config.getNodeSpec().getNodeIp();
         this.port = config.getNodeSpec().getNodePort();
-        this.workerGroup = new NioEventLoopGroup(0, factory);
+        this.socketOptions = config.getNodeSpec().getNodeSocketOptions();
+        this.transport = NettyUtils.transport(socketOptions);
+        this.workerGroup = NettyUtils.newEventLoopGroup(transport, 0, factory);
         this.whilelist = new HashSet<>();
         initWhiteIPs();
 //        log.debug("XdagClient nodeId {}", getNode().getHexId());
@@ -85,8 +89,8 @@ public class XdagClient {
         }
         Bootstrap b = new Bootstrap();
         b.group(workerGroup);
-        b.channel(NioSocketChannel.class);
-        b.option(ChannelOption.TCP_NODELAY, true);
+        b.channel(NettyUtils.socketChannelClass(transport));
+        NettyUtils.applyOptions(b, socketOptions);
         b.option(ChannelOption.SO_KEEPALIVE, true);
         b.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
         b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getPoolSpec().getConnectionTimeout());
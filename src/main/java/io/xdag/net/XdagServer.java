@@ -25,27 +25,27 @@
 package io.xdag.net;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultMessageSizeEstimator;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.kqueue.KQueueEventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.NettyRuntime;
 import io.xdag.Kernel;
+import io.xdag.config.SocketOptions;
 import io.xdag.net.handler.XdagChannelInitializer;
 import io.xdag.utils.NettyUtils;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.SystemUtils;
 
 @Slf4j
 public class XdagServer {
     private Kernel kernel;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private ChannelFuture channelFuture;
+    private List<Channel> channels = Collections.emptyList();
     private final int workerThreadPoolSize = NettyRuntime.availableProcessors() * 2;
 
     public XdagServer(final Kernel kernel) {
@@ -58,37 +58,31 @@ public class XdagServer {
 
     public void start(String ip, int port) {
         try {
-
-            if(SystemUtils.IS_OS_LINUX) {
-                bossGroup = new EpollEventLoopGroup();
-                workerGroup = new EpollEventLoopGroup(workerThreadPoolSize);
-            } else if(SystemUtils.IS_OS_MAC) {
-                bossGroup = new KQueueEventLoopGroup();
-                workerGroup = new KQueueEventLoopGroup(workerThreadPoolSize);
-
-            } else {
-                bossGroup = new NioEventLoopGroup();
-                workerGroup = new NioEventLoopGroup(workerThreadPoolSize);
-            }
+            SocketOptions options = kernel.getConfig().getNodeSpec().getNodeSocketOptions();
+            NettyUtils.Transport transport = NettyUtils.transport(options);
+            int acceptors = NettyUtils.acceptors(transport, options);
+            bossGroup = NettyUtils.newEventLoopGroup(transport, acceptors, null);
+            workerGroup = NettyUtils.newEventLoopGroup(transport, workerThreadPoolSize, null);
 
             ServerBootstrap b = NettyUtils.nativeEventLoopGroup(bossGroup, workerGroup);
-            b.childOption(ChannelOption.TCP_NODELAY, true);
+            NettyUtils.applyOptions(b, transport, options);
             b.childOption(ChannelOption.SO_KEEPALIVE, true);
             b.childOption(ChannelOption.MESSAGE_SIZE_ESTIMATOR, DefaultMessageSizeEstimator.DEFAULT);
             b.childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, kernel.getConfig().getPoolSpec().getConnectionTimeout());
             b.handler(new LoggingHandler());
             b.childHandler(new XdagChannelInitializer(kernel, true, null));
-            log.debug("Xdag Node start host:[{}:{}].", ip, port);
-            channelFuture = b.bind(ip, port).sync();
+            log.debug("Xdag Node start host:[{}:{}], transport {}, acceptors {}.", ip, port, transport, acceptors);
+            channels = NettyUtils.bind(b, new InetSocketAddress(ip, port), acceptors);
         } catch (Exception e) {
             log.error("Xdag Node start error:{}.", e.getMessage(), e);
         }
     }
 
     public void close() {
-        if (channelFuture != null && channelFuture.channel().isOpen()) {
+        if (!channels.isEmpty()) {
             try {
-                channelFuture.channel().close().sync();
+                NettyUtils.close(channels);
+                channels = Collections.emptyList();
                 workerGroup.shutdownGracefully();
                 bossGroup.shutdownGracefully();
                 log.debug("Xdag Node closed.");
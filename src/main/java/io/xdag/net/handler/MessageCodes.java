@@ -42,7 +42,8 @@ public class MessageCodes extends MessageToMessageCodec<Message, Message> {
     }
 
     public static XdagBlock convertMessage(Message message) {
-        return new XdagBlock(message.getEncoded().toArray());
+        // 消息编码后不再修改, 直接使用其数组
+        return new XdagBlock(message.getEncoded().toArrayUnsafe());
     }
 
     /**
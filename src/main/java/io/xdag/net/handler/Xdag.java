@@ -27,6 +27,8 @@ package io.xdag.net.handler;
 import io.xdag.core.Block;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.message.Message;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
 
 public interface Xdag {
@@ -41,6 +43,31 @@ public interface Xdag {
 
     long sendGetSums(long startTime, long endTime);
 
+    /**
+     * 按高度请求主块, 只发给支持MAIN_CHAIN_SYNC的节点
+     */
+    long sendGetMainBlocks(long fromHeight, long toHeight);
+
+    /**
+     * 发送区块清单, 只发给支持INVENTORY的节点
+     */
+    void sendInventory(List<Bytes32> hashlows);
+
+    /**
+     * 按清单请求区块
+     */
+    void sendGetInventory(List<Bytes32> hashlows);
+
+    /**
+     * 请求缺少的父块及深度以内的祖先, 对方不支持ANCESTORS时逐个请求
+     */
+    void sendGetAncestors(List<Bytes32> hashlows, int depth);
+
+    /**
+     * 请求状态快照的清单头, 分页或分块, 只发给支持SNAPSHOT的节点
+     */
+    void sendGetSnapshot(int part, long height, int index);
+
     void dropConnection();
 
     void activate();
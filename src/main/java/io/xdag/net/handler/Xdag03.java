@@ -24,24 +24,41 @@
 
 package io.xdag.net.handler;
 
+import static io.xdag.config.Constants.REQUEST_MAIN_BLOCKS_MAX;
+
 import com.google.common.util.concurrent.SettableFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.xdag.Kernel;
 import io.xdag.core.Block;
 import io.xdag.core.BlockWrapper;
 import io.xdag.core.XdagStats;
+import io.xdag.db.SnapshotManifest;
+import io.xdag.db.rocksdb.SnapshotExporter;
 import io.xdag.net.Channel;
+import io.xdag.net.RequestRtt;
+import io.xdag.net.SolicitedBlocks;
+import io.xdag.net.SessionTickets;
+import io.xdag.net.XdagCapability;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.message.AbstractMessage;
+import io.xdag.net.message.BlocksStream;
 import io.xdag.net.message.Message;
+import io.xdag.net.message.impl.BlockExtReplyMessage;
 import io.xdag.net.message.impl.BlockExtRequestMessage;
 import io.xdag.net.message.impl.BlockRequestMessage;
+import io.xdag.net.message.impl.BlocksBatchMessage;
 import io.xdag.net.message.impl.BlocksReplyMessage;
 import io.xdag.net.message.impl.BlocksRequestMessage;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.MainBlocksRequestMessage;
 import io.xdag.net.message.impl.NewBlockMessage;
+import io.xdag.net.message.impl.SessionTicketMessage;
+import io.xdag.net.message.impl.SnapshotReplyMessage;
+import io.xdag.net.message.impl.SnapshotRequestMessage;
 import io.xdag.net.message.impl.SumReplyMessage;
 import io.xdag.net.message.impl.SumRequestMessage;
 import io.xdag.utils.XdagTime;
+import java.util.ArrayList;
 import java.util.List;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -68,6 +85,15 @@ public class Xdag03 extends XdagHandler {
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Message msg) {
+        if (isRateLimited(ctx, msg)) {
+            return;
+        }
+        handleMessage(msg);
+    }
+
+    @Override
+    protected void handleMessage(Message msg) {
+        long start = System.nanoTime();
         switch (msg.getCommand()) {
             case NEW_BLOCK -> processNewBlock((NewBlockMessage) msg);
             case BLOCK_REQUEST -> processBlockRequest((BlockRequestMessage) msg);
@@ -75,10 +101,35 @@ public class Xdag03 extends XdagHandler {
             case BLOCKS_REPLY -> processBlocksReply((BlocksReplyMessage) msg);
             case SUMS_REQUEST -> processSumsRequest((SumRequestMessage) msg);
             case SUMS_REPLY -> processSumsReply((SumReplyMessage) msg);
-            case BLOCKEXT_REQUEST -> processBlockExtRequest((BlockExtRequestMessage) msg);
+            case BLOCKEXT_REQUEST -> {
+                if (msg instanceof SnapshotRequestMessage snapshotRequest) {
+                    processSnapshotRequest(snapshotRequest);
+                } else {
+                    processBlockExtRequest((BlockExtRequestMessage) msg);
+                }
+            }
+            case BLOCKEXT_REPLY -> {
+                if (msg instanceof SessionTicketMessage sessionTicket) {
+                    processSessionTicket(sessionTicket);
+                } else {
+                    processBlockExtReply((BlockExtReplyMessage) msg);
+                }
+            }
+            case MAIN_BLOCKS_REQUEST -> processMainBlocksRequest((MainBlocksRequestMessage) msg);
+            case INV -> processInv((InvMessage) msg);
+            case BLOCKS_BATCH -> {
+                if (msg instanceof SnapshotReplyMessage snapshotReply) {
+                    processSnapshotReply(snapshotReply);
+                } else {
+                    processBlocksBatch((BlocksBatchMessage) msg);
+                }
+            }
             default -> {
             }
         }
+        if (channel.getMetrics() != null) {
+            channel.getMetrics().onHandled(msg.getCommand(), System.nanoTime() - start);
+        }
     }
 
     @Override
@@ -86,6 +137,12 @@ public class Xdag03 extends XdagHandler {
         msgQueue.activate(ctx);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        msgQueue.onWritabilityChanged();
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         log.debug("channelInactive:[{}] ", ctx.toString());
@@ -119,7 +176,55 @@ public class Xdag03 extends XdagHandler {
         Block block = msg.getBlock();
         log.debug("processNewBlock:{} from node {}", block.getHashLow(), channel.getInetSocketAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getNode());
-        syncMgr.validateAndAddNewBlock(bw);
+        onBlockReply(block.getHashLow());
+        onSolicitedBlock(block.getHashLow());
+        kernel.getChannelMgr().getInventoryRelay().onBlockReceived(channel, block.getHashLow());
+        syncMgr.submitNewBlock(bw, channel);
+    }
+
+    protected void processBlocksBatch(BlocksBatchMessage msg) {
+        List<BlockWrapper> blockWrappers = new ArrayList<>(msg.getBlocks().size());
+        for (Block block : msg.getBlocks()) {
+            // 与单个NEW_BLOCK共用已收到区块缓存, 本节点请求的区块不去重
+            boolean duplicate = !kernel.getChannelMgr().getSeenBlocks()
+                    .markSeen(block.getXdagBlock().getData().toArray())
+                    && !isSolicited(block);
+            onBlockReply(block.getHashLow());
+            onSolicitedBlock(block.getHashLow());
+            kernel.getChannelMgr().getInventoryRelay().onBlockReceived(channel, block.getHashLow());
+            if (duplicate) {
+                channel.getNode().getStat().Duplicate.add();
+                continue;
+            }
+            blockWrappers.add(new BlockWrapper(block, msg.getTtl() - 1, channel.getNode()));
+        }
+        log.debug("processBlocksBatch: {} blocks from node {}", blockWrappers.size(), channel.getInetSocketAddress());
+        syncMgr.submitNewBlocks(blockWrappers, channel);
+    }
+
+    protected void processInv(InvMessage msg) {
+        if (msg.getType() == null) {
+            log.debug("Unknown inv type from node {}", channel.getInetSocketAddress());
+            return;
+        }
+        switch (msg.getType()) {
+            case ANNOUNCE -> kernel.getChannelMgr().getInventoryRelay().onAnnounce(channel, msg.getHashlows());
+            case REQUEST -> kernel.getChannelMgr().getInventoryRelay().onRequest(channel, msg.getHashlows());
+            case ANCESTORS -> processAncestorsRequest(msg);
+        }
+    }
+
+    /**
+     * 按拓扑顺序发送请求的区块及其祖先, 与范围请求共用未发送完的请求数上限
+     */
+    protected void processAncestorsRequest(InvMessage msg) {
+        if (!channel.isSupported(XdagCapability.ANCESTORS) || !acceptRangeRequest()) {
+            return;
+        }
+        log.debug("Send {} blocks with ancestors of depth {} to node {}", msg.getHashlows().size(), msg.getDepth(),
+                channel.getInetSocketAddress());
+        msgQueue.sendStream(BlocksStream.ancestors(blockchain, msg.getHashlows(), msg.getDepth(), 1,
+                channel.isSupported(XdagCapability.BATCH)));
     }
 
     /**
@@ -132,27 +237,39 @@ public class Xdag03 extends XdagHandler {
         long startTime = msg.getStarttime();
         long endTime = msg.getEndtime();
         long random = msg.getRandom();
-
-        // TODO: paulochen 处理多区块请求
-//        // 如果大于快照点的话 我可以发送
-//        if (startTime > 1658318225407L) {
-//            // TODO: 如果请求时间间隔过大，启动新线程发送，目的是避免攻击
+        if (!acceptRangeRequest()) {
+            return;
+        }
         log.debug("Send blocks between {} and {} to node {}",
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(startTime)),
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(endTime)),
                 channel.getInetSocketAddress());
-        List<Block> blocks = blockchain.getBlocksByTime(startTime, endTime);
-        for (Block block : blocks) {
-            sendNewBlock(block, 1);
+        // 按时间索引分批读取, 通道可写时才继续发送
+        msgQueue.sendStream(BlocksStream.byTime(blockchain, startTime, endTime, 1,
+                channel.isSupported(XdagCapability.BATCH),
+                () -> new BlocksReplyMessage(startTime, endTime, random, kernel.getBlockchain().getXdagStats(),
+                        netDBManager.getNetDB())));
+    }
+
+    /**
+     * 每个节点未发送完的范围请求数有上限, 超过时丢弃, 对方超时后会向其他节点重新请求
+     */
+    private boolean acceptRangeRequest() {
+        int limit = kernel.getConfig().getNodeSpec().getMaxRangeRequestsPerPeer();
+        if (msgQueue.streamSize() >= limit) {
+            log.debug("Too many range requests from node {}, drop", channel.getInetSocketAddress());
+            return false;
         }
-        sendMessage(new BlocksReplyMessage(startTime, endTime, random, kernel.getBlockchain().getXdagStats(),
-                netDBManager.getNetDB()));
-//        }
+        return true;
     }
 
     protected void processBlocksReply(BlocksReplyMessage msg) {
         updateXdagStats(msg);
         long randomSeq = msg.getRandom();
+        onReply(RequestRtt.Kind.BLOCKS, randomSeq);
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onRangeReply(randomSeq);
+        }
         SettableFuture<Bytes> sf = kernel.getSync().getBlocksRequestMap().get(randomSeq);
         if (sf != null) {
             sf.set(Bytes.wrap(new byte[]{0}));
@@ -175,13 +292,86 @@ public class Xdag03 extends XdagHandler {
     protected void processSumsReply(SumReplyMessage msg) {
         updateXdagStats(msg);
         long randomSeq = msg.getRandom();
+        onReply(RequestRtt.Kind.SUMS, randomSeq);
         SettableFuture<Bytes> sf = kernel.getSync().getSumsRequestMap().get(randomSeq);
         if (sf != null) {
             sf.set(msg.getSum());
         }
     }
 
+    /**
+     * 记录对方的能力并回复本节点的能力
+     */
     protected void processBlockExtRequest(BlockExtRequestMessage msg) {
+        if (!msg.isCapabilities()) {
+            return;
+        }
+        channel.setCapabilities(msg.getCapabilities() & XdagCapability.localCapabilities());
+        log.debug("node {} capabilities {}", channel.getInetSocketAddress(), msg.getCapabilities());
+        sendMessage(new BlockExtReplyMessage(XdagCapability.localCapabilities(), msg.getRandom(),
+                blockchain.getXdagStats(), netDBManager.getNetDB()));
+        // 对方下次连接时可以跳过公钥交换
+        SessionTickets tickets = kernel.getSessionTickets();
+        if (tickets != null && channel.isInbound() && channel.isSupported(XdagCapability.SESSION)) {
+            sendMessage(new SessionTicketMessage(tickets.issue(channel.getInetSocketAddress().getAddress())));
+        }
+    }
+
+    protected void processBlockExtReply(BlockExtReplyMessage msg) {
+        if (!msg.isCapabilities()) {
+            return;
+        }
+        channel.setCapabilities(msg.getCapabilities() & XdagCapability.localCapabilities());
+        log.debug("node {} capabilities {}", channel.getInetSocketAddress(), msg.getCapabilities());
+    }
+
+    /**
+     * 保存连入节点签发的票据, 只接受自己连出的连接上收到的票据
+     */
+    protected void processSessionTicket(SessionTicketMessage msg) {
+        SessionTickets tickets = kernel.getSessionTickets();
+        if (tickets == null || channel.isInbound() || !channel.isSupported(XdagCapability.SESSION)) {
+            return;
+        }
+        tickets.put(channel.getInetSocketAddress(), msg.getTicket());
+    }
+
+    /**
+     * 按高度顺序发送主块, 每个主块之前先发送它确认的区块, 对方导入时不会缺少父块
+     */
+    protected void processMainBlocksRequest(MainBlocksRequestMessage msg) {
+        updateXdagStats(msg);
+        if (!acceptRangeRequest()) {
+            return;
+        }
+        long from = Math.max(1, msg.getStarttime());
+        long to = Math.min(msg.getEndtime(), from + REQUEST_MAIN_BLOCKS_MAX - 1);
+        log.debug("Send main blocks between height {} and {} to node {}", from, to, channel.getInetSocketAddress());
+        msgQueue.sendStream(BlocksStream.byHeight(blockchain, from, to, 1,
+                channel.isSupported(XdagCapability.BATCH),
+                () -> new BlocksReplyMessage(msg.getStarttime(), msg.getEndtime(), msg.getRandom(),
+                        kernel.getBlockchain().getXdagStats(), netDBManager.getNetDB())));
+    }
+
+    /**
+     * 回复状态快照的一部分, 没有请求的快照时回复空数据
+     */
+    protected void processSnapshotRequest(SnapshotRequestMessage msg) {
+        SnapshotExporter exporter = kernel.getSnapshotExporter();
+        if (!channel.isSupported(XdagCapability.SNAPSHOT) || exporter == null) {
+            return;
+        }
+        SnapshotManifest manifest = exporter.getManifest();
+        byte[] data = exporter.get(msg.getPart(), msg.getHeight(), msg.getIndex());
+        long height = msg.getHeight() != 0 || manifest == null ? msg.getHeight() : manifest.getHeight();
+        sendMessage(new SnapshotReplyMessage(msg.getPart(), height, msg.getIndex(),
+                data == null ? new byte[0] : data));
+    }
+
+    protected void processSnapshotReply(SnapshotReplyMessage msg) {
+        if (kernel.getSnapshotSync() != null) {
+            kernel.getSnapshotSync().onReply(channel, msg);
+        }
     }
 
     protected void processBlockRequest(BlockRequestMessage msg) {
@@ -215,6 +405,10 @@ public class Xdag03 extends XdagHandler {
                 channel.getInetSocketAddress());
         BlocksRequestMessage msg = new BlocksRequestMessage(startTime, endTime, kernel.getBlockchain().getXdagStats(),
                 netDBManager.getNetDB());
+        onRequest(RequestRtt.Kind.BLOCKS, msg.getRandom());
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onRangeRequest(msg.getRandom(), startTime, endTime);
+        }
         sendMessage(msg);
         return msg.getRandom();
     }
@@ -225,6 +419,10 @@ public class Xdag03 extends XdagHandler {
         BlockRequestMessage msg = new BlockRequestMessage(hash, kernel.getBlockchain().getXdagStats(),
                 netDBManager.getNetDB());
         log.debug("Request block {} from node {}", hash, channel.getInetSocketAddress());
+        onRequest(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hash));
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onBlockRequest(hash);
+        }
         sendMessage(msg);
         return msg.getRandom();
     }
@@ -233,10 +431,67 @@ public class Xdag03 extends XdagHandler {
     public long sendGetSums(long startTime, long endTime) {
         SumRequestMessage msg = new SumRequestMessage(startTime, endTime, kernel.getBlockchain().getXdagStats(),
                 netDBManager.getNetDB());
+        onRequest(RequestRtt.Kind.SUMS, msg.getRandom());
+        sendMessage(msg);
+        return msg.getRandom();
+    }
+
+    @Override
+    public long sendGetMainBlocks(long fromHeight, long toHeight) {
+        log.debug("Request main blocks between height {} and {} from node {}", fromHeight, toHeight,
+                channel.getInetSocketAddress());
+        MainBlocksRequestMessage msg = new MainBlocksRequestMessage(fromHeight, toHeight,
+                kernel.getBlockchain().getXdagStats(), netDBManager.getNetDB());
+        onRequest(RequestRtt.Kind.BLOCKS, msg.getRandom());
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onMainBlocksRequest(msg.getRandom());
+        }
         sendMessage(msg);
         return msg.getRandom();
     }
 
+    @Override
+    public void sendInventory(List<Bytes32> hashlows) {
+        sendMessage(new InvMessage(InvMessage.Type.ANNOUNCE, hashlows));
+    }
+
+    @Override
+    public void sendGetInventory(List<Bytes32> hashlows) {
+        for (Bytes32 hashlow : hashlows) {
+            onRequest(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hashlow));
+            if (channel.getSolicitedBlocks() != null) {
+                channel.getSolicitedBlocks().onBlockRequest(hashlow);
+            }
+        }
+        sendMessage(new InvMessage(InvMessage.Type.REQUEST, hashlows));
+    }
+
+    @Override
+    public void sendGetAncestors(List<Bytes32> hashlows, int depth) {
+        if (!channel.isSupported(XdagCapability.ANCESTORS)) {
+            for (Bytes32 hashlow : hashlows) {
+                sendGetBlock(hashlow.mutableCopy());
+            }
+            return;
+        }
+        for (Bytes32 hashlow : hashlows) {
+            onRequest(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hashlow));
+        }
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onAncestorsRequest(hashlows);
+        }
+        sendMessage(new InvMessage(InvMessage.Type.ANCESTORS, hashlows, depth));
+    }
+
+    @Override
+    public void sendGetSnapshot(int part, long height, int index) {
+        if (!channel.isSupported(XdagCapability.SNAPSHOT)) {
+            return;
+        }
+        sendMessage(new SnapshotRequestMessage(part, height, index, kernel.getBlockchain().getXdagStats(),
+                netDBManager.getNetDB()));
+    }
+
     @Override
     public void sendMessage(Message message) {
         if (msgQueue.isRunning()) {
@@ -253,9 +508,39 @@ public class Xdag03 extends XdagHandler {
     @Override
     public void activate() {
         log.debug("Xdag protocol activate");
+        // 协商扩展能力, 旧版本节点不会回复
+        sendMessage(new BlockExtRequestMessage(XdagCapability.localCapabilities(), blockchain.getXdagStats(),
+                netDBManager.getNetDB()));
         //// xdagListener.trace("Xdag protocol activate");
     }
 
+    private void onRequest(RequestRtt.Kind kind, long key) {
+        if (channel.getRequestRtt() != null) {
+            channel.getRequestRtt().onRequest(kind, key);
+        }
+    }
+
+    private void onReply(RequestRtt.Kind kind, long key) {
+        if (channel.getRequestRtt() != null) {
+            channel.getRequestRtt().onReply(kind, key);
+        }
+    }
+
+    private void onBlockReply(Bytes32 hashlow) {
+        onReply(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hashlow));
+    }
+
+    private boolean isSolicited(Block block) {
+        SolicitedBlocks solicited = channel.getSolicitedBlocks();
+        return solicited != null && solicited.isSolicited(block.getTimestamp(), block::getHashLow);
+    }
+
+    private void onSolicitedBlock(Bytes32 hashlow) {
+        if (channel.getSolicitedBlocks() != null) {
+            channel.getSolicitedBlocks().onBlock(hashlow);
+        }
+    }
+
     public void updateXdagStats(AbstractMessage message) {
         XdagStats remoteXdagStats = message.getXdagStats();
         kernel.getBlockchain().getXdagStats().update(remoteXdagStats);
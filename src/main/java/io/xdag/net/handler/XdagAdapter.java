@@ -27,6 +27,8 @@ package io.xdag.net.handler;
 import io.xdag.core.Block;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.message.Message;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
 
 public class XdagAdapter implements Xdag {
@@ -54,6 +56,27 @@ public class XdagAdapter implements Xdag {
         return 0;
     }
 
+    @Override
+    public long sendGetMainBlocks(long fromHeight, long toHeight) {
+        return 0;
+    }
+
+    @Override
+    public void sendInventory(List<Bytes32> hashlows) {
+    }
+
+    @Override
+    public void sendGetInventory(List<Bytes32> hashlows) {
+    }
+
+    @Override
+    public void sendGetAncestors(List<Bytes32> hashlows, int depth) {
+    }
+
+    @Override
+    public void sendGetSnapshot(int part, long height, int index) {
+    }
+
     @Override
     public void dropConnection() {
         // TODO Auto-generated method stub
@@ -24,30 +24,39 @@
 
 package io.xdag.net.handler;
 
-import static io.xdag.utils.BasicUtils.crc32Verify;
-
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageCodec;
 import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagField;
+import io.xdag.crypto.Hash;
 import io.xdag.net.Channel;
+import io.xdag.net.NetMetrics;
+import io.xdag.net.SolicitedBlocks;
 import io.xdag.net.message.Message;
 import io.xdag.net.message.MessageFactory;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.BlocksBatchMessage;
 import io.xdag.net.message.impl.NewBlockMessage;
-import io.xdag.utils.BytesUtils;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
 
 @EqualsAndHashCode(callSuper = false)
 @Slf4j
 @Data
 public class XdagBlockHandler extends ByteToMessageCodec<XdagBlock> {
 
+    private static final byte[] CRC_PLACEHOLDER = new byte[4];
+
     private Channel channel;
     private MessageFactory messageFactory;
 
@@ -61,61 +70,136 @@ public class XdagBlockHandler extends ByteToMessageCodec<XdagBlock> {
         return (byte) (type >> (n << 2) & 0xf);
     }
 
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, XdagBlock xdagblock, boolean preferDirect) {
+        return ctx.alloc().ioBuffer(xdagblock.getData().size());
+    }
+
     @Override
     protected void encode(
             ChannelHandlerContext channelHandlerContext, XdagBlock xdagblock, ByteBuf out) {
-        byte[] unCryptData = xdagblock.getData().toArray();
-        out.writeBytes(unCryptData);
+        // 数据包装整个数组时直接写出, 不再复制
+        out.writeBytes(xdagblock.getData().toArrayUnsafe());
         channel.getNode().getStat().Outbound.add();
     }
 
+    /**
+     * BLOCKS_BATCH消息头之后的数据长度, 其他消息为0, 长度非法时返回-1
+     */
+    public static int getPayloadLength(ByteBuf in) {
+        long type = in.getLongLE(in.readerIndex() + 8);
+        if ((type & 0xf) != XdagField.FieldType.XDAG_FIELD_NONCE.asByte()
+                || (type >> 4 & 0xf) != XdagMessageCodes.BLOCKS_BATCH.asByte()) {
+            return 0;
+        }
+        long length = in.getLongLE(in.readerIndex() + BlocksBatchMessage.PAYLOAD_LENGTH_OFFSET);
+        return length > 0 && length <= BlocksBatchMessage.MAX_PAYLOAD ? (int) length : -1;
+    }
+
+    /**
+     * 直接在接收缓冲上校验长度和crc, crc字段按0计算
+     */
+    public static boolean isFrameLegal(ByteBuf in, int index) {
+        long transportHeader = in.getLongLE(index);
+        if ((transportHeader >> 16 & 0xffff) != XdagBlock.XDAG_BLOCK_SIZE) {
+            return false;
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(in.nioBuffer(index, 4));
+        crc32.update(CRC_PLACEHOLDER);
+        crc32.update(in.nioBuffer(index + 8, XdagBlock.XDAG_BLOCK_SIZE - 8));
+        return (int) crc32.getValue() == in.getIntLE(index + 4);
+    }
+
+    /**
+     * 读出消息, 传输头置0; 每个消息只复制这一次
+     */
+    private static byte[] readFrame(ByteBuf in, int payloadLength) {
+        byte[] data = new byte[XdagBlock.XDAG_BLOCK_SIZE + payloadLength];
+        in.readBytes(data);
+        Arrays.fill(data, 0, 8, (byte) 0);
+        return data;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> out) {
-        if (in.readableBytes() >= XdagBlock.XDAG_BLOCK_SIZE) {
-            log.trace("Decoding packet (" + in.readableBytes() + " bytes)");
-            byte[] unCryptData = new byte[512];
-            in.readBytes(unCryptData);
-            channel.getNode().getStat().Inbound.add();
-
-            // TODO:process xdagblock transport header
-            int ttl = (int) ((BytesUtils.bytesToLong(unCryptData, 0, true) >> 8) & 0xff);
-            if (isDataIllegal(unCryptData.clone())) {
-                log.debug("Receive error block!");
-                return;
-            }
+        if (in.readableBytes() < XdagBlock.XDAG_BLOCK_SIZE) {
+            log.trace("length less than " + XdagBlock.XDAG_BLOCK_SIZE + " bytes");
+            return;
+        }
+        int payloadLength = getPayloadLength(in);
+        if (payloadLength < 0) {
+            log.debug("Receive illegal batch from {}, close", channel.getInetSocketAddress());
+            in.skipBytes(in.readableBytes());
+            channelHandlerContext.close();
+            return;
+        }
+        // 等待完整的批量消息
+        if (in.readableBytes() < XdagBlock.XDAG_BLOCK_SIZE + payloadLength) {
+            return;
+        }
+        log.trace("Decoding packet (" + in.readableBytes() + " bytes)");
+        channel.getNode().getStat().Inbound.add();
+        long start = System.nanoTime();
 
-            System.arraycopy(BytesUtils.longToBytes(0, true), 0, unCryptData, 0, 8);
+        int index = in.readerIndex();
+        if (!isFrameLegal(in, index)) {
+            log.debug("Receive error block!");
+            in.skipBytes(XdagBlock.XDAG_BLOCK_SIZE + payloadLength);
+            return;
+        }
+        int ttl = (int) (in.getLongLE(index) >> 8 & 0xff);
+        long type = in.getLongLE(index + 8);
+        byte firstFieldType = (byte) (type & 0xf);
 
-            XdagBlock xdagBlock = new XdagBlock(unCryptData);
-            byte first_field_type = getMsgCode(xdagBlock, 0);
-            Message msg = null;
-            // 普通区块
-            XdagField.FieldType netType = channel.getKernel().getConfig().getXdagFieldHeader();
-            if (netType.asByte() == first_field_type) {
-                msg = new NewBlockMessage(xdagBlock, ttl);
-            }
-            // 消息区块
-            else if (XdagField.FieldType.XDAG_FIELD_NONCE.asByte() == first_field_type) {
-                msg = messageFactory.create(getMsgCode(xdagBlock, 1), xdagBlock.getData());
-            }
-            if (msg != null) {
-                out.add(msg);
-            } else {
-                log.debug("receive unknown block first_field_type :" + first_field_type);
+        Message msg;
+        // 普通区块
+        XdagField.FieldType netType = channel.getKernel().getConfig().getXdagFieldHeader();
+        if (netType.asByte() == firstFieldType) {
+            // 已经从其他节点收到过, 不再复制和解析
+            if (!channel.getKernel().getChannelMgr().getSeenBlocks()
+                    .markSeen(in.nioBuffer(index, XdagBlock.XDAG_BLOCK_SIZE)) && !isSolicited(in, index)) {
+                channel.getNode().getStat().Duplicate.add();
+                in.skipBytes(XdagBlock.XDAG_BLOCK_SIZE);
+                onReceived(XdagMessageCodes.NEW_BLOCK, XdagBlock.XDAG_BLOCK_SIZE, start);
+                return;
             }
-
+            msg = new NewBlockMessage(new XdagBlock(readFrame(in, 0)), ttl);
+        }
+        // 消息区块
+        else if (XdagField.FieldType.XDAG_FIELD_NONCE.asByte() == firstFieldType) {
+            msg = messageFactory.create((byte) (type >> 4 & 0xf), MutableBytes.wrap(readFrame(in, payloadLength)));
         } else {
-            log.debug("length less than " + XdagBlock.XDAG_BLOCK_SIZE + " bytes");
+            in.skipBytes(XdagBlock.XDAG_BLOCK_SIZE + payloadLength);
+            log.debug("receive unknown block first_field_type :" + firstFieldType);
+            return;
         }
+        onReceived(msg.getCommand(), XdagBlock.XDAG_BLOCK_SIZE + payloadLength, start);
+        out.add(msg);
+    }
+
+    /**
+     * 对方响应本节点请求的区块, 最近从其他节点收到过也要处理
+     */
+    private boolean isSolicited(ByteBuf in, int index) {
+        SolicitedBlocks solicited = channel.getSolicitedBlocks();
+        return solicited != null && solicited.isSolicited(in.getLongLE(index + 16), () -> hashLow(in, index));
     }
 
-    public boolean isDataIllegal(byte[] uncryptData) {
-        long transportHeader = BytesUtils.bytesToLong(uncryptData, 0, true);
-        long dataLength = (transportHeader >> 16 & 0xffff);
-        int crc = BytesUtils.bytesToInt(uncryptData, 4, true);
-        // clean transport header
-        System.arraycopy(BytesUtils.longToBytes(0, true), 0, uncryptData, 4, 4);
-        return (dataLength != 512 || !crc32Verify(uncryptData, crc));
+    private static Bytes32 hashLow(ByteBuf in, int index) {
+        byte[] data = new byte[XdagBlock.XDAG_BLOCK_SIZE];
+        in.getBytes(index, data);
+        Arrays.fill(data, 0, 8, (byte) 0);
+        MutableBytes32 hashLow = MutableBytes32.create();
+        hashLow.set(8, Bytes.wrap(Hash.hashTwice(data)).reverse().slice(8, 24));
+        return hashLow;
+    }
+
+    private void onReceived(XdagMessageCodes code, int bytes, long start) {
+        NetMetrics metrics = channel.getMetrics();
+        if (metrics != null) {
+            metrics.onReceived(code, bytes, System.nanoTime() - start);
+        }
     }
 
 }
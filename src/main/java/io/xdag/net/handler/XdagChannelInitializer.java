@@ -26,7 +26,6 @@ package io.xdag.net.handler;
 
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.SocketChannel;
 import io.xdag.Kernel;
 import io.xdag.net.XdagChannel;
@@ -62,9 +61,14 @@ public class XdagChannelInitializer extends ChannelInitializer<SocketChannel> {
                 ch.disconnect();
                 return;
             }
+            // 违规被禁止的节点
+            if (isServer && kernel.getNodeMgr() != null && kernel.getNodeMgr().isBanned(address)) {
+                log.debug("Banned inbound connection: {}", address);
+                ch.disconnect();
+                return;
+            }
             XdagChannel channel = new XdagChannel(ch);
             channel.init(ch.pipeline(), kernel, isServer, address);
-            ch.config().setOption(ChannelOption.TCP_NODELAY, true);
             channelMgr.add(channel);
             ch.closeFuture().addListener((ChannelFutureListener) future -> channelMgr.notifyDisconnect(channel));
 
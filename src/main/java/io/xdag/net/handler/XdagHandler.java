@@ -31,14 +31,22 @@ import io.xdag.consensus.SyncManager;
 import io.xdag.core.Block;
 import io.xdag.core.Blockchain;
 import io.xdag.net.Channel;
+import io.xdag.net.PeerRateLimiter;
+import io.xdag.net.PeerRateLimiter.RequestClass;
 import io.xdag.net.XdagVersion;
 import io.xdag.net.manager.NetDBManager;
 import io.xdag.net.message.Message;
 import io.xdag.net.message.MessageQueue;
 import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.node.NodeManager;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 @EqualsAndHashCode(callSuper = false)
@@ -46,6 +54,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class XdagHandler extends SimpleChannelInboundHandler<Message> implements Xdag {
 
+    /**
+     * 读取暂停时最多排队的请求数, 按流水线同步的节点远达不到
+     */
+    public static final int MAX_DEFERRED_REQUESTS = 256;
+
     protected Kernel kernel;
     protected Blockchain blockchain;
     protected XdagVersion version;
@@ -57,10 +70,79 @@ public abstract class XdagHandler extends SimpleChannelInboundHandler<Message> i
 
     protected NetDBManager netDBManager;
 
+    /**
+     * 超过限速而延后处理的请求, 队首的请求已经预约了令牌, 只在连接的EventLoop中访问
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private final Deque<Message> deferred = new ArrayDeque<>();
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Message msg) {
         if (XdagMessageCodes.inRange(msg.getCommand().asByte(), version)) {
             log.trace("XdagHandler invoke: [{}]", msg.getCommand());
         }
     }
+
+    /**
+     * 处理一条消息, 延后的消息到期后也从这里处理
+     */
+    protected void handleMessage(Message msg) {
+    }
+
+    /**
+     * 按请求类别限速. 超过时延后处理, 等待期间停止读取该连接, 对方的后续请求留在TCP缓冲区中;
+     * 读取暂停前已经解码的请求按顺序排队, 超过 {@link #MAX_DEFERRED_REQUESTS} 时才丢弃并增加违规分数
+     *
+     * @return 请求已延后或丢弃时返回true
+     */
+    protected boolean isRateLimited(ChannelHandlerContext ctx, Message msg) {
+        PeerRateLimiter rateLimiter = channel.getRateLimiter();
+        if (rateLimiter == null || RequestClass.of(msg) == null) {
+            return false;
+        }
+        if (!deferred.isEmpty()) {
+            if (deferred.size() < MAX_DEFERRED_REQUESTS) {
+                deferred.add(msg);
+            } else {
+                channel.getNode().getStat().RateLimited.add();
+                log.debug("Rate limited {} from node {}", msg.getCommand(), channel.getInetSocketAddress());
+                // 节点管理器在服务端之后启动
+                NodeManager nodeMgr = kernel.getNodeMgr();
+                if (nodeMgr != null) {
+                    nodeMgr.misbehave(channel.getNode(), NodeManager.RATE_LIMITED_SCORE,
+                            "rate limited " + msg.getCommand());
+                }
+            }
+            return true;
+        }
+        long delay = rateLimiter.reserve(msg);
+        if (delay == 0) {
+            return false;
+        }
+        channel.getNode().getStat().RateLimited.add();
+        deferred.add(msg);
+        ctx.channel().config().setAutoRead(false);
+        ctx.executor().schedule(() -> resume(ctx), delay, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private void resume(ChannelHandlerContext ctx) {
+        try {
+            while (!deferred.isEmpty() && ctx.channel().isActive()) {
+                handleMessage(deferred.poll());
+                long delay = deferred.isEmpty() ? 0 : channel.getRateLimiter().reserve(deferred.peek());
+                if (delay > 0) {
+                    channel.getNode().getStat().RateLimited.add();
+                    ctx.executor().schedule(() -> resume(ctx), delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Handle deferred request error: {}", e.getMessage(), e);
+            ctx.close();
+        }
+        deferred.clear();
+        ctx.channel().config().setAutoRead(true);
+    }
 }
@@ -28,20 +28,37 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.xdag.Kernel;
+import io.xdag.net.SessionTickets;
+import io.xdag.net.XdagCapability;
 import io.xdag.net.XdagChannel;
 import io.xdag.net.XdagVersion;
+import io.xdag.utils.BytesUtils;
 import java.net.InetSocketAddress;
 import java.util.Arrays;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Hex;
 
+/**
+ * 握手: 连入方发送公钥, 连出方验证后发送公钥, 双方再交换512字节的口令
+ * 连出方有对方签发的会话票据时, 连接后立即发送恢复帧 (代替公钥, 同为1024字节) 和口令, 不等待对方公钥.
+ * 连入方仍然在连接时发送公钥, 连出方照常验证; 连入方验证票据后回复口令, 不再验证连出方的公钥.
+ * 发送的数据量不变, 连出方少等一次往返. 票据无效时连入方断开连接
+ */
 @Slf4j
 public class XdagHandshakeHandler extends ByteToMessageDecoder {
 
+    public static final int PUBKEY_SIZE = 1024;
+    public static final int PASSWORD_SIZE = 512;
+
     private final XdagChannel channel;
     private final Kernel kernel;
     private boolean isServer;
+    private long handshakeStart;
+    /**
+     * 本连接使用会话票据跳过了公钥交换
+     */
+    private boolean resumed;
 
     public XdagHandshakeHandler(Kernel kernel, XdagChannel channel) {
         this.kernel = kernel;
@@ -59,9 +76,17 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
                 // 连接到对方的channel 并将对方记录为node
                 remoteAddress.getAddress().getHostAddress(), remoteAddress.getPort());
         log.debug("connect with node:{}", remoteAddress);
+        handshakeStart = System.currentTimeMillis();
         // TODO:如果为服务器端 发送pubKey
         if (isServer) {
             channel.sendPubkey(ctx);
+        } else if (kernel.getSessionTickets() != null) {
+            byte[] ticket = kernel.getSessionTickets().take(channel.getInetSocketAddress());
+            if (ticket != null) {
+                resumed = true;
+                channel.sendResume(ctx, ticket);
+                channel.sendPassword(ctx);
+            }
         }
     }
 
@@ -70,7 +95,7 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
         if (channel.getNode().getStat().Inbound.get() < 4) {
             // 如果还未发送pubkey
             if (channel.getNode().getStat().Inbound.get() < 1) {
-                byte[] remotePubKey = new byte[1024];
+                byte[] remotePubKey = new byte[PUBKEY_SIZE];
                 try {
                     in.readBytes(remotePubKey);
                 } catch (Exception e) {
@@ -78,7 +103,16 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
                 }
                 // 发送过pubkey后加2
                 channel.getNode().getStat().Inbound.add(2);
-                if (!checkDnetPubkey(remotePubKey)) {
+                if (isServer && isResume(remotePubKey)) {
+                    if (!checkResume(ctx, remotePubKey)) {
+                        log.debug("invalid session ticket from node:{}", channel.getInetSocketAddress());
+                        // 丢弃随后到达的口令, 不完成握手
+                        in.skipBytes(in.readableBytes());
+                        ctx.close();
+                        return;
+                    }
+                    resumed = true;
+                } else if (!checkDnetPubkey(remotePubKey)) {
                     log.debug("illegal address from node:{}",channel.getInetSocketAddress().toString());
                     return;
                 }
@@ -88,13 +122,16 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
                     if (channel.getNode().getStat().Outbound.get() == 2) {
                         channel.sendPassword(ctx);
                     }
-                } else {
+                } else if (!resumed) {
                     channel.sendPubkey(ctx);
                 }
                 // 如果已经接收过pubkey
             } else if (channel.getNode().getStat().Inbound.get() >= 1) {
-                // 读取set0
-                byte[] word = new byte[512];
+                // 读取set0, 恢复时对方的口令与恢复帧一起到达
+                if (in.readableBytes() < PASSWORD_SIZE) {
+                    return;
+                }
+                byte[] word = new byte[PASSWORD_SIZE];
                 in.readBytes(word);
                 channel.getNode().getStat().Inbound.add();
                 if (!isServer) {
@@ -105,10 +142,15 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
                 }
                 if (channel.getNode().getStat().Inbound.get() >= 3) {
 
-                    log.info("connect a new pool with node:{}", channel.getInetSocketAddress().toString());
+                    log.info("connect a new pool with node:{}{}", channel.getInetSocketAddress().toString(),
+                            resumed ? " (resumed)" : "");
 
                     // handshake ok
                     kernel.getChannelMgr().onChannelActive(channel, channel.getNode());
+                    if (!isServer && kernel.getNodeMgr() != null) {
+                        kernel.getNodeMgr().onPeerConnected(channel.getNode(),
+                                System.currentTimeMillis() - handshakeStart);
+                    }
                     ctx.pipeline().remove(this);
                     channel.activateXdag(ctx, XdagVersion.V03);
 
@@ -132,4 +174,32 @@ public class XdagHandshakeHandler extends ByteToMessageDecoder {
     public boolean checkDnetPubkey(byte[] pubkey) {
         return Arrays.equals(kernel.getConfig().getNodeSpec().getXKeys().pub, pubkey);
     }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * 恢复帧: 前8字节为SESSION_MAGIC, 之后为票据, 其余为0
+     */
+    public static byte[] encodeResume(byte[] ticket) {
+        byte[] frame = new byte[PUBKEY_SIZE];
+        System.arraycopy(BytesUtils.longToBytes(XdagCapability.SESSION_MAGIC, true), 0, frame, 0, 8);
+        System.arraycopy(ticket, 0, frame, 8, ticket.length);
+        return frame;
+    }
+
+    private static boolean isResume(byte[] frame) {
+        return BytesUtils.bytesToLong(frame, 0, true) == XdagCapability.SESSION_MAGIC;
+    }
+
+    private boolean checkResume(ChannelHandlerContext ctx, byte[] frame) {
+        SessionTickets tickets = kernel.getSessionTickets();
+        if (tickets == null) {
+            return false;
+        }
+        InetSocketAddress remoteAddress = (InetSocketAddress) ctx.channel().remoteAddress();
+        byte[] ticket = Arrays.copyOfRange(frame, 8, 8 + SessionTickets.TICKET_SIZE);
+        return tickets.verify(remoteAddress.getAddress(), ticket);
+    }
 }
@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.libp2p;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.libp2p.core.crypto.PrivKey;
+import io.libp2p.core.pubsub.PubsubApiKt;
+import io.libp2p.core.pubsub.PubsubPublisherApi;
+import io.libp2p.core.pubsub.PubsubSubscription;
+import io.libp2p.core.pubsub.Topic;
+import io.libp2p.core.pubsub.ValidationResult;
+import io.libp2p.etc.types.WBytes;
+import io.libp2p.pubsub.AbstractPubsubMessage;
+import io.libp2p.pubsub.gossip.Gossip;
+import io.libp2p.pubsub.gossip.GossipParams;
+import io.libp2p.pubsub.gossip.GossipPeerScoreParams;
+import io.libp2p.pubsub.gossip.GossipRouter;
+import io.libp2p.pubsub.gossip.GossipScoreParams;
+import io.libp2p.pubsub.gossip.GossipTopicScoreParams;
+import io.libp2p.pubsub.gossip.GossipTopicsScoreParams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.xdag.core.Block;
+import io.xdag.core.ImportResult;
+import io.xdag.core.XdagBlock;
+import io.xdag.crypto.Hash;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes;
+import pubsub.pb.Rpc;
+
+/**
+ * 通过libp2p gossipsub广播新区块, 与原有TCP连接的转发同时使用
+ * 消息id为去掉传输头后区块数据的哈希, 不同节点发布同一区块时只转发一次
+ * 区块导入成功后才继续转发, 发送无效区块的节点在评分中扣分, 分数过低时不再与其交换消息
+ */
+@Slf4j
+public class BlockGossip {
+
+    public static final String TOPIC_PREFIX = "/xdag/blocks/";
+    private static final int PUBLISHED_SIZE = 1 << 16;
+    private static final long PUBLISHED_EXPIRE = 120;
+    /**
+     * 等待导入的gossip区块上限, 超出时直接忽略, 缺失的区块由同步重新获取
+     */
+    static final int IMPORT_QUEUE_SIZE = 1024;
+
+    private final Topic topic;
+    private final Function<Block, ImportResult> importer;
+    private final GossipRouter router;
+    @Getter
+    private final Gossip gossip;
+    private final ExecutorService importExecutor;
+    /**
+     * 已发布或已收到的消息id, 导入后经转发线程再次进入时不重复发布
+     */
+    private final Cache<WBytes, Boolean> published = Caffeine.newBuilder()
+            .maximumSize(PUBLISHED_SIZE)
+            .expireAfterWrite(PUBLISHED_EXPIRE, TimeUnit.SECONDS)
+            .build();
+    private final TrafficCounter traffic = new TrafficCounter();
+    private PubsubPublisherApi publisher;
+    private PubsubSubscription subscription;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong ignored = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param topicName 网络名, 不同网络的节点不会交换区块
+     * @param importer 导入收到的区块, 在单独的线程中调用
+     */
+    public BlockGossip(String topicName, Function<Block, ImportResult> importer) {
+        this(topicName, importer, IMPORT_QUEUE_SIZE);
+    }
+
+    BlockGossip(String topicName, Function<Block, ImportResult> importer, int queueSize) {
+        this.topic = new Topic(TOPIC_PREFIX + topicName);
+        this.importer = importer;
+        this.router = new GossipRouter(new GossipParams(), scoreParams(topic.getTopic()));
+        this.router.setMessageFactory(BlockMessage::new);
+        this.gossip = new Gossip(router, PubsubApiKt.createPubsubApi(router), traffic);
+        this.importExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new BasicThreadFactory.Builder()
+                        .namingPattern("xdag-gossip-import-%d")
+                        .daemon(true)
+                        .build());
+    }
+
+    /**
+     * 评分参数: 第一个送达有效区块加分, 无效区块按平方扣分
+     */
+    private static GossipScoreParams scoreParams(String topicName) {
+        GossipTopicScoreParams blockTopic = GossipTopicScoreParams.builder()
+                .topicWeight(1.0)
+                .timeInMeshWeight(0.03)
+                .timeInMeshQuantum(Duration.ofSeconds(1))
+                .timeInMeshCap(300)
+                .firstMessageDeliveriesWeight(0.5)
+                .firstMessageDeliveriesDecay(0.9)
+                .firstMessageDeliveriesCap(100)
+                .invalidMessageDeliveriesWeight(-100)
+                .invalidMessageDeliveriesDecay(0.5)
+                .build();
+        GossipPeerScoreParams peerParams = GossipPeerScoreParams.builder()
+                .topicScoreCap(100)
+                .behaviourPenaltyWeight(-10)
+                .behaviourPenaltyDecay(0.9)
+                .behaviourPenaltyThreshold(6)
+                .decayInterval(Duration.ofSeconds(1))
+                .decayToZero(0.01)
+                .retainScore(Duration.ofMinutes(10))
+                .build();
+        return GossipScoreParams.builder()
+                .peerScoreParams(peerParams)
+                .topicsScoreParams(new GossipTopicsScoreParams(
+                        GossipTopicScoreParams.builder().build(), Map.of(topicName, blockTopic)))
+                .gossipThreshold(-1000)
+                .publishThreshold(-2000)
+                .graylistThreshold(-4000)
+                .build();
+    }
+
+    /**
+     * host启动后调用
+     */
+    public void start(PrivKey privKey) {
+        publisher = gossip.createPublisher(privKey, System.currentTimeMillis());
+        subscription = gossip.subscribe(message -> validate(message.getData()), topic);
+    }
+
+    public void stop() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        importExecutor.shutdownNow();
+    }
+
+    /**
+     * 发布区块, 同一区块只发布一次
+     */
+    public void publish(Block block) {
+        if (publisher == null) {
+            return;
+        }
+        byte[] data = toMessageData(block.getXdagBlock().getData().toArray());
+        if (published.asMap().putIfAbsent(messageId(data), Boolean.TRUE) != null) {
+            return;
+        }
+        publishedCount.incrementAndGet();
+        publisher.publish(Unpooled.wrappedBuffer(data), topic).whenComplete((r, e) -> {
+            if (e != null) {
+                log.debug("gossip publish {} failed: {}", block.getHashLow(), e.getMessage());
+            }
+        });
+    }
+
+    CompletableFuture<ValidationResult> validate(ByteBuf buf) {
+        if (buf.readableBytes() != XdagBlock.XDAG_BLOCK_SIZE) {
+            rejected.incrementAndGet();
+            return CompletableFuture.completedFuture(ValidationResult.Invalid);
+        }
+        byte[] data = new byte[XdagBlock.XDAG_BLOCK_SIZE];
+        buf.getBytes(buf.readerIndex(), data);
+        WBytes id = messageId(data);
+        published.put(id, Boolean.TRUE);
+        try {
+            return CompletableFuture.supplyAsync(() -> importBlock(data), importExecutor);
+        } catch (RejectedExecutionException e) {
+            // 导入队列已满, 不转发也不扣分; 之后从TCP收到并导入时仍可发布
+            dropped.incrementAndGet();
+            published.invalidate(id);
+            return CompletableFuture.completedFuture(ValidationResult.Ignore);
+        }
+    }
+
+    private ValidationResult importBlock(byte[] data) {
+        ImportResult result;
+        try {
+            Block block = new Block(new XdagBlock(data));
+            block.parse();
+            result = importer.apply(block);
+        } catch (Exception e) {
+            log.debug("gossip block parse error: {}", e.getMessage());
+            result = ImportResult.INVALID_BLOCK;
+        }
+        switch (result) {
+            case IMPORTED_BEST, IMPORTED_NOT_BEST, IMPORTED_EXTRA -> {
+                accepted.incrementAndGet();
+                return ValidationResult.Valid;
+            }
+            case INVALID_BLOCK -> {
+                rejected.incrementAndGet();
+                return ValidationResult.Invalid;
+            }
+            default -> {
+                // 已存在或缺少parent, 不转发也不扣分
+                ignored.incrementAndGet();
+                return ValidationResult.Ignore;
+            }
+        }
+    }
+
+    /**
+     * 消息中的传输头清零, 与发送节点和ttl无关
+     */
+    static byte[] toMessageData(byte[] blockData) {
+        byte[] data = Arrays.copyOf(blockData, XdagBlock.XDAG_BLOCK_SIZE);
+        Arrays.fill(data, 0, 8, (byte) 0);
+        return data;
+    }
+
+    static WBytes messageId(byte[] data) {
+        return new WBytes(Hash.hashTwice(Bytes.wrap(data)).toArray());
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getBytesIn() {
+        return traffic.in.sum();
+    }
+
+    public long getBytesOut() {
+        return traffic.out.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("gossip %s: published=%d accepted=%d ignored=%d rejected=%d dropped=%d in=%d out=%d",
+                topic.getTopic(), publishedCount.get(), accepted.get(), ignored.get(), rejected.get(),
+                dropped.get(), getBytesIn(), getBytesOut());
+    }
+
+    /**
+     * 以区块数据哈希作为消息id, 不使用默认的 from + seqno
+     */
+    private static class BlockMessage extends AbstractPubsubMessage {
+
+        private final Rpc.Message protobufMessage;
+        private final WBytes messageId;
+
+        BlockMessage(Rpc.Message protobufMessage) {
+            this.protobufMessage = protobufMessage;
+            this.messageId = messageId(protobufMessage.getData().toByteArray());
+        }
+
+        @Override
+        public Rpc.Message getProtobufMessage() {
+            return protobufMessage;
+        }
+
+        @Override
+        public WBytes getMessageId() {
+            return messageId;
+        }
+    }
+
+    /**
+     * 统计gossip流上收发的字节数
+     */
+    @Sharable
+    private static class TrafficCounter extends ChannelDuplexHandler {
+
+        private final LongAdder in = new LongAdder();
+        private final LongAdder out = new LongAdder();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof ByteBuf buf) {
+                in.add(buf.readableBytes());
+            }
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof ByteBuf buf) {
+                out.add(buf.readableBytes());
+            }
+            super.write(ctx, msg, promise);
+        }
+    }
+}
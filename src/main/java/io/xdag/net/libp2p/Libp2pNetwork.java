@@ -63,14 +63,25 @@ public class Libp2pNetwork {
     private NodeId nodeId;
     private String ip;
     private DiscV5Service discV5Service;
+    /**
+     * 为null时不使用gossip广播区块
+     */
+    private final BlockGossip blockGossip;
+
     public Libp2pNetwork(PrivKey privKey, Multiaddr listenAddr) {
+        this(privKey, listenAddr, null);
+    }
+
+    public Libp2pNetwork(PrivKey privKey, Multiaddr listenAddr, BlockGossip blockGossip) {
         this.protocol = new NonProtocol();
         this.privKey = privKey;
         this.advertisedAddr = listenAddr;
         this.bootnodes = Lists.newArrayList();
+        this.blockGossip = blockGossip;
     }
 
     public Libp2pNetwork(Kernel kernel) {
+        this.blockGossip = kernel.getBlockGossip();
         this.port = kernel.getConfig().getNodeSpec().getLibp2pPort();
         this.protocol = new Libp2pXdagProtocol(kernel);
         // libp2p use wallet default key
@@ -93,6 +104,9 @@ public class Libp2pNetwork {
                     b.getMuxers().add(StreamMuxerProtocol.getMplex());
                     b.getNetwork().listen(advertisedAddr.toString());
                     b.getProtocols().add(protocol);
+                    if (blockGossip != null) {
+                        b.getProtocols().add(blockGossip.getGossip());
+                    }
 //                    b.getDebug().getBeforeSecureHandler().setLogger(LogLevel.DEBUG, "wire.ciphered");
 //                    Firewall firewall = new Firewall(Duration.ofSeconds(100));
 //                    b.getDebug().getBeforeSecureHandler().addNettyHandler(firewall);
@@ -116,6 +130,9 @@ public class Libp2pNetwork {
         return SafeFuture.of(host.start())
                 .thenApply(
                         i -> {
+                            if (blockGossip != null) {
+                                blockGossip.start(privKey);
+                            }
                             log.debug(getNodeAddress());
                             return null;
                         });
@@ -139,6 +156,9 @@ public class Libp2pNetwork {
             return SafeFuture.COMPLETE;
         }
         log.debug("LibP2PNetwork.stop()");
+        if (blockGossip != null) {
+            blockGossip.stop();
+        }
         SafeFuture.of(discV5Service.stop());
         return SafeFuture.of(host.stop());
     }
@@ -29,6 +29,10 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import io.xdag.Kernel;
 import io.xdag.core.BlockWrapper;
 import io.xdag.net.Channel;
+import io.xdag.net.InventoryRelay;
+import io.xdag.net.NetMetrics;
+import io.xdag.net.SeenBlockCache;
+import io.xdag.net.libp2p.BlockGossip;
 import io.xdag.net.node.Node;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
@@ -60,16 +64,39 @@ public class XdagChannelManager {
     @Getter
     private final Cache<InetSocketAddress, Long> channelLastConnect = Caffeine.newBuilder().maximumSize(LRU_CACHE_SIZE).build();
 
+    private static final int SEEN_BLOCK_CACHE_SIZE = 1 << 18;
+
+    /**
+     * 所有连接共用的已收到区块缓存
+     */
+    @Getter
+    private final SeenBlockCache seenBlocks;
+
+    @Getter
+    private final InventoryRelay inventoryRelay;
+
+    /**
+     * 所有连接共用的网络指标
+     */
+    @Getter
+    private final NetMetrics metrics = new NetMetrics();
 
     public XdagChannelManager(Kernel kernel) {
         this.kernel = kernel;
+        this.seenBlocks = new SeenBlockCache(SEEN_BLOCK_CACHE_SIZE,
+                kernel.getConfig().getNodeSpec().getSeenBlockExpire());
         // Resending new blocks to network in loop
         this.blockDistributeThread = new Thread(this::newBlocksDistributeLoop, "NewSyncThreadBlocks");
+        this.inventoryRelay = new InventoryRelay(this::getActiveChannels,
+                hashlow -> kernel.getBlockStore().hasBlock(hashlow),
+                hashlow -> kernel.getBlockchain().getBlockByHash(hashlow, true),
+                kernel.getConfig().getNodeSpec().getTTL());
         initWhiteIPs();
     }
 
     public void start() {
         blockDistributeThread.start();
+        inventoryRelay.start();
     }
 
     public void add(Channel ch) {
@@ -81,6 +108,9 @@ public class XdagChannelManager {
     public void notifyDisconnect(Channel channel) {
         log.debug("xdag channel manager-> node {}: notifies about disconnect", channel.getInetSocketAddress());
         remove(channel);
+        if (channel.getNode() != null && kernel.getNodeMgr() != null) {
+            kernel.getNodeMgr().onPeerDisconnected(channel.getNode());
+        }
         channel.onDisconnect();
     }
 
@@ -119,7 +149,7 @@ public class XdagChannelManager {
         }
     }
 
-    // TODO:怎么发送 目前是发给除receive的节点
+    // 发给除receive以外的节点, 支持INVENTORY的节点只发送清单, 开启gossip时同时发布到gossip网络
     public void sendNewBlock(BlockWrapper blockWrapper) {
         Node receive;
         // 说明是自己产生的
@@ -130,12 +160,10 @@ public class XdagChannelManager {
             Channel receiveChannel = activeChannels.get(blockWrapper.getRemoteNode().getHexId());
             receive = receiveChannel != null ? receiveChannel.getNode() : null;
         }
-        for (Channel channel : activeChannels.values()) {
-            if (receive != null && channel.getNode().getHexId().equals(receive.getHexId())) {
-                log.debug("not send to sender node");
-                continue;
-            }
-            channel.sendNewBlock(blockWrapper);
+        inventoryRelay.distribute(blockWrapper, receive);
+        BlockGossip blockGossip = kernel.getBlockGossip();
+        if (blockGossip != null) {
+            blockGossip.publish(blockWrapper.getBlock());
         }
     }
 
@@ -150,6 +178,10 @@ public class XdagChannelManager {
         newForeignBlocks.add(blockWrapper);
     }
 
+    public Channel getActiveChannel(Node node) {
+        return activeChannels.get(node.getHexId());
+    }
+
     public boolean containsNode(Node node) {
         return activeChannels.containsKey(node.getHexId());
     }
@@ -199,6 +231,7 @@ public class XdagChannelManager {
             // 中断
             blockDistributeThread.interrupt();
         }
+        inventoryRelay.stop();
         // 关闭所有连接
         for (Channel channel : activeChannels.values()) {
             channel.dropConnection();
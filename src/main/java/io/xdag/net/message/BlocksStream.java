@@ -0,0 +1,225 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message;
+
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.Blockchain;
+import io.xdag.net.message.impl.BlocksBatchMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * 区块范围请求的响应流, 每次从数据库读取一批区块, 全部发送后再发送结束回复
+ * 对方支持BATCH时多个区块合并为一条BLOCKS_BATCH消息
+ */
+public abstract class BlocksStream implements MessageStream {
+
+    public static final int BATCH_SIZE = 64;
+    /**
+     * 一次祖先请求最多发送的区块数, 与一条BLOCKS_BATCH相当, 按范围请求限速
+     */
+    public static final int MAX_ANCESTORS = 64;
+
+    private final int ttl;
+    private final boolean batch;
+    private final Supplier<Message> reply;
+    private Iterator<Block> pending = Collections.emptyIterator();
+    private boolean exhausted = false;
+    private boolean replied = false;
+    @Getter
+    private long sent = 0;
+
+    protected BlocksStream(int ttl, boolean batch, Supplier<Message> reply) {
+        this.ttl = ttl;
+        this.batch = batch;
+        this.reply = reply;
+    }
+
+    /**
+     * 按时间索引发送[startTime, endTime)内的区块
+     */
+    public static BlocksStream byTime(Blockchain blockchain, long startTime, long endTime, int ttl, boolean batch,
+            Supplier<Message> reply) {
+        return new BlocksStream(ttl, batch, reply) {
+            private Block last = null;
+
+            @Override
+            protected List<Block> nextBatch() {
+                List<Block> blocks = blockchain.getBlocksByTime(startTime, endTime, last, BATCH_SIZE);
+                if (!blocks.isEmpty()) {
+                    last = blocks.get(blocks.size() - 1);
+                }
+                return blocks;
+            }
+        };
+    }
+
+    /**
+     * 按高度发送[fromHeight, toHeight]内每个主块确认的区块
+     */
+    public static BlocksStream byHeight(Blockchain blockchain, long fromHeight, long toHeight, int ttl,
+            boolean batch, Supplier<Message> reply) {
+        return new BlocksStream(ttl, batch, reply) {
+            private long height = fromHeight;
+
+            @Override
+            protected List<Block> nextBatch() {
+                while (height <= toHeight) {
+                    Block mainBlock = blockchain.getBlockByHeight(height++);
+                    if (mainBlock == null) {
+                        break;
+                    }
+                    List<Block> blocks = blockchain.getBlocksConfirmedBy(mainBlock);
+                    if (!blocks.isEmpty()) {
+                        return blocks;
+                    }
+                }
+                height = toHeight + 1;
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * 发送请求的区块及深度以内的祖先, 父块在前, 对方按顺序导入时不会缺少父块
+     * 不知道对方缺少哪些祖先, 从请求的区块开始按层向外最多取MAX_ANCESTORS个区块, 请求的区块总是发送
+     * 与其他响应流一样由MessageQueue在读取线程中生成, 不占用event loop
+     */
+    public static BlocksStream ancestors(Blockchain blockchain, List<Bytes32> hashlows, int depth, int ttl,
+            boolean batch) {
+        return new BlocksStream(ttl, batch, () -> null) {
+            private boolean done = false;
+
+            @Override
+            protected List<Block> nextBatch() {
+                if (done) {
+                    return Collections.emptyList();
+                }
+                done = true;
+                return parentsFirst(collectAncestors(blockchain, hashlows, depth));
+            }
+        };
+    }
+
+    /**
+     * 按层遍历, 离请求的区块越近越先加入
+     */
+    private static Map<Bytes32, Block> collectAncestors(Blockchain blockchain, List<Bytes32> hashlows, int depth) {
+        Map<Bytes32, Block> res = new LinkedHashMap<>();
+        List<Bytes32> level = hashlows;
+        for (int d = 0; d <= depth && !level.isEmpty(); d++) {
+            List<Bytes32> next = new ArrayList<>();
+            for (Bytes32 hashlow : level) {
+                if (d > 0 && res.size() >= MAX_ANCESTORS) {
+                    return res;
+                }
+                if (res.containsKey(hashlow)) {
+                    continue;
+                }
+                Block block = blockchain.getBlockByHash(hashlow, true);
+                if (block == null) {
+                    continue;
+                }
+                res.put(hashlow, block);
+                for (Address link : block.getLinks()) {
+                    if (!link.getIsAddress()) {
+                        next.add(link.getAddress().copy());
+                    }
+                }
+            }
+            level = next;
+        }
+        return res;
+    }
+
+    private static List<Block> parentsFirst(Map<Bytes32, Block> blocks) {
+        List<Block> res = new ArrayList<>(blocks.size());
+        Set<Bytes32> visited = new HashSet<>();
+        for (Bytes32 hashlow : blocks.keySet()) {
+            addParentsFirst(blocks, hashlow, visited, res);
+        }
+        return res;
+    }
+
+    private static void addParentsFirst(Map<Bytes32, Block> blocks, Bytes32 hashlow, Set<Bytes32> visited,
+            List<Block> res) {
+        Block block = blocks.get(hashlow);
+        if (block == null || !visited.add(hashlow)) {
+            return;
+        }
+        for (Address link : block.getLinks()) {
+            if (!link.getIsAddress()) {
+                addParentsFirst(blocks, link.getAddress().copy(), visited, res);
+            }
+        }
+        res.add(block);
+    }
+
+    @Override
+    public Message next() {
+        while (!pending.hasNext() && !exhausted) {
+            List<Block> blocks = nextBatch();
+            if (blocks.isEmpty()) {
+                exhausted = true;
+            } else {
+                pending = blocks.iterator();
+            }
+        }
+        if (pending.hasNext()) {
+            if (!batch) {
+                sent++;
+                return new NewBlockMessage(pending.next(), ttl);
+            }
+            List<Block> blocks = new ArrayList<>(BlocksBatchMessage.MAX_BLOCKS);
+            while (pending.hasNext() && blocks.size() < BlocksBatchMessage.MAX_BLOCKS) {
+                blocks.add(pending.next());
+            }
+            sent += blocks.size();
+            return new BlocksBatchMessage(blocks, ttl);
+        }
+        if (!replied) {
+            replied = true;
+            return reply.get();
+        }
+        return null;
+    }
+
+    /**
+     * 读取下一批区块, 返回空列表表示已读完
+     */
+    protected abstract List<Block> nextBatch();
+
+}
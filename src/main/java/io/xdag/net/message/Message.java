@@ -45,6 +45,13 @@ public abstract class Message {
 
     public abstract Class<?> getAnswerMessage();
 
+    /**
+     * 是否放入MessageQueue的请求队列, 与响应队列交替发送, 默认有应答的请求才放入
+     */
+    public boolean isPriority() {
+        return getAnswerMessage() != null;
+    }
+
     public abstract XdagMessageCodes getCommand();
 
     public byte getCode() {
@@ -24,101 +24,224 @@
 
 package io.xdag.net.message;
 
-import static io.xdag.config.Constants.SEND_PERIOD;
-
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.WriteBufferWaterMark;
 import io.xdag.net.Channel;
+import io.xdag.net.NetMetrics;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
+/**
+ * 发送队列, 在连接的event loop中写出
+ * 写缓冲超过高水位后停止写出, channelWritabilityChanged后继续; 响应和请求交替发送, 任何一方都不会被另一方的积压阻塞
+ * 消息流在队列为空时才拉取, 大范围的区块响应不会一次性读入内存
+ * 消息流读库较慢, 在streamExecutor中预取下一条, 完成后再回到event loop写出, 不阻塞同一event loop上的其他连接
+ */
 @Slf4j
 public class MessageQueue {
-    public static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(
-            Runtime.getRuntime().availableProcessors(),
+
+    public static final int WRITE_BUFFER_LOW_WATER_MARK = 64 * 1024;
+    public static final int WRITE_BUFFER_HIGH_WATER_MARK = 256 * 1024;
+
+    /**
+     * 所有连接共用的消息流读取线程
+     */
+    private static final ExecutorService streamReaders = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
             new BasicThreadFactory.Builder()
-                    .namingPattern("MessageQueueTimer-thread-%d")
+                    .namingPattern("xdag-stream-reader-%d")
                     .daemon(true)
                     .build());
-    private final Queue<Message> requestQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<Message> respondQueue = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Queued> requestQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<Queued> respondQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<MessageStream> streams = new ConcurrentLinkedQueue<>();
     private final Channel channel;
-    boolean isRunning = false;
+    /**
+     * 已提交写出任务, 尚未执行
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    /**
+     * 下一条优先发送响应, 只在event loop中访问
+     */
+    private boolean respondNext = true;
+    private final Executor streamExecutor;
+    /**
+     * 队首消息流正在读取的下一条消息, 只在event loop中访问
+     */
+    private CompletableFuture<Message> prefetch;
+    volatile boolean isRunning = false;
     private ChannelHandlerContext ctx = null;
-    private ScheduledFuture<?> timerTask;
 
     public MessageQueue(Channel channel) {
+        this(channel, streamReaders);
+    }
+
+    MessageQueue(Channel channel, Executor streamExecutor) {
         this.channel = channel;
+        this.streamExecutor = streamExecutor;
     }
 
     public void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
+        try {
+            ctx.channel().config().setWriteBufferWaterMark(
+                    new WriteBufferWaterMark(WRITE_BUFFER_LOW_WATER_MARK, WRITE_BUFFER_HIGH_WATER_MARK));
+        } catch (Exception e) {
+            log.debug("set write buffer water mark fail: {}", e.getMessage());
+        }
         isRunning = true;
-        timerTask = timer.scheduleAtFixedRate(
-                () -> {
-                    try {
-                        nudgeQueue();
-                    } catch (Throwable t) {
-                        log.error("Unhandled exception", t);
-                    }
-                },
-                10,
-                SEND_PERIOD,
-                // 10 MILLISECONDS
-                TimeUnit.MILLISECONDS);
-    }
-
-
-    private void nudgeQueue() {
-        int n = Math.min(5, size());
-        if (n == 0) {
+        scheduleFlush();
+    }
+
+    public void sendMessage(Message msg) {
+        if (channel.isDisconnected()) {
+            log.warn("{}: attempt to send [{}] message after disconnect", channel, msg.getCommand().name());
             return;
         }
-        // write out n messages
-        for (int i = 0; i < n; i++) {
-            // Now send the next message
-            // log.debug("Sent to Wire with the message,msg:"+msg.getCommand());
-            Message respondMsg = respondQueue.poll();
-            Message requestMsg = requestQueue.poll();
-            if (respondMsg != null) {
-                ctx.write(respondMsg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            }
-            if (requestMsg != null) {
-                ctx.write(requestMsg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            }
 
+        Queued queued = new Queued(msg, System.nanoTime());
+        if (msg.isPriority()) {
+            requestQueue.add(queued);
+        } else {
+            respondQueue.add(queued);
         }
-        ctx.flush();
+        scheduleFlush();
     }
 
-    public void sendMessage(Message msg) {
+    /**
+     * 添加响应流, 按添加顺序依次发送
+     */
+    public void sendStream(MessageStream stream) {
         if (channel.isDisconnected()) {
-            log.warn("{}: attempt to send [{}] message after disconnect", channel, msg.getCommand().name());
+            log.warn("{}: attempt to send stream after disconnect", channel);
             return;
         }
+        streams.add(stream);
+        scheduleFlush();
+    }
 
-        if (msg.getAnswerMessage() != null) {
-            requestQueue.add(msg);
-        } else {
-            respondQueue.add(msg);
+    /**
+     * 未发送完的响应流数量
+     */
+    public int streamSize() {
+        return streams.size();
+    }
+
+    /**
+     * 写缓冲降到低水位以下时由handler调用
+     */
+    public void onWritabilityChanged() {
+        if (ctx != null && ctx.channel().isWritable()) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (isRunning && ctx != null && flushScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(this::flush);
         }
     }
 
+    /**
+     * 只在event loop中执行
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (!isRunning) {
+            return;
+        }
+        boolean written = false;
+        try {
+            while (ctx.channel().isWritable()) {
+                Queued queued = pollQueued();
+                // 响应流的消息在写出时才生成, 不计排队时间
+                Message msg = queued != null ? queued.msg : nextStreamMessage();
+                if (msg == null) {
+                    break;
+                }
+                onSent(msg, queued != null ? System.nanoTime() - queued.time : 0);
+                ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+                written = true;
+            }
+        } catch (Throwable t) {
+            log.error("Unhandled exception", t);
+        } finally {
+            if (written) {
+                ctx.flush();
+            }
+        }
+    }
+
+    /**
+     * 响应和请求交替发送, 一方积压时另一方不会一直等待
+     */
+    private Queued pollQueued() {
+        Queued queued = (respondNext ? respondQueue : requestQueue).poll();
+        if (queued != null) {
+            respondNext = !respondNext;
+            return queued;
+        }
+        return (respondNext ? requestQueue : respondQueue).poll();
+    }
+
+    private void onSent(Message msg, long queueNanos) {
+        NetMetrics metrics = channel.getMetrics();
+        if (metrics != null) {
+            metrics.onSent(msg.getCommand(), msg.getEncoded().size(), queueNanos);
+        }
+    }
+
+    /**
+     * 取出队首消息流已读好的消息并预取下一条; 还在读取时返回null, 读完后由回调重新调度flush
+     */
+    private Message nextStreamMessage() {
+        MessageStream stream;
+        while ((stream = streams.peek()) != null) {
+            if (prefetch == null) {
+                prefetch(stream);
+            }
+            if (!prefetch.isDone()) {
+                return null;
+            }
+            Message msg = null;
+            try {
+                msg = prefetch.join();
+            } catch (Exception e) {
+                log.error("{}: read stream fail", channel, e);
+            }
+            prefetch = null;
+            if (msg != null) {
+                prefetch(stream);
+                return msg;
+            }
+            streams.poll();
+        }
+        return null;
+    }
+
+    private void prefetch(MessageStream stream) {
+        prefetch = CompletableFuture.supplyAsync(stream::next, streamExecutor);
+        prefetch.whenComplete((msg, e) -> scheduleFlush());
+    }
+
     public void disconnect() {
         ctx.close();
     }
 
     public void close() {
         isRunning = false;
-        if (timerTask != null) {
-            timerTask.cancel(false);
-        }
+        requestQueue.clear();
+        respondQueue.clear();
+        streams.clear();
     }
 
     public boolean isRunning() {
@@ -128,4 +251,15 @@ public class MessageQueue {
     public int size() {
         return requestQueue.size() + respondQueue.size();
     }
+
+    private static class Queued {
+
+        final Message msg;
+        final long time;
+
+        Queued(Message msg, long time) {
+            this.msg = msg;
+            this.time = time;
+        }
+    }
 }
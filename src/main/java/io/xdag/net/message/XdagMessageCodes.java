@@ -60,7 +60,12 @@ public enum XdagMessageCodes {
     NEW_TASK(0x09),
     NEW_BALANCE(0x0A),
     NEW_BLOCK(0x0B),
-    WORKER_NAME(0x0C);
+    WORKER_NAME(0x0C),
+
+    // 以下消息只发给协商过对应能力的节点
+    MAIN_BLOCKS_REQUEST(0x0D),
+    INV(0x0E),
+    BLOCKS_BATCH(0x0F);
 
     private static final Map<XdagVersion, Map<Integer, XdagMessageCodes>> intToTypeMap = Maps.newHashMap();
     private static final Map<XdagVersion, XdagMessageCodes[]> versionToValuesMap = Maps.newHashMap();
@@ -81,7 +86,10 @@ public enum XdagMessageCodes {
                         NEW_TASK,
                         NEW_BALANCE,
                         NEW_BLOCK,
-                        WORKER_NAME
+                        WORKER_NAME,
+                        MAIN_BLOCKS_REQUEST,
+                        INV,
+                        BLOCKS_BATCH
                 });
 
         for (XdagVersion v : XdagVersion.values()) {
@@ -24,17 +24,40 @@
 
 package io.xdag.net.message.impl;
 
-import io.xdag.net.message.Message;
+import static io.xdag.net.message.XdagMessageCodes.BLOCKEXT_REPLY;
+
+import io.xdag.core.XdagStats;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.AbstractMessage;
+import io.xdag.net.message.NetDB;
 import io.xdag.net.message.XdagMessageCodes;
+import lombok.EqualsAndHashCode;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 
-public class BlockExtReplyMessage extends Message {
+/**
+ * 能力协商应答, starttime为MAGIC, endtime为本节点的能力
+ */
+@EqualsAndHashCode(callSuper = false)
+public class BlockExtReplyMessage extends AbstractMessage {
 
     public BlockExtReplyMessage(MutableBytes bytes) {
         super(bytes);
     }
 
+    public BlockExtReplyMessage(int capabilities, long random, XdagStats xdagStats, NetDB currentDB) {
+        super(BLOCKEXT_REPLY, XdagCapability.MAGIC, capabilities, random, xdagStats, currentDB);
+        updateCrc();
+    }
+
+    public boolean isCapabilities() {
+        return getStarttime() == XdagCapability.MAGIC;
+    }
+
+    public int getCapabilities() {
+        return (int) getEndtime();
+    }
+
     @Override
     public Class<?> getAnswerMessage() {
         return null;
@@ -42,18 +65,23 @@ public class BlockExtReplyMessage extends Message {
 
     @Override
     public Bytes getEncoded() {
-        // TODO Auto-generated method stub
-        return null;
+        return encoded;
     }
 
     @Override
-    public String toString() {
-        // TODO Auto-generated method stub
-        return null;
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKEXT_REPLY;
     }
 
     @Override
-    public XdagMessageCodes getCommand() {
-        return XdagMessageCodes.BLOCKEXT_REPLY;
+    public String toString() {
+        if (!parsed) {
+            parse();
+        }
+        return "["
+                + this.getCommand().name()
+                + " capabilities="
+                + getEndtime()
+                + "]";
     }
 }
@@ -24,38 +24,65 @@
 
 package io.xdag.net.message.impl;
 
-import io.xdag.net.message.Message;
+import static io.xdag.net.message.XdagMessageCodes.BLOCKEXT_REQUEST;
+
+import io.xdag.core.XdagStats;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.AbstractMessage;
+import io.xdag.net.message.NetDB;
 import io.xdag.net.message.XdagMessageCodes;
+import lombok.EqualsAndHashCode;
+import org.apache.commons.lang3.RandomUtils;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 
-public class BlockExtRequestMessage extends Message {
+/**
+ * 能力协商请求, starttime为MAGIC, endtime为本节点的能力
+ */
+@EqualsAndHashCode(callSuper = false)
+public class BlockExtRequestMessage extends AbstractMessage {
 
     public BlockExtRequestMessage(MutableBytes bytes) {
         super(bytes);
-        // TODO Auto-generated constructor stub
+    }
+
+    public BlockExtRequestMessage(int capabilities, XdagStats xdagStats, NetDB currentDB) {
+        super(BLOCKEXT_REQUEST, XdagCapability.MAGIC, capabilities, RandomUtils.nextLong(), xdagStats, currentDB);
+        updateCrc();
+    }
+
+    public boolean isCapabilities() {
+        return getStarttime() == XdagCapability.MAGIC;
+    }
+
+    public int getCapabilities() {
+        return (int) getEndtime();
     }
 
     @Override
     public Class<?> getAnswerMessage() {
-        // TODO Auto-generated method stub
-        return BlocksReplyMessage.class;
+        return BlockExtReplyMessage.class;
     }
 
     @Override
     public Bytes getEncoded() {
-        // TODO Auto-generated method stub
-        return null;
+        return encoded;
     }
 
     @Override
-    public String toString() {
-        // TODO Auto-generated method stub
-        return null;
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKEXT_REQUEST;
     }
 
     @Override
-    public XdagMessageCodes getCommand() {
-        return XdagMessageCodes.BLOCKEXT_REQUEST;
+    public String toString() {
+        if (!parsed) {
+            parse();
+        }
+        return "["
+                + this.getCommand().name()
+                + " capabilities="
+                + getEndtime()
+                + "]";
     }
 }
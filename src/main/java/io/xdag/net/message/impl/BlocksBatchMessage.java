@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.config.Constants.DNET_PKT_XDAG;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_NONCE;
+
+import com.google.common.collect.Lists;
+import io.xdag.core.Block;
+import io.xdag.core.XdagBlock;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.utils.BytesUtils;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.CRC32;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.xerial.snappy.Snappy;
+
+/**
+ * 一条消息携带多个区块, 只发给支持BATCH的节点
+ * 前512字节为消息头: 16: 标志, 24: 区块数, 32: 数据长度, 40: 数据crc32, 48: ttl
+ * 消息头之后是区块数据, 每个区块512字节 (传输头清零), 压缩后更小时使用snappy压缩
+ */
+@EqualsAndHashCode(callSuper = false)
+public class BlocksBatchMessage extends Message {
+
+    public static final int MAX_BLOCKS = 64;
+    /**
+     * 数据部分的最大长度, 压缩后不小于原始长度时不压缩, 所以不会超过原始长度
+     */
+    public static final int MAX_PAYLOAD = MAX_BLOCKS * XDAG_BLOCK_SIZE;
+    public static final int PAYLOAD_LENGTH_OFFSET = 32;
+
+    private static final long FLAG_SNAPPY = 1;
+
+    @Getter
+    private List<Block> blocks;
+
+    @Getter
+    private int ttl;
+
+    @Getter
+    private boolean compressed;
+
+    public BlocksBatchMessage(List<Block> blocks, int ttl) {
+        if (blocks.isEmpty() || blocks.size() > MAX_BLOCKS) {
+            throw new IllegalArgumentException("Invalid batch size: " + blocks.size());
+        }
+        this.blocks = blocks;
+        this.ttl = ttl;
+        encode();
+    }
+
+    public BlocksBatchMessage(MutableBytes encoded) {
+        super(encoded);
+        parse();
+    }
+
+    private void encode() {
+        byte[] raw = new byte[blocks.size() * XDAG_BLOCK_SIZE];
+        for (int i = 0; i < blocks.size(); i++) {
+            byte[] data = blocks.get(i).getXdagBlock().getData().toArray();
+            // 传输头与NEW_BLOCK收到后一致, 置0
+            System.arraycopy(data, 8, raw, i * XDAG_BLOCK_SIZE + 8, XDAG_BLOCK_SIZE - 8);
+        }
+        byte[] payload = raw;
+        try {
+            byte[] packed = Snappy.compress(raw);
+            if (packed.length < raw.length) {
+                payload = packed;
+                compressed = true;
+            }
+        } catch (IOException e) {
+            compressed = false;
+        }
+
+        parsed = true;
+        encoded = MutableBytes.create(XDAG_BLOCK_SIZE + payload.length);
+        long transportheader = (1 << 8) | DNET_PKT_XDAG | (XDAG_BLOCK_SIZE << 16);
+        long type = (getCommand().asByte() << 4) | XDAG_FIELD_NONCE.asByte();
+        encoded.set(0, Bytes.wrap(BytesUtils.longToBytes(transportheader, true)));
+        encoded.set(8, Bytes.wrap(BytesUtils.longToBytes(type, true)));
+        encoded.set(16, Bytes.wrap(BytesUtils.longToBytes(compressed ? FLAG_SNAPPY : 0, true)));
+        encoded.set(24, Bytes.wrap(BytesUtils.longToBytes(blocks.size(), true)));
+        encoded.set(PAYLOAD_LENGTH_OFFSET, Bytes.wrap(BytesUtils.longToBytes(payload.length, true)));
+        encoded.set(40, Bytes.wrap(BytesUtils.longToBytes(crc32(payload), true)));
+        encoded.set(48, Bytes.wrap(BytesUtils.longToBytes(ttl, true)));
+        encoded.set(XDAG_BLOCK_SIZE, Bytes.wrap(payload));
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(encoded.toArray(), 0, XDAG_BLOCK_SIZE);
+        encoded.set(4, Bytes.wrap(BytesUtils.intToBytes((int) crc32.getValue(), true)));
+    }
+
+    private void parse() {
+        long flags = encoded.getLong(16, ByteOrder.LITTLE_ENDIAN);
+        long count = encoded.getLong(24, ByteOrder.LITTLE_ENDIAN);
+        long length = encoded.getLong(PAYLOAD_LENGTH_OFFSET, ByteOrder.LITTLE_ENDIAN);
+        long crc = encoded.getLong(40, ByteOrder.LITTLE_ENDIAN);
+        ttl = (int) encoded.getLong(48, ByteOrder.LITTLE_ENDIAN);
+        if (count <= 0 || count > MAX_BLOCKS || length != encoded.size() - XDAG_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid batch header, count " + count + " length " + length);
+        }
+        byte[] payload = encoded.slice(XDAG_BLOCK_SIZE).toArray();
+        if (crc32(payload) != crc) {
+            throw new IllegalArgumentException("Batch payload crc mismatch");
+        }
+        compressed = (flags & FLAG_SNAPPY) != 0;
+        byte[] raw = payload;
+        if (compressed) {
+            try {
+                if (Snappy.uncompressedLength(payload) != count * XDAG_BLOCK_SIZE) {
+                    throw new IllegalArgumentException("Invalid batch uncompressed length");
+                }
+                raw = Snappy.uncompress(payload);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Batch payload uncompress fail", e);
+            }
+        }
+        if (raw.length != count * XDAG_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid batch payload length " + raw.length);
+        }
+        blocks = Lists.newArrayListWithCapacity((int) count);
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[XDAG_BLOCK_SIZE];
+            System.arraycopy(raw, i * XDAG_BLOCK_SIZE, data, 0, XDAG_BLOCK_SIZE);
+            blocks.add(new Block(new XdagBlock(data)));
+        }
+        parsed = true;
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return null;
+    }
+
+    @Override
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKS_BATCH;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getCommand().name() + " size=" + blocks.size() + " compressed=" + compressed + "]";
+    }
+}
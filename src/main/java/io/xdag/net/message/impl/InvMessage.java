@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.config.Constants.DNET_PKT_XDAG;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_NONCE;
+
+import com.google.common.collect.Lists;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.CRC32;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
+
+/**
+ * 区块清单, 只发给支持INVENTORY的节点
+ * 16: 类型, 20: 祖先深度, 24: 数量, 32开始每24字节一个hashlow (hashlow前8字节为0, 不发送)
+ */
+@EqualsAndHashCode(callSuper = false)
+public class InvMessage extends Message {
+
+    public static final int MAX_HASHES = (XDAG_BLOCK_SIZE - 32) / 24;
+
+    public enum Type {
+        /**
+         * 通知对方本节点有这些区块
+         */
+        ANNOUNCE,
+        /**
+         * 向对方请求这些区块, 对方以NEW_BLOCK回复
+         */
+        REQUEST,
+        /**
+         * 向对方请求这些区块及深度以内的祖先, 对方按拓扑顺序以一个响应流回复, 只发给支持ANCESTORS的节点
+         */
+        ANCESTORS
+    }
+
+    /**
+     * 祖先深度上限, 对方请求更深时按上限处理
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * 对方版本更新时可能发送本节点不认识的类型, 此时为null
+     */
+    @Getter
+    private Type type;
+
+    @Getter
+    private List<Bytes32> hashlows;
+
+    /**
+     * 只用于ANCESTORS, 0表示只请求这些区块
+     */
+    @Getter
+    private int depth;
+
+    public InvMessage(Type type, List<Bytes32> hashlows) {
+        this(type, hashlows, 0);
+    }
+
+    public InvMessage(Type type, List<Bytes32> hashlows, int depth) {
+        if (hashlows.size() > MAX_HASHES) {
+            throw new IllegalArgumentException("Too many hashes in one inv message: " + hashlows.size());
+        }
+        this.type = type;
+        this.hashlows = hashlows;
+        this.depth = Math.min(Math.max(depth, 0), MAX_DEPTH);
+        encode();
+    }
+
+    public InvMessage(MutableBytes encoded) {
+        super(encoded);
+        parse();
+    }
+
+    private void parse() {
+        int t = encoded.getInt(16, ByteOrder.LITTLE_ENDIAN);
+        type = t >= 0 && t < Type.values().length ? Type.values()[t] : null;
+        depth = Math.min(Math.max(encoded.getInt(20, ByteOrder.LITTLE_ENDIAN), 0), MAX_DEPTH);
+        int count = (int) Math.min(Math.max(encoded.getLong(24, ByteOrder.LITTLE_ENDIAN), 0), MAX_HASHES);
+        hashlows = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            MutableBytes32 hashlow = MutableBytes32.create();
+            hashlow.set(8, encoded.slice(32 + i * 24, 24));
+            hashlows.add(hashlow);
+        }
+        parsed = true;
+    }
+
+    private void encode() {
+        parsed = true;
+        encoded = MutableBytes.create(XDAG_BLOCK_SIZE);
+        long transportheader = (1 << 8) | DNET_PKT_XDAG | (XDAG_BLOCK_SIZE << 16);
+        long typeField = (getCommand().asByte() << 4) | XDAG_FIELD_NONCE.asByte();
+        encoded.set(0, Bytes.wrap(BytesUtils.longToBytes(transportheader, true)));
+        encoded.set(8, Bytes.wrap(BytesUtils.longToBytes(typeField, true)));
+        encoded.set(16, Bytes.wrap(BytesUtils.intToBytes(type.ordinal(), true)));
+        encoded.set(20, Bytes.wrap(BytesUtils.intToBytes(depth, true)));
+        encoded.set(24, Bytes.wrap(BytesUtils.longToBytes(hashlows.size(), true)));
+        for (int i = 0; i < hashlows.size(); i++) {
+            encoded.set(32 + i * 24, hashlows.get(i).slice(8, 24));
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(encoded.toArray(), 0, XDAG_BLOCK_SIZE);
+        encoded.set(4, Bytes.wrap(BytesUtils.intToBytes((int) crc32.getValue(), true)));
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return type == Type.ANNOUNCE ? null : NewBlockMessage.class;
+    }
+
+    /**
+     * 清单消息很小, 通知也放入请求队列, 不排在大量区块响应之后
+     */
+    @Override
+    public boolean isPriority() {
+        return true;
+    }
+
+    @Override
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.INV;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getCommand().name() + " type=" + type + " size=" + hashlows.size()
+                + (type == Type.ANCESTORS ? " depth=" + depth : "") + "]";
+    }
+}
@@ -59,10 +59,10 @@ public class NewBlockMessage extends Message {
     }
 
     /**
-     * 不处理crc
+     * 不处理crc, 与xdagBlock共用读取的帧数据, 不再复制
      */
     public NewBlockMessage(XdagBlock xdagBlock, int ttl) {
-        super(xdagBlock.getData().mutableCopy());
+        super(xdagBlock.getData());
         this.xdagBlock = xdagBlock;
         this.ttl = ttl;
     }
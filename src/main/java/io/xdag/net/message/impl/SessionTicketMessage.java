@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.config.Constants.DNET_PKT_XDAG;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_NONCE;
+
+import io.xdag.net.SessionTickets;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * 会话票据, 与能力协商应答使用相同的消息码, starttime为SESSION_MAGIC, 只发给支持SESSION的节点
+ * 16: SESSION_MAGIC, 24: 票据长度, 32: 票据, 见 {@link SessionTickets}
+ */
+@EqualsAndHashCode(callSuper = false)
+public class SessionTicketMessage extends Message {
+
+    private static final int TICKET_OFFSET = 32;
+
+    @Getter
+    private byte[] ticket;
+
+    public SessionTicketMessage(byte[] ticket) {
+        if (ticket.length != SessionTickets.TICKET_SIZE) {
+            throw new IllegalArgumentException("Invalid session ticket length: " + ticket.length);
+        }
+        this.ticket = ticket;
+        encode();
+    }
+
+    public SessionTicketMessage(MutableBytes encoded) {
+        super(encoded);
+        parse();
+    }
+
+    public static boolean isSessionTicket(MutableBytes encoded) {
+        return encoded.getLong(16, ByteOrder.LITTLE_ENDIAN) == XdagCapability.SESSION_MAGIC;
+    }
+
+    private void encode() {
+        parsed = true;
+        encoded = MutableBytes.create(XDAG_BLOCK_SIZE);
+        long transportheader = (1 << 8) | DNET_PKT_XDAG | (XDAG_BLOCK_SIZE << 16);
+        long type = (getCommand().asByte() << 4) | XDAG_FIELD_NONCE.asByte();
+        encoded.set(0, Bytes.wrap(BytesUtils.longToBytes(transportheader, true)));
+        encoded.set(8, Bytes.wrap(BytesUtils.longToBytes(type, true)));
+        encoded.set(16, Bytes.wrap(BytesUtils.longToBytes(XdagCapability.SESSION_MAGIC, true)));
+        encoded.set(24, Bytes.wrap(BytesUtils.longToBytes(ticket.length, true)));
+        encoded.set(TICKET_OFFSET, Bytes.wrap(ticket));
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(encoded.toArray(), 0, XDAG_BLOCK_SIZE);
+        encoded.set(4, Bytes.wrap(BytesUtils.intToBytes((int) crc32.getValue(), true)));
+    }
+
+    private void parse() {
+        long length = encoded.getLong(24, ByteOrder.LITTLE_ENDIAN);
+        if (length != SessionTickets.TICKET_SIZE) {
+            throw new IllegalArgumentException("Invalid session ticket length " + length);
+        }
+        ticket = encoded.slice(TICKET_OFFSET, SessionTickets.TICKET_SIZE).toArray();
+        parsed = true;
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return null;
+    }
+
+    @Override
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKEXT_REPLY;
+    }
+
+    @Override
+    public String toString() {
+        return "[SESSION_TICKET length=" + ticket.length + "]";
+    }
+}
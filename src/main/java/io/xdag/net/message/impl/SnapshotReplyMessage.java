@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.config.Constants.DNET_PKT_XDAG;
+import static io.xdag.core.XdagBlock.XDAG_BLOCK_SIZE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_NONCE;
+
+import io.xdag.db.SnapshotManifest;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.utils.BytesUtils;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.xerial.snappy.Snappy;
+
+/**
+ * 状态快照应答, 与BLOCKS_BATCH使用相同的消息码和消息头, 以标志区分, 只发给支持SNAPSHOT的节点
+ * 前512字节为消息头: 16: 标志, 24: 快照高度, 32: 数据长度, 40: 数据crc32, 48: 类型, 56: 序号
+ * 数据为清单头, 分页或分块, 压缩后更小时使用snappy压缩, 对方没有请求的快照时数据为空
+ */
+@EqualsAndHashCode(callSuper = false)
+public class SnapshotReplyMessage extends Message {
+
+    /**
+     * 与BLOCKS_BATCH相同
+     */
+    private static final long FLAG_SNAPPY = 1;
+    private static final long FLAG_SNAPSHOT = 2;
+
+    @Getter
+    private int part;
+
+    @Getter
+    private long height;
+
+    @Getter
+    private int index;
+
+    @Getter
+    private byte[] data;
+
+    public SnapshotReplyMessage(int part, long height, int index, byte[] data) {
+        if (data.length > SnapshotManifest.CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid snapshot data length: " + data.length);
+        }
+        this.part = part;
+        this.height = height;
+        this.index = index;
+        this.data = data;
+        encode();
+    }
+
+    public SnapshotReplyMessage(MutableBytes encoded) {
+        super(encoded);
+        parse();
+    }
+
+    public static boolean isSnapshotReply(MutableBytes encoded) {
+        return (encoded.getLong(16, ByteOrder.LITTLE_ENDIAN) & FLAG_SNAPSHOT) != 0;
+    }
+
+    private void encode() {
+        byte[] payload = data;
+        boolean compressed = false;
+        try {
+            byte[] packed = Snappy.compress(data);
+            if (packed.length < data.length) {
+                payload = packed;
+                compressed = true;
+            }
+        } catch (IOException e) {
+            compressed = false;
+        }
+
+        parsed = true;
+        encoded = MutableBytes.create(XDAG_BLOCK_SIZE + payload.length);
+        long transportheader = (1 << 8) | DNET_PKT_XDAG | (XDAG_BLOCK_SIZE << 16);
+        long type = (getCommand().asByte() << 4) | XDAG_FIELD_NONCE.asByte();
+        long flags = FLAG_SNAPSHOT | (compressed ? FLAG_SNAPPY : 0);
+        encoded.set(0, Bytes.wrap(BytesUtils.longToBytes(transportheader, true)));
+        encoded.set(8, Bytes.wrap(BytesUtils.longToBytes(type, true)));
+        encoded.set(16, Bytes.wrap(BytesUtils.longToBytes(flags, true)));
+        encoded.set(24, Bytes.wrap(BytesUtils.longToBytes(height, true)));
+        encoded.set(BlocksBatchMessage.PAYLOAD_LENGTH_OFFSET, Bytes.wrap(BytesUtils.longToBytes(payload.length, true)));
+        encoded.set(40, Bytes.wrap(BytesUtils.longToBytes(crc32(payload), true)));
+        encoded.set(48, Bytes.wrap(BytesUtils.longToBytes(part, true)));
+        encoded.set(56, Bytes.wrap(BytesUtils.longToBytes(index, true)));
+        encoded.set(XDAG_BLOCK_SIZE, Bytes.wrap(payload));
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(encoded.toArray(), 0, XDAG_BLOCK_SIZE);
+        encoded.set(4, Bytes.wrap(BytesUtils.intToBytes((int) crc32.getValue(), true)));
+    }
+
+    private void parse() {
+        long flags = encoded.getLong(16, ByteOrder.LITTLE_ENDIAN);
+        height = encoded.getLong(24, ByteOrder.LITTLE_ENDIAN);
+        long length = encoded.getLong(BlocksBatchMessage.PAYLOAD_LENGTH_OFFSET, ByteOrder.LITTLE_ENDIAN);
+        long crc = encoded.getLong(40, ByteOrder.LITTLE_ENDIAN);
+        part = (int) encoded.getLong(48, ByteOrder.LITTLE_ENDIAN);
+        index = (int) encoded.getLong(56, ByteOrder.LITTLE_ENDIAN);
+        if (length != encoded.size() - XDAG_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid snapshot reply length " + length);
+        }
+        byte[] payload = encoded.slice(XDAG_BLOCK_SIZE).toArray();
+        if (crc32(payload) != crc) {
+            throw new IllegalArgumentException("Snapshot payload crc mismatch");
+        }
+        data = payload;
+        if ((flags & FLAG_SNAPPY) != 0) {
+            try {
+                if (Snappy.uncompressedLength(payload) > SnapshotManifest.CHUNK_SIZE) {
+                    throw new IllegalArgumentException("Invalid snapshot uncompressed length");
+                }
+                data = Snappy.uncompress(payload);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Snapshot payload uncompress fail", e);
+            }
+        }
+        parsed = true;
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return null;
+    }
+
+    @Override
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKS_BATCH;
+    }
+
+    @Override
+    public String toString() {
+        return "[SNAPSHOT_REPLY part=" + part + " height=" + height + " index=" + index + " size=" + data.length + "]";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message.impl;
+
+import static io.xdag.net.message.XdagMessageCodes.BLOCKEXT_REQUEST;
+
+import io.xdag.core.XdagStats;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.AbstractMessage;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.message.XdagMessageCodes;
+import java.nio.ByteOrder;
+import lombok.EqualsAndHashCode;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * 请求状态快照的一部分, 只发给支持SNAPSHOT的节点
+ * starttime为SNAPSHOT_MAGIC, endtime为快照高度 (请求清单头时为0, 表示对方最新的快照), random高32位为类型, 低32位为序号
+ */
+@EqualsAndHashCode(callSuper = false)
+public class SnapshotRequestMessage extends AbstractMessage {
+
+    public SnapshotRequestMessage(MutableBytes bytes) {
+        super(bytes);
+    }
+
+    public SnapshotRequestMessage(int part, long height, int index, XdagStats xdagStats, NetDB currentDB) {
+        super(BLOCKEXT_REQUEST, XdagCapability.SNAPSHOT_MAGIC, height, ((long) part << 32) | (index & 0xffffffffL),
+                xdagStats, currentDB);
+        updateCrc();
+    }
+
+    public static boolean isSnapshotRequest(MutableBytes encoded) {
+        return encoded.getLong(16, ByteOrder.LITTLE_ENDIAN) == XdagCapability.SNAPSHOT_MAGIC;
+    }
+
+    /**
+     * @see io.xdag.db.SnapshotManifest#PART_HEADER
+     */
+    public int getPart() {
+        return (int) (getRandom() >>> 32);
+    }
+
+    public long getHeight() {
+        return getEndtime();
+    }
+
+    public int getIndex() {
+        return (int) getRandom();
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return SnapshotReplyMessage.class;
+    }
+
+    @Override
+    public Bytes getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public XdagMessageCodes getCommand() {
+        return XdagMessageCodes.BLOCKEXT_REQUEST;
+    }
+
+    @Override
+    public String toString() {
+        if (!parsed) {
+            parse();
+        }
+        return "[SNAPSHOT_REQUEST part=" + getPart() + " height=" + getHeight() + " index=" + getIndex() + "]";
+    }
+}
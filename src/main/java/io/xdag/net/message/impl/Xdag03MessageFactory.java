@@ -42,10 +42,16 @@ public class Xdag03MessageFactory implements MessageFactory {
             case BLOCKS_REPLY -> new BlocksReplyMessage(encoded);
             case SUMS_REQUEST -> new SumRequestMessage(encoded);
             case SUMS_REPLY -> new SumReplyMessage(encoded);
-            case BLOCKEXT_REQUEST -> new BlockExtRequestMessage(encoded);
-            case BLOCKEXT_REPLY -> new BlockExtReplyMessage(encoded);
+            case BLOCKEXT_REQUEST -> SnapshotRequestMessage.isSnapshotRequest(encoded)
+                    ? new SnapshotRequestMessage(encoded) : new BlockExtRequestMessage(encoded);
+            case BLOCKEXT_REPLY -> SessionTicketMessage.isSessionTicket(encoded)
+                    ? new SessionTicketMessage(encoded) : new BlockExtReplyMessage(encoded);
             case BLOCK_REQUEST -> new BlockRequestMessage(encoded);
             case NEW_BLOCK -> new NewBlockMessage(encoded);
+            case MAIN_BLOCKS_REQUEST -> new MainBlocksRequestMessage(encoded);
+            case INV -> new InvMessage(encoded);
+            case BLOCKS_BATCH -> SnapshotReplyMessage.isSnapshotReply(encoded)
+                    ? new SnapshotReplyMessage(encoded) : new BlocksBatchMessage(encoded);
             default -> throw new IllegalArgumentException("No such message code" + code);
         };
     }
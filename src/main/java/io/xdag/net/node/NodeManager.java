@@ -28,8 +28,11 @@ import static io.xdag.net.libp2p.Libp2pUtils.discoveryPeerToDailId;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
+import io.xdag.db.PeerStore;
 import io.xdag.net.Channel;
 import io.xdag.net.XdagClient;
 import io.xdag.net.handler.XdagChannelInitializer;
@@ -39,15 +42,16 @@ import io.xdag.net.manager.NetDBManager;
 import io.xdag.net.manager.XdagChannelManager;
 import io.xdag.net.message.NetDB;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -64,14 +68,30 @@ public class NodeManager {
             .daemon(true)
             .build();
 
-    private static final long MAX_QUEUE_SIZE = 1024;
+    private static final int MAX_PEERS = 1024;
     private static final int LRU_CACHE_SIZE = 1024;
-    private static final long RECONNECT_WAIT = 60L * 1000L;
-    private final Deque<Node> deque = new ConcurrentLinkedDeque<>();
+    /**
+     * 违规分数: 无效区块, 超过限速的请求
+     */
+    public static final int INVALID_BLOCK_SCORE = 10;
+    public static final int RATE_LIMITED_SCORE = 1;
+    /**
+     * 节点表, 启动时从数据库加载, 之后发现的节点和连接结果都写回数据库
+     */
+    private final Map<InetSocketAddress, PeerInfo> peers = new ConcurrentHashMap<>();
+    private final PeerStore peerStore;
     /**
      * 记录对应节点节点最后一次连接的时间
      */
     private final Cache<Node, Long> lastConnect = Caffeine.newBuilder().maximumSize(LRU_CACHE_SIZE).build();
+    /**
+     * 进行中的连出连接, 握手完成, 连接失败或断开后移除
+     */
+    private final Set<InetSocketAddress> connecting = ConcurrentHashMap.newKeySet();
+    /**
+     * 被禁止的节点ip及禁止的时间, 到期后自动移除
+     */
+    private final Cache<String, Long> banned;
     /**
      * 定时处理
      */
@@ -81,13 +101,12 @@ public class NodeManager {
     private final XdagChannelManager channelMgr;
     private final NetDBManager netDBManager;
     private final Config config;
-    private final Libp2pNetwork libp2pNetwork;
     private final Node myself;
     private volatile boolean isRunning;
     private ScheduledFuture<?> connectFuture;
     private ScheduledFuture<?> fetchFuture;
     private ScheduledFuture<?> connectlibp2PFuture;
-    private Set<Node> hadConnected;
+    private final Set<Node> hadConnected = new HashSet<>();
 
     public NodeManager(Kernel kernel) {
         this.kernel = kernel;
@@ -95,8 +114,10 @@ public class NodeManager {
         this.channelMgr = kernel.getChannelMgr();
         this.exec = new ScheduledThreadPoolExecutor(1, factory);
         this.config = kernel.getConfig();
+        this.banned = Caffeine.newBuilder().maximumSize(LRU_CACHE_SIZE)
+                .expireAfterWrite(config.getNodeSpec().getBanTime(), TimeUnit.SECONDS).build();
         this.netDBManager = kernel.getNetDBMgr();
-        libp2pNetwork = kernel.getLibp2pNetwork();
+        this.peerStore = kernel.getPeerStore();
         myself = new Node(kernel.getConfig().getNodeSpec().getNodeIp(),
                 kernel.getConfig().getNodeSpec().getLibp2pPort());
     }
@@ -106,6 +127,10 @@ public class NodeManager {
      */
     public synchronized void start() {
         if (!isRunning) {
+            for (PeerInfo peer : peerStore.getPeers()) {
+                peers.put(peer.getAddress(), peer);
+            }
+            log.debug("Load {} peers", peers.size());
             // addNodes(getSeedNodes(config.getWhiteListDir()));
             addNodes(getSeedNodes(netDBManager.getWhiteDB()));
 
@@ -115,7 +140,6 @@ public class NodeManager {
             fetchFuture = exec.scheduleAtFixedRate(this::doFetch, 5, 100, TimeUnit.SECONDS);
 
             connectlibp2PFuture = exec.scheduleAtFixedRate(this::doConnectlibp2p, 10, 10, TimeUnit.SECONDS);
-            hadConnected = new HashSet<>();
             isRunning = true;
             log.debug("Node manager started");
         }
@@ -123,6 +147,10 @@ public class NodeManager {
 
     public synchronized void stop() {
         if (isRunning) {
+            // 连接关闭的事件在数据库关闭之后才可能到达, 先保存当前连接的统计
+            for (Channel channel : channelMgr.getActiveChannels()) {
+                onPeerDisconnected(channel.getNode());
+            }
             connectFuture.cancel(true);
             fetchFuture.cancel(false);
             connectlibp2PFuture.cancel(true);
@@ -133,7 +161,7 @@ public class NodeManager {
     }
 
     public int queueSize() {
-        return deque.size();
+        return peers.size();
     }
 
     public void addNodes(Collection<Node> nodes) {
@@ -146,13 +174,38 @@ public class NodeManager {
     }
 
     public void addNode(Node node) {
-        if (deque.contains(node)) {
+        InetSocketAddress address = node.getAddress();
+        if (peers.containsKey(address)) {
             return;
         }
-        deque.addFirst(node);
-        while (queueSize() > MAX_QUEUE_SIZE) {
-            deque.removeLast();
+        PeerInfo peer = new PeerInfo(node.getHost(), node.getPort());
+        peers.put(address, peer);
+        peerStore.save(peer);
+        while (peers.size() > MAX_PEERS) {
+            evictPeer();
+        }
+    }
+
+    /**
+     * 表满时移除分数最低, 失败次数最多的节点
+     */
+    private void evictPeer() {
+        Set<InetSocketAddress> activeAddress = channelMgr.getActiveAddresses();
+        PeerInfo worst = null;
+        for (PeerInfo peer : peers.values()) {
+            if (activeAddress.contains(peer.getAddress())) {
+                continue;
+            }
+            if (worst == null || peer.score() < worst.score()
+                    || (peer.score() == worst.score() && peer.getFailures() > worst.getFailures())) {
+                worst = peer;
+            }
+        }
+        if (worst == null) {
+            return;
         }
+        peers.remove(worst.getAddress());
+        peerStore.delete(worst);
     }
 
 
@@ -169,7 +222,7 @@ public class NodeManager {
         // 从netdb获取新节点
         addNodes(getSeedNodes(netDBManager.getNetDB()));
 
-        log.debug("node size:" + deque.size());
+        log.debug("node size:" + peers.size());
     }
 
     public Set<Node> getSeedNodes(NetDB netDB) {
@@ -180,26 +233,97 @@ public class NodeManager {
         }
     }
 
+    /**
+     * 同时连接多个可连接的节点, 分数高的优先, 分数相同时选最久没有尝试的
+     * 进行中的连接不超过connectMaxInflight, 与已有连接合计不超过最大连接数
+     */
     public void doConnect() {
-
+        int slots = Math.min(config.getNodeSpec().getConnectMaxInflight(),
+                config.getNodeSpec().getMaxConnections() - channelMgr.size()) - connecting.size();
+        if (slots <= 0) {
+            return;
+        }
         Set<InetSocketAddress> activeAddress = channelMgr.getActiveAddresses();
-        Node node;
-        while ((node = deque.pollFirst()) != null && channelMgr.size() < config.getNodeSpec().getMaxConnections()) {
-            Long lastCon = lastConnect.getIfPresent(node);
-            long now = System.currentTimeMillis();
-
-            if (!client.getNode().equals(node)
-                    && !(Objects.equals(node.getHost(), client.getNode().getHost())
-                    && node.getPort() == client.getNode().getPort())
-                    && !activeAddress.contains(node.getAddress())
-                    && (lastCon == null || lastCon + RECONNECT_WAIT < now)) {
-                XdagChannelInitializer initializer = new XdagChannelInitializer(kernel, false, node);
-                client.connect(node.getHost(), node.getPort(), initializer);
-                lastConnect.put(node, now);
-                break;
+        long now = System.currentTimeMillis();
+        List<PeerInfo> candidates = new ArrayList<>();
+        for (PeerInfo peer : peers.values()) {
+            if (isConnectable(peer, activeAddress, now) && !connecting.contains(peer.getAddress())) {
+                candidates.add(peer);
             }
         }
+        candidates.sort(Comparator.comparingDouble(PeerInfo::score).reversed()
+                .thenComparingLong(PeerInfo::getLastAttempt));
+        for (PeerInfo peer : candidates.subList(0, Math.min(slots, candidates.size()))) {
+            connect(peer, now);
+        }
+    }
+
+    private void connect(PeerInfo peer, long now) {
+        Node node = new Node(peer.getHost(), peer.getPort());
+        InetSocketAddress address = peer.getAddress();
+        peer.onAttempt(now);
+        peerStore.save(peer);
+        lastConnect.put(node, now);
+        connecting.add(address);
+        XdagChannelInitializer initializer = new XdagChannelInitializer(kernel, false, node);
+        ChannelFuture future = client.connectAsync(node.getHost(), node.getPort(), initializer);
+        if (future == null) {
+            connecting.remove(address);
+            return;
+        }
+        future.addListener((ChannelFutureListener) f -> {
+            if (f.isSuccess()) {
+                // 握手超时或失败时连接关闭
+                f.channel().closeFuture().addListener((ChannelFutureListener) c -> connecting.remove(address));
+            } else {
+                connecting.remove(address);
+            }
+        });
+    }
 
+    /**
+     * 进行中的连出连接数
+     */
+    public int connectingSize() {
+        return connecting.size();
+    }
+
+    private boolean isConnectable(PeerInfo peer, Set<InetSocketAddress> activeAddress, long now) {
+        Node self = client.getNode();
+        InetSocketAddress address = peer.getAddress();
+        return !(Objects.equals(peer.getHost(), self.getHost()) && peer.getPort() == self.getPort())
+                && !activeAddress.contains(address)
+                && !isBanned(address)
+                && peer.nextAttempt() <= now;
+    }
+
+    /**
+     * 握手完成, 记录握手耗时; 只记录节点表中的地址, 对方连入时的端口不是监听端口
+     */
+    public void onPeerConnected(Node node, long handshakeRtt) {
+        connecting.remove(node.getAddress());
+        PeerInfo peer = peers.get(node.getAddress());
+        if (peer != null) {
+            peer.onConnected(System.currentTimeMillis(), handshakeRtt);
+            peerStore.save(peer);
+        }
+    }
+
+    public void onPeerDisconnected(Node node) {
+        PeerInfo peer = peers.get(node.getAddress());
+        if (peer != null && peer.getConnectedAt() != 0) {
+            peer.onDisconnected(System.currentTimeMillis(), node.getStat().Inbound.get());
+            peerStore.save(peer);
+        }
+    }
+
+    /**
+     * 按分数从高到低排列的节点表
+     */
+    public List<PeerInfo> getPeers() {
+        List<PeerInfo> list = new ArrayList<>(peers.values());
+        list.sort(Comparator.comparingDouble(PeerInfo::score).reversed());
+        return list;
     }
 
     public void doConnect(String ip, int port) {
@@ -212,18 +336,60 @@ public class NodeManager {
 
     //todo：发现之后的节点只能自动连接一次
     public void doConnectlibp2p() {
+        // libp2p在NodeManager之后启动, 未开启gossip时为空
+        Libp2pNetwork libp2pNetwork = kernel.getLibp2pNetwork();
+        if (libp2pNetwork == null || libp2pNetwork.getDiscV5Service() == null) {
+            return;
+        }
         Set<InetSocketAddress> activeAddress = channelMgr.getActiveAddresses();
         List<DiscoveryPeer> discoveryPeerList =
                 libp2pNetwork.getDiscV5Service().streamKnownPeers().toList();
         for (DiscoveryPeer p : discoveryPeerList) {
             Node node = new Node(p.getNodeAddress().getHostName(), p.getNodeAddress().getPort());
-            if (!myself.equals(node) && !activeAddress.contains(p.getNodeAddress()) && !hadConnected.contains(node)) {
-                kernel.getLibp2pNetwork().dail(discoveryPeerToDailId(p));
+            if (!myself.equals(node) && !activeAddress.contains(p.getNodeAddress()) && !hadConnected.contains(node)
+                    && !isBanned(p.getNodeAddress())) {
+                libp2pNetwork.dail(discoveryPeerToDailId(p));
                 hadConnected.add(node);
             }
         }
     }
 
+    /**
+     * 增加节点的违规分数, 达到上限时断开连接并在banTime内禁止该ip
+     */
+    public void misbehave(Node node, int score, String reason) {
+        long total = node.getStat().Misbehavior.add(score);
+        log.debug("Node {} misbehaved: {}, score {}", node.getAddress(), reason, total);
+        if (total < config.getNodeSpec().getMisbehaviorBanScore()) {
+            return;
+        }
+        ban(node.getAddress());
+        Channel channel = channelMgr.getActiveChannel(node);
+        if (channel != null) {
+            channel.dropConnection();
+        }
+    }
+
+    public void ban(InetSocketAddress address) {
+        banned.put(hostOf(address), System.currentTimeMillis());
+        log.info("Ban node {} for {} seconds", hostOf(address), config.getNodeSpec().getBanTime());
+    }
+
+    /**
+     * 只按ip判断, 对方换端口也不能连接
+     */
+    public boolean isBanned(InetSocketAddress address) {
+        return banned.getIfPresent(hostOf(address)) != null;
+    }
+
+    public Map<String, Long> getBannedNodes() {
+        return new HashMap<>(banned.asMap());
+    }
+
+    private static String hostOf(InetSocketAddress address) {
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
     public Map<Node, Long> getActiveNode() {
         Map<Node, Long> nodes = new HashMap<>();
         List<Channel> activeAddress = channelMgr.getActiveChannels();
@@ -24,12 +24,25 @@
 
 package io.xdag.net.node;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class NodeStat {
 
     public final StatHandler Inbound = new StatHandler();
     public final StatHandler Outbound = new StatHandler();
+    /**
+     * 重复收到的区块数
+     */
+    public final StatHandler Duplicate = new StatHandler();
+    /**
+     * 超过限速被延后或丢弃的请求数
+     */
+    public final StatHandler RateLimited = new StatHandler();
+    /**
+     * 违规分数, 无效区块和超限请求都会增加
+     */
+    public final ScoreHandler Misbehavior = new ScoreHandler();
 
     public static class StatHandler {
 
@@ -52,4 +65,40 @@ public class NodeStat {
             return count.toString();
         }
     }
+
+    /**
+     * 分数每分钟衰减1分, 偶尔的违规不会一直累积
+     */
+    public static class ScoreHandler {
+
+        private static final long DECAY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+        private long score = 0;
+        private long lastDecay = System.currentTimeMillis();
+
+        public synchronized long add(long delta) {
+            decay();
+            score += delta;
+            return score;
+        }
+
+        public synchronized long get() {
+            decay();
+            return score;
+        }
+
+        private void decay() {
+            long now = System.currentTimeMillis();
+            long n = (now - lastDecay) / DECAY_INTERVAL;
+            if (n > 0) {
+                score = Math.max(0, score - n);
+                lastDecay += n * DECAY_INTERVAL;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(get());
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.node;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * 节点表中的一项, 记录连接历史用于选择节点和计算重连等待时间
+ * 每次发起连接时先记一次失败, 握手成功后清零, 连接失败和握手失败不需要分别处理
+ */
+@Getter
+public class PeerInfo {
+
+    public static final long RECONNECT_WAIT = TimeUnit.SECONDS.toMillis(5);
+    public static final long MAX_BACKOFF = TimeUnit.HOURS.toMillis(1);
+    /**
+     * 连接时间太短时不更新吞吐量
+     */
+    public static final long MIN_THROUGHPUT_SAMPLE = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * 估算分数时给延迟加上的常数, 避免延迟很小时分数过大
+     */
+    private static final long RTT_BASE = 50;
+    private static final int ENCODED_SIZE = 8 * 5;
+
+    private final String host;
+    private final int port;
+    private final InetSocketAddress address;
+    private long lastSeen;
+    private long lastAttempt;
+    /**
+     * 握手耗时的平滑值, 单位毫秒, 0为未知
+     */
+    private long rtt;
+    /**
+     * 每秒收到消息数的平滑值
+     */
+    private double throughput;
+    /**
+     * 连续失败次数
+     */
+    private int failures;
+
+    private long connectedAt;
+
+    public PeerInfo(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public synchronized void onAttempt(long now) {
+        lastAttempt = now;
+        failures++;
+    }
+
+    public synchronized void onConnected(long now, long handshakeRtt) {
+        failures = 0;
+        lastSeen = now;
+        connectedAt = now;
+        rtt = rtt == 0 ? handshakeRtt : (rtt * 3 + handshakeRtt) / 4;
+    }
+
+    /**
+     * @param received 本次连接收到的消息数
+     */
+    public synchronized void onDisconnected(long now, long received) {
+        if (connectedAt == 0) {
+            return;
+        }
+        lastSeen = now;
+        long duration = now - connectedAt;
+        if (duration >= MIN_THROUGHPUT_SAMPLE) {
+            double sample = received * 1000.0 / duration;
+            throughput = throughput == 0 ? sample : (throughput * 3 + sample) / 4;
+        }
+        connectedAt = 0;
+    }
+
+    /**
+     * 可以再次连接的时间, 连续失败时按指数退避
+     */
+    public synchronized long nextAttempt() {
+        if (failures == 0) {
+            return lastAttempt + RECONNECT_WAIT;
+        }
+        return lastAttempt + Math.min(RECONNECT_WAIT << Math.min(failures - 1, 20), MAX_BACKOFF);
+    }
+
+    /**
+     * 连接过的节点优先, 之后按吞吐量高, 延迟低排序; 从未连接成功的节点为0
+     */
+    public synchronized double score() {
+        if (lastSeen == 0) {
+            return 0;
+        }
+        return (1 + throughput) * 1000 / (RTT_BASE + rtt);
+    }
+
+    public synchronized byte[] toBytes() {
+        return ByteBuffer.allocate(ENCODED_SIZE)
+                .putLong(lastSeen)
+                .putLong(lastAttempt)
+                .putLong(rtt)
+                .putDouble(throughput)
+                .putLong(failures)
+                .array();
+    }
+
+    public static PeerInfo fromBytes(String host, int port, byte[] data) {
+        PeerInfo peer = new PeerInfo(host, port);
+        if (data != null && data.length == ENCODED_SIZE) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            peer.lastSeen = buffer.getLong();
+            peer.lastAttempt = buffer.getLong();
+            peer.rtt = buffer.getLong();
+            peer.throughput = buffer.getDouble();
+            peer.failures = (int) buffer.getLong();
+        }
+        return peer;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return host + ":" + port + " rtt=" + rtt + "ms throughput=" + String.format("%.1f", throughput)
+                + "/s failures=" + failures;
+    }
+}
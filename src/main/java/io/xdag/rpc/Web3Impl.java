@@ -124,6 +124,11 @@ public class Web3Impl implements Web3 {
         return web3XdagModule.xdag_netConnectionList();
     }
 
+    @Override
+    public Object xdag_netMetrics() throws Exception {
+        return web3XdagModule.xdag_netMetrics();
+    }
+
     @Override
     public Object xdag_updatePoolConfig(ConfigDTO configDTO,String passphrase) throws Exception {
         return web3XdagModule.xdag_updatePoolConfig(configDTO,passphrase);
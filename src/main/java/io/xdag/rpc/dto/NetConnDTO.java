@@ -35,5 +35,7 @@ public class NetConnDTO {
     long connectTime;
     long inBound;
     long outBound;
+    long rateLimited;
+    long misbehavior;
 
 }
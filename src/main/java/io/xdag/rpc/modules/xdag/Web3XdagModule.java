@@ -102,6 +102,8 @@ public interface Web3XdagModule {
 
     Object xdag_netConnectionList() throws Exception;
 
+    Object xdag_netMetrics() throws Exception;
+
     Object xdag_updatePoolConfig(ConfigDTO args, String passphrase) throws Exception;
 
     Object xdag_getPoolWorkers() throws Exception;
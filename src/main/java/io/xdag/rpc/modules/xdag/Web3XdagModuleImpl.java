@@ -50,18 +50,26 @@ import io.xdag.core.XdagStats;
 import io.xdag.mine.MinerChannel;
 import io.xdag.mine.miner.Miner;
 import io.xdag.mine.miner.MinerCalculate;
+import io.xdag.net.Channel;
+import io.xdag.net.NetMetrics;
+import io.xdag.net.RequestRtt;
+import io.xdag.net.RttHistogram;
+import io.xdag.net.message.XdagMessageCodes;
 import io.xdag.net.node.Node;
 import io.xdag.rpc.dto.ConfigDTO;
 import io.xdag.rpc.dto.NetConnDTO;
+import io.xdag.rpc.dto.NetMetricsDTO;
 import io.xdag.rpc.dto.PoolWorkerDTO;
 import io.xdag.rpc.dto.StatusDTO;
 import io.xdag.utils.BasicUtils;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -229,6 +237,8 @@ public class Web3XdagModuleImpl implements Web3XdagModule {
             netConnDTOBuilder.connectTime(map.get(node) == null ? 0 : map.get(node)) // use default "0"
                     .inBound(node.getStat().Inbound.get())
                     .outBound(node.getStat().Outbound.get())
+                    .rateLimited(node.getStat().RateLimited.get())
+                    .misbehavior(node.getStat().Misbehavior.get())
                     .nodeAddress(node.getAddress());
             netConnDTOList.add(netConnDTOBuilder.build());
         }
@@ -236,6 +246,55 @@ public class Web3XdagModuleImpl implements Web3XdagModule {
         return netConnDTOList;
     }
 
+    @Override
+    public Object xdag_netMetrics() {
+        NetMetrics metrics = kernel.getChannelMgr().getMetrics();
+        Map<String, NetMetricsDTO.MessageDTO> messages = new LinkedHashMap<>();
+        for (XdagMessageCodes code : XdagMessageCodes.values()) {
+            NetMetrics.MessageStats stats = metrics.getStats(code);
+            if (stats.getReceived() == 0 && stats.getSent() == 0) {
+                continue;
+            }
+            messages.put(code.name(), NetMetricsDTO.MessageDTO.builder()
+                    .received(stats.getReceived())
+                    .receivedBytes(stats.getReceivedBytes())
+                    .sent(stats.getSent())
+                    .sentBytes(stats.getSentBytes())
+                    .avgDecodeMicros(stats.getAvgDecodeMicros())
+                    .avgHandleMicros(stats.getAvgHandleMicros())
+                    .avgQueueMicros(stats.getAvgQueueMicros())
+                    .maxQueueMicros(TimeUnit.NANOSECONDS.toMicros(stats.getMaxQueueNanos()))
+                    .build());
+        }
+        Map<String, NetMetricsDTO.RttDTO> rtt = new LinkedHashMap<>();
+        for (RequestRtt.Kind kind : RequestRtt.Kind.values()) {
+            rtt.put(kind.name(), toRttDTO(metrics.getRtt(kind)));
+        }
+        Map<String, Map<String, NetMetricsDTO.RttDTO>> channels = new LinkedHashMap<>();
+        for (Channel channel : kernel.getChannelMgr().getActiveChannels()) {
+            if (channel.getRequestRtt() == null) {
+                continue;
+            }
+            Map<String, NetMetricsDTO.RttDTO> channelRtt = new LinkedHashMap<>();
+            for (RequestRtt.Kind kind : RequestRtt.Kind.values()) {
+                channelRtt.put(kind.name(), toRttDTO(channel.getRequestRtt().getHistogram(kind)));
+            }
+            channels.put(channel.getNode().getAddress().toString(), channelRtt);
+        }
+        return NetMetricsDTO.builder().messages(messages).rtt(rtt).channels(channels).build();
+    }
+
+    private static NetMetricsDTO.RttDTO toRttDTO(RttHistogram histogram) {
+        return NetMetricsDTO.RttDTO.builder()
+                .count(histogram.getCount())
+                .mean(histogram.getMean())
+                .p50(histogram.getPercentile(0.5))
+                .p90(histogram.getPercentile(0.9))
+                .p99(histogram.getPercentile(0.99))
+                .max(histogram.getMax())
+                .build();
+    }
+
     static class SyncingResult {
 
         public String currentBlock;
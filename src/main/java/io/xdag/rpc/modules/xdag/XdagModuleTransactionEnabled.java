@@ -25,7 +25,6 @@
 package io.xdag.rpc.modules.xdag;
 
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
-import static io.xdag.crypto.Keys.toBytesAddress;
 import static io.xdag.rpc.ErrorCode.ERR_BALANCE_NOT_ENOUGH;
 import static io.xdag.rpc.ErrorCode.ERR_PARAM_INVALID;
 import static io.xdag.rpc.ErrorCode.ERR_TO_ADDRESS_INVALID;
@@ -33,7 +32,6 @@ import static io.xdag.rpc.ErrorCode.ERR_VALUE_INVALID;
 import static io.xdag.rpc.ErrorCode.ERR_WALLET_UNLOCK;
 import static io.xdag.rpc.ErrorCode.SUCCESS;
 import static io.xdag.utils.BasicUtils.compareAmountTo;
-import static io.xdag.utils.BasicUtils.keyPair2Hash;
 import static io.xdag.utils.BasicUtils.pubAddress2Hash;
 import static io.xdag.utils.BasicUtils.xdag2amount;
 
@@ -41,6 +39,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
+import io.xdag.WalletAccount;
 import io.xdag.core.Address;
 import io.xdag.core.BlockWrapper;
 import io.xdag.core.ImportResult;
@@ -142,18 +141,16 @@ public class XdagModuleTransactionEnabled extends XdagModuleTransactionBase {
             log.debug("fromAddress is null, search all our blocks");
             // our block select
 
-            List<KeyPair> accounts = kernel.getWallet().getAccounts();
-            for (KeyPair account : accounts) {
-                byte[] addr = toBytesAddress(account);
-                UInt64 addrBalance = kernel.getAddressStore().getBalanceByAddress(addr);
+            for (WalletAccount account : kernel.getWallet().getWalletAccounts()) {
+                UInt64 addrBalance = kernel.getAddressStore().getBalanceByAddress(account.getAddress().toArray());
                 if (compareAmountTo(remain.get(), addrBalance) <= 0) {
-                    ourAccounts.put(new Address(keyPair2Hash(account), XDAG_FIELD_INPUT, remain.get(),true), account);
+                    ourAccounts.put(new Address(account.getAddressHash(), XDAG_FIELD_INPUT, remain.get(),true), account.getKeyPair());
                     remain.set(UInt64.ZERO);
                     break;
                 } else {
                     if (compareAmountTo(addrBalance, UInt64.ZERO) > 0) {
                         remain.set(remain.get().subtract(addrBalance));
-                        ourAccounts.put(new Address(keyPair2Hash(account), XDAG_FIELD_INPUT, addrBalance, true), account);
+                        ourAccounts.put(new Address(account.getAddressHash(), XDAG_FIELD_INPUT, addrBalance, true), account.getKeyPair());
                     }
                 }
             }
@@ -29,9 +29,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpMethod;
@@ -42,7 +40,9 @@ import io.netty.handler.codec.http.cors.CorsConfigBuilder;
 import io.netty.handler.codec.http.cors.CorsHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.xdag.config.SocketOptions;
 import io.xdag.rpc.cors.CorsConfiguration;
+import io.xdag.utils.NettyUtils;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetAddress;
@@ -56,6 +56,8 @@ public class Web3HttpServer {
     private final int port;
     private final EventLoopGroup bossGroup;
     private final EventLoopGroup workerGroup;
+    private final SocketOptions socketOptions;
+    private final NettyUtils.Transport transport;
     private final int socketLinger;
     private final boolean reuseAddress;
     private final CorsConfiguration corsConfiguration;
@@ -69,6 +71,18 @@ public class Web3HttpServer {
             CorsConfiguration corsConfiguration,
             JsonRpcWeb3FilterHandler jsonRpcWeb3FilterHandler,
             JsonRpcWeb3ServerHandler jsonRpcWeb3ServerHandler) {
+        this(bindAddress, port, socketLinger, reuseAddress, corsConfiguration, jsonRpcWeb3FilterHandler,
+                jsonRpcWeb3ServerHandler, new SocketOptions());
+    }
+
+    public Web3HttpServer(InetAddress bindAddress,
+            int port,
+            int socketLinger,
+            boolean reuseAddress,
+            CorsConfiguration corsConfiguration,
+            JsonRpcWeb3FilterHandler jsonRpcWeb3FilterHandler,
+            JsonRpcWeb3ServerHandler jsonRpcWeb3ServerHandler,
+            SocketOptions socketOptions) {
         this.bindAddress = bindAddress;
         this.port = port;
         this.socketLinger = socketLinger;
@@ -76,8 +90,10 @@ public class Web3HttpServer {
         this.corsConfiguration = corsConfiguration;
         this.jsonRpcWeb3FilterHandler = jsonRpcWeb3FilterHandler;
         this.jsonRpcWeb3ServerHandler = jsonRpcWeb3ServerHandler;
-        this.bossGroup = new NioEventLoopGroup();
-        this.workerGroup = new NioEventLoopGroup();
+        this.socketOptions = socketOptions;
+        this.transport = NettyUtils.transport(socketOptions);
+        this.bossGroup = NettyUtils.newEventLoopGroup(transport, 1, null);
+        this.workerGroup = NettyUtils.newEventLoopGroup(transport, 0, null);
     }
 
     public void start() {
@@ -85,8 +101,9 @@ public class Web3HttpServer {
 
         ServerBootstrap b = new ServerBootstrap();
         b.option(ChannelOption.SO_REUSEADDR, reuseAddress);
+        NettyUtils.applyOptions(b, transport, socketOptions);
         b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(NettyUtils.serverChannelClass(transport))
                 .handler(new LoggingHandler(LogLevel.INFO))
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
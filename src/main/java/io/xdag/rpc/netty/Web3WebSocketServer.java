@@ -29,12 +29,12 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.xdag.config.SocketOptions;
+import io.xdag.utils.NettyUtils;
 import java.net.InetAddress;
 import java.util.Objects;
 import javax.annotation.Nullable;
@@ -48,6 +48,8 @@ public class Web3WebSocketServer {
     private final JsonRpcWeb3ServerHandler web3ServerHandler;
     private final EventLoopGroup bossGroup;
     private final EventLoopGroup workerGroup;
+    private final SocketOptions socketOptions;
+    private final NettyUtils.Transport transport;
     private @Nullable ChannelFuture webSocketChannel;
 
     public Web3WebSocketServer(
@@ -55,19 +57,31 @@ public class Web3WebSocketServer {
             int port,
             XdagJsonRpcHandler jsonRpcHandler,
             JsonRpcWeb3ServerHandler web3ServerHandler) {
+        this(host, port, jsonRpcHandler, web3ServerHandler, new SocketOptions());
+    }
+
+    public Web3WebSocketServer(
+            InetAddress host,
+            int port,
+            XdagJsonRpcHandler jsonRpcHandler,
+            JsonRpcWeb3ServerHandler web3ServerHandler,
+            SocketOptions socketOptions) {
         this.host = host;
         this.port = port;
         this.jsonRpcHandler = jsonRpcHandler;
         this.web3ServerHandler = web3ServerHandler;
-        this.bossGroup = new NioEventLoopGroup();
-        this.workerGroup = new NioEventLoopGroup();
+        this.socketOptions = socketOptions;
+        this.transport = NettyUtils.transport(socketOptions);
+        this.bossGroup = NettyUtils.newEventLoopGroup(transport, 1, null);
+        this.workerGroup = NettyUtils.newEventLoopGroup(transport, 0, null);
     }
 
     public void start() {
         log.info("RPC WebSocket enabled");
         ServerBootstrap b = new ServerBootstrap();
+        NettyUtils.applyOptions(b, transport, socketOptions);
         b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(NettyUtils.serverChannelClass(transport))
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) {
@@ -48,6 +48,13 @@ public final class BlockUtils {
         return BytesUtils.merge(BlockStore.BLOCK_HEIGHT, BytesUtils.longToBytes(height, false));
     }
 
+    /**
+     * 高度取反后大端存储, 前缀遍历时高度从高到低
+     */
+    public static byte[] getMinedKey(long height) {
+        return BytesUtils.merge(BlockStore.MINED_BLOCK_HEIGHT, BytesUtils.longToBytes(Long.MAX_VALUE - height, false));
+    }
+
     public static int getOurIndex(byte[] key) {
         try {
             byte[] index = BytesUtils.subArray(key, 1, 4);
@@ -23,28 +23,179 @@
  */
 package io.xdag.utils;
 
+import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.kqueue.KQueue;
+import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.kqueue.KQueueServerSocketChannel;
+import io.netty.channel.kqueue.KQueueSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.xdag.config.SocketOptions;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.SystemUtils;
 
+@Slf4j
 public final class NettyUtils {
 
+    public enum Transport {
+        EPOLL,
+        KQUEUE,
+        NIO
+    }
+
+    private NettyUtils() {
+    }
+
+    /**
+     * 选择传输方式, 原生库不可用(如非x86_64平台)时回退到nio
+     */
+    public static Transport transport(SocketOptions options) {
+        if (options.isNativeTransport()) {
+            if (SystemUtils.IS_OS_LINUX && Epoll.isAvailable()) {
+                return Transport.EPOLL;
+            }
+            if (SystemUtils.IS_OS_MAC && KQueue.isAvailable()) {
+                return Transport.KQUEUE;
+            }
+            log.debug("native transport unavailable, use nio");
+        }
+        return Transport.NIO;
+    }
+
+    /**
+     * @param threads 0为netty默认线程数
+     * @param factory 为null时使用netty默认线程工厂
+     */
+    public static EventLoopGroup newEventLoopGroup(Transport transport, int threads, ThreadFactory factory) {
+        return switch (transport) {
+            case EPOLL -> new EpollEventLoopGroup(threads, factory);
+            case KQUEUE -> new KQueueEventLoopGroup(threads, factory);
+            default -> new NioEventLoopGroup(threads, factory);
+        };
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass(Transport transport) {
+        return switch (transport) {
+            case EPOLL -> EpollServerSocketChannel.class;
+            case KQUEUE -> KQueueServerSocketChannel.class;
+            default -> NioServerSocketChannel.class;
+        };
+    }
+
+    public static Class<? extends Channel> socketChannelClass(Transport transport) {
+        return switch (transport) {
+            case EPOLL -> EpollSocketChannel.class;
+            case KQUEUE -> KQueueSocketChannel.class;
+            default -> NioSocketChannel.class;
+        };
+    }
+
+    /**
+     * 按event loop的类型选择channel, 两者必须一致
+     */
     public static ServerBootstrap nativeEventLoopGroup(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
         ServerBootstrap bootstrap = new ServerBootstrap();
 
         bootstrap.group(bossGroup, workerGroup);
+        bootstrap.channel(serverChannelClass(transportOf(workerGroup)));
 
-        if(SystemUtils.IS_OS_LINUX) {
-            bootstrap.channel(EpollServerSocketChannel.class);
-        } else if(SystemUtils.IS_OS_MAC) {
-            bootstrap.channel(KQueueServerSocketChannel.class);
-        } else {
-            bootstrap.channel(NioServerSocketChannel.class);
+        return bootstrap;
+    }
+
+    static Transport transportOf(EventLoopGroup group) {
+        if (group instanceof EpollEventLoopGroup) {
+            return Transport.EPOLL;
+        } else if (group instanceof KQueueEventLoopGroup) {
+            return Transport.KQUEUE;
         }
+        return Transport.NIO;
+    }
 
-        return bootstrap;
+    /**
+     * 设置服务端socket参数, 接收缓冲区设置在监听socket上, accept的连接在握手前继承
+     */
+    public static void applyOptions(ServerBootstrap bootstrap, Transport transport, SocketOptions options) {
+        ByteBufAllocator allocator = allocator(options);
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+        bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, options.isTcpNoDelay());
+        if (options.getReceiveBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, options.getReceiveBufferSize());
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, options.getReceiveBufferSize());
+        }
+        if (options.getSendBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, options.getSendBufferSize());
+        }
+        if (transport == Transport.EPOLL && options.getAcceptors() > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    }
+
+    /**
+     * 设置客户端socket参数, 在connect之前生效
+     */
+    public static void applyOptions(Bootstrap bootstrap, SocketOptions options) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator(options));
+        bootstrap.option(ChannelOption.TCP_NODELAY, options.isTcpNoDelay());
+        if (options.getReceiveBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, options.getReceiveBufferSize());
+        }
+        if (options.getSendBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, options.getSendBufferSize());
+        }
+    }
+
+    public static ByteBufAllocator allocator(SocketOptions options) {
+        return options.isPooledAllocator() ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
+    }
+
+    /**
+     * 监听socket数量, 只有epoll支持SO_REUSEPORT分配连接
+     */
+    public static int acceptors(Transport transport, SocketOptions options) {
+        return transport == Transport.EPOLL ? Math.max(1, options.getAcceptors()) : 1;
+    }
+
+    /**
+     * 绑定acceptors个监听socket, boss线程数应与之相同, 每个监听socket由一个boss线程accept
+     */
+    public static List<Channel> bind(ServerBootstrap bootstrap, SocketAddress address, int acceptors)
+            throws InterruptedException {
+        List<Channel> channels = new ArrayList<>();
+        try {
+            for (int i = 0; i < acceptors; i++) {
+                channels.add(bootstrap.bind(address).sync().channel());
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            close(channels);
+            throw e;
+        }
+        return channels;
+    }
+
+    public static void close(List<Channel> channels) throws InterruptedException {
+        for (Channel channel : channels) {
+            if (channel.isOpen()) {
+                channel.close().sync();
+            }
+        }
     }
 }
@@ -25,15 +25,38 @@
 package io.xdag.utils;
 
 import java.util.Date;
+import java.util.function.LongSupplier;
 import org.apache.commons.lang3.time.FastDateFormat;
 
 public class XdagTime {
 
+    private static final LongSupplier SYSTEM_CLOCK = System::currentTimeMillis;
+
+    private static volatile LongSupplier clock = SYSTEM_CLOCK;
+
+    /**
+     * 替换当前时间的来源, 多节点模拟测试用可控时钟驱动区块时间和超时
+     */
+    public static void setClock(LongSupplier newClock) {
+        clock = newClock;
+    }
+
+    public static void resetClock() {
+        clock = SYSTEM_CLOCK;
+    }
+
+    /**
+     * 当前毫秒时间
+     */
+    public static long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
     /**
      * 获取当前的xdag时间戳
      */
     public static long getCurrentTimestamp() {
-        long time_ms = System.currentTimeMillis();
+        long time_ms = currentTimeMillis();
         double ms_tmp = (double) (time_ms << 10);
         return (long) Math.ceil(ms_tmp / 1000 + 0.5);
     }
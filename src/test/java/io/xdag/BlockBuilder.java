@@ -35,6 +35,7 @@ import io.xdag.core.Address;
 import io.xdag.core.Block;
 import io.xdag.crypto.Hash;
 import io.xdag.utils.BasicUtils;
+import io.xdag.utils.XdagTime;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
@@ -106,5 +107,30 @@ public class BlockBuilder {
         return b;
     }
 
+    /**
+     * 生成合成的DAG, 每个时间片width个extra区块, 各引用上一个时间片的两个区块, 按可导入的顺序返回
+     */
+    public static List<Block> generateDag(Config config, KeyPair key, long generateTime, int epochs, int width) {
+        List<Block> res = Lists.newArrayList();
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        res.add(addressBlock);
+        List<Block> prev = Lists.newArrayList(addressBlock);
+        for (int i = 1; i <= epochs; i++) {
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime + i * 64000L));
+            List<Block> current = Lists.newArrayList();
+            for (int j = 0; j < width; j++) {
+                List<Address> pendings = Lists.newArrayList();
+                pendings.add(new Address(prev.get(j % prev.size()).getHashLow(), XDAG_FIELD_OUT, false));
+                if (prev.size() > 1) {
+                    pendings.add(new Address(prev.get((j + 1) % prev.size()).getHashLow(), XDAG_FIELD_OUT, false));
+                }
+                current.add(generateExtraBlockGivenRandom(config, key, xdagTime, pendings,
+                        String.format("%08x%08x", i, j)));
+            }
+            res.addAll(current);
+            prev = current;
+        }
+        return res;
+    }
 
 }
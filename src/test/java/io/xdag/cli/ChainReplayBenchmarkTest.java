@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.cli;
+
+import static io.xdag.BlockBuilder.generateDag;
+import static io.xdag.core.ImportResult.ERROR;
+import static io.xdag.core.ImportResult.INVALID_BLOCK;
+import static io.xdag.core.ImportResult.NO_PARENT;
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.Benchmark;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.config.MainnetConfig;
+import io.xdag.core.Block;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.Sign;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 回放导入性能测试, 默认回放合成的DAG
+ * -Dreplay.epochs, -Dreplay.width 设置DAG大小, -Dreplay.file 回放节点记录的主网区块
+ */
+@Slf4j
+@Category(Benchmark.class)
+public class ChainReplayBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws IOException {
+        String recorded = System.getProperty("replay.file");
+        ChainReplay.Report report;
+        if (recorded != null) {
+            report = new ChainReplay(new MainnetConfig(), true).replay(new File(recorded), root.newFolder());
+        } else {
+            Config config = new DevnetConfig();
+            KeyPair key = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+            int epochs = Integer.getInteger("replay.epochs", 2000);
+            int width = Integer.getInteger("replay.width", 4);
+            File file = root.newFile();
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                for (Block block : generateDag(config, key, 1600616700000L, epochs, width)) {
+                    ChainReplay.write(out, block);
+                }
+            }
+            report = new ChainReplay(config, false).replay(file, root.newFolder());
+        }
+        log.info("replay report:\n{}", report);
+        assertEquals(0, report.getCount(ERROR));
+        assertEquals(0, report.getCount(INVALID_BLOCK));
+        assertEquals(0, report.getCount(NO_PARENT));
+    }
+}
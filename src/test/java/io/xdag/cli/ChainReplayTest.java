@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.cli;
+
+import static io.xdag.BlockBuilder.generateDag;
+import static io.xdag.core.ImportResult.IMPORTED_BEST;
+import static io.xdag.core.ImportResult.IMPORTED_NOT_BEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.Blockchain;
+import io.xdag.core.ImportProfiler;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.Sign;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChainReplayTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    KeyPair key = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+
+    @Test
+    public void testReplay() throws IOException {
+        List<Block> blocks = generateDag(config, key, 1600616700000L, 16, 3);
+        File file = root.newFile();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (Block block : blocks) {
+                ChainReplay.write(out, block);
+            }
+        }
+        assertEquals(blocks.size() * ChainReplay.BLOCK_SIZE, file.length());
+
+        ChainReplay.Report report = new ChainReplay(config, false).replay(file, root.newFolder());
+        assertEquals(blocks.size(), report.getBlocks());
+        assertEquals(blocks.size(), report.getCount(IMPORTED_BEST) + report.getCount(IMPORTED_NOT_BEST));
+        assertTrue(report.getMainBlocks() > 0);
+        assertTrue(report.getBlocksPerSecond() > 0);
+        assertTrue(report.getUserBytes() > 0);
+        assertTrue(report.getWriteAmplification() > 0);
+        assertEquals(blocks.size(), report.getProfiler().getCount(ImportProfiler.Phase.PARSE));
+        assertEquals(blocks.size(), report.getProfiler().getCount(ImportProfiler.Phase.STORE));
+    }
+
+    @Test
+    public void testRecord() throws IOException {
+        List<Block> blocks = generateDag(config, key, 1600616700000L, 2, 2);
+        Blockchain blockchain = mock(Blockchain.class);
+        when(blockchain.getBlockByHeight(1)).thenReturn(blocks.get(0));
+        when(blockchain.getBlockByHeight(2)).thenReturn(blocks.get(2));
+        when(blockchain.getBlocksConfirmedBy(blocks.get(0))).thenReturn(blocks.subList(0, 1));
+        when(blockchain.getBlocksConfirmedBy(blocks.get(2))).thenReturn(blocks.subList(1, 3));
+
+        File file = root.newFile();
+        assertEquals(3, ChainReplay.record(blockchain, 1, 10, file));
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertEquals(3 * ChainReplay.BLOCK_SIZE, data.length);
+        for (int i = 0; i < 3; i++) {
+            byte[] raw = blocks.get(i).getXdagBlock().getData().toArray();
+            for (int j = 0; j < ChainReplay.BLOCK_SIZE; j++) {
+                assertEquals(raw[j], data[i * ChainReplay.BLOCK_SIZE + j]);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        File file = root.newFile();
+        Files.write(file.toPath(), new byte[ChainReplay.BLOCK_SIZE + 1]);
+        new ChainReplay(config, false).replay(file, root.newFolder());
+    }
+}
@@ -110,6 +110,7 @@ public class XdagCliTest {
                     --importprivatekey <key>          import hex key
                     --makesnapshot <covertuint>       make snapshot
                     --password <password>             wallet password
+                    --replay <filename>               replay recorded blocks into an empty database offline
                     --version                         show version
                 """;
         assertEquals(helpStr, outRule.getLog());
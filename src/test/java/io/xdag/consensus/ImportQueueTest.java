@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.SocketChannelConfig;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.Channel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ImportQueueTest {
+
+    private ImportQueue importQueue;
+
+    @After
+    public void tearDown() {
+        if (importQueue != null) {
+            importQueue.stop();
+        }
+    }
+
+    private BlockWrapper newBlockWrapper() {
+        return new BlockWrapper(mock(Block.class), 1);
+    }
+
+    @Test
+    public void testImportInOrder() throws InterruptedException {
+        List<BlockWrapper> imported = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(10);
+        importQueue = new ImportQueue(16, bw -> {
+            imported.add(bw);
+            latch.countDown();
+        });
+        importQueue.start();
+        List<BlockWrapper> submitted = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            BlockWrapper bw = newBlockWrapper();
+            submitted.add(bw);
+            assertTrue(importQueue.submit(bw, null));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(submitted, imported);
+        assertEquals(10, importQueue.getImported());
+        assertEquals(0, importQueue.getDropped());
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        SocketChannelConfig config = mock(SocketChannelConfig.class);
+        SocketChannel socketChannel = mock(SocketChannel.class);
+        when(socketChannel.config()).thenReturn(config);
+        Channel channel = mock(Channel.class);
+        when(channel.getSocketChannel()).thenReturn(socketChannel);
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        importQueue = new ImportQueue(8, bw -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        importQueue.start();
+
+        // 导入线程卡住, 队列达到高水位后暂停读取, 满了之后丢弃
+        int accepted = 0;
+        for (int i = 0; i < 12; i++) {
+            if (importQueue.submit(newBlockWrapper(), channel)) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted >= 8);
+        assertTrue(importQueue.getDropped() > 0);
+        assertEquals(1, importQueue.getPausedChannels());
+        verify(config).setAutoRead(false);
+
+        // 导入恢复后重新开启读取
+        blocked.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (importQueue.getImported() < accepted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(accepted, importQueue.getImported());
+        assertEquals(0, importQueue.getPausedChannels());
+        assertFalse(importQueue.getMaxWaitMillis() < 0);
+        verify(config).setAutoRead(true);
+    }
+}
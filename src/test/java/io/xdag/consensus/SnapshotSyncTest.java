@@ -0,0 +1,47 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.consensus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.net.InetSocketAddress;
+import org.junit.Test;
+
+public class SnapshotSyncTest {
+
+    @Test
+    public void testSubnet() {
+        // 同一/24网段的不同主机和端口算一个
+        assertEquals(SnapshotSync.subnet(new InetSocketAddress("10.0.0.1", 8001)),
+                SnapshotSync.subnet(new InetSocketAddress("10.0.0.200", 8002)));
+        assertNotEquals(SnapshotSync.subnet(new InetSocketAddress("10.0.0.1", 8001)),
+                SnapshotSync.subnet(new InetSocketAddress("10.0.1.1", 8001)));
+
+        assertEquals(SnapshotSync.subnet(new InetSocketAddress("2001:db8:1::1", 8001)),
+                SnapshotSync.subnet(new InetSocketAddress("2001:db8:1:ff::2", 8001)));
+        assertNotEquals(SnapshotSync.subnet(new InetSocketAddress("2001:db8:1::1", 8001)),
+                SnapshotSync.subnet(new InetSocketAddress("2001:db8:2::1", 8001)));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.After;
+import org.junit.Test;
+
+public class WaitSyncPoolTest {
+
+    private WaitSyncPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    private BlockWrapper newBlockWrapper() {
+        Block block = mock(Block.class);
+        when(block.getHashLow()).thenReturn(Bytes32.random());
+        return new BlockWrapper(block, 1);
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        pool = new WaitSyncPool(100, 60000);
+        Bytes32 parent = Bytes32.random();
+        BlockWrapper a = newBlockWrapper();
+        BlockWrapper b = newBlockWrapper();
+
+        // 只有第一次缺失时需要请求父块, 同一区块不重复加入
+        assertTrue(pool.add(parent, a, 0));
+        assertFalse(pool.add(parent, b, 1));
+        assertFalse(pool.add(parent, a, 2));
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.parentSize());
+
+        List<BlockWrapper> children = pool.remove(parent);
+        assertEquals(2, children.size());
+        assertEquals(0, pool.size());
+        assertTrue(pool.remove(parent).isEmpty());
+    }
+
+    @Test
+    public void testEvictOldest() {
+        pool = new WaitSyncPool(3, 60000);
+        Bytes32 first = Bytes32.random();
+        Bytes32 second = Bytes32.random();
+        Bytes32 third = Bytes32.random();
+        pool.add(first, newBlockWrapper(), 0);
+        pool.add(first, newBlockWrapper(), 0);
+        pool.add(second, newBlockWrapper(), 1);
+        pool.add(third, newBlockWrapper(), 2);
+
+        assertEquals(2, pool.size());
+        assertFalse(pool.contains(first));
+        assertTrue(pool.contains(second));
+        assertTrue(pool.contains(third));
+        assertEquals(2, pool.getEvicted());
+    }
+
+    @Test
+    public void testPollRetry() {
+        pool = new WaitSyncPool(100, 60000);
+        Bytes32 first = Bytes32.random();
+        Bytes32 second = Bytes32.random();
+        pool.add(first, newBlockWrapper(), 0);
+        pool.add(second, newBlockWrapper(), 10);
+
+        assertTrue(pool.pollRetry(15, 16, 10).isEmpty());
+        List<WaitSyncPool.Entry> entries = pool.pollRetry(20, 16, 10);
+        assertEquals(1, entries.size());
+        assertEquals(first, entries.get(0).getParent());
+        assertEquals(2, entries.get(0).getRequests());
+
+        // 最早缺失的优先, 每次最多limit个
+        entries = pool.pollRetry(100, 16, 1);
+        assertEquals(1, entries.size());
+        assertEquals(first, entries.get(0).getParent());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        pool = new WaitSyncPool(100, 100);
+        Bytes32 parent = Bytes32.random();
+        pool.add(parent, newBlockWrapper(), System.currentTimeMillis());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.contains(parent) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(pool.contains(parent));
+        assertEquals(0, pool.size());
+        assertEquals(1, pool.getExpired());
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import static io.xdag.config.Constants.REQUEST_BLOCKS_MAX_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import io.xdag.core.Blockchain;
+import io.xdag.core.XdagStats;
+import io.xdag.db.BlockStore;
+import io.xdag.net.Channel;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.handler.Xdag;
+import io.xdag.net.manager.XdagChannelManager;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XdagSyncSchedulerTest {
+
+    private final AtomicLong seq = new AtomicLong();
+    private XdagChannelManager channelMgr;
+    private BlockStore blockStore;
+    private Channel peerA;
+    private Channel peerB;
+    private XdagSync sync;
+
+    @Before
+    public void setUp() {
+        channelMgr = mock(XdagChannelManager.class);
+        blockStore = mock(BlockStore.class);
+        peerA = mockChannel();
+        peerB = mockChannel();
+        when(channelMgr.getActiveChannels()).thenReturn(Lists.newArrayList(peerA, peerB));
+    }
+
+    @After
+    public void tearDown() {
+        if (sync != null) {
+            sync.stop();
+        }
+    }
+
+    private Channel mockChannel() {
+        Channel channel = mock(Channel.class);
+        Xdag xdag = mock(Xdag.class);
+        when(channel.getXdag()).thenReturn(xdag);
+        when(xdag.sendGetBlocks(anyLong(), anyLong())).thenAnswer(i -> seq.incrementAndGet());
+        when(xdag.sendGetSums(anyLong(), anyLong())).thenAnswer(i -> seq.incrementAndGet());
+        when(xdag.sendGetMainBlocks(anyLong(), anyLong())).thenAnswer(i -> seq.incrementAndGet());
+        return channel;
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testSelectPeerByRtt() {
+        sync = new XdagSync(channelMgr, blockStore, null, 16, 2, 3, 1000, false);
+        XdagSync.SyncRange range = new XdagSync.SyncRange(0, REQUEST_BLOCKS_MAX_TIME);
+        List<Channel> channels = Lists.newArrayList(peerA, peerB);
+
+        XdagSync.SyncPeer slow = new XdagSync.SyncPeer();
+        slow.onSend();
+        slow.onResponse(800);
+        XdagSync.SyncPeer fast = new XdagSync.SyncPeer();
+        fast.onSend();
+        fast.onResponse(100);
+        sync.getPeers().put(peerA, slow);
+        sync.getPeers().put(peerB, fast);
+        assertSame(peerB, sync.selectPeer(channels, range));
+
+        // 快节点负载满后分配给慢节点
+        fast.onSend();
+        fast.onSend();
+        assertSame(peerA, sync.selectPeer(channels, range));
+
+        // 已超时过的节点只在没有其他选择时使用
+        range.onSend(peerA, System.currentTimeMillis());
+        fast.onResponse(100);
+        assertSame(peerB, sync.selectPeer(channels, range));
+        fast.onSend();
+        assertSame(peerA, sync.selectPeer(channels, range));
+    }
+
+    @Test
+    public void testRetryOnTimeout() throws InterruptedException {
+        sync = new XdagSync(channelMgr, blockStore, null, 16, 4, 3, 500, false);
+        sync.start();
+        sync.requestBlocks(0, REQUEST_BLOCKS_MAX_TIME);
+
+        // 第一次请求发给A, 超时后换B重试
+        await(() -> sync.getProgress().getRetries() == 1 && sync.getBlocksRequestMap().containsKey(2L));
+        XdagSync.SyncRange range = sync.getProgress().getInflight().get(0);
+        assertSame(peerB, range.getPeer());
+        assertEquals(2, range.getAttempts());
+
+        SettableFuture<Bytes> sf = sync.getBlocksRequestMap().get(2L);
+        sf.set(Bytes.wrap(new byte[]{0}));
+        await(() -> sync.getProgress().getDone() == 1);
+        assertTrue(sync.getBlocksRequestMap().isEmpty());
+        assertEquals(0, sync.getProgress().getFailed());
+        assertEquals(1, sync.getPeers().get(peerA).getFailures());
+        assertEquals(1, sync.getPeers().get(peerB).getResponses());
+    }
+
+    @Test
+    public void testParallelRequests() throws InterruptedException {
+        sync = new XdagSync(channelMgr, blockStore, null, 8, 4, 3, 60000, false);
+        when(blockStore.loadSum(anyLong(), anyLong(), any(MutableBytes.class))).thenReturn(1);
+        sync.start();
+        sync.requestBlocks(0, REQUEST_BLOCKS_MAX_TIME << 4);
+        await(() -> sync.getSumsRequestMap().size() == 1);
+
+        // 对方每个子区间都与本地不同
+        MutableBytes rSums = MutableBytes.create(256);
+        for (int i = 0; i < 16; i++) {
+            rSums.setLong(i * 16 + 8, 1, ByteOrder.LITTLE_ENDIAN);
+        }
+        SettableFuture<Bytes> sf = sync.getSumsRequestMap().get(1L);
+        assertNotNull(sf);
+        sf.set(rSums);
+
+        // 16个区块请求同时最多发出8个, 两个节点各4个
+        await(() -> sync.getBlocksRequestMap().size() == 8);
+        XdagSync.SyncProgress progress = sync.getProgress();
+        assertEquals(8, progress.getPending());
+        assertEquals(4, sync.getPeers().get(peerA).getInflight());
+        assertEquals(4, sync.getPeers().get(peerB).getInflight());
+        assertEquals(0, progress.getInflight().get(0).getStart());
+
+        // 有请求返回后排队的区间继续发出
+        await(() -> {
+            for (SettableFuture<Bytes> f : sync.getBlocksRequestMap().values()) {
+                f.set(Bytes.wrap(new byte[]{0}));
+            }
+            return sync.getProgress().getDone() == 17;
+        });
+        assertTrue(sync.getBlocksRequestMap().isEmpty());
+    }
+
+    @Test
+    public void testMainChainFirst() throws InterruptedException {
+        Blockchain blockchain = mock(Blockchain.class);
+        XdagStats stats = new XdagStats();
+        stats.nmain = 0;
+        stats.totalnmain = 200;
+        when(blockchain.getXdagStats()).thenReturn(stats);
+        when(peerA.isSupported(XdagCapability.MAIN_CHAIN_SYNC)).thenReturn(true);
+        sync = new XdagSync(channelMgr, blockStore, blockchain, 16, 4, 3, 60000, true);
+        sync.start();
+        sync.requestBlocks(0, 1L << 48);
+
+        // 只向支持的节点按高度顺序请求, 同时最多4个
+        await(() -> sync.getBlocksRequestMap().size() == 4);
+        XdagSync.SyncProgress progress = sync.getProgress();
+        assertTrue(progress.isMainChainSync());
+        assertEquals(128, progress.getRequestedHeight());
+        for (XdagSync.SyncRange range : progress.getInflight()) {
+            assertTrue(range.isByHeight());
+            assertSame(peerA, range.getPeer());
+        }
+        verify(peerA.getXdag()).sendGetMainBlocks(1, 32);
+        verify(peerA.getXdag()).sendGetMainBlocks(97, 128);
+
+        await(() -> {
+            for (SettableFuture<Bytes> f : sync.getBlocksRequestMap().values()) {
+                f.set(Bytes.wrap(new byte[]{0}));
+            }
+            return !sync.getProgress().isMainChainSync();
+        });
+        verify(peerA.getXdag()).sendGetMainBlocks(193, 200);
+        verify(peerB.getXdag(), never()).sendGetMainBlocks(anyLong(), anyLong());
+        // 主链同步结束后开始新一轮sums比较
+        assertEquals(2, sync.getProgress().getRound());
+        assertFalse(sync.getProgress().isMainChainSync());
+    }
+}
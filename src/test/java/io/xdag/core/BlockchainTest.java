@@ -40,8 +40,10 @@ import static io.xdag.utils.BasicUtils.keyPair2Hash;
 import static io.xdag.utils.BasicUtils.xdag2amount;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
@@ -539,6 +541,73 @@ public class BlockchainTest {
 
     }
 
+    @Test
+    public void testBlocksConfirmedBy() {
+        long generateTime = 1600616700000L;
+        KeyPair key = KeyPair.create(secretkey_1, Sign.CURVE, Sign.CURVE_NAME);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        List<Address> pending = Lists.newArrayList();
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, key, xdagTime, pending);
+            assertSame(IMPORTED_BEST, blockchain.tryToConnect(extraBlock));
+            ref = extraBlock.getHashLow();
+        }
+
+        // 按高度依次取出主块确认的区块, 每个区块的引用块都在它之前
+        List<Bytes32> order = Lists.newArrayList();
+        for (long height = 1; height <= blockchain.getXdagStats().nmain; height++) {
+            Block mainBlock = blockchain.getBlockByHeight(height);
+            List<Block> confirmed = blockchain.getBlocksConfirmedBy(mainBlock);
+            assertEquals(mainBlock.getHashLow(), confirmed.get(confirmed.size() - 1).getHashLow());
+            for (Block block : confirmed) {
+                for (Address link : block.getLinks()) {
+                    if (!link.isAddress) {
+                        assertTrue(order.contains(link.getAddress()));
+                    }
+                }
+                assertFalse(order.contains(block.getHashLow()));
+                order.add(block.getHashLow());
+            }
+        }
+        assertTrue(order.contains(addressBlock.getHashLow()));
+    }
+
+    @Test
+    public void testSaveChainStatus() {
+        long generateTime = 1600616700000L;
+        KeyPair key = KeyPair.create(secretkey_1, Sign.CURVE, Sign.CURVE_NAME);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+
+        // 状态只在checkpoint时落盘
+        assertNull(kernel.getBlockStore().getXdagStatus());
+        blockchain.saveChainStatus();
+        assertEquals(1, kernel.getBlockStore().getXdagStatus().nblocks);
+        assertArrayEquals(addressBlock.getHashLow().toArray(), kernel.getBlockStore().getXdagTopStatus().getTop());
+        blockchain.stopCheckMain();
+
+        // 重启后nnoref按孤块池修正
+        MockBlockchain restarted = new MockBlockchain(kernel);
+        assertChainStatus(1, 0, 0, 1, restarted);
+        restarted.stopCheckMain();
+
+        // 落盘的nblocks错误时按sums树修正
+        XdagStats corrupted = kernel.getBlockStore().getXdagStatus();
+        corrupted.nblocks = 100;
+        kernel.getBlockStore().saveXdagStatus(corrupted);
+        MockBlockchain recovered = new MockBlockchain(kernel);
+        assertEquals(1, recovered.getXdagStats().nblocks);
+        recovered.stopCheckMain();
+    }
+
     static class MockBlockchain extends BlockchainImpl {
 
         public MockBlockchain(Kernel kernel) {
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class MainChainHeightTableTest {
+
+    private static Bytes32 hashlow(long height) {
+        return Bytes32.leftPad(Bytes.ofUnsignedLong(height + 1));
+    }
+
+    @Test
+    public void testSetAndGet() {
+        MainChainHeightTable table = new MainChainHeightTable();
+        // 跨越多个块
+        long[] heights = {1, 2, 65535, 65536, 200000};
+        for (long height : heights) {
+            table.set(height, hashlow(height));
+        }
+        for (long height : heights) {
+            assertEquals(hashlow(height), table.get(height));
+        }
+        assertEquals(200000, table.getMaxHeight());
+        assertNull(table.get(3));
+        assertNull(table.get(0));
+        assertNull(table.get(200001));
+    }
+
+    @Test
+    public void testRemove() {
+        MainChainHeightTable table = new MainChainHeightTable();
+        for (long height = 1; height <= 10; height++) {
+            table.set(height, hashlow(height));
+        }
+        table.remove(10);
+        table.remove(9);
+        assertEquals(8, table.getMaxHeight());
+        assertNull(table.get(9));
+
+        List<Bytes32> list = table.listDescending(100, 3);
+        assertEquals(3, list.size());
+        assertEquals(hashlow(8), list.get(0));
+        assertEquals(hashlow(6), list.get(2));
+    }
+}
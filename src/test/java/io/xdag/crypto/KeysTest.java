@@ -82,4 +82,14 @@ public class KeysTest {
         }
     }
 
+    @Test
+    public void testCompressedPubKey()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        for (int i = 0; i < 1000; i++) {
+            KeyPair key = Keys.createEcKeyPair();
+            assertEquals(Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true)),
+                    Bytes.wrap(Keys.toCompressedPubKey(key.getPublicKey())));
+        }
+    }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.db.SnapshotManifest.ChunkWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class SnapshotManifestTest {
+
+    private static byte[] value(int i, int length) {
+        byte[] value = new byte[length];
+        for (int j = 0; j < length; j++) {
+            value[j] = (byte) (i + j);
+        }
+        return value;
+    }
+
+    @Test
+    public void testChunkRoundTrip() {
+        List<byte[]> chunks = new ArrayList<>();
+        ChunkWriter writer = new ChunkWriter(chunks::add);
+        int records = 2000;
+        for (int i = 0; i < records; i++) {
+            writer.add(i % 2 == 0 ? SnapshotManifest.SECTION_BLOCKS : SnapshotManifest.SECTION_ADDRESS,
+                    value(i, 33), value(i, 100 + i % 50));
+        }
+        List<Bytes32> hashes = writer.finish();
+        assertEquals(chunks.size(), hashes.size());
+        assertTrue(chunks.size() > 1);
+
+        List<byte[]> keys = new ArrayList<>();
+        int[] sections = new int[3];
+        for (byte[] chunk : chunks) {
+            assertTrue(chunk.length <= SnapshotManifest.CHUNK_SIZE);
+            SnapshotManifest.forEachRecord(chunk, (section, key, value) -> {
+                assertArrayEquals(value(keys.size(), 100 + keys.size() % 50), value);
+                keys.add(key);
+                sections[section]++;
+            });
+        }
+        // 记录不跨分块, 顺序不变
+        assertEquals(records, keys.size());
+        assertArrayEquals(value(records - 1, 33), keys.get(records - 1));
+        assertEquals(records / 2, sections[SnapshotManifest.SECTION_BLOCKS]);
+        assertEquals(records / 2, sections[SnapshotManifest.SECTION_ADDRESS]);
+    }
+
+    @Test
+    public void testHeaderAndPages() {
+        List<Bytes32> hashes = new ArrayList<>();
+        for (int i = 0; i < SnapshotManifest.PAGE_HASHES + 10; i++) {
+            hashes.add(Bytes32.random());
+        }
+        SnapshotManifest manifest = new SnapshotManifest(1024, 0x16940000000L, Bytes32.random(),
+                BigInteger.valueOf(123456789), hashes);
+        assertEquals(2, manifest.getPageCount());
+
+        SnapshotManifest received = SnapshotManifest.decodeHeader(manifest.encodeHeader());
+        assertEquals(manifest.getRoot(), received.getRoot());
+        assertEquals(1024, received.getHeight());
+        assertEquals(manifest.getMainHashLow(), received.getMainHashLow());
+        assertEquals(BigInteger.valueOf(123456789), received.getDifficulty());
+        assertEquals(hashes.size(), received.getChunkCount());
+        assertNull(received.getChunkHashes()[0]);
+
+        // 分页按清单头中的哈希校验
+        byte[] page = manifest.encodePage(1);
+        page[0] ^= 1;
+        assertFalse(received.addPage(1, page));
+        assertFalse(received.addPage(0, manifest.encodePage(1)));
+        assertTrue(received.addPage(0, manifest.encodePage(0)));
+        assertTrue(received.addPage(1, manifest.encodePage(1)));
+        assertTrue(received.hasPage(1));
+        assertArrayEquals(manifest.getChunkHashes(), received.getChunkHashes());
+    }
+
+    @Test
+    public void testVerifyChunk() {
+        List<byte[]> chunks = new ArrayList<>();
+        ChunkWriter writer = new ChunkWriter(chunks::add);
+        writer.add(SnapshotManifest.SECTION_BLOCKS, value(1, 33), value(2, 64));
+        SnapshotManifest manifest = new SnapshotManifest(1, 0, Bytes32.ZERO, BigInteger.ONE, writer.finish());
+
+        byte[] chunk = chunks.get(0);
+        assertTrue(manifest.verifyChunk(0, chunk));
+        assertFalse(manifest.verifyChunk(1, chunk));
+        chunk[chunk.length - 1] ^= 1;
+        assertFalse(manifest.verifyChunk(0, chunk));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHeader() {
+        byte[] header = new SnapshotManifest(1, 0, Bytes32.ZERO, BigInteger.ONE, List.of(Bytes32.ZERO))
+                .encodeHeader();
+        SnapshotManifest.decodeHeader(Arrays.copyOf(header, header.length - 1));
+    }
+}
@@ -28,9 +28,12 @@ import static io.xdag.BlockBuilder.generateAddressBlock;
 import static io.xdag.utils.BytesUtils.equalBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.Lists;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.core.Block;
@@ -43,10 +46,13 @@ import io.xdag.db.rocksdb.DatabaseFactory;
 import io.xdag.db.rocksdb.DatabaseName;
 import io.xdag.db.rocksdb.KVSource;
 import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.utils.BlockUtils;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -57,6 +63,9 @@ import org.junit.rules.TemporaryFolder;
 
 public class BlockStoreImplTest {
 
+    private static final String BLOCK = "00000000000000003833333333530540ffff8741810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9";
+    private static final String BLOCK1 = "00000000000000003833333333530540ffff8941810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9";
+
     @Rule
     public TemporaryFolder root = new TemporaryFolder();
 
@@ -149,6 +158,46 @@ public class BlockStoreImplTest {
         assertTrue(equalBytes(bs.getOurBlock(1).toArray(), new byte[]{0}));
     }
 
+    @Test
+    public void testMinedBlocks() {
+        BlockStore bs = new BlockStoreImpl(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        for (long height = 1; height <= 5; height++) {
+            bs.saveMinedBlock(height, Bytes32.leftPad(Bytes.ofUnsignedLong(height)));
+        }
+        bs.removeMinedBlock(4);
+
+        // 高度从高到低
+        List<Bytes32> mined = bs.getMinedBlocks(3);
+        assertEquals(3, mined.size());
+        assertEquals(Bytes32.leftPad(Bytes.ofUnsignedLong(5)), mined.get(0));
+        assertEquals(Bytes32.leftPad(Bytes.ofUnsignedLong(3)), mined.get(1));
+        assertEquals(Bytes32.leftPad(Bytes.ofUnsignedLong(2)), mined.get(2));
+        assertEquals(4, bs.getMinedBlocks(10).size());
+
+        assertFalse(bs.isMinedIndexReady());
+        bs.setMinedIndexReady();
+        assertTrue(bs.isMinedIndexReady());
+    }
+
+    @Test
+    public void testFetchHeights() {
+        BlockStore bs = new BlockStoreImpl(indexSource, timeSource, blockSource, txHistory);
+        bs.init();
+        for (long height = 1; height <= 5; height++) {
+            indexSource.put(BlockUtils.getHeight(height), Bytes32.leftPad(Bytes.ofUnsignedLong(height)).toArray());
+        }
+
+        // 从高度3开始, 按高度从低到高
+        List<Long> heights = Lists.newArrayList();
+        bs.fetchHeights(3, pair -> {
+            assertEquals(Bytes32.leftPad(Bytes.ofUnsignedLong(pair.getKey())), pair.getValue());
+            heights.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        assertEquals(List.of(3L, 4L, 5L), heights);
+    }
+
     @Test
     public void testSaveBlockSums()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
@@ -169,10 +218,8 @@ public class BlockStoreImplTest {
         blockStore.init();
 
         // 创建区块
-        Block block = new Block(new XdagBlock(Hex.decode(
-                "00000000000000003833333333530540ffff8741810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9")));
-        Block block1 = new Block(new XdagBlock(Hex.decode(
-                "00000000000000003833333333530540ffff8941810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9")));
+        Block block = new Block(new XdagBlock(Hex.decode(BLOCK)));
+        Block block1 = new Block(new XdagBlock(Hex.decode(BLOCK1)));
 
         long time = block.getTimestamp();
 
@@ -185,4 +232,27 @@ public class BlockStoreImplTest {
         assertEquals(block, blocks.get(0));
 
     }
+
+    @Test
+    public void getBlocksUsedTimeBatchTest() {
+        BlockStore blockStore = new BlockStoreImpl(indexSource, timeSource, blockSource, txHistory);
+        blockStore.init();
+        Block block = new Block(new XdagBlock(Hex.decode(BLOCK)));
+        Block block1 = new Block(new XdagBlock(Hex.decode(BLOCK1)));
+        blockStore.saveBlock(block);
+        blockStore.saveBlock(block1);
+        long start = Math.min(block.getTimestamp(), block1.getTimestamp());
+        long end = Math.max(block.getTimestamp(), block1.getTimestamp()) + 0x10000;
+
+        assertEquals(2, blockStore.getBlocksUsedTime(start, end, null, 64).size());
+        // 分批读取, 从上一批最后一个区块之后继续
+        List<Block> first = blockStore.getBlocksUsedTime(start, end, null, 1);
+        assertEquals(1, first.size());
+        List<Block> second = blockStore.getBlocksUsedTime(start, end, first.get(0), 1);
+        assertEquals(1, second.size());
+        assertNotEquals(first.get(0), second.get(0));
+        assertTrue(blockStore.getBlocksUsedTime(start, end, second.get(0), 1).isEmpty());
+        // endTime所在时间段不包含在内
+        assertTrue(blockStore.getBlocksUsedTime(start, start, null, 64).isEmpty());
+    }
 }
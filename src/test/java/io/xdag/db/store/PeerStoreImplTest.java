@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.store;
+
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.db.PeerStore;
+import io.xdag.db.rocksdb.DatabaseFactory;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.PeerStoreImpl;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.net.node.PeerInfo;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PeerStoreImplTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+    }
+
+    @Test
+    public void testSaveAndReload() {
+        DatabaseFactory factory = new RocksdbFactory(config);
+        PeerStore store = new PeerStoreImpl(factory.getDB(DatabaseName.PEER));
+        store.init();
+        PeerInfo peer = new PeerInfo("127.0.0.1", 8001);
+        peer.onAttempt(1000);
+        peer.onConnected(1200, 200);
+        PeerInfo other = new PeerInfo("127.0.0.2", 8002);
+        other.onAttempt(1000);
+        store.save(peer);
+        store.save(other);
+        store.save(other);
+        factory.close();
+
+        // 重启后读出同样的节点表
+        factory = new RocksdbFactory(config);
+        store = new PeerStoreImpl(factory.getDB(DatabaseName.PEER));
+        store.init();
+        List<PeerInfo> peers = store.getPeers();
+        peers.sort(Comparator.comparing(PeerInfo::getHost));
+        assertEquals(2, peers.size());
+        assertEquals(8001, peers.get(0).getPort());
+        assertEquals(200, peers.get(0).getRtt());
+        assertEquals(0, peers.get(0).getFailures());
+        assertEquals("127.0.0.2", peers.get(1).getHost());
+        assertEquals(1, peers.get(1).getFailures());
+
+        store.delete(peers.get(1));
+        assertEquals(1, store.getPeers().size());
+        factory.close();
+    }
+}
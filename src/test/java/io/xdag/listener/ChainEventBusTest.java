@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.listener;
+
+import static io.xdag.config.Constants.MessageType.NEW_LINK;
+import static io.xdag.config.Constants.MessageType.PRE_TOP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Constants.MessageType;
+import io.xdag.listener.ChainEventBus.OverflowPolicy;
+import io.xdag.listener.ChainEventBus.Subscription;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChainEventBusTest {
+
+    ChainEventBus bus = new ChainEventBus(4);
+
+    @After
+    public void tearDown() {
+        bus.stop();
+    }
+
+    @Test
+    public void testPretopCoalesced() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Message> received = new CopyOnWriteArrayList<>();
+        Subscription sub = bus.subscribe("test", message -> {
+            received.add(message);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4, OverflowPolicy.DROP_OLDEST, EnumSet.of(PRE_TOP), EnumSet.of(PRE_TOP));
+
+        bus.publish(new PretopMessage(Bytes.of(0), PRE_TOP));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // 订阅者阻塞期间的pretop事件只保留最后一个
+        for (int i = 1; i <= 10; i++) {
+            bus.publish(new PretopMessage(Bytes.of(i), PRE_TOP));
+        }
+        release.countDown();
+
+        waitDelivered(sub, 2);
+        assertEquals(2, received.size());
+        assertEquals(Bytes.of(10), received.get(1).getData());
+        assertEquals(9, sub.getMerged().get());
+        assertEquals(0, sub.getDropped().get());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Message> received = new CopyOnWriteArrayList<>();
+        Subscription sub = bus.subscribe("test", message -> {
+            received.add(message);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2, OverflowPolicy.DROP_OLDEST, EnumSet.of(NEW_LINK), EnumSet.noneOf(MessageType.class));
+
+        bus.publish(new BlockMessage(Bytes.of(0), NEW_LINK));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            bus.publish(new BlockMessage(Bytes.of(i), NEW_LINK));
+        }
+        release.countDown();
+
+        waitDelivered(sub, 3);
+        assertEquals(3, received.size());
+        assertEquals(Bytes.of(4), received.get(1).getData());
+        assertEquals(Bytes.of(5), received.get(2).getData());
+        assertEquals(3, sub.getDropped().get());
+    }
+
+    @Test
+    public void testLocalNotDropped() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Message> received = new CopyOnWriteArrayList<>();
+        Subscription sub = bus.subscribe("test", message -> {
+            received.add(message);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2, OverflowPolicy.DROP_OLDEST, EnumSet.of(NEW_LINK), EnumSet.noneOf(MessageType.class));
+
+        bus.publish(new BlockMessage(Bytes.of(0), NEW_LINK));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // 本节点的链接块最先入队, 之后的事件溢出时也不会被挤掉
+        bus.publishLocal(new BlockMessage(Bytes.of(100), NEW_LINK));
+        for (int i = 1; i <= 5; i++) {
+            bus.publish(new BlockMessage(Bytes.of(i), NEW_LINK));
+        }
+        release.countDown();
+
+        waitDelivered(sub, 4);
+        assertEquals(4, received.size());
+        assertEquals(Bytes.of(100), received.get(1).getData());
+        assertEquals(Bytes.of(4), received.get(2).getData());
+        assertEquals(Bytes.of(5), received.get(3).getData());
+        assertEquals(3, sub.getDropped().get());
+    }
+
+    @Test
+    public void testTypeFilter() throws InterruptedException {
+        List<Message> received = new CopyOnWriteArrayList<>();
+        Subscription sub = bus.subscribe(received::add);
+        bus.publish(new MainBlockMessage(Bytes32.ZERO, 1, MessageType.NEW_MAIN));
+        bus.publish(new BlockMessage(Bytes.of(1), NEW_LINK));
+
+        waitDelivered(sub, 1);
+        Thread.sleep(50);
+        assertEquals(1, received.size());
+        assertEquals(NEW_LINK, received.get(0).getType());
+    }
+
+    private void waitDelivered(Subscription sub, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sub.getDelivered().get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
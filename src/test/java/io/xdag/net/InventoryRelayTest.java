@@ -0,0 +1,346 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.handler.XdagAdapter;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.node.Node;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@Slf4j
+public class InventoryRelayTest {
+
+    private static final int NODES = 16;
+    private static final int DEGREE = 4;
+    private static final int BURSTS = 5;
+    private static final int TTL = 8;
+    private static final long LINK_LATENCY = 2;
+
+    private ScheduledExecutorService network;
+    private final AtomicLong bytes = new AtomicLong();
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() {
+        network = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        network.shutdownNow();
+    }
+
+    private static Bytes32 hashlow(Random random) {
+        MutableBytes32 hashlow = MutableBytes32.create();
+        byte[] suffix = new byte[24];
+        random.nextBytes(suffix);
+        for (int i = 0; i < 24; i++) {
+            hashlow.set(8 + i, suffix[i]);
+        }
+        return hashlow;
+    }
+
+    private class SimNode {
+
+        final Node node;
+        final List<Channel> channels = new CopyOnWriteArrayList<>();
+        final Map<Bytes32, Block> store = new ConcurrentHashMap<>();
+        final Map<Bytes32, Long> receivedAt = new ConcurrentHashMap<>();
+        final InventoryRelay relay;
+
+        SimNode(int i) {
+            node = new Node("127.0.0.1", 10000 + i);
+            relay = new InventoryRelay(() -> channels, store::containsKey, store::get, TTL);
+        }
+
+        void receive(Channel from, Block block, int ttl) {
+            Bytes32 hashlow = block.getHashLow();
+            relay.onBlockReceived(from, hashlow);
+            if (store.putIfAbsent(hashlow, block) == null) {
+                receivedAt.put(hashlow, System.nanoTime());
+                if (ttl - 1 > 0) {
+                    relay.distribute(new BlockWrapper(block, ttl - 1, from.getNode()), from.getNode());
+                }
+            }
+        }
+    }
+
+    private Channel newChannel(SimNode remote, boolean inventory) {
+        Channel channel = mock(Channel.class);
+        when(channel.getNode()).thenReturn(remote.node);
+        when(channel.getInventory()).thenReturn(new PeerInventory());
+        when(channel.isSupported(XdagCapability.INVENTORY)).thenReturn(inventory);
+        return channel;
+    }
+
+    /**
+     * local上指向remote的连接, 消息经network线程延迟送达remote上的反向连接
+     */
+    private void bind(Channel channel, SimNode remote, Channel back) {
+        XdagAdapter xdag = new XdagAdapter() {
+            @Override
+            public void sendNewBlock(Block newBlock, int ttl) {
+                deliver(() -> remote.receive(back, newBlock, ttl));
+            }
+
+            @Override
+            public void sendInventory(List<Bytes32> hashlows) {
+                deliver(() -> remote.relay.onAnnounce(back, hashlows));
+            }
+
+            @Override
+            public void sendGetInventory(List<Bytes32> hashlows) {
+                deliver(() -> remote.relay.onRequest(back, hashlows));
+            }
+        };
+        when(channel.getXdag()).thenReturn(xdag);
+        doAnswer(invocation -> {
+            BlockWrapper bw = invocation.getArgument(0);
+            xdag.sendNewBlock(bw.getBlock(), bw.getTtl());
+            return null;
+        }).when(channel).sendNewBlock(any());
+    }
+
+    private void deliver(Runnable task) {
+        // 每条消息一个512字节的帧
+        bytes.addAndGet(512);
+        network.schedule(task, LINK_LATENCY, TimeUnit.MILLISECONDS);
+    }
+
+    private List<SimNode> newNetwork(boolean inventory) {
+        List<SimNode> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            nodes.add(new SimNode(i));
+        }
+        Random topology = new Random(7);
+        for (int i = 0; i < NODES; i++) {
+            // 环保证连通, 再加随机连接
+            connect(nodes.get(i), nodes.get((i + 1) % NODES), inventory);
+            while (nodes.get(i).channels.size() < DEGREE) {
+                int j = topology.nextInt(NODES);
+                if (j != i) {
+                    connect(nodes.get(i), nodes.get(j), inventory);
+                }
+            }
+        }
+        for (SimNode n : nodes) {
+            n.relay.start();
+        }
+        return nodes;
+    }
+
+    private void connect(SimNode a, SimNode b, boolean inventory) {
+        for (Channel c : a.channels) {
+            if (c.getNode() == b.node) {
+                return;
+            }
+        }
+        Channel ab = newChannel(b, inventory);
+        Channel ba = newChannel(a, inventory);
+        bind(ab, b, ba);
+        bind(ba, a, ab);
+        a.channels.add(ab);
+        b.channels.add(ba);
+    }
+
+    private Block newBlock() {
+        Block block = mock(Block.class);
+        Bytes32 hashlow = hashlow(random);
+        when(block.getHashLow()).thenReturn(MutableBytes32.wrap(hashlow.toArray()));
+        return block;
+    }
+
+    /**
+     * 每轮每个节点各产生一个区块, 返回每个区块的平均字节数和平均传播延迟(ms)
+     */
+    private double[] run(boolean inventory) throws InterruptedException {
+        List<SimNode> nodes = newNetwork(inventory);
+        bytes.set(0);
+        double latency = 0;
+        try {
+            for (int b = 0; b < BURSTS; b++) {
+                List<Bytes32> burst = new ArrayList<>();
+                long start = System.nanoTime();
+                for (SimNode origin : nodes) {
+                    Block block = newBlock();
+                    Bytes32 hashlow = block.getHashLow();
+                    burst.add(hashlow);
+                    origin.store.put(hashlow, block);
+                    origin.receivedAt.put(hashlow, System.nanoTime());
+                    origin.relay.distribute(new BlockWrapper(block, TTL), null);
+                }
+
+                long deadline = System.currentTimeMillis() + 5000;
+                while (nodes.stream().anyMatch(n -> !n.store.keySet().containsAll(burst))
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                for (Bytes32 hashlow : burst) {
+                    long last = start;
+                    for (SimNode n : nodes) {
+                        assertTrue(n.store.containsKey(hashlow));
+                        last = Math.max(last, n.receivedAt.get(hashlow));
+                    }
+                    latency += (last - start) / 1e6;
+                }
+                // 等待剩余的清单和重复区块送达
+                Thread.sleep(InventoryRelay.FLUSH_INTERVAL * 4);
+            }
+        } finally {
+            for (SimNode n : nodes) {
+                n.relay.stop();
+            }
+        }
+        int blocks = BURSTS * NODES;
+        return new double[]{(double) bytes.get() / blocks, latency / blocks};
+    }
+
+    @Test
+    public void testInventoryRelayBandwidth() throws InterruptedException {
+        double[] push = run(false);
+        double[] inv = run(true);
+        log.info("push relay: {} bytes/block, {} ms propagation", push[0], push[1]);
+        log.info("inventory relay: {} bytes/block, {} ms propagation", inv[0], inv[1]);
+        // 每个节点至少收到一次完整区块
+        assertTrue(inv[0] >= 512 * (NODES - 1));
+        assertTrue(inv[0] < push[0]);
+    }
+
+    @Test
+    public void testAnnounceOnce() {
+        SimNode a = new SimNode(0);
+        SimNode b = new SimNode(1);
+        Channel ab = newChannel(b, true);
+        List<List<Bytes32>> sent = new ArrayList<>();
+        when(ab.getXdag()).thenReturn(new XdagAdapter() {
+            @Override
+            public void sendInventory(List<Bytes32> hashlows) {
+                sent.add(hashlows);
+            }
+        });
+        a.channels.add(ab);
+
+        Block block = newBlock();
+        a.relay.distribute(new BlockWrapper(block, TTL), null);
+        a.relay.distribute(new BlockWrapper(block, TTL), null);
+        a.relay.flushAnnounces();
+        assertEquals(1, sent.size());
+        assertEquals(List.of(block.getHashLow()), sent.get(0));
+
+        // 对方发来的区块不再通知对方
+        Block other = newBlock();
+        a.relay.onBlockReceived(ab, other.getHashLow());
+        a.relay.distribute(new BlockWrapper(other, TTL), null);
+        a.relay.flushAnnounces();
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testRequestOnceAndRetry() {
+        SimNode a = new SimNode(0);
+        Channel b = newChannel(new SimNode(1), true);
+        Channel c = newChannel(new SimNode(2), true);
+        List<Channel> requestedFrom = new ArrayList<>();
+        for (Channel ch : List.of(b, c)) {
+            when(ch.getXdag()).thenReturn(new XdagAdapter() {
+                @Override
+                public void sendGetInventory(List<Bytes32> hashlows) {
+                    requestedFrom.add(ch);
+                }
+            });
+        }
+        Bytes32 hashlow = hashlow(random);
+        a.relay.onAnnounce(b, List.of(hashlow));
+        a.relay.onAnnounce(c, List.of(hashlow));
+        assertEquals(List.of(b), requestedFrom);
+
+        // b超时未回复, 改向c请求
+        a.relay.retryRequests(System.currentTimeMillis() + InventoryRelay.REQUEST_TIMEOUT);
+        assertEquals(List.of(b, c), requestedFrom);
+
+        a.relay.onBlockReceived(c, hashlow);
+        a.relay.retryRequests(System.currentTimeMillis() + InventoryRelay.REQUEST_TIMEOUT * 2);
+        assertEquals(0, a.relay.getWantedSize());
+    }
+
+    @Test
+    public void testInvMessage() {
+        List<Bytes32> hashlows = new ArrayList<>();
+        for (int i = 0; i < InvMessage.MAX_HASHES; i++) {
+            hashlows.add(hashlow(random));
+        }
+        InvMessage msg = new InvMessage(InvMessage.Type.REQUEST, hashlows);
+        InvMessage parsed = new InvMessage(msg.getEncoded().mutableCopy());
+        assertEquals(InvMessage.Type.REQUEST, parsed.getType());
+        assertEquals(hashlows, parsed.getHashlows());
+        assertEquals(0, parsed.getDepth());
+
+        // 祖先深度在类型之后, 超过上限时按上限处理
+        msg = new InvMessage(InvMessage.Type.ANCESTORS, hashlows.subList(0, 3), 5);
+        parsed = new InvMessage(msg.getEncoded().mutableCopy());
+        assertEquals(InvMessage.Type.ANCESTORS, parsed.getType());
+        assertEquals(hashlows.subList(0, 3), parsed.getHashlows());
+        assertEquals(5, parsed.getDepth());
+        assertEquals(InvMessage.MAX_DEPTH, new InvMessage(InvMessage.Type.ANCESTORS, hashlows, 1000).getDepth());
+    }
+
+    @Test
+    public void testKnownFilterRotation() {
+        PeerInventory inventory = new PeerInventory();
+        Bytes32 first = hashlow(random);
+        assertTrue(inventory.markKnown(first));
+        assertFalse(inventory.markKnown(first));
+        for (int i = 0; i < PeerInventory.KNOWN_BLOCKS_SIZE * 3; i++) {
+            inventory.markKnown(hashlow(random));
+        }
+        // 两代之后最早的记录被丢弃
+        assertFalse(inventory.isKnown(first));
+    }
+}
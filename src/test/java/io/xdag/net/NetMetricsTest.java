@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.net.message.XdagMessageCodes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class NetMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        RttHistogram histogram = new RttHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 0; i < 90; i++) {
+            histogram.add(3);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.add(1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(102, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        // 3毫秒在 [2, 4) 桶中, 1000毫秒在 [512, 1024) 桶中
+        assertEquals(4, histogram.getPercentile(0.5));
+        assertEquals(4, histogram.getPercentile(0.9));
+        assertEquals(1000, histogram.getPercentile(0.99));
+
+        histogram.add(1L << 20);
+        assertEquals(1L << 20, histogram.getPercentile(1));
+        assertEquals(1, histogram.getBucket(RttHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testRequestRtt() {
+        NetMetrics metrics = new NetMetrics();
+        AtomicLong now = new AtomicLong();
+        RequestRtt rtt = new RequestRtt(metrics, now::get);
+        Bytes32 hashlow = Bytes32.random();
+
+        rtt.onRequest(RequestRtt.Kind.SUMS, 1);
+        rtt.onRequest(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hashlow));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(30, rtt.onReply(RequestRtt.Kind.SUMS, 1));
+        // 同一响应只统计一次, 类型不同不匹配
+        assertEquals(-1, rtt.onReply(RequestRtt.Kind.SUMS, 1));
+        assertEquals(-1, rtt.onReply(RequestRtt.Kind.BLOCKS, RequestRtt.blockKey(hashlow)));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(70));
+        assertEquals(100, rtt.onReply(RequestRtt.Kind.BLOCK, RequestRtt.blockKey(hashlow)));
+
+        assertEquals(1, rtt.getHistogram(RequestRtt.Kind.SUMS).getCount());
+        assertEquals(1, metrics.getRtt(RequestRtt.Kind.BLOCK).getCount());
+        assertEquals(100, metrics.getRtt(RequestRtt.Kind.BLOCK).getMax());
+        assertEquals(0, metrics.getRtt(RequestRtt.Kind.BLOCKS).getCount());
+        assertTrue(rtt.toString().startsWith("sums[n=1"));
+    }
+
+    @Test
+    public void testMessageStats() {
+        NetMetrics metrics = new NetMetrics();
+        metrics.onReceived(XdagMessageCodes.NEW_BLOCK, 512, TimeUnit.MICROSECONDS.toNanos(10));
+        metrics.onReceived(XdagMessageCodes.NEW_BLOCK, 512, TimeUnit.MICROSECONDS.toNanos(30));
+        metrics.onHandled(XdagMessageCodes.NEW_BLOCK, TimeUnit.MICROSECONDS.toNanos(8));
+        metrics.onSent(XdagMessageCodes.BLOCK_REQUEST, 512, TimeUnit.MILLISECONDS.toNanos(2));
+
+        NetMetrics.MessageStats stats = metrics.getStats(XdagMessageCodes.NEW_BLOCK);
+        assertEquals(2, stats.getReceived());
+        assertEquals(1024, stats.getReceivedBytes());
+        assertEquals(20, stats.getAvgDecodeMicros());
+        assertEquals(8, stats.getAvgHandleMicros());
+        assertEquals(0, stats.getSent());
+        assertEquals(2000, metrics.getStats(XdagMessageCodes.BLOCK_REQUEST).getAvgQueueMicros());
+        assertTrue(metrics.toString().contains("BLOCK_REQUEST"));
+        assertFalse(metrics.toString().contains("SUMS_REQUEST"));
+    }
+}
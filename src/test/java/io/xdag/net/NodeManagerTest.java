@@ -23,14 +23,39 @@
  */
 package io.xdag.net;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import io.libp2p.core.crypto.KEY_TYPE;
+import io.libp2p.core.crypto.KeyKt;
+import io.libp2p.core.crypto.PrivKey;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
+import io.xdag.db.PeerStore;
+import io.xdag.net.libp2p.Libp2pNetwork;
+import io.xdag.net.libp2p.Libp2pUtils;
+import io.xdag.net.libp2p.discovery.DiscV5Service;
+import io.xdag.net.libp2p.discovery.DiscoveryPeer;
 import io.xdag.net.manager.NetDBManager;
+import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.node.Node;
+import io.xdag.net.node.NodeManager;
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.stream.Stream;
+import org.apache.tuweni.bytes.Bytes;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -61,4 +86,111 @@ public class NodeManagerTest {
         assertTrue(netDBMgr.canAccept(new InetSocketAddress("127.0.0.1",1002)));
     }
 
+    @Test
+    public void testMisbehaveBan() {
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        Channel channel = mock(Channel.class);
+        Node node = new Node("127.0.0.1", 1001);
+        when(channelMgr.getActiveChannel(node)).thenReturn(channel);
+        kernel.setChannelMgr(channelMgr);
+        NodeManager nodeMgr = new NodeManager(kernel);
+        int banScore = config.getNodeSpec().getMisbehaviorBanScore();
+
+        nodeMgr.misbehave(node, banScore - 1, "test");
+        assertEquals(banScore - 1, node.getStat().Misbehavior.get());
+        assertFalse(nodeMgr.isBanned(node.getAddress()));
+        verify(channel, never()).dropConnection();
+
+        nodeMgr.misbehave(node, NodeManager.RATE_LIMITED_SCORE, "test");
+        verify(channel).dropConnection();
+        // 按ip禁止, 其他端口也不能连接
+        assertTrue(nodeMgr.isBanned(new InetSocketAddress("127.0.0.1", 1002)));
+        assertFalse(nodeMgr.isBanned(new InetSocketAddress("127.0.0.2", 1001)));
+        assertEquals(1, nodeMgr.getBannedNodes().size());
+    }
+
+    @Test
+    public void testConnectBackoff() {
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        XdagClient client = mock(XdagClient.class);
+        when(client.getNode()).thenReturn(new Node("127.0.0.1", 8001));
+        kernel.setChannelMgr(channelMgr);
+        kernel.setClient(client);
+        kernel.setPeerStore(mock(PeerStore.class));
+        NodeManager nodeMgr = new NodeManager(kernel);
+        nodeMgr.addNode(new Node("127.0.0.1", 8001));
+        nodeMgr.addNode(new Node("127.0.0.2", 8001));
+        nodeMgr.addNode(new Node("127.0.0.3", 8001));
+        nodeMgr.ban(new InetSocketAddress("127.0.0.3", 8001));
+
+        // 每个节点连接一次后进入等待, 不连接自己和被禁止的节点
+        for (int i = 0; i < 3; i++) {
+            nodeMgr.doConnect();
+        }
+        verify(client).connectAsync(eq("127.0.0.2"), eq(8001), any());
+        verify(client, times(1)).connectAsync(any(), anyInt(), any());
+        assertEquals(1, nodeMgr.getPeers().get(0).getFailures() + nodeMgr.getPeers().get(1).getFailures()
+                + nodeMgr.getPeers().get(2).getFailures());
+    }
+
+    @Test
+    public void testParallelConnect() {
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        XdagClient client = mock(XdagClient.class);
+        when(client.getNode()).thenReturn(new Node("127.0.0.1", 8001));
+        List<DefaultChannelPromise> futures = Lists.newArrayList();
+        when(client.connectAsync(any(), anyInt(), any())).thenAnswer(invocation -> {
+            DefaultChannelPromise future = new DefaultChannelPromise(mock(io.netty.channel.Channel.class),
+                    ImmediateEventExecutor.INSTANCE);
+            futures.add(future);
+            return future;
+        });
+        kernel.setChannelMgr(channelMgr);
+        kernel.setClient(client);
+        kernel.setPeerStore(mock(PeerStore.class));
+        NodeManager nodeMgr = new NodeManager(kernel);
+        for (int i = 2; i <= 7; i++) {
+            nodeMgr.addNode(new Node("127.0.0." + i, 8001));
+        }
+        int limit = config.getNodeSpec().getConnectMaxInflight();
+
+        // 同时连接多个节点, 进行中的连接达到上限后不再发起
+        nodeMgr.doConnect();
+        verify(client, times(limit)).connectAsync(any(), anyInt(), any());
+        assertEquals(limit, nodeMgr.connectingSize());
+        nodeMgr.doConnect();
+        verify(client, times(limit)).connectAsync(any(), anyInt(), any());
+
+        // 连接失败后空出位置
+        futures.get(0).setFailure(new Exception("test"));
+        assertEquals(limit - 1, nodeMgr.connectingSize());
+        nodeMgr.doConnect();
+        verify(client, times(limit + 1)).connectAsync(any(), anyInt(), any());
+    }
+
+    @Test
+    public void testConnectDiscoveredPeer() {
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        kernel.setChannelMgr(channelMgr);
+        kernel.setPeerStore(mock(PeerStore.class));
+        // 与Kernel的启动顺序一致, NodeManager创建时libp2p还未启动
+        kernel.setLibp2pNetwork(null);
+        NodeManager nodeMgr = new NodeManager(kernel);
+        nodeMgr.doConnectlibp2p();
+
+        PrivKey privKey = KeyKt.generateKeyPair(KEY_TYPE.SECP256K1).component1();
+        DiscoveryPeer peer = new DiscoveryPeer(Bytes.wrap(privKey.publicKey().raw()),
+                new InetSocketAddress("127.0.0.2", 10000));
+        DiscV5Service discV5Service = mock(DiscV5Service.class);
+        when(discV5Service.streamKnownPeers()).thenAnswer(invocation -> Stream.of(peer));
+        Libp2pNetwork libp2pNetwork = mock(Libp2pNetwork.class);
+        when(libp2pNetwork.getDiscV5Service()).thenReturn(discV5Service);
+        kernel.setLibp2pNetwork(libp2pNetwork);
+
+        // 发现的节点只连接一次
+        nodeMgr.doConnectlibp2p();
+        nodeMgr.doConnectlibp2p();
+        verify(libp2pNetwork, times(1)).dail(Libp2pUtils.discoveryPeerToDailId(peer));
+    }
+
 }
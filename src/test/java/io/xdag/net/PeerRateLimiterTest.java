@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.core.XdagStats;
+import io.xdag.db.SnapshotManifest;
+import io.xdag.net.PeerRateLimiter.RequestClass;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.BlockExtRequestMessage;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.SnapshotRequestMessage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class PeerRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    @Test
+    public void testBurstAndRefill() {
+        PeerRateLimiter limiter = new PeerRateLimiter(new int[]{10, 0, 100, 1}, now::get);
+
+        // 开始时桶是满的
+        for (int i = 0; i < 10 * PeerRateLimiter.BURST_SECONDS; i++) {
+            assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+        }
+        // 令牌用完后预约之后的令牌, 每100ms一个
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+        // 同一类别共用一个桶
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), limiter.reserve(XdagMessageCodes.MAIN_BLOCKS_REQUEST));
+        assertEquals(2, limiter.getLimited(RequestClass.RANGE));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(450));
+        assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+        assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+
+        // 长时间空闲后最多补满
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        for (int i = 0; i < 10 * PeerRateLimiter.BURST_SECONDS; i++) {
+            assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST));
+        }
+        assertTrue(limiter.reserve(XdagMessageCodes.BLOCKS_REQUEST) > 0);
+        assertEquals(4, limiter.getLimited(RequestClass.RANGE));
+    }
+
+    @Test
+    public void testClasses() {
+        PeerRateLimiter limiter = new PeerRateLimiter(new int[]{10, 0, 100, 1}, now::get);
+
+        // 速率为0不限制, 其他消息不限制
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.reserve(XdagMessageCodes.SUMS_REQUEST));
+            assertEquals(0, limiter.reserve(XdagMessageCodes.NEW_BLOCK));
+            assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKS_REPLY));
+        }
+        assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKEXT_REQUEST));
+        assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCKEXT_REQUEST));
+        assertTrue(limiter.reserve(XdagMessageCodes.BLOCKEXT_REQUEST) > 0);
+        // 超过其他类别的限速不影响区块请求
+        assertEquals(0, limiter.reserve(XdagMessageCodes.BLOCK_REQUEST));
+        assertEquals("range=0 sums=0 block=0 blockext=1 snapshot=0", limiter.toString());
+    }
+
+    @Test
+    public void testSnapshotRequests() {
+        PeerRateLimiter limiter = new PeerRateLimiter(new int[]{10, 0, 100, 1, 4}, now::get);
+        SnapshotRequestMessage snapshot = new SnapshotRequestMessage(SnapshotManifest.PART_CHUNK, 1, 0,
+                new XdagStats(), new NetDB());
+        BlockExtRequestMessage ext = new BlockExtRequestMessage(XdagCapability.localCapabilities(),
+                new XdagStats(), new NetDB());
+
+        // 快照请求与能力协商使用同一个消息码, 分别限速
+        for (int i = 0; i < 4 * PeerRateLimiter.BURST_SECONDS; i++) {
+            assertEquals(0, limiter.reserve(snapshot));
+        }
+        assertTrue(limiter.reserve(snapshot) > 0);
+        assertEquals(0, limiter.reserve(ext));
+        assertEquals(1, limiter.getLimited(RequestClass.SNAPSHOT));
+        assertEquals(0, limiter.getLimited(RequestClass.BLOCKEXT));
+    }
+
+    @Test
+    public void testAncestorsCountAsRange() {
+        List<Bytes32> hashlows = List.of(Bytes32.random());
+        // 祖先请求返回一批区块, 与普通区块请求分开, 按范围请求限速
+        assertEquals(RequestClass.RANGE, RequestClass.of(new InvMessage(InvMessage.Type.ANCESTORS, hashlows, 1)));
+        assertEquals(RequestClass.BLOCK, RequestClass.of(new InvMessage(InvMessage.Type.REQUEST, hashlows)));
+        assertEquals(RequestClass.BLOCK, RequestClass.of(new InvMessage(InvMessage.Type.ANNOUNCE, hashlows)));
+    }
+}
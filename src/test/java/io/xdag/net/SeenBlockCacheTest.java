@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.Test;
+
+public class SeenBlockCacheTest {
+
+    @Test
+    public void testMarkSeen() {
+        SeenBlockCache cache = new SeenBlockCache(1024, 30);
+        byte[] block = RandomUtils.nextBytes(512);
+        byte[] other = block.clone();
+        other[511] ^= 1;
+
+        assertTrue(cache.markSeen(block));
+        assertFalse(cache.markSeen(block.clone()));
+        assertTrue(cache.markSeen(other));
+        assertEquals(1, cache.getDuplicates());
+
+        // 移除后重新收到不算重复
+        cache.forget(block);
+        assertTrue(cache.markSeen(block));
+        assertEquals(1, cache.getDuplicates());
+    }
+
+    @Test
+    public void testMarkSeenBuffer() {
+        SeenBlockCache cache = new SeenBlockCache(1024, 30);
+        byte[] block = RandomUtils.nextBytes(512);
+        // 接收缓冲中的传输头不为0, 且帧前后还有其他数据
+        byte[] received = new byte[600];
+        System.arraycopy(block, 0, received, 40, 512);
+        received[40] = 1;
+        received[47] = 1;
+        ByteBuffer frame = ByteBuffer.wrap(received, 40, 512).slice();
+
+        Arrays.fill(block, 0, 8, (byte) 0);
+        assertTrue(cache.markSeen(frame));
+        assertEquals(0, frame.position());
+        assertFalse(cache.markSeen(block));
+        assertFalse(cache.markSeen(frame));
+        assertEquals(2, cache.getDuplicates());
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        SeenBlockCache cache = new SeenBlockCache(1024, 1);
+        byte[] block = RandomUtils.nextBytes(512);
+        assertTrue(cache.markSeen(block));
+        Thread.sleep(1100);
+        assertTrue(cache.markSeen(block));
+    }
+}
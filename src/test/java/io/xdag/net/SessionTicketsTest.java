@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.core.XdagStats;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.message.impl.BlockExtReplyMessage;
+import io.xdag.net.message.impl.SessionTicketMessage;
+import io.xdag.net.message.impl.Xdag03MessageFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.Test;
+
+public class SessionTicketsTest {
+
+    private final InetAddress peer = InetAddress.getLoopbackAddress();
+
+    @Test
+    public void testIssueAndVerify() throws Exception {
+        SessionTickets tickets = new SessionTickets(3600);
+        byte[] ticket = tickets.issue(peer);
+        assertEquals(SessionTickets.TICKET_SIZE, ticket.length);
+
+        // 绑定签发时的ip
+        assertFalse(tickets.verify(InetAddress.getByName("127.0.0.2"), ticket));
+        assertTrue(tickets.verify(peer, ticket));
+        // 只能使用一次
+        assertFalse(tickets.verify(peer, ticket));
+
+        // 其他节点签发的和被修改的票据
+        assertFalse(tickets.verify(peer, new SessionTickets(3600).issue(peer)));
+        byte[] tampered = tickets.issue(peer);
+        tampered[0] ^= 1;
+        assertFalse(tickets.verify(peer, tampered));
+        assertFalse(tickets.verify(peer, new byte[8]));
+        assertFalse(tickets.verify(peer, null));
+    }
+
+    @Test
+    public void testExpired() {
+        SessionTickets tickets = new SessionTickets(0);
+        assertFalse(tickets.verify(peer, tickets.issue(peer)));
+    }
+
+    @Test
+    public void testTake() {
+        SessionTickets tickets = new SessionTickets(3600);
+        InetSocketAddress address = new InetSocketAddress(peer, 8001);
+        byte[] ticket = new SessionTickets(3600).issue(peer);
+        tickets.put(address, new byte[16]);
+        assertNull(tickets.take(address));
+
+        tickets.put(address, ticket);
+        assertEquals(1, tickets.size());
+        assertArrayEquals(ticket, tickets.take(address));
+        assertNull(tickets.take(address));
+    }
+
+    @Test
+    public void testMessage() {
+        Xdag03MessageFactory factory = new Xdag03MessageFactory();
+        byte[] ticket = new SessionTickets(3600).issue(peer);
+        SessionTicketMessage msg = new SessionTicketMessage(ticket);
+        Message received = factory.create(msg.getCommand().asByte(), MutableBytes.wrap(msg.getEncoded().toArray()));
+        assertTrue(received instanceof SessionTicketMessage);
+        assertArrayEquals(ticket, ((SessionTicketMessage) received).getTicket());
+
+        // 能力协商应答仍按原消息解析
+        BlockExtReplyMessage reply = new BlockExtReplyMessage(XdagCapability.localCapabilities(), 1,
+                new XdagStats(), new NetDB());
+        assertTrue(factory.create(reply.getCommand().asByte(), MutableBytes.wrap(reply.getEncoded().toArray()))
+                instanceof BlockExtReplyMessage);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.Kernel;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.XdagBlock;
+import io.xdag.net.Channel;
+import io.xdag.net.NetMetrics;
+import io.xdag.net.SeenBlockCache;
+import io.xdag.net.SolicitedBlocks;
+import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.BlocksBatchMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import io.xdag.net.message.impl.Xdag03MessageFactory;
+import io.xdag.net.node.Node;
+import io.xdag.utils.BytesUtils;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apache.tuweni.bytes.Bytes;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XdagBlockHandlerTest {
+
+    private static final String BLOCK = "00000000000000003833333333530540ffff8741810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9";
+    private static final String BLOCK1 = "00000000000000003833333333530540ffff8941810100000000000000000000032dea64ace570d7ae8668c8a4f52265c16497c9dd8cd62b0000000000000000f1f245ea01d304c3be265cad77f5589acdc45a7b3d35972f0000000000000000f23cddd22c17bf0a083e4bbe63c0e224dfc20a583238ef7a0000000000000000b4407441ad9c0372a7f053a3dbaaa4855589228cef7f05b000000000000000004206427aa89b7066b05379bec0e9264a34c55391f12137bb00000000000000009b55f3a7af41e29d8b6b4e4581387c507726437f7aacc7930000000000000000905786241884e7520a8ad2c777871b28548c78b8964107e20000000000000000a2583dc5f6001020e406edb1c6ed52c41bae2ef1dda9439200000000000000009f5c7e9633614d665fe6739fd122cdb0360b2c688d02685d00000000000000005fbc1107fe34e3faeab63e1ef3e24b6c66053103c4868a6600000000000000003a7883fa0ddb348428d72856ff0527e5aff79b2c739fb946b53ce6b29530a07dc821749a7ffa3f6b6e3417d6c0c54457c9909800b7dc5b034b7a1f979032e4cb000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008ed85467b39cc220720472c5f0b116afaccce977c71a655daae7789782c5fae9";
+
+    private EmbeddedChannel embedded;
+    private SeenBlockCache seenBlocks;
+    private NetMetrics metrics;
+    private SolicitedBlocks solicited;
+
+    @Before
+    public void setUp() {
+        Channel channel = mock(Channel.class);
+        solicited = new SolicitedBlocks();
+        when(channel.getSolicitedBlocks()).thenReturn(solicited);
+        Kernel kernel = mock(Kernel.class);
+        XdagChannelManager channelMgr = mock(XdagChannelManager.class);
+        seenBlocks = new SeenBlockCache(1024, 30);
+        when(channelMgr.getSeenBlocks()).thenReturn(seenBlocks);
+        when(kernel.getConfig()).thenReturn(new DevnetConfig());
+        when(kernel.getChannelMgr()).thenReturn(channelMgr);
+        when(channel.getKernel()).thenReturn(kernel);
+        when(channel.getNode()).thenReturn(new Node("127.0.0.1", 8001));
+        metrics = new NetMetrics();
+        when(channel.getMetrics()).thenReturn(metrics);
+        XdagBlockHandler handler = new XdagBlockHandler(channel);
+        handler.setMessageFactory(new Xdag03MessageFactory());
+        embedded = new EmbeddedChannel(handler);
+    }
+
+    /**
+     * 按网络格式写入传输头: ttl, 长度和crc
+     */
+    private static ByteBuf frame(String hex, int ttl) {
+        byte[] data = Hex.decode(hex);
+        System.arraycopy(BytesUtils.longToBytes((long) XdagBlock.XDAG_BLOCK_SIZE << 16 | ttl << 8, true), 0, data, 0, 8);
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        System.arraycopy(BytesUtils.intToBytes((int) crc32.getValue(), true), 0, data, 4, 4);
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(data.length);
+        buf.writeBytes(data);
+        return buf;
+    }
+
+    @Test
+    public void testDecodeDirectBuffer() {
+        ByteBuf in = frame(BLOCK, 3);
+        assertTrue(XdagBlockHandler.isFrameLegal(in, in.readerIndex()));
+        embedded.writeInbound(in);
+        NewBlockMessage received = embedded.readInbound();
+        assertEquals(3, received.getTtl());
+        assertEquals(Bytes.wrap(Hex.decode(BLOCK)), received.getBlock().getXdagBlock().getData());
+        assertEquals(0, in.refCnt());
+
+        // 编码写出区块自身的数据
+        embedded.writeOutbound(received.getBlock().getXdagBlock());
+        ByteBuf written = embedded.readOutbound();
+        assertEquals(Bytes.wrap(Hex.decode(BLOCK)), Bytes.wrap(ByteBufUtil.getBytes(written)));
+        written.release();
+    }
+
+    @Test
+    public void testDropCorruptedAndDuplicate() {
+        ByteBuf corrupted = frame(BLOCK, 1);
+        corrupted.setByte(100, corrupted.getByte(100) ^ 1);
+        assertFalse(XdagBlockHandler.isFrameLegal(corrupted, corrupted.readerIndex()));
+        embedded.writeInbound(corrupted);
+        assertNull(embedded.readInbound());
+
+        // 同一区块只解码一次, ttl不同也视为重复
+        embedded.writeInbound(frame(BLOCK, 1));
+        embedded.writeInbound(frame(BLOCK, 2));
+        embedded.writeInbound(frame(BLOCK1, 1));
+        NewBlockMessage first = embedded.readInbound();
+        NewBlockMessage second = embedded.readInbound();
+        assertNull(embedded.readInbound());
+        assertEquals(1, first.getTtl());
+        assertEquals(Bytes.wrap(Hex.decode(BLOCK1)), second.getBlock().getXdagBlock().getData());
+        assertEquals(1, seenBlocks.getDuplicates());
+        assertTrue(embedded.isOpen());
+        // 重复的区块也统计流量, crc错误的不统计
+        assertEquals(3, metrics.getStats(XdagMessageCodes.NEW_BLOCK).getReceived());
+        assertEquals(3 * 512, metrics.getStats(XdagMessageCodes.NEW_BLOCK).getReceivedBytes());
+    }
+
+    @Test
+    public void testSolicitedDuplicate() {
+        Block block = new Block(new XdagBlock(Hex.decode(BLOCK)));
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNotNull(embedded.readInbound());
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNull(embedded.readInbound());
+
+        // 请求的区块即使已经收到过也要解码
+        solicited.onBlockRequest(block.getHashLow());
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNotNull(embedded.readInbound());
+        solicited.onBlock(block.getHashLow());
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNull(embedded.readInbound());
+
+        // 时间范围请求的响应
+        solicited.onRangeRequest(1, block.getTimestamp(), block.getTimestamp() + 1);
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNotNull(embedded.readInbound());
+        solicited.onRangeReply(1);
+        embedded.writeInbound(frame(BLOCK, 1));
+        assertNull(embedded.readInbound());
+    }
+
+    @Test
+    public void testDecodeBatch() {
+        Block block = new Block(new XdagBlock(Hex.decode(BLOCK)));
+        Block block1 = new Block(new XdagBlock(Hex.decode(BLOCK1)));
+        BlocksBatchMessage msg = new BlocksBatchMessage(List.of(block, block1, block), 1);
+        assertTrue(msg.isCompressed());
+        byte[] encoded = msg.getEncoded().toArray();
+
+        // 只收到消息头时等待后续数据
+        embedded.writeInbound(Unpooled.wrappedBuffer(encoded, 0, 600));
+        assertNull(embedded.readInbound());
+        embedded.writeInbound(Unpooled.wrappedBuffer(encoded, 600, encoded.length - 600));
+        BlocksBatchMessage received = embedded.readInbound();
+        assertEquals(1, received.getTtl());
+        assertEquals(3, received.getBlocks().size());
+        assertEquals(block.getHashLow(), received.getBlocks().get(0).getHashLow());
+        assertEquals(block1.getHashLow(), received.getBlocks().get(1).getHashLow());
+        assertEquals(block.getHashLow(), received.getBlocks().get(2).getHashLow());
+    }
+
+    @Test
+    public void testIllegalBatchLength() {
+        Block block = new Block(new XdagBlock(Hex.decode(BLOCK)));
+        byte[] encoded = new BlocksBatchMessage(List.of(block), 1).getEncoded().toArray();
+        System.arraycopy(BytesUtils.longToBytes(BlocksBatchMessage.MAX_PAYLOAD + 1, true), 0, encoded,
+                BlocksBatchMessage.PAYLOAD_LENGTH_OFFSET, 8);
+
+        embedded.writeInbound(Unpooled.wrappedBuffer(encoded));
+        assertNull(embedded.readInbound());
+        assertFalse(embedded.isOpen());
+    }
+}
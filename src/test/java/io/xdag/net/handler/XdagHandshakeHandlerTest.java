@@ -0,0 +1,267 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.xdag.Kernel;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Blockchain;
+import io.xdag.core.XdagStats;
+import io.xdag.net.SessionTickets;
+import io.xdag.net.XdagChannel;
+import io.xdag.net.manager.NetDBManager;
+import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.node.Node;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 本地回环上比较完整握手和使用会话票据恢复的往返次数, 连接耗时和握手的CPU时间
+ */
+@Slf4j
+public class XdagHandshakeHandlerTest {
+
+    private static final int ROUNDS = 50;
+    private static final long TIMEOUT = 10;
+
+    private final BlockingQueue<XdagChannel> connected = new LinkedBlockingQueue<>();
+    private DevnetConfig config;
+    private Kernel server;
+    private Kernel client;
+    private SessionTickets clientTickets;
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel serverChannel;
+    private Node node;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new DevnetConfig();
+        config.initKeys();
+        config.setMaxInboundConnectionsPerIp(ROUNDS * 4);
+
+        XdagChannelManager serverChannelMgr = mock(XdagChannelManager.class);
+        when(serverChannelMgr.isAcceptable(any())).thenReturn(true);
+        server = kernel(serverChannelMgr);
+        server.setSessionTickets(new SessionTickets(3600));
+
+        XdagChannelManager clientChannelMgr = mock(XdagChannelManager.class);
+        doAnswer(invocation -> connected.add(invocation.getArgument(0)))
+                .when(clientChannelMgr).onChannelActive(any(), any());
+        client = kernel(clientChannelMgr);
+        clientTickets = new SessionTickets(3600);
+        client.setSessionTickets(clientTickets);
+
+        serverGroup = new NioEventLoopGroup(1);
+        clientGroup = new NioEventLoopGroup(1);
+        serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new XdagChannelInitializer(server, true, null))
+                .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+        InetSocketAddress address = (InetSocketAddress) serverChannel.localAddress();
+        node = new Node(address.getAddress().getHostAddress(), address.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverChannel.close().sync();
+        clientGroup.shutdownGracefully().sync();
+        serverGroup.shutdownGracefully().sync();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        // 预热, 结束时客户端持有服务端签发的票据
+        run(false);
+        long[] full = run(false);
+        long[] resumed = run(true);
+        log.info("full handshake: connect {} us, cpu {} us; resumed: connect {} us, cpu {} us",
+                full[0] / 1000, full[1] / 1000, resumed[0] / 1000, resumed[1] / 1000);
+        // 完整握手时连出方收到公钥后发送公钥, 收到口令后发送口令; 恢复时连接后一次发出
+        assertEquals(2, full[2]);
+        assertEquals(1, resumed[2]);
+    }
+
+    @Test
+    public void testInvalidTicket() throws Exception {
+        // 其他节点签发的票据, 服务端断开连接, 客户端下次完整握手
+        clientTickets.put(node.getAddress(), new SessionTickets(3600).issue(InetAddress.getLoopbackAddress()));
+        Channel channel = bootstrap().connect(node.getAddress()).sync().channel();
+        assertTrue(channel.closeFuture().await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(connected.isEmpty());
+        assertEquals(0, clientTickets.size());
+
+        XdagChannel xdagChannel = connect();
+        assertFalse(xdagChannel.getHandshakeHandler().isResumed());
+        xdagChannel.getSocketChannel().close().sync();
+    }
+
+    /**
+     * 连续连接ROUNDS次, 返回平均每次从发起连接到握手完成的时间和两端IO线程的CPU时间 (单位纳秒),
+     * 以及每次连出方发送握手数据的批数
+     * 两种方式都等待对方签发新票据后再断开, 除握手外其他处理相同
+     */
+    private long[] run(boolean resume) throws Exception {
+        long[] threads = {
+                serverGroup.submit(() -> Thread.currentThread().getId()).get(),
+                clientGroup.submit(() -> Thread.currentThread().getId()).get()};
+        long latency = 0;
+        long cpu = cpuNanos(threads);
+        long flights = -1;
+        for (int i = 0; i < ROUNDS; i++) {
+            if (!resume) {
+                clientTickets.take(node.getAddress());
+            }
+            FlightCounter counter = new FlightCounter();
+            long start = System.nanoTime();
+            XdagChannel channel = connect(counter);
+            latency += System.nanoTime() - start;
+            assertEquals(resume, channel.getHandshakeHandler().isResumed());
+            assertTrue(flights < 0 || flights == counter.flights);
+            flights = counter.flights;
+            awaitTicket();
+            channel.getSocketChannel().close().sync();
+        }
+        return new long[]{latency / ROUNDS, (cpuNanos(threads) - cpu) / ROUNDS, flights};
+    }
+
+    private XdagChannel connect() throws Exception {
+        return connect(new FlightCounter());
+    }
+
+    private XdagChannel connect(FlightCounter counter) throws Exception {
+        bootstrap(counter).connect(node.getAddress()).sync();
+        XdagChannel channel = connected.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(channel);
+        return channel;
+    }
+
+    private Bootstrap bootstrap() {
+        return bootstrap(new FlightCounter());
+    }
+
+    private Bootstrap bootstrap(FlightCounter counter) {
+        return new Bootstrap()
+                .group(clientGroup)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<NioSocketChannel>() {
+                    @Override
+                    protected void initChannel(NioSocketChannel ch) {
+                        ch.pipeline().addLast(counter, new XdagChannelInitializer(client, false, node));
+                    }
+                });
+    }
+
+    /**
+     * 统计连出方发送握手数据的批数, 收到对方的数据后再发送算新的一批
+     */
+    private static class FlightCounter extends ChannelDuplexHandler {
+
+        private static final int HANDSHAKE_SIZE =
+                XdagHandshakeHandler.PUBKEY_SIZE + XdagHandshakeHandler.PASSWORD_SIZE;
+
+        private int written;
+        private boolean received = true;
+        private volatile int flights;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            received = true;
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof ByteBuf buf && written < HANDSHAKE_SIZE) {
+                if (received) {
+                    flights++;
+                    received = false;
+                }
+                written += buf.readableBytes();
+            }
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    private void awaitTicket() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (clientTickets.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, clientTickets.size());
+    }
+
+    private static long cpuNanos(long[] threads) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long thread : threads) {
+            total += bean.getThreadCpuTime(thread);
+        }
+        return total;
+    }
+
+    private Kernel kernel(XdagChannelManager channelMgr) {
+        Kernel kernel = new Kernel(config);
+        Blockchain blockchain = mock(Blockchain.class);
+        when(blockchain.getXdagStats()).thenReturn(new XdagStats());
+        NetDBManager netDBMgr = mock(NetDBManager.class);
+        when(netDBMgr.getNetDB()).thenReturn(new NetDB());
+        kernel.setBlockchain(blockchain);
+        kernel.setNetDBMgr(netDBMgr);
+        kernel.setChannelMgr(channelMgr);
+        return kernel;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.Kernel;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.XdagStats;
+import io.xdag.net.Channel;
+import io.xdag.net.PeerRateLimiter;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageQueue;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.message.impl.SumRequestMessage;
+import io.xdag.net.node.Node;
+import io.xdag.net.node.NodeManager;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XdagRateLimitTest {
+
+    private static final int SUMS_RATE = 100;
+    private static final int BURST = SUMS_RATE * PeerRateLimiter.BURST_SECONDS;
+
+    private final AtomicInteger handled = new AtomicInteger();
+    private final Node node = new Node("127.0.0.1", 1001);
+    private NodeManager nodeMgr;
+    private EmbeddedChannel ch;
+
+    @Before
+    public void setUp() {
+        Kernel kernel = mock(Kernel.class);
+        nodeMgr = mock(NodeManager.class);
+        when(kernel.getNodeMgr()).thenReturn(nodeMgr);
+        Channel channel = mock(Channel.class);
+        when(channel.getNode()).thenReturn(node);
+        when(channel.getRateLimiter()).thenReturn(new PeerRateLimiter(new int[]{0, SUMS_RATE}, System::nanoTime));
+        Xdag03 handler = new Xdag03(kernel, channel) {
+            @Override
+            protected void handleMessage(Message msg) {
+                handled.incrementAndGet();
+            }
+        };
+        handler.setMsgQueue(mock(MessageQueue.class));
+        ch = new EmbeddedChannel(handler);
+    }
+
+    @Test
+    public void testPipelinedSyncNeverBanned() throws InterruptedException {
+        // 与XdagSync相同, 每个节点最多同时有syncMaxInflightPerPeer个请求, 收到应答后立即发出下一个
+        int inflight = new DevnetConfig().getNodeSpec().getSyncMaxInflightPerPeer();
+        int total = BURST + SUMS_RATE / 2;
+        int sent = 0;
+        while (handled.get() < total) {
+            while (sent < total && sent - handled.get() < inflight) {
+                ch.writeInbound(request());
+                sent++;
+            }
+            ch.runPendingTasks();
+            Thread.sleep(1);
+        }
+
+        // 超过限速的请求延后处理, 不丢弃也不增加违规分数
+        assertEquals(total, handled.get());
+        assertTrue(node.getStat().RateLimited.get() > 0);
+        assertTrue(ch.config().isAutoRead());
+        verify(nodeMgr, never()).misbehave(any(), anyInt(), anyString());
+    }
+
+    @Test
+    public void testFloodBanned() {
+        for (int i = 0; i < BURST; i++) {
+            ch.writeInbound(request());
+        }
+        assertEquals(BURST, handled.get());
+
+        // 令牌用完后停止读取, 已经解码的请求排队, 超过队列长度的才丢弃并计分
+        int dropped = 10;
+        for (int i = 0; i < XdagHandler.MAX_DEFERRED_REQUESTS + dropped; i++) {
+            ch.writeInbound(request());
+        }
+        assertEquals(BURST, handled.get());
+        assertFalse(ch.config().isAutoRead());
+        verify(nodeMgr, times(dropped)).misbehave(eq(node), eq(NodeManager.RATE_LIMITED_SCORE), anyString());
+    }
+
+    private static SumRequestMessage request() {
+        return new SumRequestMessage(0, 1, new XdagStats(), new NetDB());
+    }
+}
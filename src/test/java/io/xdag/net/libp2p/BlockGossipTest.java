@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.libp2p;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.libp2p.core.PeerId;
+import io.libp2p.core.crypto.KEY_TYPE;
+import io.libp2p.core.crypto.KeyKt;
+import io.libp2p.core.crypto.PrivKey;
+import io.libp2p.core.multiformats.Multiaddr;
+import io.libp2p.core.pubsub.ValidationResult;
+import io.netty.buffer.Unpooled;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.ImportResult;
+import io.xdag.crypto.Keys;
+import io.xdag.net.RttHistogram;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 本机多个libp2p节点间的gossip区块广播
+ */
+@Slf4j
+public class BlockGossipTest {
+
+    private static final AtomicInteger PORT = new AtomicInteger(13300);
+    private static final long TIMEOUT = 10000;
+
+    private final Config config = new DevnetConfig();
+    private final List<GossipNode> nodes = new ArrayList<>();
+    private final Map<Bytes32, Long> publishTime = new ConcurrentHashMap<>();
+
+    private static class GossipNode {
+
+        Libp2pNetwork network;
+        BlockGossip gossip;
+        final Map<Bytes32, Long> received = new ConcurrentHashMap<>();
+        final AtomicInteger deliveries = new AtomicInteger();
+        volatile boolean rejectAll;
+
+        ImportResult importBlock(Block block) {
+            deliveries.incrementAndGet();
+            if (rejectAll) {
+                return ImportResult.INVALID_BLOCK;
+            }
+            return received.putIfAbsent(block.getHashLow(), System.currentTimeMillis()) == null
+                    ? ImportResult.IMPORTED_NOT_BEST : ImportResult.EXIST;
+        }
+    }
+
+    private void startNodes(int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            GossipNode node = new GossipNode();
+            PrivKey privKey = KeyKt.generateKeyPair(KEY_TYPE.SECP256K1).getFirst();
+            Multiaddr addr = Libp2pUtils.fromInetSocketAddress(
+                    new InetSocketAddress("127.0.0.1", PORT.getAndIncrement()),
+                    new LibP2PNodeId(PeerId.fromPubKey(privKey.publicKey())));
+            node.gossip = new BlockGossip("devnet-test", node::importBlock);
+            node.network = new Libp2pNetwork(privKey, addr, node.gossip);
+            node.network.start().get(5, TimeUnit.SECONDS);
+            nodes.add(node);
+        }
+    }
+
+    private void connect(int from, int to) {
+        nodes.get(from).network.dail(nodes.get(to).network.getNodeAddress());
+    }
+
+    private void connectAll() {
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                connect(i, j);
+            }
+        }
+    }
+
+    private List<Block> publish(int from, int count) throws Exception {
+        List<Block> blocks = new ArrayList<>();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            KeyPair key = Keys.createEcKeyPair();
+            Block block = generateAddressBlock(config, key, time + i);
+            publishTime.put(block.getHashLow(), System.currentTimeMillis());
+            nodes.get(from).gossip.publish(block);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private boolean waitReceived(List<GossipNode> targets, List<Block> blocks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            if (targets.stream().allMatch(node -> blocks.stream()
+                    .allMatch(block -> node.received.containsKey(block.getHashLow())))) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    @After
+    public void tearDown() {
+        for (GossipNode node : nodes) {
+            node.network.stop();
+        }
+    }
+
+    @Test
+    public void testPropagation() throws Exception {
+        int n = 5;
+        int count = 20;
+        startNodes(n);
+        connectAll();
+        // 等待订阅信息交换和mesh建立
+        Thread.sleep(2000);
+
+        List<Block> blocks = publish(0, count);
+        List<GossipNode> targets = nodes.subList(1, n);
+        assertTrue(waitReceived(targets, blocks));
+
+        RttHistogram latency = new RttHistogram();
+        long gossipBytes = 0;
+        for (GossipNode node : targets) {
+            // 同一区块从多个节点收到时只交给导入一次
+            assertEquals(count, node.deliveries.get());
+            for (Block block : blocks) {
+                latency.add(node.received.get(block.getHashLow()) - publishTime.get(block.getHashLow()));
+            }
+        }
+        for (GossipNode node : nodes) {
+            gossipBytes += node.gossip.getBytesOut();
+        }
+        // 全连接时TCP转发: 发布节点发给n-1个节点, 其余节点各转发给除来源外的n-2个节点
+        long floodBytes = (long) count * (n - 1) * (n - 1) * 512;
+        log.info("gossip latency {}, bytes out {}, flood relay bytes {}", latency, gossipBytes, floodBytes);
+    }
+
+    @Test
+    public void testSameBlockFromTwoPublishers() throws Exception {
+        startNodes(3);
+        connectAll();
+        Thread.sleep(2000);
+
+        List<Block> blocks = publish(0, 1);
+        // 另一个节点发布同一区块, 消息id相同
+        nodes.get(1).gossip.publish(blocks.get(0));
+        assertTrue(waitReceived(nodes.subList(1, 3), blocks));
+        Thread.sleep(500);
+        assertEquals(1, nodes.get(2).deliveries.get());
+    }
+
+    @Test
+    public void testInvalidBlockNotForwarded() throws Exception {
+        // 0 - 1 - 2, 节点1认为区块无效
+        startNodes(3);
+        connect(0, 1);
+        connect(1, 2);
+        Thread.sleep(2000);
+        nodes.get(1).rejectAll = true;
+
+        List<Block> blocks = publish(0, 3);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (nodes.get(1).deliveries.get() < blocks.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(blocks.size(), nodes.get(1).deliveries.get());
+        Thread.sleep(1000);
+        assertEquals(0, nodes.get(2).deliveries.get());
+    }
+
+    @Test
+    public void testImportQueueFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        BlockGossip gossip = new BlockGossip("devnet-test", block -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ImportResult.IMPORTED_NOT_BEST;
+        }, 1);
+        long time = System.currentTimeMillis();
+        List<CompletableFuture<ValidationResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Block block = generateAddressBlock(config, Keys.createEcKeyPair(), time + i);
+            results.add(gossip.validate(Unpooled.wrappedBuffer(block.getXdagBlock().getData().toArray())));
+            if (i == 0) {
+                // 第一个区块占住导入线程, 第二个在队列中等待
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // 第三个区块超出队列上限被忽略
+        assertEquals(ValidationResult.Ignore, results.get(2).get());
+        assertEquals(1, gossip.getDropped());
+
+        release.countDown();
+        assertEquals(ValidationResult.Valid, results.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(ValidationResult.Valid, results.get(1).get(5, TimeUnit.SECONDS));
+        gossip.stop();
+    }
+}
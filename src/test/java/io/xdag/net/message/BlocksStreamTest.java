@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.Blockchain;
+import io.xdag.core.XdagBlock;
+import io.xdag.net.message.impl.BlocksBatchMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class BlocksStreamTest {
+
+    private Block newBlock() {
+        Block block = mock(Block.class);
+        when(block.getXdagBlock()).thenReturn(new XdagBlock(new byte[512]));
+        return block;
+    }
+
+    @Test
+    public void testByTime() {
+        Blockchain blockchain = mock(Blockchain.class);
+        Block b1 = newBlock();
+        Block b2 = newBlock();
+        Block b3 = newBlock();
+        when(blockchain.getBlocksByTime(eq(0L), eq(100L), isNull(), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(List.of(b1, b2));
+        when(blockchain.getBlocksByTime(eq(0L), eq(100L), eq(b2), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(List.of(b3));
+        when(blockchain.getBlocksByTime(eq(0L), eq(100L), eq(b3), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(Collections.emptyList());
+        Message reply = mock(Message.class);
+        BlocksStream stream = BlocksStream.byTime(blockchain, 0, 100, 1, false, () -> reply);
+
+        // 只读取第一批
+        assertSame(b1, ((NewBlockMessage) stream.next()).getBlock());
+        verify(blockchain, never()).getBlocksByTime(eq(0L), eq(100L), eq(b2), eq(BlocksStream.BATCH_SIZE));
+        assertSame(b2, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(b3, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(reply, stream.next());
+        assertNull(stream.next());
+        assertEquals(3, stream.getSent());
+    }
+
+    @Test
+    public void testByTimeBatch() {
+        Blockchain blockchain = mock(Blockchain.class);
+        Block b1 = newBlock();
+        Block b2 = newBlock();
+        when(blockchain.getBlocksByTime(eq(0L), eq(100L), isNull(), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(List.of(b1, b2));
+        when(blockchain.getBlocksByTime(eq(0L), eq(100L), eq(b2), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(Collections.emptyList());
+        Message reply = mock(Message.class);
+        BlocksStream stream = BlocksStream.byTime(blockchain, 0, 100, 1, true, () -> reply);
+
+        // 一批区块合并为一条消息
+        assertEquals(List.of(b1, b2), ((BlocksBatchMessage) stream.next()).getBlocks());
+        assertSame(reply, stream.next());
+        assertNull(stream.next());
+        assertEquals(2, stream.getSent());
+    }
+
+    @Test
+    public void testByHeight() {
+        Blockchain blockchain = mock(Blockchain.class);
+        Block main1 = newBlock();
+        Block main2 = newBlock();
+        Block b1 = newBlock();
+        when(blockchain.getBlockByHeight(1)).thenReturn(main1);
+        when(blockchain.getBlockByHeight(2)).thenReturn(main2);
+        when(blockchain.getBlocksConfirmedBy(main1)).thenReturn(List.of(b1, main1));
+        when(blockchain.getBlocksConfirmedBy(main2)).thenReturn(List.of(main2));
+        Message reply = mock(Message.class);
+        BlocksStream stream = BlocksStream.byHeight(blockchain, 1, 10, 1, false, () -> reply);
+
+        assertSame(b1, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(main1, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(main2, ((NewBlockMessage) stream.next()).getBlock());
+        // 高度3不存在, 结束
+        assertSame(reply, stream.next());
+        assertNull(stream.next());
+        verify(blockchain, never()).getBlockByHeight(4);
+    }
+
+    private Block linkedBlock(Blockchain blockchain, Bytes32 hashlow, Bytes32... parents) {
+        Block block = newBlock();
+        List<Address> links = new ArrayList<>();
+        for (Bytes32 parent : parents) {
+            links.add(new Address(parent, false));
+        }
+        when(block.getLinks()).thenReturn(links);
+        when(blockchain.getBlockByHash(hashlow, true)).thenReturn(block);
+        return block;
+    }
+
+    @Test
+    public void testAncestors() {
+        Blockchain blockchain = mock(Blockchain.class);
+        Bytes32 h1 = Bytes32.fromHexString("0x01");
+        Bytes32 h2 = Bytes32.fromHexString("0x02");
+        Bytes32 h3 = Bytes32.fromHexString("0x03");
+        Bytes32 h4 = Bytes32.fromHexString("0x04");
+        Bytes32 h5 = Bytes32.fromHexString("0x05");
+        // h1 <- h2 <- h3, h1 <- h4, h3和h4被请求; h5不存在
+        Block b1 = linkedBlock(blockchain, h1, h5);
+        Block b2 = linkedBlock(blockchain, h2, h1);
+        Block b3 = linkedBlock(blockchain, h3, h2);
+        Block b4 = linkedBlock(blockchain, h4, h1);
+
+        BlocksStream stream = BlocksStream.ancestors(blockchain, List.of(h3, h4), 2, 1, false);
+        // 祖先在前, 同一区块只发送一次, 没有结束回复
+        assertSame(b1, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(b2, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(b3, ((NewBlockMessage) stream.next()).getBlock());
+        assertSame(b4, ((NewBlockMessage) stream.next()).getBlock());
+        assertNull(stream.next());
+        assertEquals(4, stream.getSent());
+
+        // 深度限制
+        stream = BlocksStream.ancestors(blockchain, List.of(h3), 1, 1, true);
+        assertEquals(List.of(b2, b3), ((BlocksBatchMessage) stream.next()).getBlocks());
+        assertNull(stream.next());
+    }
+
+    @Test
+    public void testAncestorsLimit() {
+        Blockchain blockchain = mock(Blockchain.class);
+        // 请求h0, 祖先链h0 <- h1 <- ... 比MAX_ANCESTORS更长
+        int length = BlocksStream.MAX_ANCESTORS + 10;
+        List<Block> chain = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            chain.add(linkedBlock(blockchain, hash(i), hash(i + 1)));
+        }
+
+        BlocksStream stream = BlocksStream.ancestors(blockchain, List.of(hash(0)), length, 1, true);
+        List<Block> blocks = new ArrayList<>();
+        for (Message msg = stream.next(); msg != null; msg = stream.next()) {
+            blocks.addAll(((BlocksBatchMessage) msg).getBlocks());
+        }
+        // 截断最远的祖先, 请求的区块在最后发送
+        assertEquals(BlocksStream.MAX_ANCESTORS, blocks.size());
+        assertSame(chain.get(0), blocks.get(blocks.size() - 1));
+        assertSame(chain.get(BlocksStream.MAX_ANCESTORS - 1), blocks.get(0));
+    }
+
+    private static Bytes32 hash(int i) {
+        return Bytes32.leftPad(Bytes.ofUnsignedInt(i + 1));
+    }
+
+    @Test
+    public void testEmpty() {
+        Blockchain blockchain = mock(Blockchain.class);
+        when(blockchain.getBlocksByTime(anyLong(), anyLong(), isNull(), eq(BlocksStream.BATCH_SIZE)))
+                .thenReturn(Collections.emptyList());
+        Message reply = mock(Message.class);
+        BlocksStream stream = BlocksStream.byTime(blockchain, 0, 100, 1, false, () -> reply);
+        assertSame(reply, stream.next());
+        assertNull(stream.next());
+        assertTrue(stream.getSent() == 0);
+    }
+}
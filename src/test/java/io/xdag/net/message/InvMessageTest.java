@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import io.xdag.utils.BytesUtils;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.Test;
+
+public class InvMessageTest {
+
+    private static Bytes32 hashlow() {
+        MutableBytes32 hashlow = Bytes32.random().mutableCopy();
+        hashlow.set(0, Bytes32.ZERO.slice(0, 8));
+        return hashlow;
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        List<Bytes32> hashlows = List.of(hashlow(), hashlow());
+        InvMessage msg = new InvMessage(InvMessage.Type.ANCESTORS, hashlows, 3);
+        InvMessage received = new InvMessage(MutableBytes.wrap(msg.getEncoded().toArray()));
+        assertEquals(InvMessage.Type.ANCESTORS, received.getType());
+        assertEquals(3, received.getDepth());
+        assertEquals(hashlows, received.getHashlows());
+    }
+
+    @Test
+    public void testUnknownType() {
+        MutableBytes encoded = MutableBytes.wrap(
+                new InvMessage(InvMessage.Type.REQUEST, List.of(hashlow())).getEncoded().toArray());
+        encoded.set(16, Bytes.wrap(BytesUtils.intToBytes(7, true)));
+        // 不认识的类型不抛异常, 由处理方忽略
+        assertNull(new InvMessage(encoded).getType());
+    }
+
+    @Test
+    public void testPriority() {
+        InvMessage announce = new InvMessage(InvMessage.Type.ANNOUNCE, List.of(hashlow()));
+        InvMessage request = new InvMessage(InvMessage.Type.REQUEST, List.of(hashlow()));
+        // 通知没有应答, 但与请求一样放入请求队列
+        assertNull(announce.getAnswerMessage());
+        assertTrue(announce.isPriority());
+        assertEquals(NewBlockMessage.class, request.getAnswerMessage());
+        assertTrue(request.isPriority());
+    }
+}
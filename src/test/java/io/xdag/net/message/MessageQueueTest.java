@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.net.Channel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageQueueTest {
+
+    private EmbeddedChannel embedded;
+    private MessageQueue queue;
+
+    @Before
+    public void setUp() {
+        // 在当前线程读取消息流, 便于按顺序断言
+        queue = new MessageQueue(mock(Channel.class), Runnable::run);
+        embedded = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                queue.activate(ctx);
+            }
+
+            @Override
+            public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+                queue.onWritabilityChanged();
+            }
+        });
+    }
+
+    private Message newMessage(boolean request) {
+        Message msg = mock(Message.class);
+        doReturn(request).when(msg).isPriority();
+        return msg;
+    }
+
+    @Test
+    public void testAlternateRequestAndResponse() {
+        List<Message> requests = List.of(newMessage(true), newMessage(true), newMessage(true));
+        List<Message> responses = List.of(newMessage(false), newMessage(false));
+        for (Message request : requests) {
+            queue.sendMessage(request);
+        }
+        for (Message response : responses) {
+            queue.sendMessage(response);
+        }
+        embedded.runPendingTasks();
+
+        // 响应优先, 之后交替发送, 一方发完后发送另一方剩余的消息
+        assertSame(responses.get(0), embedded.readOutbound());
+        assertSame(requests.get(0), embedded.readOutbound());
+        assertSame(responses.get(1), embedded.readOutbound());
+        assertSame(requests.get(1), embedded.readOutbound());
+        assertSame(requests.get(2), embedded.readOutbound());
+        assertNull(embedded.readOutbound());
+    }
+
+    @Test
+    public void testResumeWhenWritable() {
+        embedded.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        Message response = newMessage(false);
+        queue.sendMessage(response);
+        embedded.runPendingTasks();
+        assertNull(embedded.readOutbound());
+
+        // 写缓冲恢复后继续发送
+        embedded.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        embedded.runPendingTasks();
+        assertSame(response, embedded.readOutbound());
+    }
+
+    @Test
+    public void testStreamAfterQueue() {
+        Message first = newMessage(false);
+        Message s1 = newMessage(false);
+        Message s2 = newMessage(false);
+        Iterator<Message> it = List.of(s1, s2).iterator();
+        queue.sendStream(() -> it.hasNext() ? it.next() : null);
+        queue.sendMessage(first);
+        assertEquals(1, queue.streamSize());
+        embedded.runPendingTasks();
+
+        assertSame(first, embedded.readOutbound());
+        assertSame(s1, embedded.readOutbound());
+        assertSame(s2, embedded.readOutbound());
+        assertNull(embedded.readOutbound());
+        assertEquals(0, queue.streamSize());
+    }
+
+    @Test
+    public void testStreamPausedWhenNotWritable() {
+        AtomicInteger pulled = new AtomicInteger();
+        queue.sendStream(() -> pulled.incrementAndGet() <= 3 ? newMessage(false) : null);
+        embedded.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        embedded.runPendingTasks();
+        // 不可写时不读取
+        assertEquals(0, pulled.get());
+
+        embedded.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        embedded.runPendingTasks();
+        assertEquals(4, pulled.get());
+    }
+
+    @Test
+    public void testStreamReadByExecutor() {
+        Queue<Runnable> reads = new ArrayDeque<>();
+        MessageQueue async = new MessageQueue(mock(Channel.class), reads::add);
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                async.activate(ctx);
+            }
+        });
+        Message s1 = newMessage(false);
+        Iterator<Message> it = List.of(s1).iterator();
+        async.sendStream(() -> it.hasNext() ? it.next() : null);
+        channel.runPendingTasks();
+        // event loop中不读取消息流
+        assertNull(channel.readOutbound());
+        assertEquals(1, reads.size());
+
+        reads.poll().run();
+        channel.runPendingTasks();
+        assertSame(s1, channel.readOutbound());
+
+        // 读到结尾后移除消息流
+        reads.poll().run();
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+        assertTrue(reads.isEmpty());
+        assertEquals(0, async.streamSize());
+    }
+}
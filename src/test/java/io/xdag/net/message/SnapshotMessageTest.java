@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.core.XdagStats;
+import io.xdag.db.SnapshotManifest;
+import io.xdag.net.XdagCapability;
+import io.xdag.net.message.impl.BlockExtRequestMessage;
+import io.xdag.net.message.impl.SnapshotReplyMessage;
+import io.xdag.net.message.impl.SnapshotRequestMessage;
+import io.xdag.net.message.impl.Xdag03MessageFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.Test;
+
+public class SnapshotMessageTest {
+
+    private final Xdag03MessageFactory factory = new Xdag03MessageFactory();
+
+    private Message decode(Message msg) {
+        return factory.create(msg.getCommand().asByte(), MutableBytes.wrap(msg.getEncoded().toArray()));
+    }
+
+    @Test
+    public void testRequest() {
+        SnapshotRequestMessage request = new SnapshotRequestMessage(SnapshotManifest.PART_CHUNK, 4096, 77,
+                new XdagStats(), new NetDB());
+        Message received = decode(request);
+        assertTrue(received instanceof SnapshotRequestMessage);
+        SnapshotRequestMessage msg = (SnapshotRequestMessage) received;
+        assertEquals(SnapshotManifest.PART_CHUNK, msg.getPart());
+        assertEquals(4096, msg.getHeight());
+        assertEquals(77, msg.getIndex());
+
+        // 能力协商仍按原消息解析
+        Message ext = decode(new BlockExtRequestMessage(XdagCapability.localCapabilities(), new XdagStats(),
+                new NetDB()));
+        assertTrue(ext instanceof BlockExtRequestMessage);
+    }
+
+    @Test
+    public void testReply() {
+        // 可压缩和不可压缩的数据
+        byte[] zeros = new byte[SnapshotManifest.CHUNK_SIZE];
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        for (byte[] data : Arrays.asList(zeros, random, new byte[0])) {
+            SnapshotReplyMessage reply = new SnapshotReplyMessage(SnapshotManifest.PART_PAGE, 8192, 3, data);
+            Message received = decode(reply);
+            assertTrue(received instanceof SnapshotReplyMessage);
+            SnapshotReplyMessage msg = (SnapshotReplyMessage) received;
+            assertEquals(SnapshotManifest.PART_PAGE, msg.getPart());
+            assertEquals(8192, msg.getHeight());
+            assertEquals(3, msg.getIndex());
+            assertArrayEquals(data, msg.getData());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReplyCrcMismatch() {
+        byte[] encoded = new SnapshotReplyMessage(SnapshotManifest.PART_CHUNK, 1, 0, new byte[]{1, 2, 3})
+                .getEncoded().toArray();
+        encoded[encoded.length - 1] ^= 1;
+        new SnapshotReplyMessage(MutableBytes.wrap(encoded));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class PeerInfoTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void testBackoff() {
+        PeerInfo peer = new PeerInfo("127.0.0.1", 8001);
+        assertTrue(peer.nextAttempt() <= NOW);
+
+        // 连续失败时等待时间加倍, 最长一小时
+        peer.onAttempt(NOW);
+        assertEquals(NOW + PeerInfo.RECONNECT_WAIT, peer.nextAttempt());
+        peer.onAttempt(NOW);
+        assertEquals(NOW + PeerInfo.RECONNECT_WAIT * 2, peer.nextAttempt());
+        peer.onAttempt(NOW);
+        assertEquals(NOW + PeerInfo.RECONNECT_WAIT * 4, peer.nextAttempt());
+        for (int i = 0; i < 100; i++) {
+            peer.onAttempt(NOW);
+        }
+        assertEquals(NOW + PeerInfo.MAX_BACKOFF, peer.nextAttempt());
+
+        // 握手成功后恢复
+        peer.onConnected(NOW + 100, 100);
+        assertEquals(0, peer.getFailures());
+        assertEquals(NOW + PeerInfo.RECONNECT_WAIT, peer.nextAttempt());
+    }
+
+    @Test
+    public void testScore() {
+        PeerInfo unknown = new PeerInfo("127.0.0.1", 8001);
+        PeerInfo slow = connected("127.0.0.2", 400, 1000);
+        PeerInfo fast = connected("127.0.0.3", 20, 1000);
+        PeerInfo busy = connected("127.0.0.4", 20, 100000);
+
+        assertEquals(0, unknown.score(), 0);
+        assertTrue(slow.score() > unknown.score());
+        assertTrue(fast.score() > slow.score());
+        assertTrue(busy.score() > fast.score());
+        assertEquals(20, fast.getRtt());
+        assertEquals(1000.0 / 60, fast.getThroughput(), 0.001);
+
+        // 连接时间太短不计算吞吐量
+        PeerInfo shortLived = new PeerInfo("127.0.0.5", 8001);
+        shortLived.onConnected(NOW, 20);
+        shortLived.onDisconnected(NOW + 1000, 1000);
+        assertEquals(0, shortLived.getThroughput(), 0);
+    }
+
+    @Test
+    public void testEncode() {
+        PeerInfo peer = connected("127.0.0.1", 30, 6000);
+        peer.onAttempt(NOW + TimeUnit.MINUTES.toMillis(2));
+        PeerInfo decoded = PeerInfo.fromBytes("127.0.0.1", 8001, peer.toBytes());
+        assertEquals(peer.getLastSeen(), decoded.getLastSeen());
+        assertEquals(peer.getLastAttempt(), decoded.getLastAttempt());
+        assertEquals(peer.getRtt(), decoded.getRtt());
+        assertEquals(peer.getThroughput(), decoded.getThroughput(), 0);
+        assertEquals(1, decoded.getFailures());
+        assertEquals(peer.nextAttempt(), decoded.nextAttempt());
+    }
+
+    private static PeerInfo connected(String host, long rtt, long received) {
+        PeerInfo peer = new PeerInfo(host, 8001);
+        peer.onAttempt(NOW);
+        peer.onConnected(NOW, rtt);
+        peer.onDisconnected(NOW + TimeUnit.MINUTES.toMillis(1), received);
+        return peer;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.sim;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.net.message.XdagMessageCodes;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 10个节点约5万个区块, 中途分区再恢复. 运行时间较长, 默认测试不执行
+ */
+@Slf4j
+public class NetworkPartitionSyncTest {
+
+    private static final long EPOCH = 64000;
+    private static final int NODES = 10;
+    private static final long BLOCK_INTERVAL = 1000;
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    private SimNetwork network;
+
+    @After
+    public void tearDown() {
+        if (network != null) {
+            network.close();
+        }
+    }
+
+    private void mine(long duration) {
+        long stop = network.now() + duration;
+        for (SimNode node : network.getNodes()) {
+            node.startMining(BLOCK_INTERVAL, stop);
+        }
+        network.runUntil(stop);
+    }
+
+    @Test
+    public void testPartitionHeal() throws Exception {
+        network = new SimNetwork(42);
+        network.setLatency(40, 160);
+        network.setLossRate(0.01);
+        for (int i = 0; i < NODES; i++) {
+            network.addNode(root.newFolder());
+        }
+        network.connectRandom(4);
+        List<SimNode> nodes = network.getNodes();
+
+        mine(20 * EPOCH);
+        log.info("before partition: {}", network);
+
+        network.partition(nodes.subList(0, NODES / 2));
+        mine(40 * EPOCH);
+        assertNotEquals(nodes.get(0).getTop(), nodes.get(NODES - 1).getTop());
+        long requests = network.getMessages(XdagMessageCodes.BLOCK_REQUEST);
+        log.info("before heal: {}", network);
+
+        network.heal();
+        mine(20 * EPOCH);
+        long converge = network.runUntilConverged(4 * EPOCH);
+        long produced = nodes.stream().mapToLong(SimNode::getProduced).sum();
+        log.info("converge={}ms produced={} main={} {}", converge, produced, nodes.get(0).getMainCount(), network);
+
+        assertTrue(converge >= 0);
+        assertTrue(produced >= 50000);
+        assertTrue(network.getMessages(XdagMessageCodes.BLOCK_REQUEST) > requests);
+        // 每个区块在每条连接上每个方向最多推送一次, 另加请求父块的回复
+        long links = nodes.stream().mapToLong(n -> n.getPeers().size()).sum();
+        assertTrue(network.getMessages(XdagMessageCodes.NEW_BLOCK)
+                <= produced * links + network.getMessages(XdagMessageCodes.BLOCK_REQUEST));
+    }
+}
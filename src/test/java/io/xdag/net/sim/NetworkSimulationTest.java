@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.net.message.XdagMessageCodes;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 区块推送和缺失父块请求下的传播和收敛, 不覆盖INV, BLOCKS_BATCH和限速, 见 {@link SimNode}
+ */
+@Slf4j
+public class NetworkSimulationTest {
+
+    private static final long EPOCH = 64000;
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    private SimNetwork network;
+
+    @After
+    public void tearDown() {
+        if (network != null) {
+            network.close();
+        }
+    }
+
+    private SimNetwork createNetwork(long seed, int nodes) throws Exception {
+        SimNetwork net = new SimNetwork(seed);
+        for (int i = 0; i < nodes; i++) {
+            net.addNode(root.newFolder());
+        }
+        net.connectAll();
+        return net;
+    }
+
+    private void mine(SimNetwork net, long interval, long duration) {
+        long stop = net.now() + duration;
+        for (SimNode node : net.getNodes()) {
+            node.startMining(interval, stop);
+        }
+        net.runUntil(stop);
+    }
+
+    private long produced(SimNetwork net) {
+        return net.getNodes().stream().mapToLong(SimNode::getProduced).sum();
+    }
+
+    @Test
+    public void testPropagation() throws Exception {
+        network = createNetwork(1, 4);
+        mine(network, 2000, 3 * EPOCH);
+
+        long converge = network.runUntilConverged(EPOCH);
+        log.debug("propagation: converge={}ms {}", converge, network);
+        assertTrue(converge >= 0);
+        // 最后一个区块的转发在几跳延迟内完成
+        assertTrue(converge < 1000);
+        for (SimNode node : network.getNodes()) {
+            assertEquals(produced(network), node.getBlockCount());
+        }
+        // 每个区块在每条连接上每个方向最多发送一次
+        assertTrue(network.getMessages(XdagMessageCodes.NEW_BLOCK) <= produced(network) * 4 * 3);
+        assertEquals(0, network.getMessages(XdagMessageCodes.BLOCK_REQUEST));
+        assertEquals(0, network.getDropped());
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        network = createNetwork(7, 3);
+        mine(network, 3000, 2 * EPOCH);
+        network.runUntilConverged(EPOCH);
+        String first = network.getNodes().get(0).getTop().toHexString() + " " + network;
+        network.close();
+
+        network = createNetwork(7, 3);
+        mine(network, 3000, 2 * EPOCH);
+        network.runUntilConverged(EPOCH);
+        assertEquals(first, network.getNodes().get(0).getTop().toHexString() + " " + network);
+    }
+
+    @Test
+    public void testLossRecovery() throws Exception {
+        network = createNetwork(2, 4);
+        network.setLossRate(0.2);
+        mine(network, 2000, 3 * EPOCH);
+
+        // 最后每个节点再出一个块, 引用自己还没被引用的区块, 丢失的区块都能按父块取回
+        network.setLossRate(0);
+        for (SimNode node : network.getNodes()) {
+            node.createLinkBlock();
+        }
+        long converge = network.runUntilConverged(2 * EPOCH);
+        log.debug("loss: converge={}ms {}", converge, network);
+        assertTrue(converge >= 0);
+        assertTrue(network.getDropped() > 0);
+        assertTrue(network.getNodes().get(0).getMainCount() > 0);
+    }
+
+    @Test
+    public void testPartitionHeal() throws Exception {
+        network = createNetwork(3, 6);
+        List<SimNode> nodes = network.getNodes();
+        mine(network, 2000, EPOCH);
+
+        network.partition(nodes.subList(0, 3));
+        mine(network, 2000, 3 * EPOCH);
+        assertNotEquals(nodes.get(0).getTop(), nodes.get(3).getTop());
+        long requests = network.getMessages(XdagMessageCodes.BLOCK_REQUEST);
+
+        network.heal();
+        mine(network, 2000, EPOCH);
+        long converge = network.runUntilConverged(2 * EPOCH);
+        log.debug("partition: converge={}ms {}", converge, network);
+        assertTrue(converge >= 0);
+        // 分区期间缺失的区块通过请求父块补齐
+        assertTrue(network.getMessages(XdagMessageCodes.BLOCK_REQUEST) > requests);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.sim;
+
+import io.xdag.Kernel;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.net.Channel;
+import io.xdag.net.XdagVersion;
+import io.xdag.net.handler.Xdag;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageQueue;
+import io.xdag.net.message.NetDB;
+import io.xdag.net.message.impl.BlockRequestMessage;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import io.xdag.net.node.Node;
+import java.net.InetSocketAddress;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+
+/**
+ * 模拟节点之间的连接, 消息编码后交给SimNetwork按延迟投递
+ */
+public class SimChannel extends Channel {
+
+    private final SimNetwork network;
+    private final SimNode local;
+    private final SimNode remote;
+    private final SimXdag xdag = new SimXdag();
+
+    SimChannel(SimNetwork network, SimNode local, SimNode remote) {
+        this.network = network;
+        this.local = local;
+        this.remote = remote;
+        // 每端各自统计对方节点
+        this.node = new Node(remote.getNode().getId(), remote.getNode().getHost(), remote.getNode().getPort());
+        this.inetSocketAddress = node.getAddress();
+        this.kernel = local.getKernel();
+    }
+
+    @Override
+    public InetSocketAddress getInetSocketAddress() {
+        return inetSocketAddress;
+    }
+
+    @Override
+    public boolean isActive() {
+        return isActive;
+    }
+
+    @Override
+    public void setActive(boolean b) {
+        isActive = b;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public void sendNewBlock(BlockWrapper blockWrapper) {
+        xdag.sendNewBlock(blockWrapper.getBlock(), blockWrapper.getTtl());
+    }
+
+    @Override
+    public void onDisconnect() {
+        isDisconnected = true;
+    }
+
+    @Override
+    public void dropConnection() {
+        local.getChannelMgr().notifyDisconnect(this);
+    }
+
+    @Override
+    public Xdag getXdag() {
+        return xdag;
+    }
+
+    @Override
+    public boolean isDisconnected() {
+        return isDisconnected;
+    }
+
+    @Override
+    public MessageQueue getMessageQueue() {
+        return null;
+    }
+
+    @Override
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * 只模拟新区块广播和缺失父块请求, 其他同步消息不发送
+     */
+    private class SimXdag implements Xdag {
+
+        @Override
+        public XdagVersion getVersion() {
+            return XdagVersion.V03;
+        }
+
+        @Override
+        public void sendNewBlock(Block newBlock, int ttl) {
+            sendMessage(new NewBlockMessage(newBlock, ttl));
+        }
+
+        @Override
+        public long sendGetBlocks(long startTime, long endTime) {
+            return 0;
+        }
+
+        @Override
+        public long sendGetBlock(MutableBytes32 hash) {
+            BlockRequestMessage msg = new BlockRequestMessage(hash, kernel.getBlockchain().getXdagStats(), new NetDB());
+            sendMessage(msg);
+            return msg.getRandom();
+        }
+
+        @Override
+        public long sendGetSums(long startTime, long endTime) {
+            return 0;
+        }
+
+        @Override
+        public long sendGetMainBlocks(long fromHeight, long toHeight) {
+            return 0;
+        }
+
+        @Override
+        public void sendInventory(List<Bytes32> hashlows) {
+        }
+
+        @Override
+        public void sendGetInventory(List<Bytes32> hashlows) {
+        }
+
+        @Override
+        public void sendGetAncestors(List<Bytes32> hashlows, int depth) {
+            sendMessage(new InvMessage(InvMessage.Type.ANCESTORS, hashlows, depth));
+        }
+
+        @Override
+        public void sendGetSnapshot(int part, long height, int index) {
+        }
+
+        @Override
+        public void dropConnection() {
+            SimChannel.this.dropConnection();
+        }
+
+        @Override
+        public void activate() {
+        }
+
+        @Override
+        public void sendMessage(Message message) {
+            node.getStat().Outbound.add();
+            network.send(local, remote, message);
+        }
+    }
+}
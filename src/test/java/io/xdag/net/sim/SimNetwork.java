@@ -0,0 +1,292 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.sim;
+
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.utils.XdagTime;
+import java.io.Closeable;
+import java.io.File;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * 单进程确定性多节点模拟: 所有节点共用一个可控时钟和事件队列, 消息按延迟投递,
+ * 可设置丢包和网络分区. 相同的种子得到完全相同的运行过程
+ * 只验证区块链和同步层在网络延迟, 丢包和分区下的收敛, 网络handler不在模拟范围内, 见 {@link SimNode}
+ */
+@Slf4j
+public class SimNetwork implements Closeable {
+
+    static {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    /**
+     * 模拟开始时间, 对齐到epoch开始
+     */
+    public static final long START_TIME = 1700000000000L / 64000 * 64000;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long seq;
+    private long now = START_TIME;
+
+    @Getter
+    private final Random random;
+    @Getter
+    private final List<SimNode> nodes = new ArrayList<>();
+
+    private long latency = 50;
+    private long jitter = 50;
+    private double lossRate;
+    /**
+     * 节点所在分区, 不在表中的节点属于分区0
+     */
+    private final Map<SimNode, Integer> partitions = new HashMap<>();
+
+    private final Map<XdagMessageCodes, Long> messages = new EnumMap<>(XdagMessageCodes.class);
+    @Getter
+    private long bytes;
+    @Getter
+    private long dropped;
+    @Getter
+    private long delivered;
+
+    public SimNetwork(long seed) {
+        this.random = new Random(seed);
+        XdagTime.setClock(this::now);
+    }
+
+    public long now() {
+        return now;
+    }
+
+    /**
+     * 单向延迟为 base + [0, jitter] 毫秒
+     */
+    public void setLatency(long base, long jitter) {
+        this.latency = base;
+        this.jitter = jitter;
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    public SimNode addNode(File storeDir) {
+        SimNode node = new SimNode(this, nodes.size(), storeDir);
+        nodes.add(node);
+        return node;
+    }
+
+    public void connect(SimNode a, SimNode b) {
+        a.addPeer(b);
+        b.addPeer(a);
+    }
+
+    public void connectAll() {
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                connect(nodes.get(i), nodes.get(j));
+            }
+        }
+    }
+
+    /**
+     * 先连成环保证连通, 再随机补充连接直到每个节点至少有degree个对端
+     */
+    public void connectRandom(int degree) {
+        int n = nodes.size();
+        for (int i = 0; i < n; i++) {
+            SimNode a = nodes.get(i);
+            SimNode b = nodes.get((i + 1) % n);
+            if (a != b && !a.getPeers().containsKey(b)) {
+                connect(a, b);
+            }
+        }
+        for (SimNode a : nodes) {
+            for (int tries = 0; a.getPeers().size() < Math.min(degree, n - 1) && tries < n * 4; tries++) {
+                SimNode b = nodes.get(random.nextInt(n));
+                if (a != b && !a.getPeers().containsKey(b)) {
+                    connect(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把指定节点与其余节点隔开, 分区期间双向的消息都被丢弃, 在途消息到达时同样丢弃
+     */
+    public void partition(List<SimNode> side) {
+        for (SimNode node : side) {
+            partitions.put(node, 1);
+        }
+    }
+
+    public void heal() {
+        partitions.clear();
+    }
+
+    public boolean isReachable(SimNode from, SimNode to) {
+        return partitions.getOrDefault(from, 0).equals(partitions.getOrDefault(to, 0));
+    }
+
+    public void schedule(long delay, Runnable task) {
+        events.add(new Event(now + delay, seq++, task));
+    }
+
+    /**
+     * 周期任务, 第一次在period之后执行
+     */
+    public void every(long period, Runnable task) {
+        schedule(period, () -> {
+            task.run();
+            every(period, task);
+        });
+    }
+
+    void send(SimNode from, SimNode to, Message msg) {
+        messages.merge(msg.getCommand(), 1L, Long::sum);
+        bytes += msg.getEncoded().size();
+        if (!isReachable(from, to) || random.nextDouble() < lossRate) {
+            dropped++;
+            return;
+        }
+        byte[] frame = msg.getEncoded().toArray();
+        schedule(latency + (jitter > 0 ? random.nextInt((int) jitter + 1) : 0), () -> {
+            if (!isReachable(from, to)) {
+                dropped++;
+                return;
+            }
+            delivered++;
+            to.receive(from, frame);
+        });
+    }
+
+    private void step() {
+        Event event = events.poll();
+        now = event.time;
+        try {
+            event.task.run();
+        } catch (Throwable e) {
+            log.error("simulation event failed at {}", now, e);
+        }
+    }
+
+    public void runUntil(long time) {
+        while (!events.isEmpty() && events.peek().time <= time) {
+            step();
+        }
+        now = Math.max(now, time);
+    }
+
+    public void runFor(long millis) {
+        runUntil(now + millis);
+    }
+
+    /**
+     * 运行到所有节点状态一致
+     *
+     * @return 从调用到收敛经过的模拟时间, 超时未收敛返回-1
+     */
+    public long runUntilConverged(long timeout) {
+        long start = now;
+        long deadline = now + timeout;
+        while (!isConverged()) {
+            if (events.isEmpty() || events.peek().time > deadline) {
+                now = Math.max(now, deadline);
+                return -1;
+            }
+            step();
+        }
+        return now - start;
+    }
+
+    /**
+     * 所有节点的最大难度链顶端和主块数相同, 并且没有等待父块的区块.
+     * 没有被引用的落选主块候选不会被请求, 丢包或分区时各节点的区块总数可以不同
+     */
+    public boolean isConverged() {
+        SimNode first = nodes.get(0);
+        for (SimNode node : nodes) {
+            if (node.getWaitSync() > 0
+                    || node.getMainCount() != first.getMainCount()
+                    || !node.getTop().equals(first.getTop())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getMessages(XdagMessageCodes code) {
+        return messages.getOrDefault(code, 0L);
+    }
+
+    public long getMessages() {
+        return messages.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public void close() {
+        for (SimNode node : nodes) {
+            node.close();
+        }
+        XdagTime.resetClock();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("time=%ds messages=%s bytes=%d delivered=%d dropped=%d",
+                (now - START_TIME) / 1000, messages, bytes, delivered, dropped);
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        final long time;
+        final long seq;
+        final Runnable task;
+
+        Event(long time, long seq, Runnable task) {
+            this.time = time;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            int c = Long.compare(time, o.time);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net.sim;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.xdag.Kernel;
+import io.xdag.Wallet;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.consensus.SyncManager;
+import io.xdag.consensus.XdagPow;
+import io.xdag.consensus.XdagSync;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.BlockchainImpl;
+import io.xdag.core.ImportResult;
+import io.xdag.core.XdagBlock;
+import io.xdag.core.XdagField;
+import io.xdag.crypto.Sign;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.rocksdb.AddressStoreImpl;
+import io.xdag.db.rocksdb.BlockStoreImpl;
+import io.xdag.db.rocksdb.DatabaseFactory;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.OrphanBlockStoreImpl;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.mine.MinerServer;
+import io.xdag.net.XdagClient;
+import io.xdag.net.handler.XdagBlockHandler;
+import io.xdag.net.manager.XdagChannelManager;
+import io.xdag.net.message.BlocksStream;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.XdagMessageCodes;
+import io.xdag.net.message.impl.BlockRequestMessage;
+import io.xdag.net.message.impl.InvMessage;
+import io.xdag.net.message.impl.NewBlockMessage;
+import io.xdag.net.message.impl.Xdag03MessageFactory;
+import io.xdag.net.node.Node;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPrivateKey;
+
+/**
+ * 模拟网络中的一个节点, 使用真实的区块链, 存储, SyncManager和XdagChannelManager, 导入在模拟时钟上同步执行
+ * <p>
+ * 模拟范围只到区块链和同步层: 区块推送, 已收到区块缓存, 等待父块和缺失父块的请求
+ * 不经过netty管道和Xdag03, 收到的消息由 {@link #receive} 按最小子集处理, 不覆盖INV清单转发, BLOCKS_BATCH,
+ * 能力协商和限速, 这些由XdagBlockHandlerTest, InventoryRelayTest, BlocksStreamTest和XdagRateLimitTest覆盖
+ */
+@Slf4j
+@Getter
+public class SimNode {
+
+    private static final long EPOCH = 64000;
+    /**
+     * 在epoch的这个时刻出主块候选, 保证主块时间不超过当前时间太多
+     */
+    private static final long MAIN_OFFSET = 56000;
+
+    private final SimNetwork network;
+    private final int index;
+    private final Node node;
+    private final KeyPair key;
+    private final Kernel kernel;
+    private final DatabaseFactory dbFactory;
+    private final BlockchainImpl blockchain;
+    private final XdagChannelManager channelMgr;
+    private final SyncManager syncMgr;
+    private final Map<SimNode, SimChannel> peers = new LinkedHashMap<>();
+    private final Xdag03MessageFactory messageFactory = new Xdag03MessageFactory();
+    private int produced;
+
+    SimNode(SimNetwork network, int index, File storeDir) {
+        this.network = network;
+        this.index = index;
+        this.node = new Node(BytesUtils.longToBytes(index, true), "10.0.0." + (index + 1), 8001);
+        this.key = KeyPair.create(SECPPrivateKey.create(new BigInteger(255, network.getRandom()).add(BigInteger.ONE),
+                Sign.CURVE_NAME), Sign.CURVE, Sign.CURVE_NAME);
+
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(storeDir, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(storeDir, "backup").getAbsolutePath());
+        kernel = new Kernel(config);
+
+        Wallet wallet = mock(Wallet.class);
+        when(wallet.getDefKey()).thenReturn(key);
+        when(wallet.getAccounts()).thenReturn(Collections.singletonList(key));
+        kernel.setWallet(wallet);
+        XdagClient client = mock(XdagClient.class);
+        when(client.getNode()).thenReturn(node);
+        kernel.setClient(client);
+        // 导入的区块难度达到最大难度时会切换到出块状态
+        kernel.setSync(mock(XdagSync.class));
+        kernel.setPow(mock(XdagPow.class));
+        kernel.setMinerServer(mock(MinerServer.class));
+
+        dbFactory = new RocksdbFactory(config);
+        BlockStore blockStore = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        blockStore.reset();
+        OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.reset();
+        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.reset();
+        kernel.setBlockStore(blockStore);
+        kernel.setOrphanBlockStore(orphanBlockStore);
+        kernel.setAddressStore(addressStore);
+
+        blockchain = new BlockchainImpl(kernel) {
+            @Override
+            public void startCheckMain(long period) {
+            }
+        };
+        kernel.setBlockchain(blockchain);
+
+        channelMgr = new XdagChannelManager(kernel) {
+            // 转发在当前时刻之后执行, 代替广播线程
+            @Override
+            public void onNewForeignBlock(BlockWrapper blockWrapper) {
+                network.schedule(0, () -> sendNewBlock(blockWrapper));
+            }
+        };
+        kernel.setChannelMgr(channelMgr);
+
+        syncMgr = new SyncManager(kernel);
+        kernel.setSyncMgr(syncMgr);
+
+        network.every(1024, blockchain::checkNewMain);
+        network.every(SyncManager.WAIT_SYNC_RETRY_INTERVAL / 4, syncMgr::retryWaitSync);
+    }
+
+    void addPeer(SimNode remote) {
+        SimChannel channel = new SimChannel(network, this, remote);
+        peers.put(remote, channel);
+        channelMgr.add(channel);
+        channelMgr.onChannelActive(channel, channel.getNode());
+    }
+
+    /**
+     * 按对方的帧解析消息, 只处理模拟范围内的NEW_BLOCK, BLOCK_REQUEST和祖先请求, 其他消息忽略
+     * 这里不是Xdag03的副本, 只保证区块能送达SyncManager, 不用来验证handler的行为
+     */
+    void receive(SimNode from, byte[] frame) {
+        SimChannel channel = peers.get(from);
+        if (channel == null || !channel.isActive()) {
+            return;
+        }
+        ByteBuf in = Unpooled.wrappedBuffer(frame);
+        if (!XdagBlockHandler.isFrameLegal(in, 0)) {
+            log.debug("node {} receive error block from {}", index, from.getIndex());
+            return;
+        }
+        channel.getNode().getStat().Inbound.add();
+        int ttl = (int) (in.getLongLE(0) >> 8 & 0xff);
+        long type = in.getLongLE(8);
+        Arrays.fill(frame, 0, 8, (byte) 0);
+        if ((type & 0xf) == kernel.getConfig().getXdagFieldHeader().asByte()) {
+            if (!channelMgr.getSeenBlocks().markSeen(frame)) {
+                channel.getNode().getStat().Duplicate.add();
+                return;
+            }
+            Block block = new Block(new XdagBlock(frame));
+            channelMgr.getInventoryRelay().onBlockReceived(channel, block.getHashLow());
+            syncMgr.validateAndAddNewBlock(new BlockWrapper(block, ttl - 1, channel.getNode()));
+        } else if ((type & 0xf) == XdagField.FieldType.XDAG_FIELD_NONCE.asByte()) {
+            Message msg = messageFactory.create((byte) (type >> 4 & 0xf), MutableBytes.wrap(frame));
+            if (msg.getCommand() == XdagMessageCodes.BLOCK_REQUEST) {
+                processBlockRequest(channel, (BlockRequestMessage) msg);
+            } else if (msg.getCommand() == XdagMessageCodes.INV
+                    && ((InvMessage) msg).getType() == InvMessage.Type.ANCESTORS) {
+                processAncestorsRequest(channel, (InvMessage) msg);
+            }
+        }
+    }
+
+    private void processAncestorsRequest(SimChannel channel, InvMessage msg) {
+        BlocksStream stream = BlocksStream.ancestors(blockchain, msg.getHashlows(), msg.getDepth(),
+                kernel.getConfig().getNodeSpec().getTTL(), false);
+        for (Message reply = stream.next(); reply != null; reply = stream.next()) {
+            channel.getXdag().sendMessage(reply);
+        }
+    }
+
+    /**
+     * 按哈希回复一个区块, 缺失父块的请求需要它才能补齐
+     */
+    private void processBlockRequest(SimChannel channel, BlockRequestMessage msg) {
+        Bytes32 hash = msg.getHash();
+        MutableBytes32 find = MutableBytes32.create();
+        find.set(8, hash.reverse().slice(8, 24));
+        Block block = blockchain.getBlockByHash(find, true);
+        if (block != null) {
+            channel.getXdag().sendMessage(new NewBlockMessage(block, kernel.getConfig().getNodeSpec().getTTL()));
+        }
+    }
+
+    /**
+     * 每隔约interval毫秒出一个链接孤块的普通块, 每个epoch出一个主块候选, 到stop时刻为止
+     */
+    public void startMining(long interval, long stop) {
+        scheduleLinkBlock(interval, stop);
+        scheduleMainBlock(stop);
+    }
+
+    private void scheduleLinkBlock(long interval, long stop) {
+        long delay = interval / 2 + network.getRandom().nextInt((int) interval + 1);
+        if (network.now() + delay >= stop) {
+            return;
+        }
+        network.schedule(delay, () -> {
+            createLinkBlock();
+            scheduleLinkBlock(interval, stop);
+        });
+    }
+
+    private void scheduleMainBlock(long stop) {
+        long at = network.now() - network.now() % EPOCH + MAIN_OFFSET + index * 10L;
+        if (at <= network.now()) {
+            at += EPOCH;
+        }
+        if (at >= stop) {
+            return;
+        }
+        network.schedule(at - network.now(), () -> {
+            createMainBlock();
+            scheduleMainBlock(stop);
+        });
+    }
+
+    public Block createLinkBlock() {
+        // <header + remark + outsig>
+        long[] sendTime = new long[]{XdagTime.getCurrentTimestamp(), 0};
+        List<Address> refs = Lists.newArrayList();
+        List<Address> orphans = blockchain.getBlockFromOrphanPool(16 - 4, sendTime);
+        if (orphans != null) {
+            refs.addAll(orphans);
+        }
+        Block block = new Block(kernel.getConfig(), sendTime[0], null, refs, false, null,
+                "sim" + index + "-" + produced, -1);
+        block.signOut(key);
+        publish(block);
+        return block;
+    }
+
+    public Block createMainBlock() {
+        Block block = blockchain.createMainBlock();
+        block.signOut(key);
+        block.setNonce(Bytes32.random(network.getRandom()));
+        publish(block);
+        return block;
+    }
+
+    private void publish(Block block) {
+        ImportResult result = blockchain.tryToConnect(new Block(new XdagBlock(block.getXdagBlock().getData().toArray())));
+        if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
+            produced++;
+            channelMgr.sendNewBlock(new BlockWrapper(block, kernel.getConfig().getNodeSpec().getTTL()));
+        } else {
+            log.debug("node {} create block {} result {}", index, block.getHashLow(), result);
+        }
+    }
+
+    public Bytes getTop() {
+        byte[] top = blockchain.getXdagTopStatus().getTop();
+        return top == null ? Bytes.EMPTY : Bytes.wrap(top);
+    }
+
+    public long getBlockCount() {
+        return blockchain.getXdagStats().nblocks;
+    }
+
+    public long getMainCount() {
+        return blockchain.getXdagStats().nmain;
+    }
+
+    public long getWaitSync() {
+        return blockchain.getXdagStats().nwaitsync;
+    }
+
+    void close() {
+        syncMgr.stop();
+        blockchain.stopCheckMain();
+        dbFactory.close();
+    }
+}
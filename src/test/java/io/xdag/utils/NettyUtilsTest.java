@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.xdag.config.SocketOptions;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+public class NettyUtilsTest {
+
+    @Test
+    public void testReadOptions() {
+        PropertiesConfiguration config = new PropertiesConfiguration();
+        config.addProperty("pool.socket.native", false);
+        config.addProperty("pool.socket.rcvbuf", 262144);
+        config.addProperty("pool.socket.acceptors", 0);
+        config.addProperty("pool.socket.pooledAllocator", false);
+
+        SocketOptions options = SocketOptions.read(config, "pool");
+        assertFalse(options.isNativeTransport());
+        assertEquals(262144, options.getReceiveBufferSize());
+        assertEquals(0, options.getSendBufferSize());
+        assertTrue(options.isTcpNoDelay());
+        assertEquals(1, options.getAcceptors());
+        assertSame(UnpooledByteBufAllocator.DEFAULT, NettyUtils.allocator(options));
+
+        // 其他服务使用默认值
+        SocketOptions node = SocketOptions.read(config, "node");
+        assertTrue(node.isNativeTransport());
+        assertSame(PooledByteBufAllocator.DEFAULT, NettyUtils.allocator(node));
+    }
+
+    @Test
+    public void testNioFallback() {
+        SocketOptions options = new SocketOptions();
+        options.setNativeTransport(false);
+        options.setAcceptors(4);
+        NettyUtils.Transport transport = NettyUtils.transport(options);
+        assertEquals(NettyUtils.Transport.NIO, transport);
+        assertEquals(NioServerSocketChannel.class, NettyUtils.serverChannelClass(transport));
+        assertEquals(NioSocketChannel.class, NettyUtils.socketChannelClass(transport));
+        // 只有epoll支持SO_REUSEPORT分配连接
+        assertEquals(1, NettyUtils.acceptors(transport, options));
+    }
+
+    @Test
+    public void testBindAndConnect() throws Exception {
+        SocketOptions options = new SocketOptions();
+        options.setAcceptors(2);
+        options.setReceiveBufferSize(128 * 1024);
+        options.setSendBufferSize(128 * 1024);
+        NettyUtils.Transport transport = NettyUtils.transport(options);
+        int acceptors = NettyUtils.acceptors(transport, options);
+        EventLoopGroup bossGroup = NettyUtils.newEventLoopGroup(transport, acceptors, null);
+        EventLoopGroup workerGroup = NettyUtils.newEventLoopGroup(transport, 1, null);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try {
+            ServerBootstrap server = NettyUtils.nativeEventLoopGroup(bossGroup, workerGroup);
+            NettyUtils.applyOptions(server, transport, options);
+            server.childHandler(new ChannelInboundHandlerAdapter());
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            List<Channel> channels = NettyUtils.bind(server, address, acceptors);
+            assertEquals(acceptors, channels.size());
+
+            Bootstrap client = new Bootstrap();
+            client.group(workerGroup);
+            client.channel(NettyUtils.socketChannelClass(transport));
+            NettyUtils.applyOptions(client, options);
+            client.handler(new ChannelInboundHandlerAdapter());
+            Channel channel = client.connect(address).sync().channel();
+            assertTrue(channel.isActive());
+            assertSame(PooledByteBufAllocator.DEFAULT, channel.config().getAllocator());
+            channel.close().sync();
+
+            NettyUtils.close(channels);
+            for (Channel c : channels) {
+                assertFalse(c.isOpen());
+            }
+        } finally {
+            workerGroup.shutdownGracefully().sync();
+            bossGroup.shutdownGracefully().sync();
+        }
+    }
+}
@@ -29,11 +29,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import io.xdag.Wallet;
+import io.xdag.WalletAccount;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.crypto.Keys;
 import io.xdag.crypto.SampleKeys;
 import io.xdag.crypto.Sign;
+import io.xdag.utils.WalletUtils;
 import java.io.File;
 import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
@@ -43,6 +45,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.tuweni.bytes.Bytes;
 import org.hyperledger.besu.crypto.KeyPair;
 import org.junit.After;
 import org.junit.Before;
@@ -74,6 +77,18 @@ public class WalletTest {
         assertEquals(pwd, wallet.getPassword());
     }
 
+    @Test
+    public void testWalletAccount() {
+        wallet.unlock(pwd);
+        KeyPair key = wallet.getAccounts().get(0);
+        WalletAccount account = wallet.getWalletAccounts().get(0);
+        assertEquals(key, account.getKeyPair());
+        assertEquals(Bytes.wrap(key.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true)), account.getCompressedPubKey());
+        assertEquals(Bytes.wrap(Keys.toBytesAddress(key)), account.getAddress());
+        assertEquals(WalletUtils.toBase58(Keys.toBytesAddress(key)), account.getBase58Address());
+        assertEquals(account, wallet.getWalletAccount(Keys.toBytesAddress(key)));
+    }
+
     @Test
     public void testUnlock() {
         assertFalse(wallet.isUnlocked());